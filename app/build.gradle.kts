@@ -38,6 +38,17 @@ android {
     buildFeatures {
         aidl = true
     }
+
+    testOptions {
+        unitTests {
+            // driver roda na JVM (emulador ESC/POS): Log.* etc. devolvem default em vez de lançar
+            isReturnDefaultValues = true
+            all {
+                // ./gradlew test -Dgolden.update=true regrava os PNGs de referência
+                it.systemProperty("golden.update", System.getProperty("golden.update") ?: "false")
+            }
+        }
+    }
 }
 
 dependencies {
@@ -49,6 +60,6 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-    implementation("com.google.zxing:core:3.5.3")
+    implementation(libs.zxing.core)
     implementation("com.google.android.material:material:1.12.0")
 }
\ No newline at end of file
@@ -16,7 +16,9 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.util.Log;
 import android.view.View;
@@ -33,19 +35,32 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
 import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothEscPosPrinter;
-import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothPrinterConnection;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothSppTransport;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.NvGraphicsRegistry;
 import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterDevice;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.pool.PrinterPool;
 import com.android.bluetoothuniversalprinter.printer.positivo.AidlGraphicsPrinter;
+import com.android.bluetoothuniversalprinter.printer.scheduler.PrintScheduler;
+import com.android.bluetoothuniversalprinter.printer.spool.PrintSpooler;
+import com.android.bluetoothuniversalprinter.printer.spool.SpoolJob;
+import com.android.bluetoothuniversalprinter.printer.transport.Backoff;
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+import com.android.bluetoothuniversalprinter.printer.transport.ReconnectingTransport;
 import com.xcheng.printerservice.IPrinterCallback;
 import com.xcheng.printerservice.IPrinterService;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Comportamento:
@@ -91,6 +106,8 @@ public class MainActivity extends AppCompatActivity {
     private static final String PREFS_NAME = "printer_prefs";
     private static final String PREF_KEY_MAC = "printer_mac";
     private static final String PREF_KEY_NAME = "printer_name";
+    /** Todas as impressoras do balcão, "MAC|nome" (a principal fica em PREF_KEY_MAC). */
+    private static final String PREF_KEY_POOL = "printer_pool";
 
     // UUID SPP padrão para impressoras térmicas ESC/POS clássicas
     private static final UUID SPP_UUID =
@@ -127,8 +144,48 @@ public class MainActivity extends AppCompatActivity {
     private BluetoothAdapter btAdapter;
     private final List<PrinterDevice> foundDevices = new ArrayList<>();
 
-    private BluetoothPrinterConnection btConn = null;
-    private BluetoothEscPosPrinter escPosPrinter = null;
+    // impressora principal (a última conectada): status e drain do spool.
+    // escritos na fila CONTROL, lidos nas filas de render/I/O
+    private volatile PrinterTransport btConn = null;
+    private volatile BluetoothEscPosPrinter escPosPrinter = null;
+
+    /** Todas as impressoras Bluetooth conectadas; os jobs vão pra menos carregada. */
+    private final PrinterPool pool = new PrinterPool(PrinterPool.Routing.LEAST_LOADED);
+
+    /** Health check das impressoras do pool (link morto sai do pool sozinho). */
+    private static final long HEALTH_CHECK_MS = 30_000L;
+    /** Timers do pool: health check e reconexão em background. */
+    private final Handler poolHandler = new Handler(Looper.getMainLooper());
+    private final Runnable healthCheck = new Runnable() {
+        @Override
+        public void run() {
+            for (PrinterPool.Member m : pool.getMembers()) {
+                // na fila de I/O da própria impressora: o DLE EOT não se mistura com um job
+                scheduler.io(m.getKey(), "saúde", PrintScheduler.Priority.REPRINT, self -> pool.probe(m));
+            }
+            poolHandler.postDelayed(this, HEALTH_CHECK_MS);
+        }
+    };
+
+    /**
+     * Link reserva já conectado por impressora (failover em ms). Desligado: a
+     * maioria das térmicas SPP aceita uma conexão só. Ligue se as suas aceitam duas.
+     */
+    private static final boolean BT_STANDBY = false;
+
+    /** Impressora que saiu do pool: nova tentativa a cada 1s, 2s, 4s... até 1 min (com jitter). */
+    private final Backoff reconnectBackoff = new Backoff(1000, 60_000);
+
+    /** Chave do pool -> aparelho (pra reconectar depois que cair). */
+    private final Map<String, PrinterDevice> poolDevices = new ConcurrentHashMap<>();
+    /** Chaves com reconexão em background agendada (uma por impressora). */
+    private final Set<String> reconnecting = ConcurrentHashMap.newKeySet();
+
+    /** Jobs ESC/POS passam pelo spool em disco (sobrevivem a queda de link / app fechado). */
+    private volatile PrintSpooler spooler = null;
+
+    /** Logos já gravados na memória NV de cada impressora (por MAC). */
+    private volatile NvGraphicsRegistry nvGraphics = null;
 
     private boolean receiverRegistered = false;
 
@@ -145,7 +202,7 @@ public class MainActivity extends AppCompatActivity {
             aidlBound = true;
 
             // inicializa impressora POS no background
-            io.execute(() -> {
+            scheduler.control("aidl init", self -> {
                 try {
                     aidlPrinterService.printerInit(aidlCallback);
                     aidlPrinterService.printerReset(aidlCallback);
@@ -219,9 +276,12 @@ public class MainActivity extends AppCompatActivity {
     };
 
     /* =====================================================
-     * Trabalho I/O fora da UI
+     * Trabalho fora da UI: filas de controle, render e I/O por impressora
      * ===================================================== */
-    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final PrintScheduler scheduler = new PrintScheduler();
+
+    /** Fila de I/O da impressora interna (AIDL). */
+    private static final String AIDL_PRINTER = "aidl";
 
     /* =====================================================
      * Permissões runtime (apenas p/ Bluetooth backend)
@@ -301,6 +361,11 @@ public class MainActivity extends AppCompatActivity {
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
 
+        // falhas das tarefas em background (render / I/O / controle) aparecem na UI
+        scheduler.setErrorListener((ticket, e) -> runOnUiThread(() -> showError(e)));
+        pool.setListener(this::onPrinterEvicted);
+        poolHandler.postDelayed(healthCheck, HEALTH_CHECK_MS);
+
         // ===== 1. Liga UI =====
         txtDeviceModel      = findViewById(R.id.txtDeviceModel);
         txtPrintMode        = findViewById(R.id.txtPrintMode);
@@ -360,6 +425,9 @@ public class MainActivity extends AppCompatActivity {
             btnScan.setVisibility(View.VISIBLE);
             btnScan.setOnClickListener(v -> startDiscoveryAndSelect());
 
+            // abre o spool antes de reconectar (CONTROL é serial): jobs pendentes saem ao conectar
+            scheduler.control("spool", self -> openSpooler());
+
             // tenta auto-reconectar última impressora salva
             attemptAutoReconnectBluetooth();
 
@@ -376,39 +444,35 @@ public class MainActivity extends AppCompatActivity {
 
             if (backend == PrintBackend.BLUETOOTH) {
                 // imprime "grid de bolinhas" via ESC/POS custom
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.setAlign(1);
-
-                        String[] seq = {
-                                "01","02","03","04","05",
-                                "06","07","08","09","10",
-                                "11","12","13","14","15"
-                        };
-                        escPosPrinter.printGrid(seq, 5, 24, 22f);
-
-                        escPosPrinter.feed(1);
-
-                        String[] seq2 = {
-                                "01","02","03","04","05",
-                                "06","07","08","09","10",
-                                "11","12"
-                        };
-                        escPosPrinter.printGrid(seq2, 5, 24, 22f);
-
-                        escPosPrinter.feed(1);
-                        escPosPrinter.printGrid(seq2, 4, 24, 22f);
-
-                        escPosPrinter.feed(3);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("grade", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.setAlign(1);
+
+                    String[] seq = {
+                            "01","02","03","04","05",
+                            "06","07","08","09","10",
+                            "11","12","13","14","15"
+                    };
+                    p.printGrid(seq, 5, 24, 22f);
+
+                    p.feed(1);
+
+                    String[] seq2 = {
+                            "01","02","03","04","05",
+                            "06","07","08","09","10",
+                            "11","12"
+                    };
+                    p.printGrid(seq2, 5, 24, 22f);
+
+                    p.feed(1);
+                    p.printGrid(seq2, 4, 24, 22f);
+
+                    p.feed(3);
+                    p.endJob();
                 });
             } else {
                 // AIDL não tem grid fancy pronto -> vamos gerar texto simples com numeração
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "grade", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         if (!checkConnected()) return;
 
@@ -456,35 +520,31 @@ public class MainActivity extends AppCompatActivity {
         btnPrintRoundedGrid.setOnClickListener(v -> {
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.setAlign(1);
-
-                        String[] seq = {
-                                "01","02","03","04","05",
-                                "06","07","08","09","10",
-                                "11","12","13","14","15"
-                        };
-
-                        escPosPrinter.printRoundedGrid(
-                                seq,
-                                5,
-                                64,
-                                48,
-                                10,
-                                22f
-                        );
+                printSpooled("grade arredondada", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.setAlign(1);
+
+                    String[] seq = {
+                            "01","02","03","04","05",
+                            "06","07","08","09","10",
+                            "11","12","13","14","15"
+                    };
+
+                    p.printRoundedGrid(
+                            seq,
+                            5,
+                            64,
+                            48,
+                            10,
+                            22f
+                    );
 
-                        escPosPrinter.feed(3);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                    p.feed(3);
+                    p.endJob();
                 });
             } else {
                 // fallback em AIDL -> outra grade textual
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "grade arredondada", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         if (!checkConnected()) return;
 
@@ -522,22 +582,18 @@ public class MainActivity extends AppCompatActivity {
                             "Ele está é bebendo a milenar inquietação do mundo!";
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.printParagraphInRoundedBox(
-                                textoDemo,
-                                24,  // tamanho fonte px
-                                16,  // padding interno px
-                                20   // raio canto px
-                        );
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("parágrafo", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.printParagraphInRoundedBox(
+                            textoDemo,
+                            24,  // tamanho fonte px
+                            16,  // padding interno px
+                            20   // raio canto px
+                    );
+                    p.endJob();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "parágrafo", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         if (!checkConnected()) return;
 
@@ -560,19 +616,15 @@ public class MainActivity extends AppCompatActivity {
         btnPrintAlign.setOnClickListener(v -> {
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.txtPrint("ALINHADO ESQUERDA (normal)", 0, 0);
-                        escPosPrinter.txtPrint("CENTRO 2x", 1, 1);
-                        escPosPrinter.txtPrint("DIREITA 3x", 2, 3);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("texto", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.txtPrint("ALINHADO ESQUERDA (normal)", 0, 0);
+                    p.txtPrint("CENTRO 2x", 1, 1);
+                    p.txtPrint("DIREITA 3x", 2, 3);
+                    p.endJob();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "texto", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         String multiline =
                                 "ALINHADO ESQUERDA (normal)\n" +
@@ -590,87 +642,82 @@ public class MainActivity extends AppCompatActivity {
         btnPrintfonts.setOnClickListener(v -> {
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                        try {
-
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "😎\nLinha 2\nLinha 3",
-                                    "VarsityTeamBold.otf",   // arquivo dentro de assets/
-                                    60f,             // tamanho em px
-                                    1,               // 0=esq,1=centro,2=dir
-                                    1               // padding em px
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com VarsityTeamBold 😎\nLinha 2\nLinha 3",
-                                    "VarsityTeamBold.otf",   // arquivo dentro de assets/
-                                    32f,             // tamanho em px
-                                    0,               // 0=esq,1=centro,2=dir
-                                    1               // padding em px
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com VarsityTeamBold 😎\nLinha 2\nLinha 3",
-                                    "VarsityTeamBold.otf",   // arquivo dentro de assets/
-                                    22f,             // tamanho em px
-                                    2,               // 0=esq,1=centro,2=dir
-                                    1               // padding em px
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com Transcity 😎\nLinha 2\nLinha 3",
-                                    "Transcity.otf",   // arquivo dentro de assets/
-                                    18f,             // tamanho em px
-                                    1,               // 0=esq,1=centro,2=dir
-                                    1               // padding em px
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com VarsityTeam-Bold 🚀\nOutra linha...",
-                                    "VarsityTeamBold.otf",
-                                    30f,
-                                    1,   // centro
-                                    16
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com Transcity.otf 🚀\nOutra linha...",
-                                    "Transcity.otf",
-                                    30f,
-                                    1,   // centro
-                                    16
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com Candara 🚀\nOutra linha...",
-                                    "Candara.ttf",
-                                    30f,
-                                    1,   // centro
-                                    16
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com Calibri 🚀\nOutra linha...",
-                                    "calibri.ttf",
-                                    30f,
-                                    1,   // centro
-                                    16
-                            );
-                            escPosPrinter.printCustomFontText(
-                                    MainActivity.this,
-                                    "Texto com Agencyb.ttf 🚀\nOutra linha...",
-                                    "Agencyb.ttf",
-                                    30f,
-                                    1,   // centro
-                                    16
-                            );
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("fontes", PrintScheduler.Priority.NORMAL, p -> {
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "😎\nLinha 2\nLinha 3",
+                            "VarsityTeamBold.otf",   // arquivo dentro de assets/
+                            60f,             // tamanho em px
+                            1,               // 0=esq,1=centro,2=dir
+                            1               // padding em px
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com VarsityTeamBold 😎\nLinha 2\nLinha 3",
+                            "VarsityTeamBold.otf",   // arquivo dentro de assets/
+                            32f,             // tamanho em px
+                            0,               // 0=esq,1=centro,2=dir
+                            1               // padding em px
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com VarsityTeamBold 😎\nLinha 2\nLinha 3",
+                            "VarsityTeamBold.otf",   // arquivo dentro de assets/
+                            22f,             // tamanho em px
+                            2,               // 0=esq,1=centro,2=dir
+                            1               // padding em px
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com Transcity 😎\nLinha 2\nLinha 3",
+                            "Transcity.otf",   // arquivo dentro de assets/
+                            18f,             // tamanho em px
+                            1,               // 0=esq,1=centro,2=dir
+                            1               // padding em px
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com VarsityTeam-Bold 🚀\nOutra linha...",
+                            "VarsityTeamBold.otf",
+                            30f,
+                            1,   // centro
+                            16
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com Transcity.otf 🚀\nOutra linha...",
+                            "Transcity.otf",
+                            30f,
+                            1,   // centro
+                            16
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com Candara 🚀\nOutra linha...",
+                            "Candara.ttf",
+                            30f,
+                            1,   // centro
+                            16
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com Calibri 🚀\nOutra linha...",
+                            "calibri.ttf",
+                            30f,
+                            1,   // centro
+                            16
+                    );
+                    p.printCustomFontText(
+                            MainActivity.this,
+                            "Texto com Agencyb.ttf 🚀\nOutra linha...",
+                            "Agencyb.ttf",
+                            30f,
+                            1,   // centro
+                            16
+                    );
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "fontes", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         aidlGraphicsPrinter.printCustomFontText(
                                 MainActivity.this,
@@ -730,18 +777,14 @@ public class MainActivity extends AppCompatActivity {
         btnPrintImage.setOnClickListener(v -> {
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.setAlign(1);
-                        escPosPrinter.printImageResource(getResources(), R.drawable.img);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("imagem", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.setAlign(1);
+                    p.printImageResource(getResources(), R.drawable.img);
+                    p.endJob();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "imagem", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         Bitmap bmp = BitmapFactory.decodeResource(
                                 getResources(),
@@ -760,19 +803,15 @@ public class MainActivity extends AppCompatActivity {
 
             final String qrPayload = "000201010212BR.GOV.BCB.PIX....EXEMPLO";
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.setAlign(1);
-                        escPosPrinter.txtPrint("Pague com PIX:", 1, 1);
-                        escPosPrinter.printQrCode(qrPayload, 256);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("pix", PrintScheduler.Priority.PAYMENT, p -> {
+                    p.beginJob();
+                    p.setAlign(1);
+                    p.txtPrint("Pague com PIX:", 1, 1);
+                    p.printQrCode(qrPayload, 256);
+                    p.endJob();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "pix", PrintScheduler.Priority.PAYMENT, self -> {
                     try {
                         aidlPrinterService.printText("Pague com PIX:\n", aidlCallback);
                         // align=1 (centro?), size=6 (tamanho simbólico)
@@ -789,19 +828,15 @@ public class MainActivity extends AppCompatActivity {
 
             final String code = "123456789012";
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.beginJob();
-                        escPosPrinter.setAlign(1);
-                        escPosPrinter.txtPrint("CODIGO DE BARRAS:", 1, 1);
-                        escPosPrinter.printCode128(code, 300, 100);
-                        escPosPrinter.endJob();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("code128", PrintScheduler.Priority.NORMAL, p -> {
+                    p.beginJob();
+                    p.setAlign(1);
+                    p.txtPrint("CODIGO DE BARRAS:", 1, 1);
+                    p.printCode128(code, 300, 100);
+                    p.endJob();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "code128", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         aidlPrinterService.printText("CODIGO DE BARRAS:\n", aidlCallback);
                         // align=1 (centro), width/height arbitrários, showContent=true
@@ -824,16 +859,12 @@ public class MainActivity extends AppCompatActivity {
         btnCut.setOnClickListener(v -> {
 
             if (backend == PrintBackend.BLUETOOTH) {
-                io.execute(() -> {
-                    try {
-                        escPosPrinter.feed(3);
-                        escPosPrinter.partialCut();
-                    } catch (IOException e) {
-                        runOnUiThread(() -> showError(e));
-                    }
+                printSpooled("corte", PrintScheduler.Priority.NORMAL, p -> {
+                    p.feed(3);
+                    p.partialCut();
                 });
             } else {
-                io.execute(() -> {
+                scheduler.io(AIDL_PRINTER, "corte", PrintScheduler.Priority.NORMAL, self -> {
                     try {
                         aidlPrinterService.printWrapPaper(3, aidlCallback);
                     } catch (Exception e) {
@@ -853,10 +884,10 @@ public class MainActivity extends AppCompatActivity {
             receiverRegistered = false;
         }
 
-        if (btConn != null) {
-            btConn.close();
-            btConn = null;
-        }
+        poolHandler.removeCallbacksAndMessages(null);
+        pool.closeAll();
+        btConn = null;
+        escPosPrinter = null;
 
         // desbind do serviço aidl se necessário
         if (aidlBound) {
@@ -867,7 +898,12 @@ public class MainActivity extends AppCompatActivity {
             aidlPrinterService = null;
         }
 
-        io.shutdownNow();
+        scheduler.shutdownNow();
+
+        if (spooler != null) {
+            spooler.close();
+            spooler = null;
+        }
     }
 
     /* =====================================================
@@ -922,13 +958,14 @@ public class MainActivity extends AppCompatActivity {
         SharedPreferences sp = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         final String savedMac = sp.getString(PREF_KEY_MAC, null);
         final String savedName = sp.getString(PREF_KEY_NAME, null);
+        final Set<String> savedPool = new HashSet<>(sp.getStringSet(PREF_KEY_POOL, new HashSet<>()));
 
         if (savedMac == null || savedMac.isEmpty()) {
             txtStatus.setText("Status: Nenhuma impressora selecionada");
             return;
         }
 
-        io.execute(() -> {
+        scheduler.control("reconectar", self -> {
             try {
                 if (!checkAndRequestBtPermissions()) {
                     runOnUiThread(() ->
@@ -936,20 +973,14 @@ public class MainActivity extends AppCompatActivity {
                     return;
                 }
 
-                if (btConn != null) {
-                    btConn.close();
-                    btConn = null;
-                }
-
                 if (btAdapter == null || !btAdapter.isEnabled()) {
                     runOnUiThread(() ->
                             txtStatus.setText("Status: Bluetooth desligado"));
                     return;
                 }
 
-                btConn = new BluetoothPrinterConnection();
-                btConn.connect(btAdapter, savedMac, SPP_UUID);
-                escPosPrinter = new BluetoothEscPosPrinter(btConn.getOutputStream());
+                reconnectPoolMembers(savedPool, savedMac);
+                makePrimary(connectToPool(savedMac, savedName));
 
                 runOnUiThread(() -> {
                     txtStatus.setText(
@@ -973,16 +1004,31 @@ public class MainActivity extends AppCompatActivity {
                             Toast.LENGTH_SHORT
                     ).show();
                 });
-
-                if (btConn != null) {
-                    btConn.close();
-                    btConn = null;
-                }
-                escPosPrinter = null;
+                // a principal não voltou, mas outra do balcão pode ter voltado
+                List<PrinterPool.Member> left = pool.getMembers();
+                if (btConn == null && !left.isEmpty()) makePrimary(left.get(0));
+                reconnectInBackground(poolKey(savedMac), new PrinterDevice(savedName, savedMac), 0);
             }
         });
     }
 
+    /** As outras impressoras salvas do balcão (a que falhar fica de fora, sem travar as demais). */
+    private void reconnectPoolMembers(Set<String> saved, String primaryMac) {
+        for (String entry : saved) {
+            int bar = entry.indexOf('|');
+            String mac = bar < 0 ? entry : entry.substring(0, bar);
+            String name = bar < 0 ? null : entry.substring(bar + 1);
+            if (mac.equals(primaryMac)) continue;
+            try {
+                connectToPool(mac, name);
+            } catch (IOException e) {
+                Log.w(TAG, "Pool: não reconectou " + mac, e);
+                reconnectInBackground(poolKey(mac), new PrinterDevice(name, mac), 0);
+            }
+        }
+        Log.i(TAG, "Pool: " + pool);
+    }
+
     /* =====================================================
      * BIND AIDL SERVICE
      * ===================================================== */
@@ -1124,29 +1170,26 @@ public class MainActivity extends AppCompatActivity {
                 Toast.LENGTH_SHORT
         ).show();
 
-        io.execute(() -> {
+        scheduler.control("conectar", self -> {
             try {
-                if (btConn != null) {
-                    btConn.close();
-                    btConn = null;
-                }
-
                 if (btAdapter == null || !btAdapter.isEnabled()) {
                     runOnUiThread(() -> showError(
                             new IOException("Bluetooth desligado")));
                     return;
                 }
 
-                btConn = new BluetoothPrinterConnection();
-                btConn.connect(btAdapter, device.address, SPP_UUID);
-
-                escPosPrinter = new BluetoothEscPosPrinter(btConn.getOutputStream());
+                // as outras impressoras continuam no pool; esta vira a principal
+                makePrimary(connectToPool(device.address, device.name));
 
-                // salva em SharedPreferences
+                // salva em SharedPreferences (principal + lista do pool)
                 SharedPreferences sp = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+                Set<String> saved = new HashSet<>(sp.getStringSet(PREF_KEY_POOL, new HashSet<>()));
+                saved.removeIf(entry -> entry.startsWith(device.address + "|"));
+                saved.add(device.address + "|" + device.name);
                 sp.edit()
                         .putString(PREF_KEY_MAC, device.address)
                         .putString(PREF_KEY_NAME, device.name)
+                        .putStringSet(PREF_KEY_POOL, saved)
                         .apply();
 
                 runOnUiThread(() -> {
@@ -1163,14 +1206,233 @@ public class MainActivity extends AppCompatActivity {
 
             } catch (Exception e) {
                 runOnUiThread(() -> showError(e));
+            }
+        });
+    }
+
+    /* =====================================================
+     * SPOOL (jobs ESC/POS persistidos antes de enviar)
+     * ===================================================== */
+    private void openSpooler() {
+        try {
+            nvGraphics = NvGraphicsRegistry.open(new File(getFilesDir(), "nv_graphics.txt"));
+        } catch (IOException e) {
+            // sem registro o logo só vai por raster
+            Log.e(TAG, "Falha ao abrir registro de gráficos NV", e);
+        }
+        try {
+            spooler = PrintSpooler.open(new File(getFilesDir(), "print.spool"));
+            int pending = spooler.getPending().size();
+            if (pending > 0) {
+                Log.i(TAG, pending + " job(s) pendentes no spool; saem ao conectar");
+            }
+        } catch (IOException e) {
+            // sem spool o app continua imprimindo direto (sem retomada)
+            Log.e(TAG, "Falha ao abrir spool", e);
+            spooler = null;
+        }
+    }
+
+    /** Liga o spool na impressora recém conectada e imprime o que ficou pendente. */
+    private void attachSpooler() {
+        final PrintSpooler sp = spooler;
+        if (sp == null) return;
+        sp.attach(btConn, escPosPrinter.getProfile());
+        scheduler.io(printerKey(), "pendentes", PrintScheduler.Priority.NORMAL, self -> {
+            try {
+                int printed = sp.drain();
+                if (printed > 0) Log.i(TAG, printed + " job(s) do spool impressos após conectar");
+            } catch (IOException e) {
+                Log.e(TAG, "Spool: falha ao retomar jobs pendentes", e);
+            }
+        });
+    }
 
-                if (btConn != null) {
-                    btConn.close();
-                    btConn = null;
+    /**
+     * Imprime pelo spool: o pool escolhe a impressora menos carregada, o job
+     * é montado pro perfil dela na fila RENDER (em paralelo com outros envios)
+     * e os bytes saem na fila de I/O dela, na ordem de prioridade. Sem spool,
+     * o job é desenhado direto na impressora escolhida.
+     *
+     * Cancelar o ticket tira o job da fila e do spool.
+     */
+    private PrintScheduler.Ticket printSpooled(String label, PrintScheduler.Priority priority,
+                                               PrintSpooler.JobBody body) {
+        final PrintSpooler sp = spooler;
+        return scheduler.render(label, priority, self -> {
+            // impressora primeiro: o job é compilado pro perfil dela (uma PAX não
+            // recebe GS ( k / GS k). O tamanho só se sabe depois: roteia pela fila
+            final PrinterPool.Member printer = pool.acquire(null, 0);
+            final SpoolJob job;
+            try {
+                job = (sp != null) ? sp.record(label, body, printer.getProfile()) : null;
+            } catch (IOException | RuntimeException e) {
+                pool.cancel(printer, 0);
+                throw e;
+            }
+            final int bytes = (job != null) ? job.getLength() : 0;
+            pool.charge(printer, bytes);
+            // o dono fica registrado já no roteamento: o drain() da principal não pega
+            if (job != null) sp.route(job, printer.getKey());
+            final AtomicBoolean released = new AtomicBoolean();
+
+            PrintScheduler.Ticket send = scheduler.io(printer.getKey(), label, priority, io -> {
+                boolean ok = false;
+                try {
+                    if (job != null) {
+                        sp.print(job, printer.getTransport(), printer.getProfile(), printer.getPacing());
+                    } else {
+                        try {
+                            body.print(printer.getPrinter());
+                        } catch (IOException | RuntimeException e) {
+                            // não deixa meio cupom no buffer pro próximo job
+                            printer.getPrinter().abortJob();
+                            throw e;
+                        }
+                    }
+                    ok = true;
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        if (io.isCancelled()) pool.cancel(printer, bytes);
+                        else pool.release(printer, bytes, ok);
+                    }
                 }
-                escPosPrinter = null;
+                Log.d(TAG, "impresso '" + label + "' em " + printer.getKey() + ": " + pool);
+            });
+            // cancelado antes/durante o envio: o job sai do spool (não volta no próximo drain)
+            send.onCancel(() -> {
+                if (released.compareAndSet(false, true)) pool.cancel(printer, bytes);
+                if (job == null) return;
+                try {
+                    // na hora, não numa fila: um drain() ou envio já na fila não pode imprimir o job
+                    sp.cancel(job);
+                } catch (IOException e) {
+                    Log.e(TAG, "Spool: falha ao cancelar '" + label + "'", e);
+                }
+            });
+            self.chain(send);
+        });
+    }
+
+    /** Uma fila de I/O por impressora Bluetooth (mesma chave do pool). */
+    private String printerKey() {
+        PrinterTransport conn = btConn;
+        return conn != null ? conn.describe() : "bluetooth";
+    }
+
+    /* =====================================================
+     * POOL DE IMPRESSORAS
+     * ===================================================== */
+
+    /**
+     * Conecta via SPP e coloca no pool (substitui a conexão antiga do mesmo MAC).
+     * O link se reconecta sozinho se cair no meio de um job.
+     */
+    private PrinterPool.Member connectToPool(String mac, String name) throws IOException {
+        PrinterProfile profile = PrinterProfile.forDeviceName(name);
+        ReconnectingTransport conn = new ReconnectingTransport(
+                () -> new BluetoothSppTransport(btAdapter, mac, SPP_UUID));
+        // reenvia também o que podia estar no buffer da impressora quando o link caiu
+        conn.setReplayWindow(profile.getBufferBytes());
+        final AtomicReference<PrinterPool.Member> added = new AtomicReference<>();
+        conn.setListener(new ReconnectingTransport.Listener() {
+            @Override
+            public void onLinkLost(IOException cause) {
+                Log.w(TAG, "Link " + mac + " caiu, reconectando", cause);
+                runOnUiThread(() -> txtStatus.setText("Status: Reconectando " + mac + "..."));
+            }
+
+            @Override
+            public void onReconnected(boolean viaStandby, int attempts, long outageMs) {
+                Log.i(TAG, "Link " + mac + " voltou em " + outageMs + "ms"
+                        + (viaStandby ? " (reserva)" : " (" + attempts + " tentativa(s))"));
+                // a impressora pode ter sido religada: confere a memória NV de novo
+                // (sem passar pelo lock do pool: aqui estamos dentro do lock do link)
+                PrinterPool.Member m = added.get();
+                if (m != null) m.getPrinter().recheckNvGraphics();
+                runOnUiThread(() -> txtStatus.setText("Status: Conectado em " + name + " (" + mac + ")"));
             }
         });
+        try {
+            conn.connect();
+        } catch (IOException e) {
+            conn.close();
+            throw e;
+        }
+        if (BT_STANDBY) {
+            conn.enableStandby(r -> scheduler.control("reserva " + mac, self -> r.run()));
+        }
+        poolDevices.put(conn.describe(), new PrinterDevice(name, mac));
+        PrinterPool.Member member = pool.add(conn.describe(), conn, profile);
+        added.set(member);
+        // só tem efeito se o perfil tiver supportsNvGraphics
+        member.getPrinter().setNvGraphics(nvGraphics, mac);
+        return member;
+    }
+
+    /**
+     * Tenta de novo em background, com backoff, até a impressora voltar
+     * (a fila CONTROL não fica parada esperando: o atraso é no Handler).
+     */
+    private void reconnectInBackground(String key, PrinterDevice device, int attempt) {
+        if (attempt == 0 && !reconnecting.add(key)) return; // já tem uma agendada
+        long delay = reconnectBackoff.delayMs(attempt);
+        Log.i(TAG, "Pool: tentativa " + (attempt + 1) + " em " + device.address + " daqui " + delay + "ms");
+        poolHandler.postDelayed(() -> {
+            if (isDestroyed()) return;
+            scheduler.control("reconectar " + device.address, self -> {
+                if (pool.get(key) != null) { // voltou por outro caminho (seletor, reconexão automática)
+                    reconnecting.remove(key);
+                    return;
+                }
+                try {
+                    PrinterPool.Member m = connectToPool(device.address, device.name);
+                    reconnecting.remove(key);
+                    if (btConn == null) {
+                        makePrimary(m);
+                    } else {
+                        attachSpooler(); // o que ficou no spool sai agora
+                    }
+                    runOnUiThread(() -> txtStatus.setText("Status: " + device.name + " reconectada, "
+                            + pool.size() + " impressora(s) conectada(s)"));
+                } catch (IOException e) {
+                    reconnectInBackground(key, device, attempt + 1);
+                }
+            });
+        }, delay);
+    }
+
+    /** Chave da impressora no pool (a mesma de BluetoothSppTransport.describe()). */
+    private static String poolKey(String mac) {
+        return "spp " + mac;
+    }
+
+    /** Impressora principal: status na tela e drain do spool. */
+    private void makePrimary(PrinterPool.Member member) {
+        btConn = member.getTransport();
+        escPosPrinter = member.getPrinter();
+        attachSpooler();
+    }
+
+    /** Link morto / sem resposta: sai do pool; se era a principal, outra assume. */
+    private void onPrinterEvicted(PrinterPool.Member member, String reason) {
+        Log.w(TAG, "Pool: " + member.getKey() + " removida (" + reason + ")");
+        if (member.getTransport() == btConn) {
+            List<PrinterPool.Member> left = pool.getMembers();
+            if (left.isEmpty()) {
+                btConn = null;
+                escPosPrinter = null;
+                PrintSpooler sp = spooler;
+                if (sp != null) sp.detach();
+            } else {
+                makePrimary(left.get(0));
+            }
+        }
+        runOnUiThread(() -> txtStatus.setText("Status: " + member.getKey() + " caiu (" + reason + "), "
+                + pool.size() + " impressora(s) conectada(s)"));
+
+        PrinterDevice device = poolDevices.get(member.getKey());
+        if (device != null) reconnectInBackground(member.getKey(), device, 0);
     }
 
     /* =====================================================
@@ -1178,7 +1440,8 @@ public class MainActivity extends AppCompatActivity {
      * ===================================================== */
     private boolean checkConnected() {
         if (backend == PrintBackend.BLUETOOTH) {
-            if (btConn == null || escPosPrinter == null || !btConn.isConnected()) {
+            pool.evictDisconnected();
+            if (pool.size() == 0) {
                 Toast.makeText(
                         this,
                         "Conecte uma impressora Bluetooth primeiro.",
@@ -0,0 +1,78 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Difusão de erro Atkinson (a do MacPaint).
+ *
+ *          X   1   1
+ *      1   1   1
+ *          1             (/8, só 6/8 do erro é propagado)
+ *
+ * Perde 2/8 do erro de propósito: realces estouram pra branco e sombras pra preto,
+ * o que costuma ficar mais limpo no papel térmico que o Floyd–Steinberg.
+ *
+ * Memória O(largura): erro da linha de cima é somado na luminância antes,
+ * então bastam DOIS buffers rolantes (y+1 e y+2) e o erro da direita em variáveis.
+ */
+public final class AtkinsonDitherer implements Ditherer {
+
+    // erro para y+1 e y+2, com 1 posição de folga em cada ponta
+    private int[] next = new int[0];
+    private int[] next2 = new int[0];
+
+    @Override
+    public void begin(int widthPx) {
+        if (next.length < widthPx + 2) {
+            next = new int[widthPx + 2];
+            next2 = new int[widthPx + 2];
+        } else {
+            Arrays.fill(next, 0);
+            Arrays.fill(next2, 0);
+        }
+    }
+
+    @Override
+    public void ditherRow(int[] luma, int lumaOff, int widthPx, int y, byte[] dst, int dstOff) {
+        // linha atual recebe o erro de "next"; depois os buffers giram: next2 vira next
+        int[] incoming = next;
+        for (int x = 0; x < widthPx; x++) {
+            luma[lumaOff + x] += incoming[x + 1];
+        }
+        Arrays.fill(incoming, 0);
+        next = next2;
+        next2 = incoming;
+
+        final int[] n1 = next;
+        final int[] n2 = next2;
+
+        int carry1 = 0; // erro para x+1
+        int carry2 = 0; // erro para x+2
+        int o = dstOff;
+        int bits = 0;
+        int n = 0;
+
+        for (int x = 0; x < widthPx; x++) {
+            int v = luma[lumaOff + x] + carry1;
+            boolean black = v < 128;
+            int e = (black ? v : v - 255) >> 3;
+
+            carry1 = carry2 + e;
+            carry2 = e;
+            n1[x]     += e;   // baixo-esquerda
+            n1[x + 1] += e;   // baixo
+            n1[x + 2] += e;   // baixo-direita
+            n2[x + 1] += e;   // dois abaixo
+
+            bits = (bits << 1) | (black ? 1 : 0);
+            if (++n == 8) {
+                dst[o++] = (byte) bits;
+                bits = 0;
+                n = 0;
+            }
+        }
+        if (n != 0) {
+            dst[o] = (byte) (bits << (8 - n));
+        }
+    }
+}
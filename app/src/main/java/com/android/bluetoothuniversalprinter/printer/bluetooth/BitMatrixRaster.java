@@ -0,0 +1,164 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * RasterSource direto de uma BitMatrix do ZXing (QR Code / CODE128).
+ *
+ * Antes: BitMatrix -> Bitmap ARGB (setPixel por pixel) -> reescala bilinear
+ * -> limiar de novo -> bits. Duas imagens inteiras alocadas e módulos borrados.
+ *
+ * Agora: pedimos ao ZXing a matriz no tamanho natural (1 px por módulo),
+ * e cada linha de saída é gerada a partir do BitArray da linha de origem,
+ * ampliada por um fator INTEIRO (scaleX / scaleY). Módulos ficam nítidos
+ * e não existe Bitmap no caminho.
+ *
+ * Java puro (só ZXing), sem android.*.
+ */
+public final class BitMatrixRaster implements RasterSource {
+
+    private final BitMatrix matrix;
+    private final int scaleX;
+    private final int scaleY;
+    private final int widthPx;
+    private final int heightPx;
+    private final int bytesPerRow;
+
+    // reaproveitados: linha de origem e a última linha de saída gerada
+    private BitArray srcRow;
+    private byte[] lastPacked;
+    private int lastSrcY = -1;
+
+    public BitMatrixRaster(BitMatrix matrix, int scaleX, int scaleY) {
+        this.matrix = matrix;
+        this.scaleX = Math.max(1, scaleX);
+        this.scaleY = Math.max(1, scaleY);
+        this.widthPx = matrix.getWidth() * this.scaleX;
+        this.heightPx = matrix.getHeight() * this.scaleY;
+        this.bytesPerRow = RasterPacker.bytesPerRow(widthPx);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Fábricas: QR / CODE128
+    // ------------------------------------------------------------------------
+
+    /**
+     * QR Code com módulos quadrados, o maior múltiplo inteiro que cabe em
+     * sizePx e na largura da cabeça.
+     *
+     * @return null se nem com 1 dot por módulo o código cabe em maxWidthDots
+     */
+    public static BitMatrixRaster qrCode(String data, int sizePx, int maxWidthDots) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.MARGIN, 1);
+
+        // 0x0 -> ZXing devolve o tamanho natural (1 px por módulo)
+        BitMatrix m = new MultiFormatWriter().encode(data, BarcodeFormat.QR_CODE, 0, 0, hints);
+
+        int limit = Math.min(Math.max(sizePx, 1), maxWidthDots);
+        if (m.getWidth() > maxWidthDots) return null;
+        int scale = Math.max(1, limit / m.getWidth());
+        return new BitMatrixRaster(m, scale, scale);
+    }
+
+    /**
+     * CODE128 com barras em largura inteira de dots (sem borrar a largura das barras).
+     *
+     * @param widthPx  largura desejada (usamos o maior múltiplo inteiro que cabe)
+     * @param heightPx altura das barras em linhas
+     * @return null se nem com 1 dot por módulo o código cabe em maxWidthDots
+     */
+    public static BitMatrixRaster code128(String data, int widthPx, int heightPx, int maxWidthDots)
+            throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 1);
+
+        // altura 1: a matriz 1D vira uma linha só, que repetimos heightPx vezes
+        BitMatrix m = new MultiFormatWriter().encode(data, BarcodeFormat.CODE_128, 0, 1, hints);
+
+        if (m.getWidth() > maxWidthDots) return null;
+        int limit = Math.min(Math.max(widthPx, 1), maxWidthDots);
+        int scaleX = Math.max(1, limit / m.getWidth());
+        int scaleY = Math.max(1, heightPx / m.getHeight());
+        return new BitMatrixRaster(m, scaleX, scaleY);
+    }
+
+    // ------------------------------------------------------------------------
+    //  RasterSource
+    // ------------------------------------------------------------------------
+
+    @Override
+    public int getWidth() {
+        return widthPx;
+    }
+
+    @Override
+    public int getHeight() {
+        return heightPx;
+    }
+
+    @Override
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+
+    /** Largura da matriz em módulos (com a margem), antes da ampliação. */
+    public int getModulesWide() {
+        return matrix.getWidth();
+    }
+
+    public int getScaleX() {
+        return scaleX;
+    }
+
+    public int getScaleY() {
+        return scaleY;
+    }
+
+    @Override
+    public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+        if (lastPacked == null) {
+            lastPacked = new byte[bytesPerRow];
+        }
+        for (int r = 0; r < rows; r++) {
+            int srcY = (yStart + r) / scaleY;
+            if (srcY != lastSrcY) {
+                expandRow(srcY, lastPacked);
+                lastSrcY = srcY;
+            }
+            // linhas repetidas (scaleY) são só cópia
+            System.arraycopy(lastPacked, 0, dst, dstOff + r * bytesPerRow, bytesPerRow);
+        }
+    }
+
+    /** Amplia a linha srcY da matriz em scaleX e empacota (MSB = esquerda, 1 = preto). */
+    private void expandRow(int srcY, byte[] out) {
+        srcRow = matrix.getRow(srcY, srcRow);
+        final int[] words = srcRow.getBitArray();
+        final int srcW = matrix.getWidth();
+
+        Arrays.fill(out, (byte) 0);
+        int x = 0;
+        for (int sx = 0; sx < srcW; sx++) {
+            // BitArray guarda LSB primeiro dentro de cada int
+            boolean black = (words[sx >> 5] & (1 << (sx & 31))) != 0;
+            if (black) {
+                for (int k = 0; k < scaleX; k++, x++) {
+                    out[x >> 3] |= (byte) (0x80 >>> (x & 7));
+                }
+            } else {
+                x += scaleX;
+            }
+        }
+    }
+}
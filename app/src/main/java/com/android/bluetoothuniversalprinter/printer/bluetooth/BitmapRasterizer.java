@@ -0,0 +1,272 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Motor de raster compartilhado: Bitmap -> bytes 1bpp prontos pro GS v 0.
+ *
+ * Por que existe:
+ *  - Os loops antigos faziam getPixel/setPixel por pixel (uma chamada JNI cada)
+ *    e ainda criavam um Bitmap ARGB "mono" do tamanho da imagem inteira.
+ *  - Aqui lemos linhas inteiras com getPixels num int[] reaproveitado,
+ *    aplicamos o limiar e empacotamos direto em 1bpp (RasterPacker).
+ *
+ * Escala em streaming:
+ *  - Se a imagem for mais larga que a cabeça, NÃO criamos um Bitmap escalado.
+ *    Cada linha de saída é a média (box filter) das linhas/colunas de origem
+ *    que caem nela, calculada na hora em que a faixa é pedida.
+ *  - Memória fica O(largura), independente da altura da imagem.
+ *
+ * Binarização:
+ *  - Ditherer plugável (DitherMode). No limiar simples usamos o caminho rápido
+ *    ARGB -> bits direto; nos outros modos a linha vira luminância antes.
+ *
+ * getPixels já devolve ARGB para qualquer Config, então não precisamos
+ * mais do copy() para ARGB_8888.
+ *
+ * Uso:
+ *   BitmapRasterizer r = BitmapRasterizer.forPrinter(src, 384);
+ *   byte[] stripe = new byte[r.getBytesPerRow() * 64];
+ *   r.packRows(0, 64, stripe, 0);
+ *
+ * Não é thread-safe (os buffers de linha são da instância). Com limiar ou
+ * Bayer, fork() dá cópias que codificam faixas em paralelo (mesmo Bitmap,
+ * só leitura; buffers próprios).
+ */
+public final class BitmapRasterizer implements RasterSource {
+
+    /** Quantas linhas buscamos por chamada de getPixels (amortiza o custo da chamada). */
+    private static final int ROWS_PER_FETCH = 16;
+
+    /** Orçamento de pixels por getPixels quando a origem é muito larga. */
+    private static final int PIXELS_PER_FETCH = 384 * ROWS_PER_FETCH;
+
+    private final Bitmap bitmap;
+    private final int srcWidth;
+    private final int srcHeight;
+    private final int widthPx;
+    private final int heightPx;
+    private final int bytesPerRow;
+    private final Ditherer ditherer;
+
+    // >= 0 quando o ditherer é limiar simples (caminho rápido sem luminância intermediária)
+    private final int fastThreshold;
+
+    // buffer ARGB reaproveitado entre chamadas (algumas linhas da ORIGEM)
+    private int[] rowPixels;
+
+    // linha de luminância (tamanho da saída) usada pelos ditherers e pelo modo escalado
+    private int[] lumaRow;
+
+    // só no modo escalado: coluna de origem -> coluna de saída, e quantas colunas somam em cada saída
+    private int[] colMap;
+    private int[] colCount;
+
+    public BitmapRasterizer(Bitmap bitmap, int targetWidth, Ditherer ditherer) {
+        this.bitmap = bitmap;
+        this.srcWidth = bitmap.getWidth();
+        this.srcHeight = bitmap.getHeight();
+        this.ditherer = ditherer;
+        this.fastThreshold = (ditherer instanceof ThresholdDitherer)
+                ? ((ThresholdDitherer) ditherer).getThreshold()
+                : -1;
+
+        if (targetWidth > 0 && srcWidth > targetWidth) {
+            float ratio = (float) targetWidth / (float) srcWidth;
+            this.widthPx = targetWidth;
+            this.heightPx = srcHeight == 0 ? 0 : Math.max(1, Math.round(srcHeight * ratio));
+        } else {
+            this.widthPx = srcWidth;
+            this.heightPx = srcHeight;
+        }
+        this.bytesPerRow = RasterPacker.bytesPerRow(widthPx);
+        ditherer.begin(widthPx);
+    }
+
+    /** Cópia pra outra thread: mesma origem e geometria, buffers de linha novos. */
+    private BitmapRasterizer(BitmapRasterizer o) {
+        this.bitmap = o.bitmap;
+        this.srcWidth = o.srcWidth;
+        this.srcHeight = o.srcHeight;
+        this.widthPx = o.widthPx;
+        this.heightPx = o.heightPx;
+        this.bytesPerRow = o.bytesPerRow;
+        this.ditherer = o.ditherer;
+        this.fastThreshold = o.fastThreshold;
+    }
+
+    public BitmapRasterizer(Bitmap bitmap, int targetWidth, int threshold) {
+        this(bitmap, targetWidth, new ThresholdDitherer(threshold));
+    }
+
+    public BitmapRasterizer(Bitmap bitmap, int threshold) {
+        this(bitmap, 0, threshold);
+    }
+
+    public BitmapRasterizer(Bitmap bitmap) {
+        this(bitmap, 0, RasterPacker.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Rasterizador que reduz (se precisar) para caber em maxWidthDots mantendo proporção.
+     * A redução é feita linha a linha, sem Bitmap escalado intermediário.
+     */
+    public static BitmapRasterizer forPrinter(Bitmap src, int maxWidthDots) {
+        return new BitmapRasterizer(src, maxWidthDots, RasterPacker.DEFAULT_THRESHOLD);
+    }
+
+    /** Igual ao forPrinter acima, escolhendo o modo de pontilhado. */
+    public static BitmapRasterizer forPrinter(Bitmap src, int maxWidthDots, DitherMode mode) {
+        return new BitmapRasterizer(src, maxWidthDots, mode.create());
+    }
+
+    @Override
+    public int getWidth() {
+        return widthPx;
+    }
+
+    @Override
+    public int getHeight() {
+        return heightPx;
+    }
+
+    @Override
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+
+    /**
+     * Cada linha (inclusive no box filter) só lê as linhas de origem dela;
+     * o que impede o paralelo é ditherer com estado (Floyd-Steinberg, Atkinson).
+     */
+    @Override
+    public RasterSource fork() {
+        return ditherer.isStateless() ? new BitmapRasterizer(this) : null;
+    }
+
+    /** true se a saída é menor que a origem (linhas passam pelo box filter). */
+    public boolean isScaled() {
+        return widthPx != srcWidth;
+    }
+
+    /**
+     * Empacota as linhas [yStart, yStart+rows) em dst a partir de dstOff.
+     * dst precisa ter pelo menos rows * getBytesPerRow() bytes livres.
+     */
+    @Override
+    public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+        if (widthPx <= 0 || rows <= 0) return;
+        if (isScaled()) {
+            packScaledRows(yStart, rows, dst, dstOff);
+            return;
+        }
+
+        if (rowPixels == null) {
+            rowPixels = new int[widthPx * fetchRows(widthPx, heightPx)];
+        }
+        final int maxRows = rowPixels.length / widthPx;
+
+        if (fastThreshold < 0 && lumaRow == null) {
+            lumaRow = new int[widthPx];
+        }
+
+        int done = 0;
+        while (done < rows) {
+            int n = Math.min(maxRows, rows - done);
+            bitmap.getPixels(rowPixels, 0, widthPx, 0, yStart + done, widthPx, n);
+            if (fastThreshold >= 0) {
+                RasterPacker.packRows(rowPixels, 0, widthPx, n, fastThreshold,
+                        dst, dstOff + done * bytesPerRow);
+            } else {
+                for (int k = 0; k < n; k++) {
+                    RasterPacker.toLuma(rowPixels, k * widthPx, widthPx, lumaRow, 0);
+                    ditherer.ditherRow(lumaRow, 0, widthPx, yStart + done + k,
+                            dst, dstOff + (done + k) * bytesPerRow);
+                }
+            }
+            done += n;
+        }
+    }
+
+    /** Volta pro topo pra uma segunda passada (zera a difusão de erro do ditherer). */
+    public void rewind() {
+        ditherer.begin(widthPx);
+    }
+
+    /** Versão que aloca o array de saída (conveniência para quem não reaproveita buffer). */
+    public byte[] packRows(int yStart, int rows) {
+        byte[] out = new byte[bytesPerRow * rows];
+        packRows(yStart, rows, out, 0);
+        return out;
+    }
+
+    /** Empacota a imagem inteira de uma vez. */
+    public byte[] packAll() {
+        return packRows(0, heightPx);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Redução em streaming (box filter)
+    // ------------------------------------------------------------------------
+
+    private void packScaledRows(int yStart, int rows, byte[] dst, int dstOff) {
+        ensureScaleTables();
+        final int maxRows = rowPixels.length / srcWidth;
+
+        for (int r = 0; r < rows; r++) {
+            int y = yStart + r;
+
+            // faixa de linhas da origem que cai nesta linha de saída
+            int sy0 = (int) ((long) y * srcHeight / heightPx);
+            int sy1 = (int) ((long) (y + 1) * srcHeight / heightPx);
+            if (sy1 <= sy0) sy1 = sy0 + 1;
+            if (sy1 > srcHeight) sy1 = srcHeight;
+            final int spanRows = sy1 - sy0;
+
+            final int[] acc = lumaRow;
+            Arrays.fill(acc, 0);
+
+            int sy = sy0;
+            while (sy < sy1) {
+                int n = Math.min(maxRows, sy1 - sy);
+                bitmap.getPixels(rowPixels, 0, srcWidth, 0, sy, srcWidth, n);
+                int p = 0;
+                for (int k = 0; k < n; k++) {
+                    for (int sx = 0; sx < srcWidth; sx++) {
+                        int c = rowPixels[p++];
+                        acc[colMap[sx]] += ((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF);
+                    }
+                }
+                sy += n;
+            }
+
+            // média por coluna de saída (soma de r+g+b -> /3 vira parte do divisor)
+            for (int dx = 0; dx < widthPx; dx++) {
+                acc[dx] = acc[dx] / (colCount[dx] * spanRows * 3);
+            }
+
+            ditherer.ditherRow(acc, 0, widthPx, y, dst, dstOff + r * bytesPerRow);
+        }
+    }
+
+    private void ensureScaleTables() {
+        if (colMap != null) return;
+
+        colMap = new int[srcWidth];
+        colCount = new int[widthPx];
+        for (int sx = 0; sx < srcWidth; sx++) {
+            int dx = (int) ((long) sx * widthPx / srcWidth);
+            colMap[sx] = dx;
+            colCount[dx]++;
+        }
+        lumaRow = new int[widthPx];
+        rowPixels = new int[srcWidth * fetchRows(srcWidth, srcHeight)];
+    }
+
+    private static int fetchRows(int width, int height) {
+        int byBudget = Math.max(1, PIXELS_PER_FETCH / Math.max(1, width));
+        return Math.max(1, Math.min(Math.min(ROWS_PER_FETCH, byBudget), height));
+    }
+}
@@ -0,0 +1,167 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Filtro de faixas raster que troca linhas totalmente brancas por avanço de papel.
+ *
+ * Grades, caixas e texto renderizado têm muita faixa branca (padding, entrelinha,
+ * espaço entre linhas da grade). No GS v 0 isso vai como bytes 0x00:
+ * 48 bytes por linha numa cabeça de 384 pontos. Aqui:
+ *
+ *  - brancas no começo e no fim da imagem: descartadas (trim)
+ *  - sequência de >= minRun linhas brancas no meio: vira ESC J n (3 bytes)
+ *  - sequência curta: continua dentro do raster (não vale quebrar a faixa)
+ *
+ * Fica entre o RasterStripePipeline e quem escreve os comandos. Mantém estado
+ * entre faixas, então uma sequência branca que atravessa a borda de faixa
+ * também é detectada. Chame finish() depois da última faixa.
+ *
+ * Java puro; uma instância por imagem (ou reset() entre imagens, pra reaproveitar).
+ */
+public final class BlankRowElider implements RasterStripePipeline.StripeSink {
+
+    /** Quem efetivamente manda os bytes (GS v 0 / ESC J). */
+    public interface Output {
+        /** Escreve rows linhas de data a partir de off como raster. */
+        void writeRows(byte[] data, int off, int rows, int bytesPerRow) throws IOException;
+
+        /** Avança o papel dots linhas de ponto (ESC J, já quebrado em n <= 255). */
+        void feedDots(int dots) throws IOException;
+    }
+
+    /** Abaixo disso a sequência branca fica no raster (cabeçalho novo + ESC J não compensam). */
+    public static final int DEFAULT_MIN_RUN = 8;
+
+    /** Bytes de um ESC J n. */
+    private static final int FEED_CMD_BYTES = 3;
+
+    private final Output out;
+    private final int minRun;
+
+    private boolean started;     // já saiu alguma linha com tinta?
+    private int carried;         // linhas brancas de faixas anteriores ainda não emitidas
+    private int lastBytesPerRow;
+
+    private int rowsElided;
+    private int rowsTrimmed;
+    private long bytesSaved;
+
+    // linhas brancas "carregadas" que voltam pro raster (reaproveitado; só cresce)
+    private byte[] zeros = new byte[0];
+
+    public BlankRowElider(Output out, int minRun) {
+        this.out = out;
+        this.minRun = Math.max(1, minRun);
+    }
+
+    public BlankRowElider(Output out) {
+        this(out, DEFAULT_MIN_RUN);
+    }
+
+    @Override
+    public void onStripe(int yStart, int rows, int bytesPerRow, byte[] data) throws IOException {
+        lastBytesPerRow = bytesPerRow;
+
+        int segStart = 0;                       // primeira linha da faixa ainda não escrita
+        int blankStart = carried > 0 ? 0 : -1;  // início da sequência branca atual nesta faixa
+
+        for (int r = 0; r < rows; r++) {
+            if (isBlank(data, r * bytesPerRow, bytesPerRow)) {
+                if (blankStart < 0) blankStart = r;
+                continue;
+            }
+            if (blankStart < 0) {
+                started = true;
+                continue;
+            }
+
+            // linha com tinta logo depois de uma sequência branca
+            int run = carried + (r - blankStart);
+            if (!started) {
+                // brancas antes da primeira tinta: trim
+                rowsTrimmed += run;
+                bytesSaved += (long) run * bytesPerRow;
+                segStart = r;
+            } else if (run >= minRun) {
+                if (blankStart > segStart) {
+                    out.writeRows(data, segStart * bytesPerRow, blankStart - segStart, bytesPerRow);
+                }
+                out.feedDots(run);
+                rowsElided += run;
+                bytesSaved += (long) run * bytesPerRow - feedBytes(run);
+                segStart = r;
+            } else if (carried > 0) {
+                // sequência curta que começou na faixa anterior: essas linhas não estão
+                // mais no buffer, manda como zeros (o resto segue junto com este segmento)
+                out.writeRows(zeroRows(carried * bytesPerRow), 0, carried, bytesPerRow);
+            }
+            carried = 0;
+            blankStart = -1;
+            started = true;
+        }
+
+        if (blankStart >= 0) {
+            // faixa termina em branco: guarda a contagem pra decidir na próxima
+            if (blankStart > segStart) {
+                out.writeRows(data, segStart * bytesPerRow, blankStart - segStart, bytesPerRow);
+            }
+            carried += rows - blankStart;
+        } else if (rows > segStart) {
+            out.writeRows(data, segStart * bytesPerRow, rows - segStart, bytesPerRow);
+        }
+    }
+
+    /** Fim da imagem: brancas pendentes no rodapé são descartadas (trim). */
+    public void finish() {
+        rowsTrimmed += carried;
+        bytesSaved += (long) carried * lastBytesPerRow;
+        carried = 0;
+    }
+
+    /** Prepara pra próxima imagem (zera estado e contadores, mantém o buffer). */
+    public void reset() {
+        started = false;
+        carried = 0;
+        lastBytesPerRow = 0;
+        rowsElided = 0;
+        rowsTrimmed = 0;
+        bytesSaved = 0;
+    }
+
+    /** Linhas brancas trocadas por ESC J. */
+    public int getRowsElided() {
+        return rowsElided;
+    }
+
+    /** Linhas brancas descartadas no topo/rodapé. */
+    public int getRowsTrimmed() {
+        return rowsTrimmed;
+    }
+
+    /** Bytes de raster que não foram enviados (já descontando os ESC J). */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private byte[] zeroRows(int bytes) {
+        if (zeros.length < bytes) {
+            zeros = new byte[bytes];
+        } else {
+            Arrays.fill(zeros, 0, bytes, (byte) 0); // Output pode ter compactado in-place
+        }
+        return zeros;
+    }
+
+    private static int feedBytes(int dots) {
+        return ((dots + 254) / 255) * FEED_CMD_BYTES;
+    }
+
+    private static boolean isBlank(byte[] data, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            if (data[i] != 0) return false;
+        }
+        return true;
+    }
+}
@@ -13,19 +13,19 @@ import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.Log;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * Driver ESC/POS de alto nível para impressoras térmicas Bluetooth 58mm.
@@ -33,7 +33,7 @@ import java.util.Map;
  * Funcionalidades:
  *  - Texto (alinhamento, negrito, escala 1x/2x/3x)
  *  - Imagem bitmap (logo, comprovante renderizado etc.)
- *  - QR Code e Code128 via ZXing
+ *  - QR Code e Code128 nativos (GS ( k / GS k) ou via ZXing em raster, conforme PrinterProfile
  *  - Grids de bolinhas numeradas e caixas arredondadas numeradas
  *  - Parágrafo dentro de caixa arredondada
  *
@@ -51,48 +51,176 @@ public class BluetoothEscPosPrinter {
     /** Largura útil típica da cabeça térmica 58mm: ~384 pontos horizontais. */
     private static final int MAX_WIDTH_DOTS = 384;
 
-    /** Altura máxima de cada "stripe" (faixa) de imagem enviada de uma vez. */
+    /**
+     * Altura inicial de cada "stripe" (faixa) de imagem enviada de uma vez.
+     * O PacingController ajusta conforme o buffer da impressora e a largura da imagem.
+     */
     private static final int STRIPE_HEIGHT = 64;
 
-    /** Pausa curta entre stripes para não saturar buffer da impressora. */
-    private static final int STRIPE_PAUSE_MS = 20;
+    /** GS ( L fn 67 aceita no máximo 2304 linhas. */
+    private static final int NV_MAX_ROWS = 2304;
+
+    /** Quanto esperar a impressora terminar de gravar a flash. */
+    private static final int NV_WRITE_TIMEOUT_MS = 5000;
+
+    /** Quanto esperar cada bloco da lista de chaves NV (GS ( L fn 64). */
+    private static final int NV_KEYLIST_TIMEOUT_MS = 1000;
 
     /** Charset para envio de texto simples. Ajuste se precisar de acentuação específica. */
     private static final Charset DEFAULT_CHARSET = Charset.forName("CP437");
     // Alternativas comuns: Charset.forName("ISO-8859-1"), "GBK" etc.
 
-    private final OutputStream out;
+    /** Comandos acumulados; vão pro socket em pacotes de até packetSize ou no flush. */
+    private final BufferedCommandWriter out;
+
+    /** Dentro de beginJob .. endJob os comandos não fazem flush individual. */
+    private boolean inJob = false;
+
+    /** Buffers de faixa reaproveitados entre imagens (sobrevive à troca de pipeline). */
+    private final StripeBufferPool stripeBuffers = new StripeBufferPool();
+
+    /** Codifica a próxima faixa enquanto a atual é escrita (ver printRaster). */
+    private RasterStripePipeline rasterPipeline =
+            new RasterStripePipeline(STRIPE_HEIGHT, RasterStripePipeline.DEFAULT_BUFFERS, stripeBuffers);
+    private boolean rasterPipelineEnabled = true;
+
+    /** Como as imagens viram preto/branco (limiar fixo por padrão). */
+    private DitherMode ditherMode = DitherMode.THRESHOLD;
+
+    /** O que o firmware sabe imprimir sozinho (QR/CODE128 nativos). */
+    private PrinterProfile profile = PrinterProfile.generic();
+
+    /** Ritmo de envio das faixas (no lugar da pausa fixa de 20 ms). */
+    private PacingController pacing;
+
+    /** Desligado quando o destino não é a impressora (ex.: gravando programa pro spool). */
+    private boolean pacingEnabled = true;
+
+    /** Imagens já codificadas (logo, cabeçalho fixo, fonte custom); null = sem cache. */
+    private RasterCache rasterCache = RasterCache.getDefault();
+
+    /** Gravando a imagem atual pro cache (só durante printRaster). */
+    private RasterCache.Recorder rasterRecorder;
+
+    /** Logos gravados na memória NV desta impressora (null = não usa NV). */
+    private NvGraphicsRegistry nvGraphics;
+    private String nvPrinterId;
+
+    /** Registro já conferido com as chaves da impressora nesta conexão. */
+    private volatile boolean nvChecked;
+
+    /** Bytes de raster enviados/economizados no bloco atual (beginJob .. endJob). */
+    private final PrintJobStats jobStats = new PrintJobStats();
+
+    /** Alocações do pool de faixas no beginJob (a diferença vai pro PrintJobStats). */
+    private long stripeAllocationsAtBegin;
+
+    /** Reaproveitado entre imagens (reset() a cada uma). */
+    private BlankRowElider rasterElider;
+
+    // comandos escritos in-place (out.write copia, então dá pra reaproveitar)
+    private final byte[] stripeHeader = {0x1D, 0x76, 0x30, 0x00, 0, 0, 0, 0};
+    private final byte[] marginCmd = {0x1D, 0x4C, 0, 0};
+    private final byte[] feedCmd = {0x1B, 0x4A, 0};
+    private static final byte[] ALIGN_LEFT = {0x1B, 0x61, 0x00};
+    private static final byte[] MARGIN_ZERO = {0x1D, 0x4C, 0x00, 0x00};
+
+    /** Último ESC a enviado (para reposicionar imagens cortadas). */
+    private int align = 0;
+
+    /** GS L em vigor durante a imagem atual; -1 = não mexemos na margem. */
+    private int rasterMarginDots = -1;
+
+    /** Transporte de onde veio o stream (null se construído direto de um OutputStream). */
+    private final PrinterTransport transport;
 
     public BluetoothEscPosPrinter(OutputStream out) {
-        this.out = out;
+        this.out = new BufferedCommandWriter(out);
+        this.transport = null;
+        this.pacing = PacingController.forProfile(profile);
+    }
+
+    /**
+     * Driver sobre qualquer transporte (Bluetooth SPP, TCP 9100, loopback).
+     * Os pacotes são agrupados no MTU do transporte.
+     */
+    public BluetoothEscPosPrinter(PrinterTransport transport) {
+        this.out = new BufferedCommandWriter(transport.asOutputStream(), transport.getMtu());
+        this.transport = transport;
+        this.pacing = PacingController.forProfile(profile, transport);
     }
 
     // ------------------------------------------------------------------------
     //  BAIXO NÍVEL ESC/POS
     // ------------------------------------------------------------------------
 
-    /** Envia bytes puros e flush. */
+    /**
+     * Envia bytes puros.
+     * Dentro de um bloco (beginJob .. endJob) só acumula; fora dele faz flush na hora.
+     */
     private void writeRaw(byte[] data) throws IOException {
         out.write(data);
-        out.flush();
+        if (!inJob) out.flush();
     }
 
-    /** Envia texto codificado + flush. */
+    /** Envia texto codificado (mesma regra de flush do writeRaw). */
     private void writeText(String text) throws IOException {
         out.write(text.getBytes(DEFAULT_CHARSET));
+        if (!inJob) out.flush();
+    }
+
+    /** Manda agora tudo que está acumulado (útil no meio de um bloco longo). */
+    public void flush() throws IOException {
         out.flush();
     }
 
+    /**
+     * Tamanho dos pacotes entregues ao socket (padrão: MTU típico do RFCOMM).
+     * Comandos pequenos se juntam até esse tamanho.
+     */
+    public void setPacketSize(int bytes) {
+        out.setPacketSize(bytes);
+    }
+
+    /**
+     * DLE EOT n : status em tempo real (n=1 impressora, 2 offline, 3 erro, 4 papel).
+     * Precisa de transporte com canal de volta; sem resposta no prazo devolve -1.
+     */
+    public int queryStatus(int n, int timeoutMs) throws IOException {
+        if (transport == null) return -1;
+        out.write(new byte[]{0x10, 0x04, (byte) n});
+        out.flush();
+        byte[] reply = new byte[1];
+        return transport.readStatus(reply, timeoutMs) > 0 ? (reply[0] & 0xFF) : -1;
+    }
+
     /** ESC @ : Reset da impressora (limpa estilos/estado interno). */
     public void reset() throws IOException {
         writeRaw(new byte[]{0x1B, 0x40});
     }
 
-    /** Alimenta N linhas. */
+    /** Alimenta N linhas (um único write com N LFs). */
     public void feed(int lines) throws IOException {
-        for (int i = 0; i < lines; i++) {
-            writeRaw(new byte[]{0x0A});
+        if (lines <= 0) return;
+        byte[] lf = new byte[lines];
+        Arrays.fill(lf, (byte) 0x0A);
+        writeRaw(lf);
+    }
+
+    /**
+     * ESC J n : avança o papel em pontos (linhas de ponto), sem imprimir.
+     * Valores acima de 255 são quebrados em vários comandos.
+     */
+    public void feedDots(int dots) throws IOException {
+        int total = Math.max(0, dots);
+        while (dots > 0) {
+            int n = Math.min(255, dots);
+            feedCmd[2] = (byte) n;
+            writeRaw(feedCmd);
+            dots -= n;
         }
+        if (rasterRecorder != null) rasterRecorder.feed(total);
+        pacing.onFed(System.nanoTime(), total);
     }
 
     /**
@@ -104,6 +232,7 @@ public class BluetoothEscPosPrinter {
     public void setAlign(int align) throws IOException {
         int safe = (align == 1 || align == 2) ? align : 0;
         writeRaw(new byte[]{0x1B, 0x61, (byte) safe});
+        this.align = safe;
     }
 
     /**
@@ -138,8 +267,15 @@ public class BluetoothEscPosPrinter {
     /**
      * Chame no início de um "bloco de impressão".
      * Garante estado conhecido (reset, alinhamento esq, texto normal sem bold).
+     * Se o bloco anterior morreu no meio (exceção antes do endJob), o que ele
+     * deixou no buffer é descartado: meio cupom velho não sai na frente deste.
      */
     public void beginJob() throws IOException {
+        abortJob();
+        jobStats.reset();
+        out.resetCounters();
+        stripeAllocationsAtBegin = stripeBuffers.getAllocations();
+        inJob = true;
         reset();
         setBold(false);
         setTextSize((byte) 0x00);
@@ -156,6 +292,42 @@ public class BluetoothEscPosPrinter {
         setBold(false);
         setTextSize((byte) 0x00);
         setAlign(0);
+
+        // fim de bloco: tudo que sobrou vai num flush só
+        inJob = false;
+        out.flush();
+        jobStats.setTransport(out.getPackets(), out.getBytes(), out.getFlushes());
+        jobStats.setBufferAllocations(stripeBuffers.getAllocations() - stripeAllocationsAtBegin
+                + out.getBufferGrowths());
+        Log.d("PRINTER", "endJob: " + jobStats + " " + pacing);
+    }
+
+    /**
+     * Abandona o bloco atual: descarta o que não foi enviado e volta pro modo
+     * flush-por-comando. Pra chamar no catch de quem fez beginJob().
+     */
+    public void abortJob() {
+        int stale = out.pending();
+        if (stale > 0) Log.w("PRINTER", "abortJob: descartando " + stale + " bytes não enviados");
+        out.discard();
+        inJob = false;
+        // a imagem que morreu no meio deixou GS L / ESC a 0 pela metade; o ESC @ do próximo bloco zera a impressora
+        rasterMarginDots = -1;
+    }
+
+    /** Métricas ao vivo do controle de fluxo (altura de faixa, pausa, velocidade estimada). */
+    public PacingController getPacing() {
+        return pacing;
+    }
+
+    /** Contadores do bloco atual (zerados em beginJob). */
+    public PrintJobStats getJobStats() {
+        return jobStats;
+    }
+
+    /** Pool dos buffers de faixa (alocações x reusos desde a criação do driver). */
+    public StripeBufferPool getStripeBufferPool() {
+        return stripeBuffers;
     }
 
     // ------------------------------------------------------------------------
@@ -216,228 +388,671 @@ public class BluetoothEscPosPrinter {
      *  - fatiada e enviada em stripes pequenas para não estourar buffer
      */
     public void printImageResource(Resources res, int drawableId) throws IOException {
+        // logo já gravado na flash desta impressora: só a chave (10 bytes)
+        String nvName = nvGraphicsName("res:" + drawableId);
+        NvGraphicsRegistry.Slot stored = storedNvGraphic(nvName);
+        if (stored != null) {
+            setAlign(1);
+            printNvGraphic(stored);
+            return;
+        }
+
+        // mesmo logo de novo: nem decodifica, só copia as faixas prontas
+        // (com NV ligado precisa do raster pra gravar na impressora)
+        String key = rasterCacheKey("res:" + drawableId, 1);
+        RasterCache.Entry cached = nvEnabled() ? null : cachedRaster(key);
+        if (cached != null) {
+            setAlign(1);
+            replayRaster(cached);
+            return;
+        }
+
         Bitmap bmp = android.graphics.BitmapFactory.decodeResource(res, drawableId);
         if (bmp == null) {
             Log.e("PRINTER", "printImageResource: bitmap nulo id=" + drawableId);
             return;
         }
         setAlign(1); // centraliza imagem antes de mandar
-        printBitmapAsRasterStripes(bmp);
+        printBitmapRaster(BitmapRasterizer.forPrinter(bmp, MAX_WIDTH_DOTS, ditherMode), nvName, key);
     }
 
     /**
-     * Gera um QR Code com ZXing e imprime como imagem raster segura.
+     * Imprime um QR Code.
+     *  - Perfil com QR nativo: GS ( k, a impressora gera o símbolo (dezenas de bytes).
+     *  - Senão: raster direto da BitMatrix do ZXing (módulos ampliados por fator
+     *    inteiro, sem Bitmap intermediário).
      */
     public void printQrCode(String data, int sizePx) throws IOException {
-        Bitmap qr = generateQrBitmap(data, sizePx);
+        BitMatrixRaster qr;
+        try {
+            qr = BitMatrixRaster.qrCode(data, sizePx, MAX_WIDTH_DOTS);
+        } catch (WriterException e) {
+            Log.e("PRINTER", "printQrCode WriterException", e);
+            return;
+        }
         if (qr == null) {
-            Log.e("PRINTER", "printQrCode: falha ao gerar QR");
+            Log.e("PRINTER", "printQrCode: QR não cabe na largura da cabeça");
             return;
         }
         setAlign(1);
-        printBitmapAsRasterStripes(qr);
+
+        if (profile.supportsNativeQr()) {
+            // mesmo tamanho de módulo que o raster teria: o firmware desenha, mandamos só os dados
+            writeRaw(EscPosSymbology.qrCode(
+                    data.getBytes(StandardCharsets.UTF_8),
+                    qr.getScaleX(),
+                    EscPosSymbology.QR_ECC_L
+            ));
+            feed(1);
+            return;
+        }
+        printRaster(qr);
     }
 
     /**
-     * Gera um CODE128 com ZXing e imprime como imagem raster segura.
+     * Imprime um CODE128.
+     *  - Perfil com código de barras nativo: GS k (CODE128 subconjunto B).
+     *  - Senão (ou se o conteúdo não couber no GS k): raster direto da BitMatrix
+     *    (barras em largura inteira de dots, sem Bitmap intermediário).
      */
     public void printCode128(String data, int widthPx, int heightPx) throws IOException {
-        Bitmap code = generateCode128Bitmap(data, widthPx, heightPx);
+        BitMatrixRaster code;
+        try {
+            code = BitMatrixRaster.code128(data, widthPx, heightPx, MAX_WIDTH_DOTS);
+        } catch (WriterException e) {
+            Log.e("PRINTER", "printCode128 WriterException", e);
+            return;
+        }
         if (code == null) {
-            Log.e("PRINTER", "printCode128: falha ao gerar CODE128");
+            Log.e("PRINTER", "printCode128: código longo demais para a largura da cabeça");
             return;
         }
         setAlign(1);
-        printBitmapAsRasterStripes(code);
+
+        if (profile.supportsNativeBarcode()) {
+            byte[] cmd = nativeCode128(data, code, heightPx);
+            if (cmd != null) {
+                writeRaw(cmd);
+                feed(1);
+                return;
+            }
+            // conteúdo fora do GS k (não ASCII / largo demais): segue no raster
+        }
+        printRaster(code);
+    }
+
+    /** GS k do CODE128 com a mesma largura de barra do raster, ou null se não couber. */
+    private static byte[] nativeCode128(String data, BitMatrixRaster code, int heightPx) {
+        int module = Math.max(EscPosSymbology.BARCODE_MIN_MODULE, code.getScaleX());
+        if (module > EscPosSymbology.BARCODE_MAX_MODULE) {
+            module = EscPosSymbology.BARCODE_MAX_MODULE;
+        }
+        // GS w tem mínimo 2: código longo pode não caber com essa largura
+        if (code.getModulesWide() * module > MAX_WIDTH_DOTS) return null;
+        return EscPosSymbology.code128(data, module, heightPx);
+    }
+
+    /**
+     * Perfil da impressora conectada: decide se QR/CODE128 vão como comando
+     * nativo (GS ( k / GS k) ou como imagem raster.
+     */
+    public void setProfile(PrinterProfile profile) {
+        this.profile = (profile == null) ? PrinterProfile.generic() : profile;
+        this.pacing = PacingController.forProfile(this.profile, transport);
+    }
+
+    public PrinterProfile getProfile() {
+        return profile;
     }
 
     /**
      * Função principal de envio de bitmap para a impressora:
      *
-     * 1. Escala o bitmap para caber na largura MAX_WIDTH_DOTS mantendo proporção.
-     * 2. Converte para preto/branco (threshold simples) e garante ARGB_8888.
-     * 3. Divide em faixas horizontais (STRIPE_HEIGHT) para não encher o buffer da impressora.
+     * 1. Escala o bitmap para caber na largura MAX_WIDTH_DOTS mantendo proporção
+     *    (linha a linha, sem Bitmap escalado intermediário).
+     * 2. Divide em faixas horizontais (altura escolhida pelo PacingController) para não encher o buffer da impressora.
+     * 3. Cada faixa é binarizada (ditherMode) e empacotada direto em 1bpp (BitmapRasterizer).
      * 4. Para cada faixa, monta GS v 0 (modo raster) e envia.
      *
+     * Com o pipeline ligado (padrão), a faixa N+1 é codificada numa thread
+     * separada enquanto a faixa N está sendo escrita no OutputStream.
+     *
      * Esse fluxo evita:
      *  - imagem "cortada pela metade"
      *  - erro interno "unknown -2" / travamento por excesso de dados
      *  - StackOverflowError (não existe recursão aqui)
      */
     public void printBitmapAsRasterStripes(Bitmap src) throws IOException {
-        // 1) escala pra largura máxima e converte PB
-        Bitmap mono = toMonoScaled(src, MAX_WIDTH_DOTS);
+        printRaster(BitmapRasterizer.forPrinter(src, MAX_WIDTH_DOTS, ditherMode));
+    }
 
-        int width = mono.getWidth();
-        int height = mono.getHeight();
-        int bytesPerRow = (width + 7) / 8;
+    /**
+     * Igual a printBitmapAsRasterStripes, mas guarda o resultado no RasterCache
+     * sob contentKey (ex.: "cabecalho-loja-v2"). Pra blocos fixos que se repetem
+     * em todo cupom; a chave tem que mudar quando o conteúdo muda.
+     * Com memória NV ligada (setNvGraphics), o bloco vai pra flash da impressora.
+     */
+    public void printBitmapAsRasterStripes(Bitmap src, String contentKey) throws IOException {
+        String nvName = nvGraphicsName("bmp:" + contentKey);
+        NvGraphicsRegistry.Slot stored = storedNvGraphic(nvName);
+        if (stored != null) {
+            printNvGraphic(stored);
+            return;
+        }
+        String key = rasterCacheKey("bmp:" + contentKey, align);
+        RasterCache.Entry cached = nvEnabled() ? null : cachedRaster(key);
+        if (cached != null) {
+            replayRaster(cached);
+            return;
+        }
+        printBitmapRaster(BitmapRasterizer.forPrinter(src, MAX_WIDTH_DOTS, ditherMode), nvName, key);
+    }
 
-        // 2) envia stripe por stripe
-        for (int yStart = 0; yStart < height; yStart += STRIPE_HEIGHT) {
-            int stripeH = Math.min(STRIPE_HEIGHT, height - yStart);
+    /**
+     * Pela memória NV se der; senão raster normal com o mesmo rasterizador.
+     * Com NV ligado o cache nunca é lido nesses caminhos, então também não
+     * grava (só tiraria do cache entradas que são usadas).
+     */
+    private void printBitmapRaster(BitmapRasterizer raster, String nvName, String cacheKey) throws IOException {
+        if (nvEnabled()) {
+            if (printViaNv(nvName, raster)) return;
+            raster.rewind(); // printViaNv pode ter lido as linhas
+            printRaster(raster, null);
+            return;
+        }
+        printRaster(raster, cacheKey);
+    }
 
-            // empacota só essa faixa em 1bpp raster ESC/POS
-            byte[] stripeBytes = packStripe(mono, yStart, stripeH);
+    /** Cache das imagens codificadas (padrão: RasterCache.getDefault(); null desliga). */
+    public void setRasterCache(RasterCache cache) {
+        this.rasterCache = cache;
+    }
 
-            // cabeçalho GS v 0
-            byte xL = (byte) (bytesPerRow & 0xFF);
-            byte xH = (byte) ((bytesPerRow >> 8) & 0xFF);
-            byte yL = (byte) (stripeH & 0xFF);
-            byte yH = (byte) ((stripeH >> 8) & 0xFF);
+    public RasterCache getRasterCache() {
+        return rasterCache;
+    }
 
-            // GS v 0 m xL xH yL yH   (m=0 modo normal)
-            writeRaw(new byte[]{
-                    0x1D, 0x76, 0x30, 0x00,
-                    xL, xH, yL, yH
-            });
+    /**
+     * Liga o uso da memória NV de gráficos (só se o perfil tiver supportsNvGraphics).
+     *
+     * @param registry  o que cada impressora já tem gravado (um por processo)
+     * @param printerId identidade estável da impressora (MAC)
+     */
+    public void setNvGraphics(NvGraphicsRegistry registry, String printerId) {
+        this.nvGraphics = registry;
+        this.nvPrinterId = printerId;
+        this.nvChecked = false;
+    }
 
-            // corpo do stripe
-            writeRaw(stripeBytes);
+    /**
+     * O link voltou (a impressora pode ter sido desligada ou resetada): na
+     * próxima imagem o registro NV é conferido de novo com a impressora.
+     */
+    public void recheckNvGraphics() {
+        nvChecked = false;
+    }
 
-            // pausa leve pra não sobrecarregar buffer físico da impressora
-            try {
-                Thread.sleep(STRIPE_PAUSE_MS);
-            } catch (InterruptedException ignored) {}
+    public NvGraphicsRegistry getNvGraphics() {
+        return nvGraphics;
+    }
+
+    /**
+     * Define o modo de binarização das próximas imagens.
+     *  - THRESHOLD (padrão) para texto/grades/caixas
+     *  - FLOYD_STEINBERG / ATKINSON / BAYER_* para logos com degradê e fotos
+     */
+    public void setDitherMode(DitherMode mode) {
+        this.ditherMode = (mode == null) ? DitherMode.THRESHOLD : mode;
+    }
+
+    /**
+     * Liga/desliga o modo pipeline (codificação em paralelo com o envio).
+     * Desligado, cada faixa é codificada e enviada em sequência na thread atual.
+     */
+    public void setRasterPipelineEnabled(boolean enabled) {
+        this.rasterPipelineEnabled = enabled;
+    }
+
+    /**
+     * Liga/desliga as pausas entre faixas raster.
+     * Desligar só faz sentido quando o OutputStream não é a impressora
+     * (ex.: PrintSpooler gravando o job; o ritmo é aplicado na hora de enviar).
+     */
+    public void setPacingEnabled(boolean enabled) {
+        this.pacingEnabled = enabled;
+    }
+
+    /**
+     * Envia qualquer fonte raster 1bpp em faixas GS v 0 e alimenta 1 linha no final.
+     *
+     * Se o perfil aceita ESC J, linhas brancas saem como avanço de papel
+     * (BlankRowElider): topo/rodapé brancos são cortados e faixas brancas
+     * longas no meio viram ESC J n em vez de bytes 0x00.
+     * (Visível no pacote pros testes.)
+     */
+    void printRaster(RasterSource raster) throws IOException {
+        printRaster(raster, null);
+    }
+
+    /** @param cacheKey se não for null, grava o programa gerado no RasterCache */
+    private void printRaster(RasterSource raster, String cacheKey) throws IOException {
+        long rawBytes = (long) raster.getHeight() * raster.getBytesPerRow();
+        jobStats.addRaster(rawBytes);
+        if (cacheKey != null && rasterCache != null) {
+            rasterRecorder = new RasterCache.Recorder();
+            out.setTap(rasterRecorder);
+        }
+        try {
+            encodeRaster(raster);
+            if (rasterRecorder != null) rasterCache.put(cacheKey, rasterRecorder.finish(rawBytes));
+        } finally {
+            out.setTap(null);
+            rasterRecorder = null;
         }
 
         // alimenta 1 linha depois da imagem
         feed(1);
     }
 
-    /**
-     * Escala a imagem para no máximo maxWidth pixels de largura,
-     * mantém proporção, força ARGB_8888, e gera bitmap PB puro (preto ou branco).
-     */
-    private Bitmap toMonoScaled(Bitmap src, int maxWidth) {
-        // escala se necessário
-        Bitmap scaled = src;
-        if (src.getWidth() > maxWidth) {
-            float ratio = (float) maxWidth / (float) src.getWidth();
-            int newH = Math.round(src.getHeight() * ratio);
-            scaled = Bitmap.createScaledBitmap(src, maxWidth, newH, true);
+    /** Faixas + ESC J + margem (tudo que vai pro cache; o feed final fica de fora). */
+    private void encodeRaster(RasterSource raster) throws IOException {
+        BlankRowElider elider = null;
+        RasterStripePipeline.StripeSink sink;
+        if (profile.supportsDotFeed()) {
+            if (rasterElider == null) rasterElider = new BlankRowElider(rasterOutput);
+            elider = rasterElider;
+            elider.reset();
+            sink = elider;
+        } else {
+            sink = rawStripeSink;
         }
 
-        // garante formato ARGB_8888
-        if (scaled.getConfig() != Bitmap.Config.ARGB_8888) {
-            scaled = scaled.copy(Bitmap.Config.ARGB_8888, false);
+        // altura de faixa que cabe no buffer da impressora com folga
+        int stripeRows = pacing.stripeRowsFor(raster.getBytesPerRow());
+        try {
+            if (rasterPipelineEnabled) {
+                if (rasterPipeline.getStripeHeight() != stripeRows) {
+                    rasterPipeline = new RasterStripePipeline(stripeRows, RasterStripePipeline.DEFAULT_BUFFERS,
+                            stripeBuffers);
+                }
+                rasterPipeline.run(raster, sink);
+            } else {
+                RasterStripePipeline.runInline(raster, stripeRows, sink, stripeBuffers);
+            }
+
+            if (elider != null) {
+                elider.finish();
+                jobStats.addBlankRows(elider);
+            }
+        } catch (IOException | RuntimeException e) {
+            // falhou/cancelou no meio: a margem volta mesmo assim (sem esconder a causa)
+            try {
+                restoreRasterMargin();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
+        restoreRasterMargin();
+    }
 
-        // converte para preto/branco (threshold fixo)
-        Bitmap mono = Bitmap.createBitmap(scaled.getWidth(), scaled.getHeight(), Bitmap.Config.ARGB_8888);
+    /**
+     * Chave do cache: origem + tudo que muda os bytes gerados (largura da
+     * cabeça, dither, alinhamento, ESC J / GS L do perfil e o buffer, que
+     * decide a altura das faixas).
+     */
+    private String rasterCacheKey(String source, int align) {
+        return source + "|w" + MAX_WIDTH_DOTS + "|" + ditherMode + "|a" + align
+                + "|" + (profile.supportsDotFeed() ? 'J' : '-') + (profile.supportsLeftMargin() ? 'L' : '-')
+                + "|b" + profile.getBufferBytes();
+    }
 
-        for (int y = 0; y < scaled.getHeight(); y++) {
-            for (int x = 0; x < scaled.getWidth(); x++) {
-                int c = scaled.getPixel(x, y);
-                int r = (c >> 16) & 0xFF;
-                int g = (c >> 8) & 0xFF;
-                int b = (c) & 0xFF;
-                int lumin = (r + g + b) / 3;
-                mono.setPixel(x, y, lumin < 128 ? Color.BLACK : Color.WHITE);
+    private RasterCache.Entry cachedRaster(String key) {
+        return rasterCache == null ? null : rasterCache.get(key);
+    }
+
+    /**
+     * Reenvia uma imagem do cache: cópia direta das faixas, com a mesma pausa
+     * por faixa que o envio original teria.
+     */
+    private void replayRaster(RasterCache.Entry e) throws IOException {
+        jobStats.addRaster(e.rawBytes);
+        byte[] p = e.program;
+        int from = 0;
+        for (int i = 0; i < e.events; i++) {
+            int len = e.ends[i] - from;
+            if (e.rows[i] > 0) {
+                // comandos antes da faixa (GS L...) + GS v 0 + dados, com flush por faixa
+                paceStripe(e.rows[i], e.widths[i]);
+                long t0 = System.nanoTime();
+                out.write(p, from, len);
+                out.flush();
+                long t1 = System.nanoTime();
+                if (pacingEnabled) pacing.onWritten(t1, e.rows[i], e.widths[i], t1 - t0);
+            } else {
+                out.write(p, from, len);
+                if (!inJob) out.flush();
+                pacing.onFed(System.nanoTime(), e.widths[i]);
             }
+            from = e.ends[i];
         }
+        // volta da margem / alinhamento
+        out.write(p, from, p.length - from);
+        if (!inJob) out.flush();
 
-        return mono;
+        feed(1);
     }
 
     /**
-     * Empacota uma faixa horizontal (stripe) do bitmap PB em bytes ESC/POS raster.
-     * Cada byte representa 8 pixels (bit mais significativo primeiro).
-     * bit=1 -> ponto preto / imprime.
+     * Escreve um bloco de linhas raster cortando as margens brancas laterais
+     * (se o perfil aceita GS L).
+     *
+     * O bloco é compactado no intervalo de bytes com tinta e a posição original
+     * é refeita com ESC a 0 + GS L (margem esquerda em pontos), considerando o
+     * alinhamento que estava valendo (centro/direita). Assim cada linha leva só
+     * os bytes com tinta pelo SPP.
      */
-    private byte[] packStripe(Bitmap mono, int yStart, int stripeH) {
-        int width = mono.getWidth();
-        int bytesPerRow = (width + 7) / 8;
-        byte[] data = new byte[bytesPerRow * stripeH];
-        int idx = 0;
+    private void writeRasterRows(byte[] data, int off, int rows, int bytesPerRow) throws IOException {
+        if (!profile.supportsLeftMargin()) {
+            writeRasterStripe(data, off, rows, bytesPerRow);
+            return;
+        }
 
-        for (int row = 0; row < stripeH; row++) {
-            int y = yStart + row;
-            int bitPos = 0;
-            byte currentByte = 0;
+        int first = RasterCrop.firstInkByte(data, off, rows, bytesPerRow);
+        int last = first < 0 ? -1 : RasterCrop.lastInkByte(data, off, rows, bytesPerRow);
+        int cropped = last - first + 1;
+        if (first < 0 || (cropped == bytesPerRow && rasterMarginDots < 0)) {
+            // bloco branco ou sem margem pra cortar: vai como está, no alinhamento atual
+            writeRasterStripe(data, off, rows, bytesPerRow);
+            return;
+        }
 
-            for (int x = 0; x < width; x++) {
-                int pixel = mono.getPixel(x, y);
-                boolean isBlack = (pixel & 0x00FFFFFF) == 0x000000; // preto?
+        RasterCrop.compact(data, off, rows, bytesPerRow, first, cropped);
+        setRasterMargin(imageLeftDots(bytesPerRow) + first * 8);
+        writeRasterStripe(data, off, rows, cropped);
+        jobStats.addCropped((long) rows * (bytesPerRow - cropped));
+    }
 
-                currentByte <<= 1;
-                if (isBlack) {
-                    currentByte |= 0x01;
-                }
+    /** Onde a impressora colocaria uma imagem de bytesPerRow no alinhamento atual. */
+    private int imageLeftDots(int bytesPerRow) {
+        int free = Math.max(0, MAX_WIDTH_DOTS - bytesPerRow * 8);
+        if (align == 1) return free / 2;
+        if (align == 2) return free;
+        return 0;
+    }
 
-                bitPos++;
-                if (bitPos == 8) {
-                    data[idx++] = currentByte;
-                    bitPos = 0;
-                    currentByte = 0;
-                }
-            }
+    /**
+     * GS L nL nH : margem esquerda (unidade de movimento horizontal = 1 ponto
+     * no padrão das 203 dpi). Só vale no começo da linha, que é onde o GS v 0 começa.
+     * Na primeira vez também zera o alinhamento, senão a faixa estreita seria centralizada de novo.
+     */
+    private void setRasterMargin(int dots) throws IOException {
+        if (rasterMarginDots < 0) {
+            writeRaw(ALIGN_LEFT);
+        }
+        if (dots != rasterMarginDots) {
+            marginCmd[2] = (byte) (dots & 0xFF);
+            marginCmd[3] = (byte) ((dots >> 8) & 0xFF);
+            writeRaw(marginCmd);
+        }
+        rasterMarginDots = dots;
+    }
 
-            // completa último byte se a largura não for múltipla de 8
-            if (bitPos != 0) {
-                currentByte <<= (8 - bitPos);
-                data[idx++] = currentByte;
-            }
+    /** Volta margem 0 e o alinhamento que o chamador tinha definido. */
+    private void restoreRasterMargin() throws IOException {
+        if (rasterMarginDots < 0) return;
+        rasterMarginDots = -1; // antes do write: se ele falhar, a próxima imagem recomeça com ESC a 0 + GS L
+        writeRaw(MARGIN_ZERO);
+        setAlign(align);
+    }
+
+    /** Sem ESC J no perfil: cada faixa vai inteira (cortando margens se der). */
+    private final RasterStripePipeline.StripeSink rawStripeSink =
+            (yStart, rows, bytesPerRow, data) -> writeRasterRows(data, 0, rows, bytesPerRow);
+
+    /** Destino do BlankRowElider: trechos com tinta em GS v 0 (cortados), brancos em ESC J. */
+    private final BlankRowElider.Output rasterOutput = new BlankRowElider.Output() {
+        @Override
+        public void writeRows(byte[] data, int off, int rows, int bytesPerRow) throws IOException {
+            writeRasterRows(data, off, rows, bytesPerRow);
         }
 
-        return data;
+        @Override
+        public void feedDots(int dots) throws IOException {
+            BluetoothEscPosPrinter.this.feedDots(dots);
+        }
+    };
+
+    /**
+     * Escreve UMA faixa: cabeçalho GS v 0 + dados.
+     * Antes, espera o que o PacingController mandar (zero se a impressora dá conta).
+     */
+    private void writeRasterStripe(byte[] data, int off, int stripeH, int bytesPerRow) throws IOException {
+        paceStripe(stripeH, bytesPerRow);
+
+        // GS v 0 m xL xH yL yH   (m=0 modo normal); cabeçalho escrito in-place, sem alocar
+        stripeHeader[4] = (byte) (bytesPerRow & 0xFF);
+        stripeHeader[5] = (byte) ((bytesPerRow >> 8) & 0xFF);
+        stripeHeader[6] = (byte) (stripeH & 0xFF);
+        stripeHeader[7] = (byte) ((stripeH >> 8) & 0xFF);
+        out.write(stripeHeader);
+
+        // corpo do stripe; flush por faixa pra medir quanto o socket segurou (calibra o ritmo)
+        long t0 = System.nanoTime();
+        out.write(data, off, bytesPerRow * stripeH);
+        if (rasterRecorder != null) rasterRecorder.stripe(stripeH, bytesPerRow);
+        out.flush();
+        long t1 = System.nanoTime();
+        if (pacingEnabled) pacing.onWritten(t1, stripeH, bytesPerRow, t1 - t0);
     }
 
     // ------------------------------------------------------------------------
-    //  QR CODE / CODE128 (ZXing)
+    //  MEMÓRIA NV (logo gravado na impressora)
     // ------------------------------------------------------------------------
 
-    private Bitmap generateQrBitmap(String data, int sizePx) {
-        try {
-            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-            hints.put(EncodeHintType.MARGIN, 1);
-
-            BitMatrix matrix = new MultiFormatWriter().encode(
-                    data,
-                    BarcodeFormat.QR_CODE,
-                    sizePx,
-                    sizePx,
-                    hints
-            );
-            return bitMatrixToBitmap(matrix);
+    /** Sem canal de volta não dá pra consultar nem confirmar a gravação: nada de NV. */
+    private boolean nvEnabled() {
+        return nvGraphics != null && nvPrinterId != null && transport != null && profile.supportsNvGraphics();
+    }
 
-        } catch (WriterException e) {
-            Log.e("PRINTER", "generateQrBitmap WriterException", e);
+    /** Nome da imagem no registro: origem + o que muda os bits (largura, dither). */
+    private String nvGraphicsName(String source) {
+        return source + "|w" + MAX_WIDTH_DOTS + "|" + ditherMode;
+    }
+
+    /**
+     * Slot gravado nesta impressora com o conteúdo atual de name. O crc do
+     * conteúdo fica na memória do processo: do 2º cupom em diante nem decodifica.
+     */
+    private NvGraphicsRegistry.Slot storedNvGraphic(String name) throws IOException {
+        if (!nvEnabled()) return null;
+        checkNvKeys();
+        Long crc = nvGraphics.getContentCrc(name);
+        return (crc == null) ? null : nvGraphics.find(nvPrinterId, name, crc);
+    }
+
+    /**
+     * Imprime raster pela memória NV: confere o crc com o registro e grava
+     * na impressora se ela ainda não tem (ou tem outro conteúdo na chave).
+     * false = não cabe (altura, espaço, chaves); aí vai pelo raster normal.
+     */
+    private boolean printViaNv(String name, RasterSource raster) throws IOException {
+        int h = raster.getHeight();
+        int bpr = raster.getBytesPerRow();
+        if (h <= 0 || h > NV_MAX_ROWS) return false;
+
+        byte[] bits = new byte[h * bpr];
+        raster.packRows(0, h, bits, 0);
+        CRC32 crc32 = new CRC32();
+        crc32.update(new byte[]{(byte) raster.getWidth(), (byte) (raster.getWidth() >> 8),
+                (byte) h, (byte) (h >> 8)});
+        crc32.update(bits);
+        long crc = crc32.getValue();
+        nvGraphics.setContentCrc(name, crc);
+
+        NvGraphicsRegistry.Slot slot = nvGraphics.find(nvPrinterId, name, crc);
+        if (slot == null) slot = uploadNvGraphic(name, bits, raster.getWidth(), h, crc);
+        if (slot == null) return false;
+        printNvGraphic(slot);
+        return true;
+    }
+
+    /**
+     * GS ( L fn 67 (ou GS 8 L se passar de 64 KB): grava o raster na chave
+     * do registro e espera a impressora terminar a gravação.
+     */
+    private NvGraphicsRegistry.Slot uploadNvGraphic(String name, byte[] bits, int width, int height, long crc)
+            throws IOException {
+        if (nvGraphics.usedBytes(nvPrinterId, name) + bits.length > profile.getNvCapacityBytes()) {
+            Log.w("PRINTER", "NV: sem espaço pra " + name + " (" + bits.length + " bytes)");
+            return null;
+        }
+        String kc = nvGraphics.keyFor(nvPrinterId, name);
+        if (kc == null) return null;
+        byte kc1 = (byte) kc.charAt(0);
+        byte kc2 = (byte) kc.charAt(1);
+
+        // conteúdo da chave fica incerto até a gravação terminar
+        nvGraphics.remove(nvPrinterId, name);
+
+        // GS ( L fn 66: apaga a chave (se existir) antes de regravar
+        out.write(new byte[]{0x1D, 0x28, 0x4C, 4, 0, 0x30, 0x42, kc1, kc2});
+
+        // GS ( L / GS 8 L fn 67: m fn a kc1 kc2 b xL xH yL yH c + dados
+        int p = 11 + bits.length;
+        if (p <= 0xFFFF) {
+            out.write(new byte[]{0x1D, 0x28, 0x4C, (byte) p, (byte) (p >> 8)});
+        } else {
+            out.write(new byte[]{0x1D, 0x38, 0x4C, (byte) p, (byte) (p >> 8), (byte) (p >> 16), (byte) (p >> 24)});
+        }
+        out.write(new byte[]{0x30, 0x43, 0x30, kc1, kc2, 1,
+                (byte) width, (byte) (width >> 8), (byte) height, (byte) (height >> 8), 0x31});
+        out.write(bits);
+        out.flush();
+        if (!awaitNvWrite()) {
+            // talvez tenha gravado, talvez não: fica fora do registro e sai pelo raster
+            Log.w("PRINTER", "NV: gravação de " + name + " não confirmada; chave " + kc + " fica fora do registro");
             return null;
         }
+
+        Log.d("PRINTER", "NV: gravado " + name + " em " + nvPrinterId + " chave " + kc + " (" + bits.length + " bytes)");
+        return nvGraphics.stored(nvPrinterId, name, kc, crc, bits.length, height);
     }
 
-    private Bitmap generateCode128Bitmap(String data, int widthPx, int heightPx) {
-        try {
-            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-            hints.put(EncodeHintType.MARGIN, 1);
-
-            BitMatrix matrix = new MultiFormatWriter().encode(
-                    data,
-                    BarcodeFormat.CODE_128,
-                    widthPx,
-                    heightPx,
-                    hints
-            );
-            return bitMatrixToBitmap(matrix);
+    /**
+     * A impressora fica BUSY gravando a flash. GS ( L fn 48 (capacidade) não é
+     * tempo real: a resposta (37h 30h dígitos NUL) só vem depois da gravação.
+     *
+     * @return false se a impressora não respondeu no prazo (gravação incerta)
+     */
+    private boolean awaitNvWrite() throws IOException {
+        out.write(new byte[]{0x1D, 0x28, 0x4C, 2, 0, 0x30, 0x30});
+        out.flush();
+        byte[] reply = new byte[32];
+        int state = 0; // 0 = procura 37h, 1 = 30h, 2 = dígitos até o NUL
+        long deadline = System.currentTimeMillis() + NV_WRITE_TIMEOUT_MS;
+        long left;
+        while ((left = deadline - System.currentTimeMillis()) > 0) {
+            int n = transport.readStatus(reply, (int) left);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                // só o quadro 37h 30h "capacidade" NUL confirma; ASB/status soltos são ignorados
+                int b = reply[i] & 0xFF;
+                if (state == 0) {
+                    if (b == 0x37) state = 1;
+                } else if (state == 1) {
+                    state = (b == 0x30) ? 2 : (b == 0x37 ? 1 : 0);
+                } else if (b == 0) {
+                    pacing.markDrained(System.nanoTime());
+                    return true;
+                } else if (b < '0' || b > '9') {
+                    state = (b == 0x37) ? 1 : 0;
+                }
+            }
+        }
+        Log.w("PRINTER", "NV: impressora não respondeu depois da gravação");
+        return false;
+    }
 
-        } catch (WriterException e) {
-            Log.e("PRINTER", "generateCode128Bitmap WriterException", e);
-            return null;
+    /**
+     * Uma vez por conexão: tira do registro o que a impressora não tem mais
+     * (flash apagada, impressora resetada ou trocada no mesmo MAC). Sem
+     * resposta fica o registro como está.
+     */
+    private void checkNvKeys() throws IOException {
+        if (nvChecked) return;
+        nvChecked = true;
+        Set<String> keys = readNvKeyList();
+        if (keys == null) return;
+        int dropped = nvGraphics.reconcile(nvPrinterId, keys);
+        if (dropped > 0) {
+            Log.w("PRINTER", "NV: " + dropped + " imagem(ns) do registro não estão em " + nvPrinterId + "; regravando");
         }
     }
 
-    /** Converte a matriz ZXing (preto/branco) em Bitmap ARGB_8888 PB. */
-    private Bitmap bitMatrixToBitmap(BitMatrix matrix) {
-        int w = matrix.getWidth();
-        int h = matrix.getHeight();
-        Bitmap bmp = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                bmp.setPixel(x, y, matrix.get(x, y) ? Color.BLACK : Color.WHITE);
+    /**
+     * GS ( L fn 64 ("KC"): chaves gravadas na flash. Resposta em blocos
+     * 37h 72h status kc1 kc2 ... NUL; status 40h = vem outro bloco (a
+     * impressora espera ACK), 41h = último.
+     *
+     * @return as chaves, ou null se a impressora não respondeu
+     */
+    private Set<String> readNvKeyList() throws IOException {
+        out.write(new byte[]{0x1D, 0x28, 0x4C, 4, 0, 0x30, 0x40, 0x4B, 0x43});
+        out.flush();
+        Set<String> keys = new HashSet<>();
+        StringBuilder codes = new StringBuilder();
+        byte[] reply = new byte[64];
+        int state = 0; // 0 = procura 37h, 1 = 72h, 2 = status, 3 = chaves
+        int status = 0;
+        long deadline = System.currentTimeMillis() + NV_KEYLIST_TIMEOUT_MS;
+        long left;
+        while ((left = deadline - System.currentTimeMillis()) > 0) {
+            int n = transport.readStatus(reply, (int) left);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                int b = reply[i] & 0xFF;
+                if (state == 0) {
+                    if (b == 0x37) state = 1;
+                } else if (state == 1) {
+                    state = (b == 0x72) ? 2 : (b == 0x37 ? 1 : 0);
+                } else if (state == 2) {
+                    status = b;
+                    state = 3;
+                } else if (b != 0) {
+                    codes.append((char) b);
+                } else {
+                    for (int k = 0; k + 1 < codes.length(); k += 2) keys.add(codes.substring(k, k + 2));
+                    codes.setLength(0);
+                    if (status != 0x40) return keys;
+                    out.write(0x06); // ACK: manda o próximo bloco
+                    out.flush();
+                    state = 0;
+                    deadline = System.currentTimeMillis() + NV_KEYLIST_TIMEOUT_MS;
+                }
             }
         }
-        return bmp;
+        Log.w("PRINTER", "NV: impressora não mandou a lista de chaves; usando o registro");
+        return null;
+    }
+
+    /** GS ( L fn 69: imprime a imagem gravada (respeita ESC a) e avança 1 linha. */
+    private void printNvGraphic(NvGraphicsRegistry.Slot slot) throws IOException {
+        String kc = slot.getKeyCode();
+        writeRaw(new byte[]{0x1D, 0x28, 0x4C, 6, 0, 0x30, 0x45, (byte) kc.charAt(0), (byte) kc.charAt(1), 1, 1});
+        pacing.onFed(System.nanoTime(), slot.getRows());
+        feed(1);
+    }
+
+    /** Espera o que o PacingController mandar antes de uma faixa. */
+    private void paceStripe(int stripeH, int bytesPerRow) {
+        long wait = pacingEnabled ? pacing.delayNanos(System.nanoTime(), stripeH, bytesPerRow) : 0;
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+            } catch (InterruptedException ignored) {}
+            pacing.onPaused(wait);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -466,16 +1081,9 @@ public class BluetoothEscPosPrinter {
         if (radiusPx < 6) radiusPx = 6;
         if (textSizePx < 6f) textSizePx = 6f;
 
+        // Se ficar mais largo que o papel, printBitmapAsRasterStripes reduz em streaming
         Bitmap grid = buildGridBitmap(numbers, columns, radiusPx, textSizePx);
 
-        // Se ficou mais largo que o papel, reduz proporcionalmente
-        if (grid.getWidth() > MAX_WIDTH_DOTS) {
-            float scale = (float) MAX_WIDTH_DOTS / (float) grid.getWidth();
-            int newW = MAX_WIDTH_DOTS;
-            int newH = Math.max(1, Math.round(grid.getHeight() * scale));
-            grid = Bitmap.createScaledBitmap(grid, newW, newH, true);
-        }
-
         // Centraliza visualmente
         setAlign(1);
         printBitmapAsRasterStripes(grid);
@@ -625,15 +1233,7 @@ public class BluetoothEscPosPrinter {
                 textSizePxWanted
         );
 
-        // escala pra caber na boca se necessário
-        if (gridBmp.getWidth() > MAX_WIDTH_DOTS) {
-            float scale = (float) MAX_WIDTH_DOTS / (float) gridBmp.getWidth();
-            int newW = MAX_WIDTH_DOTS;
-            int newH = Math.max(1, Math.round(gridBmp.getHeight() * scale));
-            gridBmp = Bitmap.createScaledBitmap(gridBmp, newW, newH, true);
-        }
-
-        // centraliza e manda
+        // centraliza e manda (se passar da boca, a redução acontece no envio)
         setAlign(1);
         printBitmapAsRasterStripes(gridBmp);
     }
@@ -973,29 +1573,36 @@ public class BluetoothEscPosPrinter {
         // Garante estado inicial limpo igual beginJob() faz. :contentReference[oaicite:4]{index=4}
         reset();
 
-        // Gera o bitmap com a tipografia custom
-        Bitmap bmp = buildCustomFontTextBitmap(
-                ctx,
-                text,
-                fontAssetName,
-                textSizePx,
-                align,
-                paddingPx
-        );
-        if (bmp == null) {
-            // falhou gerar imagem, evita travar a impressora
-            writeText("<<Falha gerar fonte personalizada>>\n");
-            return;
-        }
-
-        // Ajusta alinhamento ESC/POS pro raster que vai sair
-        setAlign(align); // ESC a n 0/1/2  :contentReference[oaicite:5]{index=5}
+        // nome da loja / cabeçalho se repetem em todo cupom: a chave é o próprio texto + fonte
+        String key = rasterCacheKey("font:" + fontAssetName + "/" + textSizePx + "/" + align
+                + "/" + paddingPx + "/" + text, align);
+        RasterCache.Entry cached = cachedRaster(key);
+        if (cached != null) {
+            setAlign(align);
+            replayRaster(cached);
+        } else {
+            // Gera o bitmap com a tipografia custom
+            Bitmap bmp = buildCustomFontTextBitmap(
+                    ctx,
+                    text,
+                    fontAssetName,
+                    textSizePx,
+                    align,
+                    paddingPx
+            );
+            if (bmp == null) {
+                // falhou gerar imagem, evita travar a impressora
+                writeText("<<Falha gerar fonte personalizada>>\n");
+                return;
+            }
 
-        // Manda o bitmap em faixas (stripes) usando o modo raster já existente
-        // Esse método já existe no seu arquivo e cuida do GS v 0 + split em blocos
-        // pra não estourar buffer.
-        printBitmapAsRasterStripes(bmp);
+            // Ajusta alinhamento ESC/POS pro raster que vai sair
+            setAlign(align); // ESC a n 0/1/2  :contentReference[oaicite:5]{index=5}
 
+            // Manda o bitmap em faixas (stripes) usando o modo raster já existente
+            // (GS v 0 + split em blocos pra não estourar buffer) e guarda no cache.
+            printRaster(BitmapRasterizer.forPrinter(bmp, MAX_WIDTH_DOTS, ditherMode), key);
+        }
 
         // Volta pro default
         setAlign(0);
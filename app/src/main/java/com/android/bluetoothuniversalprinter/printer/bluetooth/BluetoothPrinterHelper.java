@@ -2,27 +2,23 @@ package com.android.bluetoothuniversalprinter.printer.bluetooth;
 
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.util.Log;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Helper ESC/POS para impressoras térmicas Bluetooth / PAX.
  *
  * - Texto continua indo como comandos ESC/POS (alinhamento, bold, etc).
- * - Imagens, QRCode e Code128 são convertidos para bitmap 1bpp
- *   e enviados em modo raster (GS v 0), em FATIAS pequenas,
+ * - Imagens, QRCode e Code128 são convertidos para raster 1bpp
+ *   (QR/Code128 direto da BitMatrix do ZXing) e enviados em modo raster (GS v 0), em FATIAS pequenas,
  *   para não estourar o buffer interno da impressora (erro unknown -2).
  *
  * Uso esperado NO MAIN:
@@ -48,14 +44,22 @@ public class BluetoothPrinterHelper {
     // Quanto menor, menos chance de "buffer overflow".
     private static final int STRIPE_HEIGHT = 128;
 
-    private final OutputStream out;
+    // comandos acumulados; vão pro socket em pacotes de até packetSize ou no flush
+    private final BufferedCommandWriter out;
+
+    // entre beginJob() e endJob() os comandos não fazem flush individual
+    private boolean inJob = false;
 
     // CP437 geralmente funciona bem para caracteres básicos.
     // Se acentuação sair errada, testar "ISO-8859-1" ou "GBK".
     private final Charset charset = Charset.forName("CP437");
 
     public BluetoothPrinterHelper(OutputStream out) {
-        this.out = out;
+        this.out = new BufferedCommandWriter(out);
+    }
+
+    public BluetoothPrinterHelper(PrinterTransport transport) {
+        this.out = new BufferedCommandWriter(transport.asOutputStream(), transport.getMtu());
     }
 
     /** ============================================================
@@ -63,16 +67,58 @@ public class BluetoothPrinterHelper {
      *  ============================================================
      **/
 
-    /** Envia bytes crus para a impressora e faz flush. */
+    /** Envia bytes crus para a impressora (flush na hora só fora de beginJob/endJob). */
     private void writeRaw(byte[] data) throws IOException {
         out.write(data);
-        out.flush();
+        if (!inJob) out.flush();
         // Se quiser debugar: logar hexdump aqui (cuidado para não travar UI)
     }
 
     /** Converte string para bytes na charset atual e envia. */
     private void writeText(String text) throws IOException {
         out.write(text.getBytes(charset));
+        if (!inJob) out.flush();
+    }
+
+    /** ============================================================
+     *  AGRUPAMENTO DE ENVIO
+     *
+     *  Entre beginJob() e endJob() os comandos ficam num buffer e saem
+     *  em pacotes grandes (MTU do RFCOMM) em vez de um flush por comando.
+     *  Diferente do BluetoothEscPosPrinter, aqui NÃO mexe em formatação:
+     *  só agrupa o envio. reset()/setAlign()/feed() continuam com o chamador.
+     *
+     *      printerHelper.beginJob();
+     *      printerHelper.reset();
+     *      printerHelper.setAlign(1);
+     *      printerHelper.printRasterBitmap(meuBitmap);
+     *      printerHelper.feed(4);
+     *      printerHelper.endJob();   // flush + log de pacotes/bytes
+     *  ============================================================
+     **/
+
+    /** Descarta o que um bloco anterior que falhou deixou no buffer (ver abortJob). */
+    public void beginJob() {
+        abortJob();
+        out.resetCounters();
+        inJob = true;
+    }
+
+    /** Abandona o bloco: o que não foi enviado é descartado. Pra chamar no catch. */
+    public void abortJob() {
+        out.discard();
+        inJob = false;
+    }
+
+    public void endJob() throws IOException {
+        inJob = false;
+        out.flush();
+        Log.d("PRINTER", "endJob: " + out.getBytes() + " bytes em "
+                + out.getPackets() + " pacotes, " + out.getFlushes() + " flushes");
+    }
+
+    /** Manda agora tudo que está acumulado. */
+    public void flush() throws IOException {
         out.flush();
     }
 
@@ -86,11 +132,12 @@ public class BluetoothPrinterHelper {
         writeRaw(new byte[]{0x1B, 0x40});
     }
 
-    /** Alimenta papel N linhas (Line Feed). */
+    /** Alimenta papel N linhas (Line Feed), num único write. */
     public void feed(int lines) throws IOException {
-        for (int i = 0; i < lines; i++) {
-            writeRaw(new byte[]{0x0A});
-        }
+        if (lines <= 0) return;
+        byte[] lf = new byte[lines];
+        Arrays.fill(lf, (byte) 0x0A);
+        writeRaw(lf);
     }
 
     /** ESC a n -> alinhamento (0 = esquerda, 1 = centro, 2 = direita). */
@@ -121,6 +168,7 @@ public class BluetoothPrinterHelper {
 
     /** Demonstra alinhamentos diferentes. */
     public void demoAlign() throws IOException {
+        beginJob();
         reset();
 
         setAlign(0);
@@ -135,10 +183,12 @@ public class BluetoothPrinterHelper {
 
         feed(2);
         reset();
+        endJob();
     }
 
     /** Demonstra tamanhos de fonte e bold. */
     public void demoTextSizes() throws IOException {
+        beginJob();
         reset();
         setAlign(0);
 
@@ -157,6 +207,7 @@ public class BluetoothPrinterHelper {
         setTextSize((byte) 0x00);
         feed(2);
         reset();
+        endJob();
     }
 
     /** ============================================================
@@ -169,8 +220,9 @@ public class BluetoothPrinterHelper {
      * Fluxo:
      *  1. Escalar imagem para largura MAX_PRINTER_WIDTH_PX (ex.: 384px).
      *     Altura fica proporcional.
-     *  2. Converter para P&B (threshold fixo).
-     *  3. Fatiar verticalmente em blocos de STRIPE_HEIGHT linhas.
+     *  2. Fatiar verticalmente em blocos de STRIPE_HEIGHT linhas.
+     *  3. Converter cada faixa para P&B (threshold fixo) já empacotada em 1bpp
+     *     (BitmapRasterizer, leitura de linha inteira com getPixels).
      *  4. Para cada faixa, enviar comando ESC/POS raster:
      *
      *     GS v 0 m xL xH yL yH [data...]
@@ -186,23 +238,28 @@ public class BluetoothPrinterHelper {
      * ============================================================
      **/
     public void printRasterBitmap(Bitmap src) throws IOException {
+        // 1. escala (a binarização preto/branco acontece no empacotamento de cada faixa)
+        printRaster(BitmapRasterizer.forPrinter(src, MAX_PRINTER_WIDTH_PX));
+    }
 
-        // 1. escala + binarização (preto/branco)
-        Bitmap bw = toMonochromeScaled(src, MAX_PRINTER_WIDTH_PX);
+    /** Passos 2..4 acima para qualquer fonte 1bpp (Bitmap ou BitMatrix do ZXing). */
+    private void printRaster(RasterSource raster) throws IOException {
 
-        final int widthPx = bw.getWidth();
-        final int heightPx = bw.getHeight();
+        final int heightPx = raster.getHeight();
 
         // largura convertida para bytes por linha: 8 pixels -> 1 byte
-        final int bytesPerRow = (widthPx + 7) / 8;
+        final int bytesPerRow = raster.getBytesPerRow();
+
+        // um único buffer de faixa, reaproveitado a cada stripe
+        final byte[] stripeData = new byte[bytesPerRow * Math.min(STRIPE_HEIGHT, Math.max(1, heightPx))];
 
         int y = 0;
         while (y < heightPx) {
             // define altura da faixa atual
             int stripeH = Math.min(STRIPE_HEIGHT, heightPx - y);
 
-            // monta os bytes 1bpp dessa faixa
-            byte[] stripeData = bitmapStripeTo1Bpp(bw, y, stripeH, widthPx, bytesPerRow);
+            // monta os bytes 1bpp dessa faixa (getPixels por bloco + limiar + pack)
+            raster.packRows(y, stripeH, stripeData, 0);
 
             // ---- Cabeçalho ESC/POS Raster para ESTA faixa ----
             // GS v 0 m xL xH yL yH
@@ -212,130 +269,20 @@ public class BluetoothPrinterHelper {
             byte yL = (byte) (stripeH & 0xFF);
             byte yH = (byte) ((stripeH >> 8) & 0xFF);
 
-            writeRaw(new byte[]{
+            out.write(new byte[]{
                     0x1D, 0x76, 0x30, m,
                     xL, xH, yL, yH
             });
 
-            // dados binários da faixa
-            writeRaw(stripeData);
+            // dados binários da faixa (dentro de um job, sai junto no próximo pacote cheio)
+            out.write(stripeData, 0, bytesPerRow * stripeH);
+            if (!inJob) out.flush();
 
             // avança para próxima faixa
             y += stripeH;
         }
     }
 
-    /**
-     * Converte uma faixa horizontal (stripe) do bitmap P&B para 1bpp raster ESC/POS.
-     *
-     * bw           -> bitmap já P&B (preto/branco), ARGB_8888
-     * startY       -> linha inicial da faixa
-     * stripeH      -> altura da faixa em linhas
-     * widthPx      -> largura total em pixels
-     * bytesPerRow  -> quantos bytes por linha depois de empacotar 8px/byte
-     *
-     * Retorna um array onde cada linha da faixa vira bytesPerRow bytes.
-     * bit mais significativo (MSB) de cada byte = pixel mais à esquerda.
-     * bit=1 = ponto preto (marca térmica).
-     */
-    private byte[] bitmapStripeTo1Bpp(
-            Bitmap bw,
-            int startY,
-            int stripeH,
-            int widthPx,
-            int bytesPerRow
-    ) {
-
-        byte[] outBytes = new byte[bytesPerRow * stripeH];
-        int outIndex = 0;
-
-        for (int row = 0; row < stripeH; row++) {
-            int bitPos = 0;
-            byte currentByte = 0;
-
-            int y = startY + row;
-
-            for (int x = 0; x < widthPx; x++) {
-                int pixel = bw.getPixel(x, y);
-
-                // pixel já está preto ou branco
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                int lumin = (r + g + b) / 3;
-
-                // ESC/POS raster: bit=1 -> ponto PRETO
-                currentByte <<= 1;
-                if (lumin < 128) {
-                    currentByte |= 0x01;
-                }
-                bitPos++;
-
-                // fechou 8 bits?
-                if (bitPos == 8) {
-                    outBytes[outIndex++] = currentByte;
-                    bitPos = 0;
-                    currentByte = 0;
-                }
-            }
-
-            // sobras se largura não múltipla de 8
-            if (bitPos != 0) {
-                currentByte <<= (8 - bitPos);
-                outBytes[outIndex++] = currentByte;
-            }
-        }
-
-        return outBytes;
-    }
-
-    /**
-     * Redimensiona o bitmap de entrada para caber na largura máxima da impressora
-     * (por exemplo 384px para bobina 58mm), mantendo a proporção.
-     *
-     * Depois converte o resultado para ARGB_8888 e aplica um threshold fixo
-     * para gerar uma imagem apenas PRETO / BRANCO (sem escala de cinza).
-     *
-     * maxWidthPx = 384 em impressoras 58mm comuns.
-     */
-    private Bitmap toMonochromeScaled(Bitmap original, int maxWidthPx) {
-
-        Bitmap scaled = original;
-
-        // 1. Reduz largura se necessário, mantendo proporção
-        if (original.getWidth() > maxWidthPx) {
-            float ratio = (float) maxWidthPx / (float) original.getWidth();
-            int newH = Math.round(original.getHeight() * ratio);
-            scaled = Bitmap.createScaledBitmap(original, maxWidthPx, newH, true);
-        }
-
-        // 2. Garante formato ARGB_8888
-        if (scaled.getConfig() != Bitmap.Config.ARGB_8888) {
-            scaled = scaled.copy(Bitmap.Config.ARGB_8888, false);
-        }
-
-        // 3. Converte para P&B (threshold 128)
-        Bitmap bw = Bitmap.createBitmap(
-                scaled.getWidth(),
-                scaled.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        for (int y = 0; y < scaled.getHeight(); y++) {
-            for (int x = 0; x < scaled.getWidth(); x++) {
-                int c = scaled.getPixel(x, y);
-                int r = (c >> 16) & 0xff;
-                int g = (c >> 8) & 0xff;
-                int b = c & 0xff;
-                int lumin = (r + g + b) / 3;
-
-                int v = (lumin < 128) ? Color.BLACK : Color.WHITE;
-                bw.setPixel(x, y, v);
-            }
-        }
-        return bw;
-    }
-
     /** ============================================================
      * IMPRESSÃO DE IMAGEM A PARTIR DE DRAWABLE
      *
@@ -355,7 +302,9 @@ public class BluetoothPrinterHelper {
 
     /** ============================================================
      * QR CODE
-     * Gera um Bitmap quadrado usando ZXing e imprime via raster.
+     * Gera a matriz do QR com ZXing e imprime via raster direto da
+     * BitMatrix: cada módulo vira um bloco inteiro de N x N pontos
+     * (maior N que cabe em sizePx), sem Bitmap intermediário.
      *
      * Uso típico no MainActivity:
      *
@@ -366,49 +315,25 @@ public class BluetoothPrinterHelper {
      * ============================================================
      **/
     public void printQrCode(String data, int sizePx) throws IOException {
-        Bitmap qr = generateQrBitmap(data, sizePx);
-        if (qr == null) {
-            Log.e("PRINTER", "printQrCode: falha ao gerar QR");
-            return;
-        }
-        printRasterBitmap(qr);
-    }
-
-    private Bitmap generateQrBitmap(String data, int sizePx) {
+        BitMatrixRaster qr;
         try {
-            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-            hints.put(EncodeHintType.MARGIN, 1); // margem pequena
-
-            BitMatrix matrix = new MultiFormatWriter().encode(
-                    data,
-                    BarcodeFormat.QR_CODE,
-                    sizePx,
-                    sizePx,
-                    hints
-            );
-
-            int w = matrix.getWidth();
-            int h = matrix.getHeight();
-            Bitmap bmp = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    bmp.setPixel(x, y, matrix.get(x, y) ? Color.BLACK : Color.WHITE);
-                }
-            }
-
-            return bmp;
-
+            qr = BitMatrixRaster.qrCode(data, sizePx, MAX_PRINTER_WIDTH_PX);
         } catch (WriterException e) {
-            Log.e("PRINTER", "generateQrBitmap WriterException", e);
-            return null;
+            Log.e("PRINTER", "printQrCode WriterException", e);
+            return;
         }
+        if (qr == null) {
+            Log.e("PRINTER", "printQrCode: QR não cabe na largura da impressora");
+            return;
+        }
+        printRaster(qr);
     }
 
     /** ============================================================
      * CODE128
-     * Gera um código de barras CODE_128 via ZXing e imprime via raster.
+     * Gera o CODE_128 via ZXing e imprime via raster direto da BitMatrix.
+     * A largura das barras é múltiplo inteiro de pontos (maior que cabe
+     * em widthPx), então o leitor não sofre com barras borradas.
      *
      * Uso típico no MainActivity:
      *
@@ -419,44 +344,17 @@ public class BluetoothPrinterHelper {
      * ============================================================
      **/
     public void printCode128(String data, int widthPx, int heightPx) throws IOException {
-        Bitmap code = generateCode128Bitmap(data, widthPx, heightPx);
-        if (code == null) {
-            Log.e("PRINTER", "printCode128: falha ao gerar CODE128");
-            return;
-        }
-        printRasterBitmap(code);
-    }
-
-    private Bitmap generateCode128Bitmap(String data, int widthPx, int heightPx) {
+        BitMatrixRaster code;
         try {
-            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
-            hints.put(EncodeHintType.MARGIN, 1);
-
-            BitMatrix matrix = new MultiFormatWriter().encode(
-                    data,
-                    BarcodeFormat.CODE_128,
-                    widthPx,
-                    heightPx,
-                    hints
-            );
-
-            int w = matrix.getWidth();
-            int h = matrix.getHeight();
-            Bitmap bmp = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    bmp.setPixel(x, y, matrix.get(x, y) ? Color.BLACK : Color.WHITE);
-                }
-            }
-            return bmp;
-
+            code = BitMatrixRaster.code128(data, widthPx, heightPx, MAX_PRINTER_WIDTH_PX);
         } catch (WriterException e) {
-            Log.e("PRINTER", "generateCode128Bitmap WriterException", e);
-            return null;
+            Log.e("PRINTER", "printCode128 WriterException", e);
+            return;
+        }
+        if (code == null) {
+            Log.e("PRINTER", "printCode128: código longo demais para a largura da impressora");
+            return;
         }
+        printRaster(code);
     }
-
-
-
 }
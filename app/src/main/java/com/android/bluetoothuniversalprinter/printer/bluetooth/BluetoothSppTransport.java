@@ -0,0 +1,126 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Transporte Bluetooth SPP (RFCOMM): mantém a conexão viva.
+ *
+ * Uso:
+ *   PrinterTransport conn = new BluetoothSppTransport(btAdapter, mac, SPP_UUID);
+ *   conn.connect(); // fazer em thread fora da UI
+ *   BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(conn);
+ *   ...
+ *   conn.close();
+ */
+public class BluetoothSppTransport implements PrinterTransport {
+
+    /** MTU típico do RFCOMM no Android. */
+    private static final int RFCOMM_MTU = 990;
+
+    /** SPP em impressora barata entrega algo perto de 10..20 KB/s. */
+    private static final int SPP_THROUGHPUT_HINT = 12_000;
+
+    /** Intervalo de espera enquanto aguarda bytes de status (InputStream do RFCOMM não tem timeout). */
+    private static final int STATUS_POLL_MS = 10;
+
+    private final BluetoothAdapter adapter;
+    private final String macAddress;
+    private final UUID sppUuid;
+
+    private BluetoothSocket socket;
+
+    public BluetoothSppTransport(BluetoothAdapter adapter, String macAddress, UUID sppUuid) {
+        this.adapter = adapter;
+        this.macAddress = macAddress;
+        this.sppUuid = sppUuid;
+    }
+
+    /** Conecta via MAC + UUID SPP. */
+    @Override
+    public void connect() throws IOException {
+        close(); // fecha se já tinha algo aberto
+        BluetoothDevice device = adapter.getRemoteDevice(macAddress);
+        socket = device.createRfcommSocketToServiceRecord(sppUuid);
+        socket.connect();
+    }
+
+    /** Está conectado? */
+    @Override
+    public boolean isConnected() {
+        return socket != null && socket.isConnected();
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        getOutputStream().write(data, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        getOutputStream().flush();
+    }
+
+    @Override
+    public int readStatus(byte[] buf, int timeoutMs) throws IOException {
+        if (!isConnected()) throw new IOException("Bluetooth não conectado");
+        InputStream in = socket.getInputStream();
+        long deadline = System.currentTimeMillis() + Math.max(0, timeoutMs);
+        while (in.available() <= 0) {
+            if (System.currentTimeMillis() >= deadline) return 0;
+            try {
+                Thread.sleep(STATUS_POLL_MS);
+            } catch (InterruptedException e) {
+                // cancelado: 0 pareceria "impressora ok"
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Leitura de status interrompida");
+            }
+        }
+        return Math.max(0, in.read(buf, 0, Math.min(buf.length, in.available())));
+    }
+
+    /** OutputStream bruto para escrever ESC/POS. */
+    public OutputStream getOutputStream() throws IOException {
+        if (!isConnected()) throw new IOException("Bluetooth não conectado");
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public int getMtu() {
+        return RFCOMM_MTU;
+    }
+
+    @Override
+    public int getThroughputHint() {
+        return SPP_THROUGHPUT_HINT;
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    @Override
+    public String describe() {
+        return "spp " + macAddress;
+    }
+
+    /** Fecha conexão com segurança. */
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            socket = null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream que junta os comandos ESC/POS antes de mandar pro socket.
+ *
+ * Problema: writeRaw()/writeText() faziam flush a cada comando de 2-3 bytes.
+ * No RFCOMM cada flush vira um pacote pequeno no ar (e uma ida ao kernel).
+ *
+ * Aqui:
+ *  - write() só acumula num buffer que cresce conforme precisa
+ *  - quando acumula packetSize bytes (ex.: MTU do RFCOMM), manda pacotes cheios
+ *  - flush() manda o resto e faz flush no destino (fim de bloco / de faixa)
+ *
+ * Contadores (zerados em resetCounters) mostram quantos pacotes e bytes
+ * realmente foram pro destino.
+ *
+ * Java puro. Não é thread-safe (uma thread escrevendo por vez, como o driver já faz).
+ */
+public final class BufferedCommandWriter extends OutputStream {
+
+    /** MTU típico do RFCOMM no Android (L2CAP 1021 - cabeçalhos). */
+    public static final int DEFAULT_PACKET_SIZE = 990;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final OutputStream target;
+    private int packetSize;
+
+    private byte[] buf;
+    private int count;
+
+    /** Cópia de tudo que é escrito (RasterCache gravando uma imagem); null = nada. */
+    private OutputStream tap;
+
+    private long packets;
+    private long bytes;
+    private long flushes;
+    private long growths;
+
+    public BufferedCommandWriter(OutputStream target, int packetSize) {
+        this.target = target;
+        this.packetSize = Math.max(1, packetSize);
+        this.buf = new byte[Math.max(INITIAL_CAPACITY, this.packetSize)];
+    }
+
+    public BufferedCommandWriter(OutputStream target) {
+        this(target, DEFAULT_PACKET_SIZE);
+    }
+
+    /** Tamanho dos pacotes enviados ao destino (ex.: MTU do link). */
+    public void setPacketSize(int packetSize) {
+        this.packetSize = Math.max(1, packetSize);
+    }
+
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /** Liga/desliga a cópia dos bytes escritos (null desliga). */
+    void setTap(OutputStream tap) {
+        this.tap = tap;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (tap != null) tap.write(b);
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+        if (count >= packetSize) drainFullPackets();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) return;
+        if (tap != null) tap.write(b, off, len);
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+        if (count >= packetSize) drainFullPackets();
+    }
+
+    /** Manda tudo que está acumulado e faz flush no destino. */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            writePackets(count);
+        }
+        target.flush();
+        flushes++;
+    }
+
+    /** Descarta o que ainda não foi enviado (ex.: conexão caiu no meio do bloco). */
+    public void discard() {
+        count = 0;
+    }
+
+    /** Bytes acumulados ainda não enviados. */
+    public int pending() {
+        return count;
+    }
+
+    public void resetCounters() {
+        packets = 0;
+        bytes = 0;
+        flushes = 0;
+        growths = 0;
+    }
+
+    /** Vezes que o buffer interno precisou crescer (alocação); 0 em regime. */
+    public long getBufferGrowths() {
+        return growths;
+    }
+
+    /** Chamadas de write() no destino. */
+    public long getPackets() {
+        return packets;
+    }
+
+    /** Bytes entregues ao destino. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** Flushes no destino. */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            target.close();
+        }
+    }
+
+    // só pacotes cheios; a sobra fica esperando mais comandos ou o flush()
+    private void drainFullPackets() throws IOException {
+        int full = count - (count % packetSize);
+        if (full > 0) writePackets(full);
+    }
+
+    private void writePackets(int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int n = Math.min(packetSize, len - off);
+            target.write(buf, off, n);
+            packets++;
+            bytes += n;
+            off += n;
+        }
+        count -= len;
+        if (count > 0) {
+            System.arraycopy(buf, len, buf, 0, count);
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= buf.length) return;
+        int cap = buf.length;
+        while (cap < needed) cap <<= 1;
+        byte[] n = new byte[cap];
+        System.arraycopy(buf, 0, n, 0, count);
+        buf = n;
+        growths++;
+    }
+}
@@ -0,0 +1,34 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Modos de binarização disponíveis para imagens raster.
+ *
+ *  - THRESHOLD:        limiar fixo 128 (padrão; ideal para texto e bordas)
+ *  - BAYER_4X4 / 8X8:  pontilhado ordenado, sem estado, bom para logos com degradê
+ *  - FLOYD_STEINBERG:  difusão de erro clássica, melhor para fotos
+ *  - ATKINSON:         difusão parcial (6/8 do erro), mais contraste em papel térmico
+ */
+public enum DitherMode {
+    THRESHOLD,
+    BAYER_4X4,
+    BAYER_8X8,
+    FLOYD_STEINBERG,
+    ATKINSON;
+
+    /** Nova instância do ditherer (cada imagem precisa da sua, por causa do estado). */
+    public Ditherer create() {
+        switch (this) {
+            case BAYER_4X4:
+                return new OrderedDitherer(4);
+            case BAYER_8X8:
+                return new OrderedDitherer(8);
+            case FLOYD_STEINBERG:
+                return new FloydSteinbergDitherer();
+            case ATKINSON:
+                return new AtkinsonDitherer();
+            case THRESHOLD:
+            default:
+                return new ThresholdDitherer(RasterPacker.DEFAULT_THRESHOLD);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Estratégia de binarização (cinza -> preto/branco) usada pelo encoder raster.
+ *
+ * Recebe UMA linha de luminância (0..255) por vez, de cima pra baixo,
+ * e escreve os bits empacotados (MSB = pixel mais à esquerda, 1 = preto).
+ *
+ * Implementações podem guardar estado entre linhas (difusão de erro),
+ * então cada imagem precisa de begin() e as linhas devem vir em ordem.
+ * Não é thread-safe: uma instância por imagem sendo codificada.
+ *
+ * Ver DitherMode para as implementações prontas.
+ */
+public interface Ditherer {
+
+    /** Prepara para uma nova imagem com a largura dada (zera buffers de erro). */
+    void begin(int widthPx);
+
+    /**
+     * Binariza e empacota uma linha.
+     *
+     * @param luma    luminância por pixel; a implementação PODE alterar esse array
+     * @param lumaOff índice do primeiro pixel da linha
+     * @param widthPx largura da linha
+     * @param y       índice da linha na imagem (usado por matrizes ordenadas)
+     * @param dst     destino dos bytes empacotados
+     * @param dstOff  posição inicial em dst
+     */
+    void ditherRow(int[] luma, int lumaOff, int widthPx, int y, byte[] dst, int dstOff);
+
+    /**
+     * true se cada linha só depende dela mesma (e do y): a mesma instância pode
+     * ser usada por várias threads, em qualquer ordem (faixas em paralelo).
+     */
+    default boolean isStateless() {
+        return false;
+    }
+}
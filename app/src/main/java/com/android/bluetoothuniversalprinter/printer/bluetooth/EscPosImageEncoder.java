@@ -6,7 +6,7 @@ import android.graphics.Color;
 /**
  * Responsável por:
  *  - Redimensionar mantendo proporção (largura máxima em dots)
- *  - Convertar para 1bpp (PB)
+ *  - Convertar para 1bpp (PB), com limiar fixo ou pontilhado (DitherMode)
  *  - Empacotar em listras (stripes) no formato GS v 0 (raster)
  *
  * Por que listras?
@@ -33,58 +33,62 @@ public class EscPosImageEncoder {
         return bmp.copy(Bitmap.Config.ARGB_8888, false);
     }
 
-    /** Converte para PB com limiar fixo (rápido e suficiente para comprovantes). */
+    /**
+     * Converte para PB com limiar fixo (rápido e suficiente para comprovantes).
+     * Lê/escreve linha inteira (getPixels/setPixels) em vez de pixel a pixel.
+     *
+     * Obs.: para imprimir não precisa mais desse Bitmap intermediário;
+     * BitmapRasterizer empacota direto do original.
+     */
     public static Bitmap toMono(Bitmap src, int threshold) {
-        Bitmap out = Bitmap.createBitmap(src.getWidth(), src.getHeight(), Bitmap.Config.ARGB_8888);
-        for (int y = 0; y < src.getHeight(); y++) {
-            for (int x = 0; x < src.getWidth(); x++) {
-                int c = src.getPixel(x, y);
-                int r = (c >> 16) & 0xff;
-                int g = (c >> 8) & 0xff;
-                int b = c & 0xff;
-                int lumin = (r + g + b) / 3;
-                out.setPixel(x, y, lumin < threshold ? Color.BLACK : Color.WHITE);
+        final int w = src.getWidth();
+        final int h = src.getHeight();
+        final int limit = threshold * 3;
+        Bitmap out = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            src.getPixels(row, 0, w, 0, y, w, 1);
+            for (int x = 0; x < w; x++) {
+                int c = row[x];
+                int sum = ((c >> 16) & 0xff) + ((c >> 8) & 0xff) + (c & 0xff);
+                row[x] = sum < limit ? Color.BLACK : Color.WHITE;
             }
+            out.setPixels(row, 0, w, 0, y, w, 1);
+        }
+        return out;
+    }
+
+    /**
+     * Converte para PB usando um modo de pontilhado (Floyd–Steinberg, Bayer etc.).
+     * Útil para logos/fotos, onde o limiar fixo vira uma mancha.
+     */
+    public static Bitmap toMono(Bitmap src, DitherMode mode) {
+        BitmapRasterizer raster = new BitmapRasterizer(src, 0, mode.create());
+        final int w = raster.getWidth();
+        final int h = raster.getHeight();
+        Bitmap out = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        byte[] packed = new byte[raster.getBytesPerRow()];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            raster.packRows(y, 1, packed, 0);
+            for (int x = 0; x < w; x++) {
+                boolean black = (packed[x >> 3] & (0x80 >> (x & 7))) != 0;
+                row[x] = black ? Color.BLACK : Color.WHITE;
+            }
+            out.setPixels(row, 0, w, 0, y, w, 1);
         }
         return out;
     }
 
     /**
      * Empacota um “stripe” (faixa horizontal) em bytes raster ESC/POS (1 = preto).
-     * @param mono PB (preto/branco)
+     * @param mono PB (preto/branco) — na prática aceita qualquer bitmap (aplica limiar padrão)
      * @param yStart linha inicial do stripe
      * @param stripeHeight altura do stripe
      * @return bytes prontos para mandar após o header GS v 0
      */
     public static byte[] packStripe(Bitmap mono, int yStart, int stripeHeight) {
-        int width = mono.getWidth();
-        int height = mono.getHeight();
-        int h = Math.min(stripeHeight, height - yStart);
-
-        int bytesPerRow = (width + 7) / 8;
-        byte[] data = new byte[bytesPerRow * h];
-
-        int idx = 0;
-        for (int y = 0; y < h; y++) {
-            int bitPos = 0;
-            byte current = 0;
-            for (int x = 0; x < width; x++) {
-                int pixel = mono.getPixel(x, yStart + y);
-                boolean isBlack = (pixel & 0x00FFFFFF) == 0x000000; // Color.BLACK
-                current <<= 1;
-                if (isBlack) current |= 0x01;
-                bitPos++;
-                if (bitPos == 8) {
-                    data[idx++] = current;
-                    bitPos = 0;
-                    current = 0;
-                }
-            }
-            if (bitPos != 0) {
-                current <<= (8 - bitPos);
-                data[idx++] = current;
-            }
-        }
-        return data;
+        int h = Math.min(stripeHeight, mono.getHeight() - yStart);
+        return new BitmapRasterizer(mono).packRows(yStart, h);
     }
 }
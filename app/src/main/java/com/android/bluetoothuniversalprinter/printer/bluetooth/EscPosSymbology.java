@@ -0,0 +1,97 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Comandos ESC/POS de simbologia "nativa": a impressora gera o QR / código
+ * de barras no firmware, a partir de poucos bytes.
+ *
+ *  - QR Code: GS ( k  (modelo, tamanho do módulo, correção de erro, dados, imprime)
+ *  - CODE128: GS h / GS w / GS H / GS k m=73
+ *
+ * Java puro, só monta os bytes. Quem decide se usa isso ou raster é o
+ * BluetoothEscPosPrinter, conforme o PrinterProfile.
+ */
+public final class EscPosSymbology {
+
+    /** Correção de erro do QR (GS ( k fn 169): L/M/Q/H = 48..51. */
+    public static final int QR_ECC_L = 48;
+    public static final int QR_ECC_M = 49;
+    public static final int QR_ECC_Q = 50;
+    public static final int QR_ECC_H = 51;
+
+    /** Limites de GS w (largura do módulo de barra em pontos). */
+    public static final int BARCODE_MIN_MODULE = 2;
+    public static final int BARCODE_MAX_MODULE = 6;
+
+    private EscPosSymbology() {}
+
+    /**
+     * QR Code completo (modelo 2): seleciona modelo, módulo, ECC, grava e imprime.
+     *
+     * @param data       conteúdo já codificado (ex.: UTF-8), até 7089 bytes
+     * @param moduleDots tamanho do módulo em pontos (1..16)
+     * @param ecc        QR_ECC_L .. QR_ECC_H
+     */
+    public static byte[] qrCode(byte[] data, int moduleDots, int ecc) {
+        int module = Math.max(1, Math.min(16, moduleDots));
+        int store = data.length + 3; // cn fn m + dados
+        ByteArrayOutputStream b = new ByteArrayOutputStream(data.length + 32);
+
+        // fn 165: modelo 2
+        b.write(new byte[]{0x1D, 0x28, 0x6B, 0x04, 0x00, 0x31, 0x41, 0x32, 0x00}, 0, 9);
+        // fn 167: tamanho do módulo
+        b.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, (byte) module}, 0, 8);
+        // fn 169: nível de correção
+        b.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, (byte) ecc}, 0, 8);
+        // fn 180: grava os dados na área de símbolo
+        b.write(new byte[]{0x1D, 0x28, 0x6B,
+                (byte) (store & 0xFF), (byte) ((store >> 8) & 0xFF),
+                0x31, 0x50, 0x30}, 0, 8);
+        b.write(data, 0, data.length);
+        // fn 181: imprime o símbolo gravado
+        b.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30}, 0, 8);
+        return b.toByteArray();
+    }
+
+    /**
+     * CODE128 (subconjunto B) sem texto legível (HRI desligado, igual ao raster).
+     *
+     * @param data        ASCII imprimível (0x20..0x7E)
+     * @param moduleDots  largura do módulo (GS w), limitada a 2..6
+     * @param heightDots  altura das barras (GS h), limitada a 1..255
+     * @return null se o conteúdo não cabe no GS k (não ASCII ou longo demais)
+     */
+    public static byte[] code128(String data, int moduleDots, int heightDots) {
+        byte[] payload = code128Payload(data);
+        if (payload == null) return null;
+
+        int module = Math.max(BARCODE_MIN_MODULE, Math.min(BARCODE_MAX_MODULE, moduleDots));
+        int height = Math.max(1, Math.min(255, heightDots));
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream(payload.length + 16);
+        b.write(new byte[]{0x1D, 0x68, (byte) height}, 0, 3);  // GS h n
+        b.write(new byte[]{0x1D, 0x77, (byte) module}, 0, 3);  // GS w n
+        b.write(new byte[]{0x1D, 0x48, 0x00}, 0, 3);           // GS H 0 (sem HRI)
+        b.write(new byte[]{0x1D, 0x6B, 73, (byte) payload.length}, 0, 4);
+        b.write(payload, 0, payload.length);
+        return b.toByteArray();
+    }
+
+    /** "{B" + dados, com '{' escapado como "{{"; null se não dá pra mandar via GS k. */
+    private static byte[] code128Payload(String data) {
+        if (data == null || data.isEmpty()) return null;
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream(data.length() + 4);
+        b.write('{');
+        b.write('B');
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c < 0x20 || c > 0x7E) return null;
+            if (c == '{') b.write('{');
+            b.write(c);
+        }
+        // n é um byte só
+        return b.size() <= 255 ? b.toByteArray() : null;
+    }
+}
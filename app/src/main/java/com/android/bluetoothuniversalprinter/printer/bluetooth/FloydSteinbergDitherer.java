@@ -0,0 +1,67 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Difusão de erro Floyd–Steinberg.
+ *
+ *          X   7
+ *      3   5   1     (/16)
+ *
+ * Memória O(largura): o erro que vem de cima é somado na própria linha de
+ * luminância antes de processar, então basta UM buffer rolante (linha de baixo)
+ * mais o erro da direita carregado numa variável.
+ */
+public final class FloydSteinbergDitherer implements Ditherer {
+
+    // erro acumulado para a PRÓXIMA linha, com 1 posição de folga em cada ponta
+    private int[] below = new int[0];
+
+    @Override
+    public void begin(int widthPx) {
+        if (below.length < widthPx + 2) {
+            below = new int[widthPx + 2];
+        } else {
+            Arrays.fill(below, 0);
+        }
+    }
+
+    @Override
+    public void ditherRow(int[] luma, int lumaOff, int widthPx, int y, byte[] dst, int dstOff) {
+        final int[] err = below;
+
+        // incorpora o erro vindo da linha de cima e libera o buffer para a próxima
+        for (int x = 0; x < widthPx; x++) {
+            luma[lumaOff + x] += err[x + 1];
+            err[x + 1] = 0;
+        }
+        err[0] = 0;
+        err[widthPx + 1] = 0;
+
+        int carry = 0;
+        int o = dstOff;
+        int bits = 0;
+        int n = 0;
+
+        for (int x = 0; x < widthPx; x++) {
+            int v = luma[lumaOff + x] + carry;
+            boolean black = v < 128;
+            int e = black ? v : v - 255;
+
+            carry = (e * 7) >> 4;
+            err[x]     += (e * 3) >> 4;   // baixo-esquerda
+            err[x + 1] += (e * 5) >> 4;   // baixo
+            err[x + 2] += e >> 4;         // baixo-direita
+
+            bits = (bits << 1) | (black ? 1 : 0);
+            if (++n == 8) {
+                dst[o++] = (byte) bits;
+                bits = 0;
+                n = 0;
+            }
+        }
+        if (n != 0) {
+            dst[o] = (byte) (bits << (8 - n));
+        }
+    }
+}
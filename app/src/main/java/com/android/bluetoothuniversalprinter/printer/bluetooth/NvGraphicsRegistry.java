@@ -0,0 +1,272 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * O que cada impressora já tem gravado na memória NV (flash) de gráficos.
+ *
+ * O logo vai uma vez por impressora (GS ( L fn 67, ~10 KB) e depois cada
+ * cupom manda só "imprime a chave XY" (GS ( L fn 69, 10 bytes). Pra isso
+ * precisamos lembrar, por MAC, qual chave (kc1 kc2) guarda qual imagem e
+ * com qual conteúdo:
+ *
+ *   impressora  nome ("res:2131165300|w384|THRESHOLD")  chave  crc do raster  bytes  linhas
+ *
+ * O crc é do raster já binarizado (largura + altura + bits). Se o app trocar
+ * o logo, ou mudar dither/largura, o crc não bate e o driver regrava na mesma
+ * chave. Impressora resetada / trocada: forget(mac). Além disso o driver
+ * confere o registro com a lista de chaves da impressora uma vez por conexão
+ * (reconcile); o que ela não tem mais é regravado.
+ *
+ * A flash da impressora aguenta poucas regravações (o manual fala em ~10 mil)
+ * e fica BUSY enquanto grava: por isso só se grava quando o registro não bate.
+ *
+ * Persistido em arquivo texto (uma linha por imagem, troca por rename).
+ * Thread-safe; uma instância por processo serve todas as impressoras do pool.
+ */
+public final class NvGraphicsRegistry {
+
+    /** Chaves que a gente usa: kc1 fixo, kc2 de '0' até '~' (79 imagens por impressora). */
+    private static final char KEY_PREFIX = 'L';
+    private static final char KEY_FIRST = '0';
+    private static final char KEY_LAST = '~';
+
+    /** Uma imagem gravada numa impressora. */
+    public static final class Slot {
+        final String keyCode;
+        final long crc;
+        final int bytes;
+        final int rows;
+
+        Slot(String keyCode, long crc, int bytes, int rows) {
+            this.keyCode = keyCode;
+            this.crc = crc;
+            this.bytes = bytes;
+            this.rows = rows;
+        }
+
+        /** kc1 kc2 (2 caracteres ASCII 32..126). */
+        public String getKeyCode() {
+            return keyCode;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        /** Bytes de raster ocupados na flash. */
+        public int getBytes() {
+            return bytes;
+        }
+
+        /** Altura em linhas (quanto papel a impressão ocupa). */
+        public int getRows() {
+            return rows;
+        }
+    }
+
+    private final File file;
+
+    /** impressora -> (nome -> slot), na ordem em que foram gravados. */
+    private final Map<String, LinkedHashMap<String, Slot>> printers = new HashMap<>();
+
+    /** crc do conteúdo atual de cada nome (só em memória; evita decodificar o logo toda vez). */
+    private final Map<String, Long> contentCrc = new HashMap<>();
+
+    private long hits;
+    private long uploads;
+    private long mismatches;
+
+    /** @param file onde persistir; null = só em memória (testes). */
+    public NvGraphicsRegistry(File file) {
+        this.file = file;
+    }
+
+    /** Abre (ou cria) o registro; linha ilegível é ignorada. */
+    public static NvGraphicsRegistry open(File file) throws IOException {
+        NvGraphicsRegistry r = new NvGraphicsRegistry(file);
+        if (file.exists()) r.load();
+        return r;
+    }
+
+    /**
+     * Slot da imagem nessa impressora, se o conteúdo gravado for o mesmo (crc).
+     * Conteúdo diferente conta como "mismatch" e devolve null (regravar).
+     */
+    public synchronized Slot find(String printerId, String name, long crc) {
+        Map<String, Slot> slots = printers.get(printerId);
+        Slot s = (slots == null) ? null : slots.get(name);
+        if (s == null) return null;
+        if (s.crc != crc) {
+            mismatches++;
+            return null;
+        }
+        hits++;
+        return s;
+    }
+
+    /**
+     * Chave pra gravar name nessa impressora: a que ele já usa (regravação) ou
+     * a primeira livre. null se as chaves acabaram.
+     */
+    public synchronized String keyFor(String printerId, String name) {
+        Map<String, Slot> slots = printers.get(printerId);
+        if (slots == null) return String.valueOf(new char[]{KEY_PREFIX, KEY_FIRST});
+        Slot s = slots.get(name);
+        if (s != null) return s.keyCode;
+        for (char c = KEY_FIRST; c <= KEY_LAST; c++) {
+            String kc = String.valueOf(new char[]{KEY_PREFIX, c});
+            if (!usedBy(slots, kc)) return kc;
+        }
+        return null;
+    }
+
+    /** Bytes já gravados nessa impressora, sem contar name (que vai ser sobrescrito). */
+    public synchronized long usedBytes(String printerId, String exceptName) {
+        Map<String, Slot> slots = printers.get(printerId);
+        if (slots == null) return 0;
+        long n = 0;
+        for (Map.Entry<String, Slot> e : slots.entrySet()) {
+            if (!e.getKey().equals(exceptName)) n += e.getValue().bytes;
+        }
+        return n;
+    }
+
+    /** A impressora confirmou a gravação: registra e persiste. */
+    public synchronized Slot stored(String printerId, String name, String keyCode, long crc, int bytes, int rows)
+            throws IOException {
+        Slot s = new Slot(keyCode, crc, bytes, rows);
+        printers.computeIfAbsent(printerId, k -> new LinkedHashMap<>()).put(name, s);
+        uploads++;
+        save();
+        return s;
+    }
+
+    /** Esquece uma imagem (ex.: gravação falhou no meio; o conteúdo da chave é incerto). */
+    public synchronized void remove(String printerId, String name) throws IOException {
+        Map<String, Slot> slots = printers.get(printerId);
+        if (slots != null && slots.remove(name) != null) save();
+    }
+
+    /**
+     * Confere com as chaves que a impressora informou (GS ( L fn 64): slot
+     * cuja chave não está na flash sai do registro e vai ser regravado.
+     *
+     * @return quantos slots saíram
+     */
+    public synchronized int reconcile(String printerId, Set<String> keysOnPrinter) throws IOException {
+        Map<String, Slot> slots = printers.get(printerId);
+        if (slots == null) return 0;
+        int dropped = 0;
+        for (Iterator<Slot> it = slots.values().iterator(); it.hasNext(); ) {
+            if (!keysOnPrinter.contains(it.next().keyCode)) {
+                it.remove();
+                dropped++;
+            }
+        }
+        if (dropped > 0) save();
+        return dropped;
+    }
+
+    /** Impressora resetada, trocada ou com a flash apagada: tudo vai de novo. */
+    public synchronized void forget(String printerId) throws IOException {
+        if (printers.remove(printerId) != null) save();
+    }
+
+    public synchronized Long getContentCrc(String name) {
+        return contentCrc.get(name);
+    }
+
+    public synchronized void setContentCrc(String name, long crc) {
+        contentCrc.put(name, crc);
+    }
+
+    public synchronized int size(String printerId) {
+        Map<String, Slot> slots = printers.get(printerId);
+        return slots == null ? 0 : slots.size();
+    }
+
+    /** Impressões que saíram da flash (registro bateu). */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getUploads() {
+        return uploads;
+    }
+
+    /** Registro existia mas com outro conteúdo (logo trocado). */
+    public synchronized long getMismatches() {
+        return mismatches;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "NvGraphicsRegistry{%d impressora(s), hits=%d, uploads=%d, mismatches=%d}",
+                printers.size(), hits, uploads, mismatches);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Arquivo: "impressora \t nome \t chave \t crc(hex) \t bytes \t linhas"
+    // ------------------------------------------------------------------------
+
+    private static boolean usedBy(Map<String, Slot> slots, String kc) {
+        for (Slot s : slots.values()) {
+            if (s.keyCode.equals(kc)) return true;
+        }
+        return false;
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length != 6 || f[2].length() != 2) continue;
+                try {
+                    printers.computeIfAbsent(f[0], k -> new LinkedHashMap<>())
+                            .put(f[1], new Slot(f[2], Long.parseLong(f[3], 16),
+                                    Integer.parseInt(f[4]), Integer.parseInt(f[5])));
+                } catch (NumberFormatException ignored) {
+                    // linha corrompida: a imagem só vai ser regravada
+                }
+            }
+        }
+    }
+
+    /** Escreve num .tmp, sync, e troca com rename (nunca deixa o arquivo pela metade). */
+    private void save() throws IOException {
+        if (file == null) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             Writer w = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, LinkedHashMap<String, Slot>> p : printers.entrySet()) {
+                for (Map.Entry<String, Slot> e : p.getValue().entrySet()) {
+                    Slot s = e.getValue();
+                    w.write(p.getKey() + "\t" + e.getKey() + "\t" + s.keyCode + "\t"
+                            + Long.toHexString(s.crc) + "\t" + s.bytes + "\t" + s.rows + "\n");
+                }
+            }
+            w.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Não consegui trocar " + tmp + " por " + file);
+        }
+    }
+}
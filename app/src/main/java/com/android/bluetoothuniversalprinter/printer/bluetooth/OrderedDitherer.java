@@ -0,0 +1,81 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Pontilhado ordenado (matriz de Bayer 4x4 ou 8x8).
+ *
+ * Cada posição (x, y) tem seu próprio limiar, tirado da matriz.
+ * Sem estado entre linhas: rápido e pode ser paralelizado por faixa.
+ */
+public final class OrderedDitherer implements Ditherer {
+
+    private static final int[] BAYER_4 = {
+             0,  8,  2, 10,
+            12,  4, 14,  6,
+             3, 11,  1,  9,
+            15,  7, 13,  5
+    };
+
+    private static final int[] BAYER_8 = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    private final int size;
+    private final int mask;
+    // limiares já em escala 0..255, uma linha da matriz por y
+    private final int[] thresholds;
+
+    /** @param size 4 ou 8 */
+    public OrderedDitherer(int size) {
+        if (size != 4 && size != 8) {
+            throw new IllegalArgumentException("Bayer só 4x4 ou 8x8: " + size);
+        }
+        this.size = size;
+        this.mask = size - 1;
+
+        int[] m = (size == 4) ? BAYER_4 : BAYER_8;
+        int cells = size * size;
+        thresholds = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            // centro da célula: (m + 0.5) * 256 / n²
+            thresholds[i] = ((2 * m[i] + 1) * 256) / (2 * cells);
+        }
+    }
+
+    @Override
+    public void begin(int widthPx) {
+        // sem estado
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    @Override
+    public void ditherRow(int[] luma, int lumaOff, int widthPx, int y, byte[] dst, int dstOff) {
+        final int rowBase = (y & mask) * size;
+        int p = lumaOff;
+        int o = dstOff;
+        int bits = 0;
+        int n = 0;
+
+        for (int x = 0; x < widthPx; x++) {
+            bits = (bits << 1) | (luma[p++] < thresholds[rowBase + (x & mask)] ? 1 : 0);
+            if (++n == 8) {
+                dst[o++] = (byte) bits;
+                bits = 0;
+                n = 0;
+            }
+        }
+        if (n != 0) {
+            dst[o] = (byte) (bits << (8 - n));
+        }
+    }
+}
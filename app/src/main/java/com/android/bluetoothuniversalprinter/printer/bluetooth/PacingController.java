@@ -0,0 +1,209 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
+import java.util.Locale;
+
+/**
+ * Controle de fluxo das faixas raster (substitui o sleep fixo entre stripes).
+ *
+ * Modelo simples de "balde furado":
+ *  - a impressora consome linhas de ponto a rowsPerSecond
+ *    (velocidade em mm/s x pontos por mm, vinda do PrinterProfile)
+ *  - cada faixa enviada entra no buffer da impressora; busyUntil é o instante
+ *    estimado em que ela termina tudo que já recebeu
+ *  - antes de mandar a próxima faixa, esperamos só o necessário pra que o
+ *    buffer (estimado) + a faixa fiquem abaixo de targetFill da capacidade
+ *
+ * Impressora rápida / link lento: a espera vira zero (nada de 20 ms fixos).
+ * Impressora lenta: a espera cresce e o buffer não estoura.
+ *
+ * Calibração (AIMD, como controle de congestionamento):
+ *  - se um write bloquear (o socket segurou os dados), a impressora está mais
+ *    lenta que o modelo: rowsPerSecond cai 10% e o buffer conta como cheio
+ *  - "bloquear" é relativo ao tamanho do write: bytes / vazão do link
+ *    (getThroughputHint do transporte) x BLOCKED_FACTOR + uma folga fixa.
+ *    Faixa cheia em SPP (~12 KB/s) leva centenas de ms sem nada de errado
+ *  - cada write que NÃO bloqueou devolve RECOVERY_STEP da velocidade nominal,
+ *    até a nominal: um bloqueio isolado (interferência, GC) não derruba o
+ *    ritmo pro resto da sessão
+ *  - markDrained() zera a estimativa quando alguém confirma que a impressora
+ *    esvaziou (ex.: resposta de status DLE EOT depois dos dados)
+ *
+ * Os números escolhidos (altura da faixa, última pausa, ocupação estimada)
+ * ficam expostos como métricas ao vivo.
+ *
+ * Java puro; o tempo entra como parâmetro (nanos) pra dar pra testar sem relógio.
+ */
+public final class PacingController {
+
+    /** Pontos por mm numa cabeça de 203 dpi. */
+    public static final int DOTS_PER_MM = 8;
+
+    /** Folga de um write antes de contar como bloqueio (agendador, flush). Link desconhecido: só ela. */
+    private static final long BLOCKED_SLACK_NANOS = 40_000_000L;
+
+    /** Write que leva mais que isso x o tempo de link dos bytes é o socket segurando. */
+    private static final double BLOCKED_FACTOR = 2.0;
+
+    /** Fração da velocidade nominal recuperada a cada write sem bloqueio. */
+    private static final double RECOVERY_STEP = 0.05;
+
+    private static final int MIN_STRIPE_ROWS = 8;
+    private static final int MAX_STRIPE_ROWS = 255;
+
+    /** Não deixa a calibração derrubar a velocidade abaixo disso (mm/s). */
+    private static final double MIN_SPEED_MM_S = 10;
+
+    private final int bufferBytes;
+    private final double targetFill;
+    private final double nominalRowsPerSecond;
+    private double rowsPerSecond;
+
+    /** Vazão do link em bytes/s (0 = desconhecida). */
+    private int linkBytesPerSecond;
+
+    private long busyUntilNanos;
+    private int lastBytesPerRow = 1;
+
+    // métricas
+    private int stripeRows;
+    private long lastPauseMs;
+    private long totalPauseMs;
+    private int blockedWrites;
+
+    /**
+     * @param speedMmPerSec velocidade nominal de impressão (mm/s)
+     * @param bufferBytes   tamanho estimado do buffer de recepção da impressora
+     * @param targetFill    ocupação alvo do buffer (0..1)
+     */
+    public PacingController(int speedMmPerSec, int bufferBytes, double targetFill) {
+        this.nominalRowsPerSecond = Math.max(MIN_SPEED_MM_S, speedMmPerSec) * DOTS_PER_MM;
+        this.rowsPerSecond = nominalRowsPerSecond;
+        this.bufferBytes = Math.max(256, bufferBytes);
+        this.targetFill = Math.max(0.1, Math.min(1.0, targetFill));
+    }
+
+    public static PacingController forProfile(PrinterProfile profile) {
+        return new PacingController(profile.getPrintSpeedMmPerSec(), profile.getBufferBytes(), 0.75);
+    }
+
+    /** Perfil + vazão do link do transporte (null = link desconhecido). */
+    public static PacingController forProfile(PrinterProfile profile, PrinterTransport transport) {
+        PacingController pc = forProfile(profile);
+        if (transport != null) pc.setLinkBytesPerSecond(transport.getThroughputHint());
+        return pc;
+    }
+
+    /** Vazão do link (bytes/s) pra saber quanto um write normal demora; 0 = desconhecida. */
+    public void setLinkBytesPerSecond(int bytesPerSecond) {
+        this.linkBytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Altura de faixa pra esta largura: metade do alvo do buffer, assim uma faixa
+     * pode ser impressa enquanto a próxima chega.
+     */
+    public int stripeRowsFor(int bytesPerRow) {
+        int rows = (int) (bufferBytes * targetFill / 2) / Math.max(1, bytesPerRow);
+        stripeRows = Math.max(MIN_STRIPE_ROWS, Math.min(MAX_STRIPE_ROWS, rows));
+        return stripeRows;
+    }
+
+    /** Quanto esperar (nanos) antes de mandar rows linhas de bytesPerRow. */
+    public long delayNanos(long now, int rows, int bytesPerRow) {
+        double fill = estimatedFillBytes(now, bytesPerRow);
+        double allowed = bufferBytes * targetFill - (double) rows * bytesPerRow;
+        if (fill <= allowed) return 0;
+
+        // tempo pra impressora consumir o excesso
+        double excessRows = (fill - Math.max(0, allowed)) / bytesPerRow;
+        return (long) (excessRows / rowsPerSecond * 1e9);
+    }
+
+    /** Registra a pausa efetivamente feita (métrica). */
+    public void onPaused(long nanos) {
+        lastPauseMs = nanos / 1_000_000L;
+        totalPauseMs += lastPauseMs;
+    }
+
+    /**
+     * Faixa entregue ao socket.
+     *
+     * @param writeNanos quanto o write+flush levou (pra detectar bloqueio)
+     */
+    public void onWritten(long now, int rows, int bytesPerRow, long writeNanos) {
+        lastBytesPerRow = Math.max(1, bytesPerRow);
+        if (writeNanos > blockedThresholdNanos((long) rows * lastBytesPerRow)) {
+            // socket segurou: impressora mais lenta que o modelo
+            blockedWrites++;
+            rowsPerSecond = Math.max(MIN_SPEED_MM_S * DOTS_PER_MM, rowsPerSecond * 0.9);
+            long fullNanos = (long) (bufferBytes / (double) lastBytesPerRow / rowsPerSecond * 1e9);
+            busyUntilNanos = Math.max(busyUntilNanos, now + fullNanos);
+        } else {
+            rowsPerSecond = Math.min(nominalRowsPerSecond, rowsPerSecond + nominalRowsPerSecond * RECOVERY_STEP);
+        }
+        enqueueRows(now, rows);
+    }
+
+    /** Avanço de papel (ESC J / LF) também ocupa a mecânica. */
+    public void onFed(long now, int dots) {
+        enqueueRows(now, dots);
+    }
+
+    /** Confirmação externa de que a impressora consumiu tudo até agora. */
+    public void markDrained(long now) {
+        busyUntilNanos = now;
+    }
+
+    // ---- métricas ao vivo ----
+
+    public int getStripeRows() {
+        return stripeRows;
+    }
+
+    public long getLastPauseMs() {
+        return lastPauseMs;
+    }
+
+    public long getTotalPauseMs() {
+        return totalPauseMs;
+    }
+
+    public int getBlockedWrites() {
+        return blockedWrites;
+    }
+
+    /** Velocidade atual do modelo em mm/s (cai se a calibração detectar bloqueio). */
+    public double getSpeedMmPerSec() {
+        return rowsPerSecond / DOTS_PER_MM;
+    }
+
+    public int getEstimatedFillBytes(long now) {
+        return (int) estimatedFillBytes(now, lastBytesPerRow);
+    }
+
+    @Override
+    public String toString() {
+        return "Pacing{faixa=" + stripeRows + " linhas, pausa=" + lastPauseMs + "ms (total "
+                + totalPauseMs + "ms), " + String.format(Locale.ROOT, "%.0f", getSpeedMmPerSec())
+                + "mm/s, bloqueios=" + blockedWrites + "}";
+    }
+
+    /** Tempo de um write desses sem bloqueio, com folga. */
+    long blockedThresholdNanos(long bytes) {
+        if (linkBytesPerSecond <= 0) return BLOCKED_SLACK_NANOS;
+        return BLOCKED_SLACK_NANOS + (long) (bytes * BLOCKED_FACTOR / linkBytesPerSecond * 1e9);
+    }
+
+    private void enqueueRows(long now, int rows) {
+        long start = Math.max(busyUntilNanos, now);
+        busyUntilNanos = start + (long) (rows / rowsPerSecond * 1e9);
+    }
+
+    private double estimatedFillBytes(long now, int bytesPerRow) {
+        long remaining = busyUntilNanos - now;
+        if (remaining <= 0) return 0;
+        return remaining / 1e9 * rowsPerSecond * bytesPerRow;
+    }
+}
@@ -0,0 +1,117 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Contadores de um "bloco de impressão" (beginJob .. endJob).
+ *
+ * Serve pra ver no log quanto de raster realmente foi pro Bluetooth e
+ * quanto foi economizado pelas otimizações (linhas brancas viradas em feed etc.).
+ */
+public final class PrintJobStats {
+
+    /** Bytes de raster que iriam sem otimização (linhas * bytesPerRow). */
+    private long rasterBytesRaw;
+
+    /** Linhas brancas trocadas por ESC J. */
+    private int blankRowsElided;
+
+    /** Linhas brancas descartadas no topo/rodapé das imagens. */
+    private int blankRowsTrimmed;
+
+    /** Bytes de margem lateral branca cortados das linhas raster. */
+    private long croppedBytes;
+
+    /** Bytes que deixaram de ser enviados. */
+    private long bytesSaved;
+
+    /** O que efetivamente foi pro socket: pacotes (writes), bytes e flushes. */
+    private long packets;
+    private long bytesWritten;
+    private long flushes;
+
+    /** byte[] alocados no caminho raster (pool de faixas + crescimento do buffer de comandos). */
+    private long bufferAllocations;
+
+    public void reset() {
+        rasterBytesRaw = 0;
+        blankRowsElided = 0;
+        blankRowsTrimmed = 0;
+        croppedBytes = 0;
+        bytesSaved = 0;
+        packets = 0;
+        bytesWritten = 0;
+        flushes = 0;
+        bufferAllocations = 0;
+    }
+
+    void addRaster(long rawBytes) {
+        rasterBytesRaw += rawBytes;
+    }
+
+    void addBlankRows(BlankRowElider elider) {
+        blankRowsElided += elider.getRowsElided();
+        blankRowsTrimmed += elider.getRowsTrimmed();
+        bytesSaved += elider.getBytesSaved();
+    }
+
+    void addCropped(long bytes) {
+        croppedBytes += bytes;
+        bytesSaved += bytes;
+    }
+
+    void setTransport(long packets, long bytesWritten, long flushes) {
+        this.packets = packets;
+        this.bytesWritten = bytesWritten;
+        this.flushes = flushes;
+    }
+
+    void setBufferAllocations(long n) {
+        this.bufferAllocations = n;
+    }
+
+    public long getRasterBytesRaw() {
+        return rasterBytesRaw;
+    }
+
+    public int getBlankRowsElided() {
+        return blankRowsElided;
+    }
+
+    public int getBlankRowsTrimmed() {
+        return blankRowsTrimmed;
+    }
+
+    public long getCroppedBytes() {
+        return croppedBytes;
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /** Deve ficar em 0 depois do primeiro cupom (buffers vêm do pool). */
+    public long getBufferAllocations() {
+        return bufferAllocations;
+    }
+
+    @Override
+    public String toString() {
+        return "enviado=" + bytesWritten + "B em " + packets + " pacotes/" + flushes + " flushes,"
+                + " raster=" + rasterBytesRaw + "B"
+                + " economizado=" + bytesSaved + "B"
+                + " (brancas: " + blankRowsElided + " em feed, " + blankRowsTrimmed + " cortadas;"
+                + " margens laterais: " + croppedBytes + "B)"
+                + " alocações de buffer=" + bufferAllocations;
+    }
+}
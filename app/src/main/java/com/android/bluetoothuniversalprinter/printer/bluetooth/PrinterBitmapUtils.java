@@ -3,6 +3,10 @@ package com.android.bluetoothuniversalprinter.printer.bluetooth;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
 /**
  * Utilitários de imagem para impressão ESC/POS.
  *
@@ -49,47 +53,14 @@ public class PrinterBitmapUtils {
     public static RasterData toMono1BppData(Bitmap bmp) {
         if (bmp == null) return null;
 
-        int width = bmp.getWidth();
-        int height = bmp.getHeight();
-
-        int bytesPerRow = (width + 7) / 8;
-        byte[] imageBytes = new byte[bytesPerRow * height];
-
-        int idx = 0;
-        for (int y = 0; y < height; y++) {
-            int bitPos = 0;
-            byte currentByte = 0;
-
-            for (int x = 0; x < width; x++) {
-                int pixel = bmp.getPixel(x, y);
-
-                int r = (pixel >> 16) & 0xff;
-                int g = (pixel >> 8) & 0xff;
-                int b = pixel & 0xff;
-                int lumin = (r + g + b) / 3;
-
-                // bit=1 imprime ponto preto
-                currentByte <<= 1;
-                if (lumin < 128) {
-                    currentByte |= 0x01;
-                }
-
-                bitPos++;
-
-                if (bitPos == 8) {
-                    imageBytes[idx++] = currentByte;
-                    bitPos = 0;
-                    currentByte = 0;
-                }
-            }
-
-            if (bitPos != 0) {
-                currentByte <<= (8 - bitPos);
-                imageBytes[idx++] = currentByte;
-            }
-        }
-
-        return new RasterData(width, height, bytesPerRow, imageBytes);
+        // leitura por linha (getPixels) + limiar + empacotamento direto, sem getPixel por pixel
+        BitmapRasterizer rasterizer = new BitmapRasterizer(bmp);
+        return new RasterData(
+                rasterizer.getWidth(),
+                rasterizer.getHeight(),
+                rasterizer.getBytesPerRow(),
+                rasterizer.packAll()
+        );
     }
 
     /**
@@ -101,6 +72,9 @@ public class PrinterBitmapUtils {
      *
      * Isso evita buffer overflow interno e evita o corte de ~20% no final.
      *
+     * As fatias são vistas sobre full.data, sem cópia: as linhas de uma fatia
+     * já são contíguas no raster cheio. Pra mandar, slice.writeTo(out).
+     *
      * @param full   RasterData completo da imagem já 1bpp
      * @param sliceHeightMaxPx altura máxima de cada fatia (por ex. 200)
      */
@@ -119,21 +93,12 @@ public class PrinterBitmapUtils {
             int startRow = i * sliceHeightMaxPx;
             int thisHeight = Math.min(sliceHeightMaxPx, totalH - startRow);
 
-            byte[] buf = new byte[thisHeight * bytesPerRow];
-
-            // copia bloco correspondente dessa fatia
-            int destPos = 0;
-            for (int row = 0; row < thisHeight; row++) {
-                int srcPos = (startRow + row) * bytesPerRow;
-                System.arraycopy(full.data, srcPos, buf, destPos, bytesPerRow);
-                destPos += bytesPerRow;
-            }
-
             slices[i] = new RasterSlice(
                     full.widthPx,
                     thisHeight,
                     bytesPerRow,
-                    buf
+                    full.data,
+                    startRow * bytesPerRow
             );
 
             totalRowsSent += thisHeight;
@@ -161,18 +126,43 @@ public class PrinterBitmapUtils {
         }
     }
 
-    /** Cada fatia pronta pra mandar em um GS v 0 isolado */
+    /**
+     * Cada fatia pronta pra mandar em um GS v 0 isolado. Os bytes ficam no
+     * raster cheio (sem cópia): use writeTo()/length(), ou toByteArray() se
+     * precisar de um array só da fatia.
+     */
     public static class RasterSlice {
         public final int widthPx;
         public final int heightPx;
         public final int bytesPerRow;
-        public final byte[] data;
+        private final byte[] data;
+        private final int offset;
 
         public RasterSlice(int w, int h, int bpr, byte[] d) {
+            this(w, h, bpr, d, 0);
+        }
+
+        public RasterSlice(int w, int h, int bpr, byte[] d, int offset) {
             this.widthPx = w;
             this.heightPx = h;
             this.bytesPerRow = bpr;
             this.data = d;
+            this.offset = offset;
+        }
+
+        /** Bytes da fatia (heightPx * bytesPerRow). */
+        public int length() {
+            return heightPx * bytesPerRow;
+        }
+
+        /** Escreve só as linhas desta fatia. */
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(data, offset, length());
+        }
+
+        /** Cópia só desta fatia. */
+        public byte[] toByteArray() {
+            return Arrays.copyOfRange(data, offset, offset + length());
         }
     }
 }
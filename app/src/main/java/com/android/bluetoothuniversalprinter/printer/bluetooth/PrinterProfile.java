@@ -0,0 +1,177 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.util.Locale;
+
+/**
+ * O que o firmware de uma impressora ESC/POS sabe fazer sozinho.
+ *
+ * Usado pelo BluetoothEscPosPrinter para decidir entre mandar o comando
+ * "nativo" (poucos bytes, a impressora desenha) ou cair no caminho raster
+ * (GS v 0, a gente desenha e manda todos os pontos).
+ *
+ * Exemplo: um QR de 256px via raster são ~8 KB; via GS ( k são ~40 bytes.
+ *
+ * Padrão (generic): QR e CODE128 nativos ligados, que é o que a maioria das
+ * térmicas 58mm Bluetooth aceita. Para modelos que imprimem lixo ou ignoram
+ * os comandos, use rasterOnly() (ou desligue só o que não funciona).
+ */
+public final class PrinterProfile {
+
+    private final String name;
+    private boolean nativeQr;
+    private boolean nativeBarcode;
+    private boolean dotFeed = true;
+    private boolean leftMargin;
+    private boolean nvGraphics;
+    private int nvCapacityBytes = 64 * 1024;
+
+    // ritmo do raster (PacingController): valores conservadores de 58mm barata
+    private int printSpeedMmPerSec = 60;
+    private int bufferBytes = 4096;
+    private int headWidthDots = 384;
+
+    public PrinterProfile(String name, boolean nativeQr, boolean nativeBarcode) {
+        this.name = name;
+        this.nativeQr = nativeQr;
+        this.nativeBarcode = nativeBarcode;
+    }
+
+    /** Impressora ESC/POS comum: QR (GS ( k), CODE128 (GS k) e GS L pelo firmware. */
+    public static PrinterProfile generic() {
+        return new PrinterProfile("generic", true, true).setLeftMargin(true);
+    }
+
+    /** Tudo como imagem: funciona em qualquer impressora que aceite GS v 0. */
+    public static PrinterProfile rasterOnly() {
+        return new PrinterProfile("raster-only", false, false);
+    }
+
+    /**
+     * Escolhe o perfil pelo nome Bluetooth do aparelho.
+     * Impressoras embarcadas (PAX) ficam no raster, que é o caminho já validado nelas.
+     */
+    public static PrinterProfile forDeviceName(String deviceName) {
+        if (deviceName == null) return generic();
+        String n = deviceName.toUpperCase(Locale.ROOT);
+        if (n.contains("PAX")) {
+            return rasterOnly();
+        }
+        return generic();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Firmware imprime QR Code via GS ( k (função 165..181). */
+    public boolean supportsNativeQr() {
+        return nativeQr;
+    }
+
+    /** Firmware imprime CODE128 via GS k m=73. */
+    public boolean supportsNativeBarcode() {
+        return nativeBarcode;
+    }
+
+    /**
+     * Firmware aceita ESC J n (avanço em pontos). Com isso, faixas brancas das
+     * imagens viram avanço de papel em vez de bytes 0x00 no GS v 0.
+     */
+    public boolean supportsDotFeed() {
+        return dotFeed;
+    }
+
+    /**
+     * Firmware respeita GS L (margem esquerda) antes de um GS v 0. Com isso as
+     * margens brancas laterais das imagens são cortadas e a posição é refeita pela margem.
+     */
+    public boolean supportsLeftMargin() {
+        return leftMargin;
+    }
+
+    /**
+     * Firmware guarda gráficos na memória NV (GS ( L fn 67 / 69). Com isso o logo
+     * é gravado uma vez e cada cupom manda só a chave. Desligado por padrão:
+     * muita 58mm barata não tem (ou só tem o FS q antigo).
+     */
+    public boolean supportsNvGraphics() {
+        return nvGraphics;
+    }
+
+    /** Espaço da memória NV de gráficos em bytes (ver manual; 64..256 KB é o comum). */
+    public int getNvCapacityBytes() {
+        return nvCapacityBytes;
+    }
+
+    /** Velocidade nominal de impressão em mm/s (ver manual; 50..90 é o comum em 58mm). */
+    public int getPrintSpeedMmPerSec() {
+        return printSpeedMmPerSec;
+    }
+
+    /** Largura da cabeça em pontos: 384 na 58mm, 576 na 80mm. */
+    public int getHeadWidthDots() {
+        return headWidthDots;
+    }
+
+    /** Bytes de uma linha raster cheia (GS v 0 da largura toda). */
+    public int getHeadBytesPerRow() {
+        return (headWidthDots + 7) / 8;
+    }
+
+    /** Buffer de recepção da impressora em bytes (estimativa; na dúvida, pequeno). */
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    public PrinterProfile setPrintSpeedMmPerSec(int mmPerSec) {
+        this.printSpeedMmPerSec = mmPerSec;
+        return this;
+    }
+
+    public PrinterProfile setHeadWidthDots(int dots) {
+        this.headWidthDots = Math.max(8, dots);
+        return this;
+    }
+
+    public PrinterProfile setBufferBytes(int bytes) {
+        this.bufferBytes = bytes;
+        return this;
+    }
+
+    public PrinterProfile setNativeQr(boolean on) {
+        this.nativeQr = on;
+        return this;
+    }
+
+    public PrinterProfile setNativeBarcode(boolean on) {
+        this.nativeBarcode = on;
+        return this;
+    }
+
+    public PrinterProfile setDotFeed(boolean on) {
+        this.dotFeed = on;
+        return this;
+    }
+
+    public PrinterProfile setLeftMargin(boolean on) {
+        this.leftMargin = on;
+        return this;
+    }
+
+    public PrinterProfile setNvGraphics(boolean on) {
+        this.nvGraphics = on;
+        return this;
+    }
+
+    public PrinterProfile setNvCapacityBytes(int bytes) {
+        this.nvCapacityBytes = bytes;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterProfile{" + name + ", qr=" + nativeQr + ", barcode=" + nativeBarcode + ", dotFeed=" + dotFeed
+                + ", leftMargin=" + leftMargin + ", nv=" + (nvGraphics ? nvCapacityBytes / 1024 + "KB" : "não")
+                + ", speed=" + printSpeedMmPerSec + "mm/s, buffer=" + bufferBytes + "B, head=" + headWidthDots + "dots}";
+    }
+}
@@ -0,0 +1,235 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU (limitado em bytes) das imagens já codificadas em ESC/POS.
+ *
+ * Todo cupom decodificava o logo (BitmapFactory), escalava, binarizava e
+ * empacotava de novo; o mesmo com cabeçalhos fixos e nomes de loja em fonte
+ * custom. Aqui fica o resultado final: as faixas GS v 0 prontas (já cortadas,
+ * com os ESC J / GS L no meio). Repetir o logo vira uma cópia de bytes pro
+ * transporte, com o mesmo ritmo (pacing) por faixa.
+ *
+ * Chave: origem (id do recurso ou hash do conteúdo) + tudo que muda os bytes
+ * (largura, dither, alinhamento, recursos do perfil). Quem monta é o driver.
+ *
+ * Um cache por processo (getDefault()) serve todas as impressoras do pool.
+ * Thread-safe.
+ */
+public final class RasterCache {
+
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+
+    private static final RasterCache DEFAULT = new RasterCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejected;
+
+    public RasterCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public static RasterCache getDefault() {
+        return DEFAULT;
+    }
+
+    /** Entrada da chave (conta hit ou miss). */
+    public synchronized Entry get(String key) {
+        Entry e = map.get(key);
+        if (e == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return e;
+    }
+
+    /** Guarda e despeja as menos usadas até caber. Entrada maior que o cache inteiro é ignorada. */
+    public synchronized void put(String key, Entry entry) {
+        long size = entry.sizeBytes();
+        if (size > maxBytes) {
+            rejected++;
+            return;
+        }
+        Entry old = map.put(key, entry);
+        if (old != null) bytes -= old.sizeBytes();
+        bytes += size;
+
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            bytes -= eldest.getValue().sizeBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** Esquece as entradas cuja chave começa com prefix (ex.: logo trocado). */
+    public synchronized int invalidate(String prefix) {
+        int n = 0;
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                bytes -= e.getValue().sizeBytes();
+                it.remove();
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Imagens grandes demais pra caber no cache (não guardadas). */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(java.util.Locale.ROOT,
+                "RasterCache{%d entradas, %d/%d KB, hits=%d, misses=%d (%.0f%%), evictions=%d, rejeitadas=%d}",
+                map.size(), bytes / 1024, maxBytes / 1024, hits, misses, getHitRate() * 100,
+                evictions, rejected);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Entrada
+    // ------------------------------------------------------------------------
+
+    /**
+     * Programa ESC/POS de uma imagem + onde ficam as faixas (pra repetir o
+     * pacing) e os avanços ESC J (pra manter a estimativa do buffer).
+     */
+    public static final class Entry {
+        final byte[] program;
+        /** Fim de cada evento no programa. */
+        final int[] ends;
+        /** Linhas da faixa GS v 0, ou 0 se o evento é ESC J. */
+        final int[] rows;
+        /** Bytes por linha da faixa, ou pontos avançados no ESC J. */
+        final int[] widths;
+        final int events;
+        /** Linhas * bytesPerRow sem otimização (PrintJobStats). */
+        final long rawBytes;
+
+        private Entry(byte[] program, int[] ends, int[] rows, int[] widths, int events, long rawBytes) {
+            this.program = program;
+            this.ends = ends;
+            this.rows = rows;
+            this.widths = widths;
+            this.events = events;
+            this.rawBytes = rawBytes;
+        }
+
+        public int getProgramBytes() {
+            return program.length;
+        }
+
+        public int getStripes() {
+            int n = 0;
+            for (int i = 0; i < events; i++) if (rows[i] > 0) n++;
+            return n;
+        }
+
+        long sizeBytes() {
+            // programa + arrays + cabeçalhos (aproximado)
+            return program.length + events * 12L + 64;
+        }
+    }
+
+    /**
+     * Grava o que o driver escreve durante uma imagem (ligado como "tap" no
+     * BufferedCommandWriter) e marca faixas / avanços.
+     */
+    static final class Recorder extends OutputStream {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+        private int[] ends = new int[16];
+        private int[] rows = new int[16];
+        private int[] widths = new int[16];
+        private int events;
+
+        @Override
+        public void write(int b) {
+            data.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            data.write(b, off, len);
+        }
+
+        /** Acabou de escrever uma faixa GS v 0 (cabeçalho + dados). */
+        void stripe(int stripeRows, int bytesPerRow) {
+            event(stripeRows, bytesPerRow);
+        }
+
+        /** Acabou de escrever ESC J de dots pontos. */
+        void feed(int dots) {
+            event(0, dots);
+        }
+
+        Entry finish(long rawBytes) {
+            return new Entry(data.toByteArray(), Arrays.copyOf(ends, events),
+                    Arrays.copyOf(rows, events), Arrays.copyOf(widths, events), events, rawBytes);
+        }
+
+        private void event(int r, int w) {
+            if (events == ends.length) {
+                ends = Arrays.copyOf(ends, events * 2);
+                rows = Arrays.copyOf(rows, events * 2);
+                widths = Arrays.copyOf(widths, events * 2);
+            }
+            ends[events] = data.size();
+            rows[events] = r;
+            widths[events] = w;
+            events++;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Corte horizontal de margens brancas em blocos raster 1bpp já empacotados.
+ *
+ * Grades e texto renderizado costumam ter colunas brancas largas dos dois lados.
+ * Em vez de mandar bytesPerRow cheio em toda linha, achamos o intervalo de
+ * bytes (colunas de 8 pontos) que tem tinta e compactamos as linhas nele.
+ * A posição horizontal é devolvida pela impressora via GS L (margem esquerda).
+ *
+ * O corte é em borda de byte: nada de deslocar bits, os pontos continuam
+ * exatamente na mesma coluna física.
+ *
+ * Java puro, só funções estáticas.
+ */
+public final class RasterCrop {
+
+    private RasterCrop() {}
+
+    /** Primeira coluna de byte com algum ponto preto, ou -1 se o bloco é todo branco. */
+    public static int firstInkByte(byte[] data, int off, int rows, int bytesPerRow) {
+        int first = -1;
+        for (int r = 0; r < rows; r++) {
+            int p = off + r * bytesPerRow;
+            // só olha até onde já achamos tinta: o resto não melhora o resultado
+            int limit = first < 0 ? bytesPerRow : first;
+            for (int x = 0; x < limit; x++) {
+                if (data[p + x] != 0) {
+                    first = x;
+                    break;
+                }
+            }
+            if (first == 0) break;
+        }
+        return first;
+    }
+
+    /** Última coluna de byte com algum ponto preto, ou -1 se o bloco é todo branco. */
+    public static int lastInkByte(byte[] data, int off, int rows, int bytesPerRow) {
+        int last = -1;
+        for (int r = 0; r < rows; r++) {
+            int p = off + r * bytesPerRow;
+            for (int x = bytesPerRow - 1; x > last; x--) {
+                if (data[p + x] != 0) {
+                    last = x;
+                    break;
+                }
+            }
+            if (last == bytesPerRow - 1) break;
+        }
+        return last;
+    }
+
+    /**
+     * Compacta, no próprio buffer, as colunas [firstByte, firstByte + newBytesPerRow)
+     * de cada linha. Depois disso o bloco tem stride newBytesPerRow a partir de off.
+     *
+     * Seguro in-place: cada linha vai para uma posição <= a de origem.
+     */
+    public static void compact(byte[] data, int off, int rows, int bytesPerRow,
+                               int firstByte, int newBytesPerRow) {
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(data, off + r * bytesPerRow + firstByte,
+                    data, off + r * newBytesPerRow, newBytesPerRow);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Núcleo Java puro do raster 1bpp (sem dependência de android.*).
+ *
+ * Recebe linhas ARGB em int[] (do jeito que Bitmap.getPixels entrega)
+ * e empacota direto em bytes GS v 0:
+ *  - 8 pixels por byte, MSB = pixel mais à esquerda
+ *  - bit=1 -> ponto PRETO
+ *
+ * Nada de Bitmap intermediário PB: o limiar é aplicado e o bit já sai empacotado.
+ */
+public final class RasterPacker {
+
+    /** Limiar padrão de luminância (mesmo valor que o projeto sempre usou). */
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    private RasterPacker() {}
+
+    /** Quantos bytes uma linha ocupa no raster (8 px por byte, arredondado pra cima). */
+    public static int bytesPerRow(int widthPx) {
+        return (widthPx + 7) >> 3;
+    }
+
+    /** Luminância simples (r+g+b)/3, igual à conta usada nos loops antigos. */
+    public static int luminance(int argb) {
+        return (((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF)) / 3;
+    }
+
+    /**
+     * Empacota UMA linha ARGB em 1bpp.
+     *
+     * (r+g+b)/3 < threshold é o mesmo que r+g+b < 3*threshold (tudo inteiro >= 0),
+     * então evitamos a divisão por pixel.
+     *
+     * @param argb      pixels ARGB
+     * @param srcOff    índice do primeiro pixel da linha em argb
+     * @param widthPx   largura da linha em pixels
+     * @param threshold limiar de luminância (0..255)
+     * @param dst       destino dos bytes empacotados
+     * @param dstOff    posição inicial em dst (precisa de bytesPerRow(widthPx) bytes livres)
+     */
+    public static void packRow(int[] argb, int srcOff, int widthPx, int threshold,
+                               byte[] dst, int dstOff) {
+        final int limit = threshold * 3;
+        final int fullBytes = widthPx >> 3;
+        int p = srcOff;
+        int o = dstOff;
+
+        for (int i = 0; i < fullBytes; i++) {
+            int bits = 0;
+            for (int k = 0; k < 8; k++) {
+                int c = argb[p++];
+                int sum = ((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF);
+                bits = (bits << 1) | (sum < limit ? 1 : 0);
+            }
+            dst[o++] = (byte) bits;
+        }
+
+        // sobra quando a largura não é múltipla de 8 (completa com branco à direita)
+        final int rest = widthPx & 7;
+        if (rest != 0) {
+            int bits = 0;
+            for (int k = 0; k < rest; k++) {
+                int c = argb[p++];
+                int sum = ((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF);
+                bits = (bits << 1) | (sum < limit ? 1 : 0);
+            }
+            dst[o] = (byte) (bits << (8 - rest));
+        }
+    }
+
+    /** Converte uma linha ARGB em luminância (0..255), para quem vai pontilhar. */
+    public static void toLuma(int[] argb, int srcOff, int widthPx, int[] luma, int lumaOff) {
+        for (int x = 0; x < widthPx; x++) {
+            int c = argb[srcOff + x];
+            luma[lumaOff + x] = (((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF)) / 3;
+        }
+    }
+
+    /**
+     * Empacota UMA linha já convertida em luminância (0..255 por pixel).
+     * Usado quando a linha passa por redução/filtragem antes do limiar.
+     */
+    public static void packLumaRow(int[] luma, int srcOff, int widthPx, int threshold,
+                                   byte[] dst, int dstOff) {
+        final int fullBytes = widthPx >> 3;
+        int p = srcOff;
+        int o = dstOff;
+
+        for (int i = 0; i < fullBytes; i++) {
+            int bits = 0;
+            for (int k = 0; k < 8; k++) {
+                bits = (bits << 1) | (luma[p++] < threshold ? 1 : 0);
+            }
+            dst[o++] = (byte) bits;
+        }
+
+        final int rest = widthPx & 7;
+        if (rest != 0) {
+            int bits = 0;
+            for (int k = 0; k < rest; k++) {
+                bits = (bits << 1) | (luma[p++] < threshold ? 1 : 0);
+            }
+            dst[o] = (byte) (bits << (8 - rest));
+        }
+    }
+
+    /**
+     * Empacota várias linhas consecutivas guardadas em sequência num int[]
+     * (stride = widthPx), como vem de um getPixels de bloco.
+     */
+    public static void packRows(int[] argb, int srcOff, int widthPx, int rows, int threshold,
+                                byte[] dst, int dstOff) {
+        final int bpr = bytesPerRow(widthPx);
+        for (int r = 0; r < rows; r++) {
+            packRow(argb, srcOff + r * widthPx, widthPx, threshold, dst, dstOff + r * bpr);
+        }
+    }
+}
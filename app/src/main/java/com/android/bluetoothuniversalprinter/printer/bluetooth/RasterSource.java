@@ -0,0 +1,38 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/**
+ * Qualquer coisa que saiba entregar linhas já empacotadas em 1bpp (GS v 0).
+ *
+ * Implementações:
+ *  - BitmapRasterizer: Bitmap Android (escala + limiar por linha)
+ *
+ * Contrato: packRows é chamado com yStart crescente (de cima pra baixo)
+ * por UMA thread de cada vez. Implementações podem guardar estado entre chamadas.
+ * Exceção: cópias devolvidas por fork() aceitam qualquer yStart.
+ */
+public interface RasterSource {
+
+    /** Largura final em pontos (dots). */
+    int getWidth();
+
+    /** Altura final em linhas. */
+    int getHeight();
+
+    /** Bytes por linha (largura / 8 arredondado pra cima). */
+    int getBytesPerRow();
+
+    /**
+     * Escreve as linhas [yStart, yStart+rows) empacotadas em dst a partir de dstOff.
+     * dst precisa ter pelo menos rows * getBytesPerRow() bytes livres.
+     */
+    void packRows(int yStart, int rows, byte[] dst, int dstOff);
+
+    /**
+     * Cópia independente (buffers próprios) pra codificar faixas em outra
+     * thread, em qualquer ordem. Só faz sentido se cada linha não depende das
+     * anteriores (sem difusão de erro). null = só em ordem, uma thread.
+     */
+    default RasterSource fork() {
+        return null;
+    }
+}
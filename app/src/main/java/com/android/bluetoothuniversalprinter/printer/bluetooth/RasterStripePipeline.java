@@ -0,0 +1,327 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipeline produtor/consumidor de faixas raster.
+ *
+ *  - Produtor (thread "raster-encoder"): escala + binariza + empacota a faixa N+1
+ *  - Consumidor (thread de quem chamou): escreve a faixa N no OutputStream
+ *
+ * As faixas circulam numa fila limitada de buffers reaproveitáveis
+ * (DEFAULT_BUFFERS por padrão, vindos de um StripeBufferPool). Assim:
+ *  - o primeiro GS v 0 sai assim que a primeira faixa fica pronta
+ *  - codificação e envio Bluetooth acontecem em paralelo
+ *  - memória de pico = poucos stripes, não a imagem inteira
+ *
+ * Imagens que cabem numa faixa só vão direto (sem thread), não compensa.
+ *
+ * Imagens altas (cupom promocional, printGrid com muitos números, parágrafos
+ * longos) com fonte de faixas independentes (RasterSource.fork, ex.: limiar
+ * ou Bayer) são codificadas em paralelo num ForkJoinPool do tamanho dos
+ * núcleos e entregues em ordem. A decisão usa o custo medido na 1ª faixa.
+ * Ganha mais quando o destino é rápido (spool em memória, TCP); no Bluetooth
+ * o link costuma ser o gargalo e o produtor único já dá conta.
+ *
+ * Java puro: não depende de android.*. Não é thread-safe (uma execução por vez por instância).
+ */
+public final class RasterStripePipeline {
+
+    /** Quem recebe as faixas prontas, na ordem (de cima pra baixo). */
+    public interface StripeSink {
+        /**
+         * @param yStart      primeira linha da faixa na imagem
+         * @param rows        altura da faixa
+         * @param bytesPerRow bytes por linha
+         * @param data        rows * bytesPerRow bytes válidos a partir do índice 0.
+         *                    O buffer volta pro pool quando este método retorna: não guarde a referência.
+         */
+        void onStripe(int yStart, int rows, int bytesPerRow, byte[] data) throws IOException;
+    }
+
+    /** 3 buffers: um sendo escrito, um pronto na fila, um sendo codificado. */
+    public static final int DEFAULT_BUFFERS = 3;
+
+    private static final ExecutorService ENCODER = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "raster-encoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Workers da codificação em paralelo: um por núcleo. */
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool STRIPE_POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("raster-fj-" + t.getPoolIndex());
+        return t;
+    }, null, false);
+
+    private final int stripeHeight;
+    private final int bufferCount;
+    private long parallelMinNanos = DEFAULT_PARALLEL_MIN_NANOS;
+
+    /** Buffers das faixas: pegos no início da imagem e devolvidos no fim. */
+    private final StripeBufferPool pool;
+
+    private long lastNanosPerRow;
+    private int parallelRuns;
+    private int serialRuns;
+
+    /**
+     * @param pool de onde vêm os buffers; o driver passa o dele, assim trocar
+     *             de altura de faixa (pipeline novo) não joga os buffers fora
+     */
+    public RasterStripePipeline(int stripeHeight, int bufferCount, StripeBufferPool pool) {
+        this.stripeHeight = Math.max(1, stripeHeight);
+        this.bufferCount = Math.max(2, bufferCount);
+        this.pool = pool;
+    }
+
+    public RasterStripePipeline(int stripeHeight, int bufferCount) {
+        this(stripeHeight, bufferCount, new StripeBufferPool());
+    }
+
+    public StripeBufferPool getBufferPool() {
+        return pool;
+    }
+
+    public int getStripeHeight() {
+        return stripeHeight;
+    }
+
+    /**
+     * Imagem cujo resto (depois da 1ª faixa) leva pelo menos isso pra codificar
+     * numa thread só vai pelo ForkJoinPool. Abaixo disso, distribuir as faixas
+     * custa mais que ganha (e o link Bluetooth é o gargalo de qualquer jeito).
+     */
+    public static final long DEFAULT_PARALLEL_MIN_NANOS = 8_000_000L;
+
+    /**
+     * Codifica e entrega todas as faixas de src para sink.
+     * Se o sink lançar IOException, a codificação em background é cancelada e a exceção sobe.
+     *
+     * A 1ª faixa é codificada aqui mesmo, cronometrada: com o custo por linha
+     * medido decide-se o resto. Fonte que aceita fork() (faixas independentes)
+     * e com trabalho suficiente vai em paralelo; o resto segue no produtor único.
+     */
+    public void run(RasterSource src, StripeSink sink) throws IOException {
+        final int height = src.getHeight();
+        final int bytesPerRow = src.getBytesPerRow();
+        if (height <= 0 || bytesPerRow <= 0) return;
+
+        if (height <= stripeHeight) {
+            runInline(src, stripeHeight, sink, pool);
+            return;
+        }
+
+        // 1ª faixa: só a thread de quem chamou usa, então volta pro pool mesmo com erro
+        final byte[] head = pool.acquire(stripeHeight * bytesPerRow);
+        try {
+            long t0 = System.nanoTime();
+            src.packRows(0, stripeHeight, head, 0);
+            lastNanosPerRow = Math.max(1, (System.nanoTime() - t0) / stripeHeight);
+
+            long remainingNanos = lastNanosPerRow * (height - stripeHeight);
+            RasterSource fork = (PARALLELISM > 1 && remainingNanos >= parallelMinNanos) ? src.fork() : null;
+            if (fork != null) {
+                parallelRuns++;
+                runParallel(src, fork, head, sink);
+            } else {
+                serialRuns++;
+                runProducer(src, head, sink);
+            }
+        } finally {
+            pool.release(head);
+        }
+    }
+
+    /** Um produtor em background codifica em ordem; a thread de quem chamou escreve. */
+    private void runProducer(RasterSource src, byte[] head, StripeSink sink) throws IOException {
+        final int height = src.getHeight();
+        final int bytesPerRow = src.getBytesPerRow();
+        final byte[][] buffers = new byte[bufferCount][];
+
+        final BlockingQueue<Stripe> free = new ArrayBlockingQueue<>(bufferCount);
+        final BlockingQueue<Stripe> ready = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers[i] = pool.acquire(stripeHeight * bytesPerRow);
+            free.add(new Stripe(buffers[i]));
+        }
+
+        final AtomicReference<Throwable> encodeError = new AtomicReference<>();
+        final Stripe end = new Stripe(null);
+
+        Future<?> producer = ENCODER.submit(() -> {
+            try {
+                for (int y = stripeHeight; y < height; y += stripeHeight) {
+                    Stripe s = free.take();
+                    int rows = Math.min(stripeHeight, height - y);
+                    src.packRows(y, rows, s.data, 0);
+                    s.yStart = y;
+                    s.rows = rows;
+                    ready.put(s);
+                }
+            } catch (InterruptedException e) {
+                // consumidor desistiu (erro de escrita / cancelamento)
+                return;
+            } catch (Throwable t) {
+                encodeError.set(t);
+            }
+            ready.offer(end);
+        });
+
+        boolean finished = false;
+        try {
+            sink.onStripe(0, stripeHeight, bytesPerRow, head);
+            while (true) {
+                Stripe s = ready.take();
+                if (s == end) break;
+                sink.onStripe(s.yStart, s.rows, bytesPerRow, s.data);
+                free.put(s);
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Envio raster interrompido");
+        } finally {
+            if (finished) {
+                for (byte[] b : buffers) pool.release(b);
+            } else {
+                // o produtor pode ainda estar escrevendo num buffer: esses ficam pro GC
+                producer.cancel(true);
+            }
+        }
+
+        Throwable t = encodeError.get();
+        if (t != null) {
+            throw new IOException("Falha ao codificar raster: " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Faixas como tarefas no ForkJoinPool, até 2 por worker adiantadas. Cada
+     * posição da janela tem seu buffer e sua cópia da fonte (fork), então
+     * nenhuma instância é usada por duas threads ao mesmo tempo. A entrega
+     * pro sink continua em ordem, na thread de quem chamou.
+     */
+    private void runParallel(RasterSource src, RasterSource firstFork, byte[] head, StripeSink sink)
+            throws IOException {
+        final int height = src.getHeight();
+        final int bytesPerRow = src.getBytesPerRow();
+        final int stripes = (height - stripeHeight + stripeHeight - 1) / stripeHeight;
+        final int window = Math.min(stripes, PARALLELISM * 2);
+        final byte[][] parallelBuffers = new byte[window][];
+        for (int i = 0; i < window; i++) {
+            parallelBuffers[i] = pool.acquire(stripeHeight * bytesPerRow);
+        }
+
+        final RasterSource[] forks = new RasterSource[window];
+        final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[window];
+        boolean finished = false;
+        try {
+            for (int i = 0; i < window; i++) {
+                forks[i] = (i == 0) ? firstFork : src.fork();
+                tasks[i] = submitStripe(forks[i], stripeHeight * (i + 1), height, parallelBuffers[i]);
+            }
+            sink.onStripe(0, stripeHeight, bytesPerRow, head);
+
+            for (int k = 0; k < stripes; k++) {
+                int slot = k % window;
+                int y = stripeHeight * (k + 1);
+                tasks[slot].get();
+                sink.onStripe(y, Math.min(stripeHeight, height - y), bytesPerRow, parallelBuffers[slot]);
+                int next = k + window;
+                tasks[slot] = (next < stripes)
+                        ? submitStripe(forks[slot], stripeHeight * (next + 1), height, parallelBuffers[slot])
+                        : null;
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Envio raster interrompido");
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            throw new IOException("Falha ao codificar raster: " + t.getMessage(), t);
+        } finally {
+            if (finished) {
+                for (byte[] b : parallelBuffers) pool.release(b);
+            } else {
+                // tarefas em andamento ainda escrevem nos buffers: esses ficam pro GC
+                for (ForkJoinTask<?> task : tasks) {
+                    if (task != null) task.cancel(false);
+                }
+            }
+        }
+    }
+
+    private ForkJoinTask<?> submitStripe(RasterSource src, int y, int height, byte[] dst) {
+        final int rows = Math.min(stripeHeight, height - y);
+        return STRIPE_POOL.submit(() -> src.packRows(y, rows, dst, 0));
+    }
+
+    /** Mínimo de trabalho estimado (nanos) pra usar o ForkJoinPool. */
+    public void setParallelMinNanos(long nanos) {
+        this.parallelMinNanos = Math.max(0, nanos);
+    }
+
+    /** Custo medido na 1ª faixa da última imagem (ns por linha). */
+    public long getLastNanosPerRow() {
+        return lastNanosPerRow;
+    }
+
+    public int getParallelRuns() {
+        return parallelRuns;
+    }
+
+    public int getSerialRuns() {
+        return serialRuns;
+    }
+
+    /** Caminho sem thread: codifica e entrega faixa por faixa com um buffer só. */
+    public static void runInline(RasterSource src, int stripeHeight, StripeSink sink) throws IOException {
+        runInline(src, stripeHeight, sink, null);
+    }
+
+    /** Igual, com o buffer vindo de pool (null = aloca). */
+    public static void runInline(RasterSource src, int stripeHeight, StripeSink sink, StripeBufferPool pool)
+            throws IOException {
+        final int height = src.getHeight();
+        final int bytesPerRow = src.getBytesPerRow();
+        if (height <= 0 || bytesPerRow <= 0) return;
+
+        int capacity = bytesPerRow * Math.min(stripeHeight, height);
+        byte[] buf = (pool != null) ? pool.acquire(capacity) : new byte[capacity];
+        try {
+            for (int y = 0; y < height; y += stripeHeight) {
+                int rows = Math.min(stripeHeight, height - y);
+                src.packRows(y, rows, buf, 0);
+                sink.onStripe(y, rows, bytesPerRow, buf);
+            }
+        } finally {
+            if (pool != null) pool.release(buf);
+        }
+    }
+
+    /** Buffer de faixa que circula entre as filas free/ready. */
+    private static final class Stripe {
+        final byte[] data;
+        int yStart;
+        int rows;
+
+        Stripe(byte[] data) {
+            this.data = data;
+        }
+    }
+}
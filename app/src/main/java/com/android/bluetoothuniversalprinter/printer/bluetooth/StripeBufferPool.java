@@ -0,0 +1,95 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Pool pequeno de buffers de faixa raster (byte[] reaproveitados).
+ *
+ * Antes cada imagem (e cada faixa, no caminho sem pipeline) alocava um byte[]
+ * novo; em POS de entrada o GC resultante aparece como "engasgo" na
+ * impressão. Aqui o buffer volta pro pool no fim da imagem e a próxima pega
+ * o mesmo. Depois do aquecimento (primeira imagem de cada largura) o
+ * contador de alocações para de subir: é isso que os testes conferem.
+ *
+ * Buffer devolvido pode ser maior que o pedido (quem usa olha rows * bytesPerRow).
+ * Limitado a maxPooled buffers guardados. Thread-safe.
+ */
+public final class StripeBufferPool {
+
+    /** Cabe uma imagem no caminho paralelo (2 faixas por núcleo + a 1ª) ou no produtor único. */
+    public static final int DEFAULT_MAX_POOLED =
+            Math.max(8, 2 * Runtime.getRuntime().availableProcessors() + 2);
+
+    private final int maxPooled;
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+
+    private long allocations;
+    private long allocatedBytes;
+    private long reuses;
+
+    public StripeBufferPool(int maxPooled) {
+        this.maxPooled = Math.max(1, maxPooled);
+    }
+
+    public StripeBufferPool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    /** Buffer com pelo menos minBytes (o menor livre que sirva, senão um novo). */
+    public synchronized byte[] acquire(int minBytes) {
+        byte[] best = null;
+        for (byte[] b : free) {
+            if (b.length >= minBytes && (best == null || b.length < best.length)) best = b;
+        }
+        if (best != null) {
+            free.remove(best);
+            reuses++;
+            return best;
+        }
+        allocations++;
+        allocatedBytes += minBytes;
+        return new byte[minBytes];
+    }
+
+    /**
+     * Devolve o buffer. Só devolva o que ninguém mais está escrevendo (em
+     * caso de erro no meio de uma imagem, deixe pro GC). Cheio: sai o menor.
+     */
+    public synchronized void release(byte[] buf) {
+        if (buf == null || free.contains(buf)) return; // arrays: equals é identidade
+        if (free.size() >= maxPooled) {
+            byte[] smallest = buf;
+            for (byte[] b : free) {
+                if (b.length < smallest.length) smallest = b;
+            }
+            if (smallest == buf) return;
+            free.remove(smallest);
+        }
+        free.add(buf);
+    }
+
+    /** byte[] criados pelo pool (não sobe mais depois do aquecimento). */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** Pedidos atendidos com buffer reaproveitado. */
+    public synchronized long getReuses() {
+        return reuses;
+    }
+
+    public synchronized int getPooled() {
+        return free.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "StripeBufferPool{alocações=%d (%d KB), reusos=%d, livres=%d}",
+                allocations, allocatedBytes / 1024, reuses, free.size());
+    }
+}
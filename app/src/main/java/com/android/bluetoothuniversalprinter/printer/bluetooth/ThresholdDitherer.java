@@ -0,0 +1,30 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+/** Limiar fixo: luminância < threshold vira ponto preto. Sem estado. */
+public final class ThresholdDitherer implements Ditherer {
+
+    private final int threshold;
+
+    public ThresholdDitherer(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public void begin(int widthPx) {
+        // nada a preparar
+    }
+
+    @Override
+    public void ditherRow(int[] luma, int lumaOff, int widthPx, int y, byte[] dst, int dstOff) {
+        RasterPacker.packLumaRow(luma, lumaOff, widthPx, threshold, dst, dstOff);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+}
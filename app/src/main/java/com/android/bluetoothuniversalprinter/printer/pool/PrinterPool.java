@@ -0,0 +1,468 @@
+package com.android.bluetoothuniversalprinter.printer.pool;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothEscPosPrinter;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PacingController;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Várias impressoras abertas ao mesmo tempo (2-3 térmicas por balcão no pico).
+ *
+ * Cada impressora do pool (Member) mantém o próprio transporte (SPP ou TCP),
+ * driver e pacing, e o pool acompanha a carga de cada uma:
+ *  - jobs na fila / bytes ainda não enviados
+ *  - tempo estimado pra esvaziar (bytes / vazão, a menor entre link e papel)
+ *
+ * Roteamento (acquire):
+ *  - ROUND_ROBIN  : uma de cada vez
+ *  - LEAST_LOADED : a que termina antes (menor tempo estimado)
+ *  - AFFINITY     : a mesma chave (ex.: "cozinha", "caixa 2") vai sempre pra
+ *                   mesma impressora enquanto ela estiver viva; a primeira vez
+ *                   escolhe a menos carregada
+ *
+ * Saúde: probe() confere o link (DLE EOT 1) e cada job devolvido com erro conta
+ * uma falha. Link fechado ou maxFailures falhas seguidas = impressora removida
+ * do pool (transporte fechado, afinidades soltas, Listener avisado).
+ * Impressoras com falha recente só recebem job se não houver outra.
+ *
+ * O pool não envia nada sozinho: quem chama acquire() escreve no transporte
+ * (de preferência na fila de I/O da impressora, PrintScheduler.io(member.getKey()))
+ * e devolve com release(). probe() deve rodar nessa mesma fila, pra não misturar
+ * o DLE EOT com os bytes de um job.
+ */
+public final class PrinterPool {
+
+    public enum Routing {
+        ROUND_ROBIN, LEAST_LOADED, AFFINITY
+    }
+
+    public interface Listener {
+        void onEvicted(Member member, String reason);
+    }
+
+    /** Falhas seguidas (probe ou job) até tirar a impressora do pool. */
+    public static final int DEFAULT_MAX_FAILURES = 3;
+
+    private static final int PROBE_TIMEOUT_MS = 500;
+
+    private static final int DOTS_PER_MM = 8;
+
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private final Map<String, String> affinity = new HashMap<>();
+
+    private Routing routing;
+    private int maxFailures = DEFAULT_MAX_FAILURES;
+    private int cursor;
+    private long evictions;
+    private volatile Listener listener;
+
+    public PrinterPool(Routing routing) {
+        this.routing = (routing == null) ? Routing.LEAST_LOADED : routing;
+    }
+
+    public PrinterPool() {
+        this(Routing.LEAST_LOADED);
+    }
+
+    public synchronized void setRouting(Routing routing) {
+        this.routing = (routing == null) ? Routing.LEAST_LOADED : routing;
+    }
+
+    public synchronized Routing getRouting() {
+        return routing;
+    }
+
+    public synchronized void setMaxFailures(int maxFailures) {
+        this.maxFailures = Math.max(1, maxFailures);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Membros
+    // ------------------------------------------------------------------------
+
+    /**
+     * Coloca uma impressora (já conectada) no pool. Se a chave já existia, a
+     * conexão antiga é fechada e substituída.
+     *
+     * @param key identificador estável (MAC, host:porta); vira o nome da fila de I/O
+     */
+    public Member add(String key, PrinterTransport transport, PrinterProfile profile) {
+        Member m = new Member(key, transport, (profile == null) ? PrinterProfile.generic() : profile);
+        Member old;
+        synchronized (this) {
+            old = members.put(key, m);
+        }
+        if (old != null && old.transport != transport) old.transport.close();
+        return m;
+    }
+
+    /** Tira a impressora do pool e fecha o transporte. */
+    public void remove(String key) {
+        Member m;
+        synchronized (this) {
+            m = members.remove(key);
+            if (m != null) dropAffinity(key);
+        }
+        if (m != null) m.transport.close();
+    }
+
+    public synchronized Member get(String key) {
+        return members.get(key);
+    }
+
+    public synchronized List<Member> getMembers() {
+        return new ArrayList<>(members.values());
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Fecha tudo (onDestroy). */
+    public void closeAll() {
+        List<Member> all;
+        synchronized (this) {
+            all = new ArrayList<>(members.values());
+            members.clear();
+            affinity.clear();
+        }
+        for (Member m : all) m.transport.close();
+    }
+
+    // ------------------------------------------------------------------------
+    //  Roteamento
+    // ------------------------------------------------------------------------
+
+    /**
+     * Escolhe a impressora pro próximo job e já conta a carga dele nela.
+     * Sempre devolver com release(member, bytes, ok).
+     *
+     * @param affinityKey usado só em AFFINITY (null = sem afinidade)
+     * @param bytes tamanho estimado do job (programa ESC/POS)
+     * @throws IOException se não há nenhuma impressora no pool
+     */
+    public synchronized Member acquire(String affinityKey, int bytes) throws IOException {
+        List<Member> candidates = candidates();
+        if (candidates.isEmpty()) {
+            throw new IOException("Nenhuma impressora conectada no pool");
+        }
+
+        Member chosen = null;
+        if (routing == Routing.AFFINITY && affinityKey != null) {
+            Member bound = members.get(affinity.get(affinityKey));
+            if (bound != null && candidates.contains(bound)) chosen = bound;
+        }
+        if (chosen == null) {
+            chosen = (routing == Routing.ROUND_ROBIN) ? nextRoundRobin(candidates) : leastLoaded(candidates);
+            if (routing == Routing.AFFINITY && affinityKey != null) {
+                affinity.put(affinityKey, chosen.key);
+            }
+        }
+
+        chosen.queuedJobs++;
+        chosen.queuedBytes += Math.max(0, bytes);
+        return chosen;
+    }
+
+    /**
+     * Soma a carga de um job já roteado cujo tamanho só se soube depois
+     * (compilado pro perfil da impressora escolhida com acquire(key, 0)).
+     * O release() depois usa o total.
+     */
+    public synchronized void charge(Member m, int bytes) {
+        m.queuedBytes += Math.max(0, bytes);
+    }
+
+    /** Liga uma chave de afinidade a uma impressora específica. */
+    public synchronized void bind(String affinityKey, String memberKey) {
+        affinity.put(affinityKey, memberKey);
+    }
+
+    /**
+     * Job terminou (ok) ou falhou. Falha com link fechado tira a impressora do
+     * pool na hora; senão conta pra maxFailures.
+     *
+     * @param bytes o mesmo valor passado no acquire()
+     */
+    public void release(Member m, int bytes, boolean ok) {
+        String evictReason = null;
+        synchronized (this) {
+            m.queuedJobs = Math.max(0, m.queuedJobs - 1);
+            m.queuedBytes = Math.max(0, m.queuedBytes - Math.max(0, bytes));
+            if (ok) {
+                m.completedJobs++;
+                m.onSuccess();
+            } else {
+                m.failedJobs++;
+                evictReason = m.onFailure("job falhou", maxFailures);
+            }
+        }
+        if (evictReason != null) evict(m, evictReason);
+    }
+
+    /** Job cancelado: devolve a carga sem contar sucesso nem falha. */
+    public synchronized void cancel(Member m, int bytes) {
+        m.queuedJobs = Math.max(0, m.queuedJobs - 1);
+        m.queuedBytes = Math.max(0, m.queuedBytes - Math.max(0, bytes));
+    }
+
+    /**
+     * Health check de uma impressora: link aberto e, se ela já respondeu a
+     * DLE EOT alguma vez, resposta sem o bit de offline.
+     *
+     * Impressoras que nunca respondem status (muitas baratas) só são testadas
+     * pelo write: num socket morto o write lança IOException.
+     *
+     * @return true se a impressora continua no pool
+     */
+    public boolean probe(Member m) {
+        String reason;
+        try {
+            int status = m.probeStatus();
+            synchronized (this) {
+                if (status >= 0) m.answersStatus = true;
+                if (status >= 0 && (status & 0x08) != 0) {
+                    reason = m.onFailure("offline (status 0x" + Integer.toHexString(status) + ")", maxFailures);
+                } else if (status < 0 && m.answersStatus) {
+                    reason = m.onFailure("sem resposta de status", maxFailures);
+                } else {
+                    m.onSuccess();
+                    reason = null;
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                reason = m.onFailure("link: " + e.getMessage(), maxFailures);
+            }
+        }
+        if (reason != null) {
+            evict(m, reason);
+            return false;
+        }
+        return true;
+    }
+
+    /** Remove já quem estiver com o link fechado (sem escrever nada). */
+    public int evictDisconnected() {
+        int n = 0;
+        for (Member m : getMembers()) {
+            if (!m.transport.isConnected()) {
+                evict(m, "link fechado");
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void evict(Member m, String reason) {
+        synchronized (this) {
+            if (members.get(m.key) != m) return; // já saiu (ou foi substituída)
+            members.remove(m.key);
+            dropAffinity(m.key);
+            m.evicted = true;
+            evictions++;
+        }
+        m.transport.close();
+        Listener l = listener;
+        if (l != null) l.onEvicted(m, reason);
+    }
+
+    private void dropAffinity(String memberKey) {
+        affinity.values().removeIf(memberKey::equals);
+    }
+
+    /** Impressoras sem falha recente; se todas falharam, todas. */
+    private List<Member> candidates() {
+        List<Member> healthy = new ArrayList<>();
+        for (Member m : members.values()) {
+            if (m.consecutiveFailures == 0) healthy.add(m);
+        }
+        return healthy.isEmpty() ? new ArrayList<>(members.values()) : healthy;
+    }
+
+    private Member nextRoundRobin(List<Member> candidates) {
+        Member m = candidates.get(Math.floorMod(cursor, candidates.size()));
+        cursor++;
+        return m;
+    }
+
+    private Member leastLoaded(List<Member> candidates) {
+        Member best = null;
+        long bestMs = Long.MAX_VALUE;
+        // começa do cursor pra empate não cair sempre na primeira
+        int n = candidates.size();
+        int start = Math.floorMod(cursor++, n);
+        for (int i = 0; i < n; i++) {
+            Member m = candidates.get((start + i) % n);
+            long ms = m.estimatedDrainMs();
+            if (ms < bestMs || (ms == bestMs && m.queuedJobs < best.queuedJobs)) {
+                best = m;
+                bestMs = ms;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("PrinterPool{").append(routing);
+        for (Member m : members.values()) sb.append(", ").append(m);
+        return sb.append('}').toString();
+    }
+
+    // ------------------------------------------------------------------------
+    //  Member
+    // ------------------------------------------------------------------------
+
+    /** Uma impressora do pool. Contadores protegidos pelo lock do pool. */
+    public final class Member {
+        private final String key;
+        private final PrinterTransport transport;
+        private final PrinterProfile profile;
+        private final PacingController pacing;
+        private final BluetoothEscPosPrinter printer;
+
+        private int queuedJobs;
+        private long queuedBytes;
+        private long completedJobs;
+        private long failedJobs;
+        private int consecutiveFailures;
+        private boolean answersStatus;
+        private boolean evicted;
+        private String lastError;
+
+        private Member(String key, PrinterTransport transport, PrinterProfile profile) {
+            this.key = key;
+            this.transport = transport;
+            this.profile = profile;
+            this.pacing = PacingController.forProfile(profile, transport);
+            this.printer = new BluetoothEscPosPrinter(transport);
+            this.printer.setProfile(profile);
+        }
+
+        /** Nome estável da impressora (MAC, host:porta): use como chave da fila de I/O. */
+        public String getKey() {
+            return key;
+        }
+
+        public PrinterTransport getTransport() {
+            return transport;
+        }
+
+        public PrinterProfile getProfile() {
+            return profile;
+        }
+
+        /** Pacing próprio desta impressora (o buffer de cada uma enche no seu ritmo). */
+        public PacingController getPacing() {
+            return pacing;
+        }
+
+        /** Driver ESC/POS em cima do transporte desta impressora. */
+        public BluetoothEscPosPrinter getPrinter() {
+            return printer;
+        }
+
+        public int getQueuedJobs() {
+            synchronized (PrinterPool.this) {
+                return queuedJobs;
+            }
+        }
+
+        public long getQueuedBytes() {
+            synchronized (PrinterPool.this) {
+                return queuedBytes;
+            }
+        }
+
+        public long getCompletedJobs() {
+            synchronized (PrinterPool.this) {
+                return completedJobs;
+            }
+        }
+
+        public long getFailedJobs() {
+            synchronized (PrinterPool.this) {
+                return failedJobs;
+            }
+        }
+
+        public int getConsecutiveFailures() {
+            synchronized (PrinterPool.this) {
+                return consecutiveFailures;
+            }
+        }
+
+        public boolean isEvicted() {
+            synchronized (PrinterPool.this) {
+                return evicted;
+            }
+        }
+
+        /** Quanto falta (estimado) pra essa impressora terminar o que já recebeu. */
+        public long getEstimatedDrainMs() {
+            synchronized (PrinterPool.this) {
+                return estimatedDrainMs();
+            }
+        }
+
+        /**
+         * Bytes/s efetivos: o menor entre o link e o papel (velocidade x linhas
+         * raster cheias da largura da cabeça do perfil). Subestima texto, mas é
+         * o pior caso que importa.
+         */
+        long bytesPerSecond() {
+            long paper = (long) Math.max(1, profile.getPrintSpeedMmPerSec()) * DOTS_PER_MM
+                    * profile.getHeadBytesPerRow();
+            int link = transport.getThroughputHint();
+            return (link > 0) ? Math.min(link, paper) : paper;
+        }
+
+        private long estimatedDrainMs() {
+            return queuedBytes * 1000L / bytesPerSecond();
+        }
+
+        /** DLE EOT 1; -1 se a impressora não respondeu no prazo. */
+        private int probeStatus() throws IOException {
+            if (!transport.isConnected()) throw new IOException("link fechado");
+            return printer.queryStatus(1, PROBE_TIMEOUT_MS);
+        }
+
+        private void onSuccess() {
+            consecutiveFailures = 0;
+            lastError = null;
+        }
+
+        /** @return motivo da remoção, ou null se ainda fica no pool */
+        private String onFailure(String why, int maxFailures) {
+            consecutiveFailures++;
+            lastError = why;
+            if (!transport.isConnected()) return why + " (link fechado)";
+            return consecutiveFailures >= maxFailures ? why + " (" + consecutiveFailures + "x)" : null;
+        }
+
+        @Override
+        public String toString() {
+            synchronized (PrinterPool.this) {
+                return key + "{fila=" + queuedJobs + " (" + queuedBytes + "B, ~" + estimatedDrainMs() + "ms)"
+                        + ", ok=" + completedJobs + ", falhas=" + failedJobs
+                        + (lastError != null ? ", último erro=" + lastError : "") + "}";
+            }
+        }
+    }
+}
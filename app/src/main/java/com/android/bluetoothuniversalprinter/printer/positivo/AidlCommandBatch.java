@@ -0,0 +1,295 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.graphics.Bitmap;
+import android.os.RemoteException;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.EscPosSymbology;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterSource;
+import com.xcheng.printerservice.IPrinterCallback;
+import com.xcheng.printerservice.IPrinterService;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cupom inteiro gravado como um programa ESC/POS local e enviado em poucos sendRAWData.
+ *
+ * Sem isso cada linha do cupom é uma chamada Binder síncrona
+ * (printTextWithAttributes, printWrapPaper, printQRCode, printBitmap...):
+ * dezenas de idas e voltas entre processos por cupom. Aqui cada operação
+ * vira um bloco de bytes e, no submit(), os blocos são juntados em payloads
+ * de até maxParcelBytes (o mesmo orçamento do AidlRasterSender).
+ *
+ * O que o caminho RAW não expressa vira uma chamada normal ao serviço, na
+ * mesma posição do cupom ("fallback" por operação):
+ *  - texto que o charset do firmware não codifica (ex.: "ã" em CP437);
+ *  - CODE128 fora do GS k (não ASCII / largo demais pra cabeça);
+ *  - imagens quando o sender não está em RAW_RASTER;
+ *  - qualquer addServiceCall explícito.
+ *
+ * Um bloco nunca é quebrado entre dois sendRAWData (o serviço pode tratar cada
+ * chamada como um job separado), e cada bloco devolve alinhamento/negrito/escala
+ * ao padrão no fim: um fallback no meio não herda o estilo. Não é thread-safe:
+ * um batch por cupom.
+ */
+public final class AidlCommandBatch {
+
+    /** Operação que só o serviço sabe fazer; roda na ordem, entre os payloads RAW. */
+    public interface ServiceCall {
+        void run(IPrinterService svc, IPrinterCallback cb) throws RemoteException;
+    }
+
+    /** Contagem de IPC de um submit(). */
+    public static final class Result {
+        final int operations;
+        final int rawCalls;
+        final int fallbackCalls;
+        final long rawBytes;
+
+        Result(int operations, int rawCalls, int fallbackCalls, long rawBytes) {
+            this.operations = operations;
+            this.rawCalls = rawCalls;
+            this.fallbackCalls = fallbackCalls;
+            this.rawBytes = rawBytes;
+        }
+
+        /** Chamadas que o cupom faria sem batch (uma por operação; imagem conta as fatias). */
+        public int getOperations() {
+            return operations;
+        }
+
+        public int getRawCalls() {
+            return rawCalls;
+        }
+
+        public int getFallbackCalls() {
+            return fallbackCalls;
+        }
+
+        /** IPCs de fato: sendRAWData + chamadas de fallback. */
+        public int getIpcCalls() {
+            return rawCalls + fallbackCalls;
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "batch: %d IPC (raw=%d, fallback=%d) em vez de %d, %d KB",
+                    getIpcCalls(), rawCalls, fallbackCalls, operations, (rawBytes + 1023) / 1024);
+        }
+    }
+
+    private final IPrinterService svc;
+    private final AidlRasterSender sender;
+    private final CharsetEncoder textEncoder;
+    private final int codePage;
+
+    /** byte[] (bloco ESC/POS) ou ServiceCall, na ordem do cupom. */
+    private final List<Object> ops = new ArrayList<>();
+    private int operations;
+
+    /**
+     * @param textCharset charset da tabela de caracteres do firmware
+     * @param codePage    n do ESC t correspondente (ou -1 pra não mandar ESC t)
+     */
+    public AidlCommandBatch(IPrinterService svc, AidlRasterSender sender, Charset textCharset, int codePage) {
+        this.svc = svc;
+        this.sender = sender;
+        this.textEncoder = textCharset.newEncoder();
+        this.codePage = codePage;
+    }
+
+    /** CP437 (tabela 0), a mesma do driver Bluetooth. */
+    public AidlCommandBatch(IPrinterService svc, AidlRasterSender sender) {
+        this(svc, sender, Charset.forName("CP437"), 0);
+    }
+
+    /**
+     * Linha de texto com "\n" no fim.
+     *
+     * @return false se o charset não codifica o texto (aí quem chamou manda pelo serviço)
+     */
+    public boolean addTextLine(String text, int align, boolean bold, int scale) {
+        if (text == null) text = "";
+        if (!textEncoder.canEncode(text)) return false;
+
+        byte[] body = text.getBytes(textEncoder.charset());
+        int mul = Math.max(0, Math.min(7, scale));
+        ByteArrayOutputStream b = new ByteArrayOutputStream(body.length + 10);
+        b.write(new byte[]{
+                0x1B, 0x61, (byte) clampAlign(align),   // ESC a n
+                0x1B, 0x45, (byte) (bold ? 1 : 0),      // ESC E n
+                0x1D, 0x21, (byte) ((mul << 4) | mul)   // GS ! n (largura/altura)
+        }, 0, 9);
+        b.write(body, 0, body.length);
+        b.write('\n');
+        if (bold) b.write(new byte[]{0x1B, 0x45, 0x00}, 0, 3);
+        if (mul != 0) b.write(new byte[]{0x1D, 0x21, 0x00}, 0, 3);
+        addBlock(endAligned(b, align));
+        return true;
+    }
+
+    /** Avanço de n linhas (ESC d n), equivalente ao printWrapPaper. */
+    public void addFeedLines(int n) {
+        addBlock(new byte[]{0x1B, 0x64, (byte) Math.max(0, Math.min(255, n))});
+    }
+
+    /** QR nativo (GS ( k), ECC M, seguido de LF. */
+    public void addQrCode(String data, int align, int moduleSize) {
+        byte[] qr = EscPosSymbology.qrCode(data.getBytes(StandardCharsets.UTF_8), moduleSize,
+                EscPosSymbology.QR_ECC_M);
+        ByteArrayOutputStream b = new ByteArrayOutputStream(qr.length + 4);
+        b.write(new byte[]{0x1B, 0x61, (byte) clampAlign(align)}, 0, 3);
+        b.write(qr, 0, qr.length);
+        b.write('\n');
+        addBlock(endAligned(b, align));
+    }
+
+    /**
+     * CODE128 via GS k; os dígitos (showText) vão como uma linha de texto embaixo.
+     *
+     * @return false se não dá pra mandar via GS k (quem chamou usa printBarCode do serviço)
+     */
+    public boolean addCode128(String data, int align, int widthPx, int heightPx, boolean showText) {
+        if (data == null || data.isEmpty()) return false;
+        // start + dados + checksum + stop (13 módulos)
+        int modules = 11 * (data.length() + 2) + 13;
+        int module = widthPx / modules;
+        if (module < EscPosSymbology.BARCODE_MIN_MODULE) module = EscPosSymbology.BARCODE_MIN_MODULE;
+        if (modules * module > sender.getMaxWidthDots()) return false;
+
+        byte[] code = EscPosSymbology.code128(data, module, heightPx);
+        if (code == null) return false;
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream(code.length + data.length() + 8);
+        b.write(new byte[]{0x1B, 0x61, (byte) clampAlign(align)}, 0, 3);
+        b.write(code, 0, code.length);
+        b.write('\n');
+        if (showText) {
+            byte[] hri = data.getBytes(StandardCharsets.US_ASCII);
+            b.write(hri, 0, hri.length);
+            b.write('\n');
+        }
+        addBlock(endAligned(b, align));
+        return true;
+    }
+
+    /** Imagem binarizada aqui; fora do RAW_RASTER vai pelo sender na hora do submit. */
+    public void addBitmap(Bitmap bmp, int align) throws RemoteException {
+        if (bmp == null) return;
+        if (sender.getMode() != AidlRasterSender.Mode.RAW_RASTER) {
+            addServiceCall((s, cb) -> sender.printBitmap(bmp, align, cb));
+            return;
+        }
+        addRaster(sender.rasterize(bmp), align);
+    }
+
+    /** Raster 1bpp nos mesmos blocos GS v 0 do AidlRasterSender (cada um cabe num Parcel). */
+    public void addRaster(RasterSource src, int align) throws RemoteException {
+        if (src.getHeight() <= 0 || src.getWidth() <= 0) return;
+        sender.encodeRaw(src, align, block -> addBlock(block.clone()));
+        if (clampAlign(align) != 0) addBlock(new byte[]{0x1B, 0x61, 0x00});
+    }
+
+    /** Operação que o caminho RAW não cobre; conta como uma IPC própria. */
+    public void addServiceCall(ServiceCall call) {
+        ops.add(call);
+        operations++;
+    }
+
+    /** Operações gravadas até agora (o que seriam IPCs sem batch). */
+    public int size() {
+        return operations;
+    }
+
+    /**
+     * Envia tudo, juntando blocos vizinhos até maxParcelBytes por sendRAWData.
+     * Depois do submit o batch fica vazio (pode ser reaproveitado).
+     */
+    public Result submit(IPrinterCallback cb) throws RemoteException {
+        if (ops.isEmpty()) return new Result(0, 0, 0, 0);
+        AidlTransferStats stats = sender.getStats();
+        int budget = sender.getMaxParcelBytes() - AidlRasterSender.PARCEL_OVERHEAD;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(budget, 16 * 1024));
+        int rawCalls = 0;
+        int fallbackCalls = 0;
+        long rawBytes = 0;
+
+        try {
+            boolean pageSelected = codePage < 0;
+            for (Object op : ops) {
+                if (op instanceof byte[]) {
+                    byte[] block = (byte[]) op;
+                    if (!pageSelected) {
+                        payload.write(new byte[]{0x1B, 0x74, (byte) codePage}, 0, 3); // ESC t n
+                        pageSelected = true;
+                    }
+                    if (payload.size() > 0 && payload.size() + block.length > budget) {
+                        rawBytes += sendRaw(payload, cb, stats);
+                        rawCalls++;
+                    }
+                    payload.write(block, 0, block.length);
+                } else {
+                    if (payload.size() > 0) {
+                        rawBytes += sendRaw(payload, cb, stats);
+                        rawCalls++;
+                    }
+                    long before = stats.getCalls();
+                    long t0 = System.nanoTime();
+                    ((ServiceCall) op).run(svc, cb);
+                    // imagem pelo sender já registrou as fatias; o resto conta como uma chamada
+                    long n = stats.getCalls() - before;
+                    if (n == 0) {
+                        stats.record(AidlRasterSender.PARCEL_OVERHEAD, System.nanoTime() - t0);
+                        n = 1;
+                    }
+                    fallbackCalls += n;
+                }
+            }
+            if (payload.size() > 0) {
+                rawBytes += sendRaw(payload, cb, stats);
+                rawCalls++;
+            }
+        } finally {
+            ops.clear();
+        }
+        Result r = new Result(operations, rawCalls, fallbackCalls, rawBytes);
+        operations = 0;
+        return r;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /** ESC a 0 no fim do bloco se ele mudou o alinhamento. */
+    private static byte[] endAligned(ByteArrayOutputStream b, int align) {
+        if (clampAlign(align) != 0) b.write(new byte[]{0x1B, 0x61, 0x00}, 0, 3);
+        return b.toByteArray();
+    }
+
+    private void addBlock(byte[] block) {
+        ops.add(block);
+        operations++;
+    }
+
+    private long sendRaw(ByteArrayOutputStream payload, IPrinterCallback cb, AidlTransferStats stats)
+            throws RemoteException {
+        byte[] data = payload.toByteArray();
+        payload.reset();
+        long t0 = System.nanoTime();
+        svc.sendRAWData(data, cb);
+        stats.record(AidlRasterSender.estimateRawParcelBytes(data.length), System.nanoTime() - t0);
+        return data.length;
+    }
+
+    private static int clampAlign(int align) {
+        return Math.max(0, Math.min(2, align));
+    }
+}
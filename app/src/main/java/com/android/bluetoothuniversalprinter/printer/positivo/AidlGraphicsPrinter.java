@@ -27,7 +27,9 @@ import java.util.List;
  * Ideia:
  * - Gera bitmaps com círculos numerados, caixas arredondadas numeradas,
  *   e parágrafo dentro de caixa arredondada.
- * - Manda esses bitmaps pra POS via IPrinterService.printBitmap().
+ * - Manda esses bitmaps pra POS via AidlRasterSender: binariza aqui e envia
+ *   raster 1bpp em blocos pelo sendRAWData (printBitmap com ARGB inteiro
+ *   estourava o Binder em imagens altas).
  *
  * Observação importante:
  *  Papel 58mm típico = ~384 dots úteis.
@@ -43,10 +45,17 @@ public class AidlGraphicsPrinter {
 
     private final IPrinterService svc;
     private final IPrinterCallback cb;
+    private final AidlRasterSender sender;
 
     public AidlGraphicsPrinter(IPrinterService svc, IPrinterCallback cb) {
         this.svc = svc;
         this.cb = cb;
+        this.sender = new AidlRasterSender(svc);
+    }
+
+    /** Modo de envio das imagens e contadores de Parcel/latência. */
+    public AidlRasterSender getSender() {
+        return sender;
     }
 
     /* ---------------------------------------------------------
@@ -88,7 +97,7 @@ public class AidlGraphicsPrinter {
         gridBmp = ensureMaxWidth(gridBmp);
 
         if (gridBmp != null) {
-            svc.printBitmap(gridBmp, cb);
+            sender.printBitmap(gridBmp, 1, cb);
             svc.printWrapPaper(2, cb); // alimenta papel depois
         } else {
             Log.e(TAG, "printCircleGrid: gridBmp nulo");
@@ -230,7 +239,7 @@ public class AidlGraphicsPrinter {
         gridBmp = ensureMaxWidth(gridBmp);
 
         if (gridBmp != null) {
-            svc.printBitmap(gridBmp, cb);
+            sender.printBitmap(gridBmp, 1, cb);
             svc.printWrapPaper(2, cb);
         } else {
             Log.e(TAG, "printRoundedGrid: gridBmp nulo");
@@ -351,7 +360,7 @@ public class AidlGraphicsPrinter {
         boxBmp = ensureMaxWidth(boxBmp);
 
         if (boxBmp != null) {
-            svc.printBitmap(boxBmp, cb);
+            sender.printBitmap(boxBmp, 0, cb);
             svc.printWrapPaper(2, cb);
         } else {
             Log.e(TAG, "printParagraphInRoundedBox: boxBmp nulo");
@@ -504,8 +513,8 @@ public class AidlGraphicsPrinter {
             return;
         }
 
-        // manda o bitmap pro firmware interno da impressora POSITIVO/L500
-        svc.printBitmap(bmp, cb);
+        // manda o raster (já binarizado) pro firmware interno da impressora POSITIVO/L500
+        sender.printBitmap(bmp, align, cb);
 
         // alimenta papel
         svc.printWrapPaper(2, cb);
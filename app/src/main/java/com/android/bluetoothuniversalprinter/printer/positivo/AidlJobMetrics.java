@@ -0,0 +1,200 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import java.util.Locale;
+
+/**
+ * Medidas de UM job no serviço AIDL, a partir do progresso que ele reporta.
+ *
+ *  - onLength(atual, total)     : bytes já processados pelo serviço
+ *  - onRealLength(atual, total) : mm de papel já impressos
+ *
+ * Daí saem bytes/s e mm/s (na janela entre o primeiro e o último progresso,
+ * sem a latência inicial), o tempo até o primeiro progresso (fila do serviço
+ * + aquecimento da cabeça) e as travadas: intervalos sem progresso maiores
+ * que stallNanos. A travada é contada ao vivo por checkStall() (watchdog) ou,
+ * sem watchdog, quando o progresso volta depois do buraco.
+ *
+ * Tempos em System.nanoTime(). Thread-safe (callbacks chegam em threads do Binder).
+ */
+public final class AidlJobMetrics {
+
+    private final String label;
+    private final String deviceModel;
+    private final int speedLevel;
+    private final long stallNanos;
+    private final long issuedNanos;
+
+    private long firstProgressNanos = -1;
+    private long lastEventNanos;
+    private long endNanos = -1;
+    private boolean ok;
+
+    private long bytes;
+    private long bytesTotal;
+    private long firstBytes = -1;
+    private double mm;
+    private double mmTotal;
+    private double firstMm = -1;
+    private long firstMmNanos = -1;
+    private long lastMmNanos = -1;
+    private long lastBytesNanos = -1;
+    private long firstBytesNanos = -1;
+
+    private int stalls;
+    private boolean stallOpen;
+    private long longestGapNanos;
+
+    AidlJobMetrics(String label, String deviceModel, int speedLevel, long stallNanos, long issuedNanos) {
+        this.label = label;
+        this.deviceModel = deviceModel;
+        this.speedLevel = speedLevel;
+        this.stallNanos = stallNanos;
+        this.issuedNanos = issuedNanos;
+        this.lastEventNanos = issuedNanos;
+    }
+
+    synchronized void onLength(long current, long total, long now) {
+        progress(now);
+        if (firstBytes < 0) {
+            firstBytes = current;
+            firstBytesNanos = now;
+        }
+        bytes = current;
+        bytesTotal = total;
+        lastBytesNanos = now;
+    }
+
+    synchronized void onRealLength(double current, double total, long now) {
+        progress(now);
+        if (firstMm < 0) {
+            firstMm = current;
+            firstMmNanos = now;
+        }
+        mm = current;
+        mmTotal = total;
+        lastMmNanos = now;
+    }
+
+    /** Watchdog: true quando começa uma travada nova (uma vez por buraco). */
+    synchronized boolean checkStall(long now) {
+        if (endNanos >= 0 || stallOpen) return false;
+        if (now - lastEventNanos <= stallNanos) return false;
+        stallOpen = true;
+        stalls++;
+        return true;
+    }
+
+    /** @return false se já tinha terminado */
+    synchronized boolean finish(long now, boolean ok) {
+        if (endNanos >= 0) return false;
+        endNanos = now;
+        this.ok = ok;
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDeviceModel() {
+        return deviceModel;
+    }
+
+    /** Nível do setPrinterSpeed em vigor quando o job saiu (-1 = desconhecido). */
+    public int getSpeedLevel() {
+        return speedLevel;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public synchronized double getMm() {
+        return mm;
+    }
+
+    public synchronized double getMmTotal() {
+        return mmTotal;
+    }
+
+    public synchronized boolean isFinished() {
+        return endNanos >= 0;
+    }
+
+    /** Terminou com onComplete (false: erro, timeout ou ainda rodando). */
+    public synchronized boolean isOk() {
+        return ok;
+    }
+
+    /** Envio -> primeiro onLength/onRealLength, em ms (-1 se não houve progresso). */
+    public synchronized double getTimeToFirstProgressMs() {
+        return firstProgressNanos < 0 ? -1 : (firstProgressNanos - issuedNanos) / 1e6;
+    }
+
+    /** Envio -> fim (ou até agora, se rodando). */
+    public synchronized double getDurationMs() {
+        long end = endNanos >= 0 ? endNanos : System.nanoTime();
+        return (end - issuedNanos) / 1e6;
+    }
+
+    /** Bytes/s entre o primeiro e o último onLength (0 sem dados). */
+    public synchronized double getBytesPerSecond() {
+        return rate(firstBytes, bytes, firstBytesNanos, lastBytesNanos);
+    }
+
+    /** mm/s entre o primeiro e o último onRealLength (0 sem dados). */
+    public synchronized double getMmPerSecond() {
+        return rate(firstMm, mm, firstMmNanos, lastMmNanos);
+    }
+
+    public synchronized int getStalls() {
+        return stalls;
+    }
+
+    /** Maior intervalo sem progresso, em ms. */
+    public synchronized double getLongestGapMs() {
+        return longestGapNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "%s[%s v%d]: %s em %.0fms, 1º progresso %.0fms, %.0f B/s, %.1f mm/s, %d travada(s), maior buraco %.0fms",
+                label, deviceModel, speedLevel, endNanos < 0 ? "rodando" : (ok ? "ok" : "falhou"),
+                getDurationMs(), getTimeToFirstProgressMs(), getBytesPerSecond(), getMmPerSecond(),
+                stalls, getLongestGapMs());
+    }
+
+    // ------------------------------------------------------------------------
+
+    private void progress(long now) {
+        long gap = now - lastEventNanos;
+        if (firstProgressNanos < 0) {
+            firstProgressNanos = now; // a espera inicial é o "tempo até o 1º progresso", não buraco
+        } else {
+            if (gap > longestGapNanos) longestGapNanos = gap;
+            if (gap > stallNanos && !stallOpen) stalls++; // travou e voltou sem watchdog ver
+        }
+        stallOpen = false;
+        lastEventNanos = now;
+    }
+
+    /**
+     * Taxa na janela de progresso. Com um evento só (ou janela zero) usa do
+     * envio até ele, que é o melhor que dá.
+     */
+    private double rate(double first, double last, long firstNanos, long lastNanos) {
+        if (firstNanos < 0) return 0;
+        if (lastNanos > firstNanos && last > first) {
+            return (last - first) * 1e9 / (lastNanos - firstNanos);
+        }
+        long dt = lastNanos - issuedNanos;
+        return dt > 0 ? last * 1e9 / dt : 0;
+    }
+}
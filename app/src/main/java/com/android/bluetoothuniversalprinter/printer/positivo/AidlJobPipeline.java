@@ -0,0 +1,280 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.os.RemoteException;
+
+import com.xcheng.printerservice.IPrinterCallback;
+
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fila das operações pro serviço AIDL com no máximo N jobs em voo.
+ *
+ * Antes cada método do PrinterManager fazia a chamada Binder na hora e
+ * esquecia: quem imprimia em sequência ou inundava a fila interna do
+ * serviço (processo do fabricante, sem limite) ou colocava sleep.
+ *
+ * Aqui:
+ *  - as chamadas saem de UMA thread ("aidl-ipc"), na ordem de submit();
+ *  - antes de mandar a próxima, espera ter menos de maxInFlight operações
+ *    sem onComplete (pipelining: o serviço já tem a próxima na mão quando
+ *    termina a atual, mas a fila dele não cresce);
+ *  - cada operação tem timeout a partir do envio: sem onComplete/onException
+ *    nesse tempo, o PrintFuture falha com TimeoutException e o slot é liberado.
+ *
+ * Com setTelemetry(), cada operação enviada ganha um AidlJobMetrics
+ * (progresso, travadas) e um watchdog no mesmo timer. Com setGate(), uma
+ * checagem roda na thread aidl-ipc antes de cada envio (ver AidlSpeedController).
+ *
+ * A espera (fila) fica no nosso processo. Java puro, thread-safe.
+ */
+public final class AidlJobPipeline {
+
+    /** Uma operação: faz as chamadas Binder passando cb como callback. */
+    public interface Op {
+        void run(IPrinterCallback cb) throws RemoteException;
+    }
+
+    /**
+     * Roda na thread aidl-ipc antes de cada envio, já com o slot em voo: dá
+     * pra consultar o serviço entre um job e outro (papel, temperatura) sem
+     * competir com as chamadas da fila. Exceção = o job falha sem ser enviado.
+     */
+    public interface Gate {
+        /** @param idle nada em voo antes deste job (início de uma sequência) */
+        void beforeIssue(String label, boolean idle) throws Exception;
+    }
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    public static final long DEFAULT_TIMEOUT_MS = 30_000L;
+
+    private final AidlTransferStats stats;
+    private final ThreadPoolExecutor ipc;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final Object flightLock = new Object();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int inFlight;
+    private volatile long timeoutMs = DEFAULT_TIMEOUT_MS;
+    private volatile AidlTelemetry telemetry;
+    private volatile Gate gate;
+
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long timedOut;
+    private int maxObservedInFlight;
+
+    /** @param stats onde as chamadas sem contagem própria são registradas (uma por operação) */
+    public AidlJobPipeline(AidlTransferStats stats) {
+        this.stats = stats;
+        this.ipc = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> daemon(r, "aidl-ipc"));
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> daemon(r, "aidl-timeout"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public void setMaxInFlight(int n) {
+        synchronized (flightLock) {
+            maxInFlight = Math.max(1, n);
+            flightLock.notifyAll();
+        }
+    }
+
+    public void setTimeoutMs(long ms) {
+        this.timeoutMs = Math.max(1, ms);
+    }
+
+    /** Mede progresso/travadas de cada operação enviada (null = desliga). */
+    public void setTelemetry(AidlTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /** Checagem antes de cada envio (null = nenhuma). */
+    public void setGate(Gate gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * Enfileira a operação; volta na hora.
+     *
+     * @param delegate recebe os eventos do serviço também (log/UI); pode ser null
+     */
+    public PrintFuture submit(String label, IPrinterCallback delegate, Op op) {
+        PrintFuture f = new PrintFuture(label, delegate);
+        AtomicBoolean holding = new AtomicBoolean();
+        f.whenDone((future, error) -> {
+            if (holding.compareAndSet(true, false)) release();
+            synchronized (flightLock) {
+                if (error == null) completed++;
+                else failed++;
+                if (error instanceof TimeoutException) timedOut++;
+            }
+        });
+        synchronized (flightLock) {
+            submitted++;
+        }
+        try {
+            ipc.execute(new Issue(f, holding, op));
+        } catch (RejectedExecutionException e) {
+            f.fail(e);
+        }
+        return f;
+    }
+
+    /** Operações enviadas e ainda sem resposta. */
+    public int getInFlight() {
+        synchronized (flightLock) {
+            return inFlight;
+        }
+    }
+
+    /** Esperando a vez (no nosso processo). */
+    public int getQueued() {
+        return ipc.getQueue().size();
+    }
+
+    public int getMaxObservedInFlight() {
+        synchronized (flightLock) {
+            return maxObservedInFlight;
+        }
+    }
+
+    /** Para as threads; o que estava na fila falha com cancelamento. */
+    public void shutdown() {
+        for (Runnable r : ipc.shutdownNow()) {
+            if (r instanceof Issue) ((Issue) r).future.cancel(false);
+        }
+        timer.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (flightLock) {
+            return String.format(Locale.ROOT,
+                    "AidlJobPipeline{em voo=%d/%d (máx %d), fila=%d, enviados=%d, ok=%d, falhas=%d, timeouts=%d}",
+                    inFlight, maxInFlight, maxObservedInFlight, getQueued(), submitted, completed, failed, timedOut);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /** Tarefa da thread aidl-ipc (classe pra shutdown() achar o future das que não rodaram). */
+    private final class Issue implements Runnable {
+        final PrintFuture future;
+        final AtomicBoolean holding;
+        final Op op;
+
+        Issue(PrintFuture future, AtomicBoolean holding, Op op) {
+            this.future = future;
+            this.holding = holding;
+            this.op = op;
+        }
+
+        @Override
+        public void run() {
+            issue(future, holding, op);
+        }
+    }
+
+    private void issue(PrintFuture f, AtomicBoolean holding, Op op) {
+        if (f.isDone()) return; // cancelado enquanto esperava na fila
+        boolean idle;
+        try {
+            idle = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.fail(e);
+            return;
+        }
+        holding.set(true);
+        if (f.isDone()) {
+            // cancelado entre a fila e o slot
+            if (holding.compareAndSet(true, false)) release();
+            return;
+        }
+
+        Gate g = gate;
+        if (g != null) {
+            try {
+                g.beforeIssue(f.getLabel(), idle);
+            } catch (Exception e) {
+                f.fail(e); // libera o slot pelo whenDone
+                return;
+            }
+        }
+
+        AidlTelemetry t = telemetry;
+        AidlJobMetrics m = null;
+        if (t != null) {
+            m = t.begin(f.getLabel());
+            f.track(t, m); // antes do envio: o progresso pode chegar antes de op.run voltar
+        }
+
+        long before = stats.getCalls();
+        long t0 = System.nanoTime();
+        try {
+            op.run(f);
+        } catch (RemoteException | RuntimeException e) {
+            if (m != null) t.finish(m, false);
+            f.fail(e);
+            return;
+        }
+        long calls = stats.getCalls() - before;
+        if (calls == 0) {
+            // chamada simples (texto, QR, avanço): conta aqui
+            stats.record(AidlRasterSender.PARCEL_OVERHEAD, System.nanoTime() - t0);
+            calls = 1;
+        }
+
+        long limit = timeoutMs;
+        ScheduledFuture<?> timeout = timer.schedule(
+                () -> f.fail(new TimeoutException(f.getLabel() + ": sem resposta do serviço em " + limit + "ms")),
+                limit, TimeUnit.MILLISECONDS);
+        f.whenDone((future, error) -> timeout.cancel(false));
+        if (m != null) watch(f, t, m);
+        f.seal((int) calls);
+    }
+
+    /** Watchdog de travada enquanto o job roda + fecha as métricas no fim. */
+    private void watch(PrintFuture f, AidlTelemetry t, AidlJobMetrics m) {
+        long period = Math.max(1, t.getStallMs() / 2);
+        ScheduledFuture<?> check = timer.scheduleWithFixedDelay(() -> t.check(m),
+                period, period, TimeUnit.MILLISECONDS);
+        f.whenDone((future, error) -> {
+            check.cancel(false);
+            t.finish(m, error == null);
+        });
+    }
+
+    /** @return true se não tinha nada em voo */
+    private boolean acquire() throws InterruptedException {
+        synchronized (flightLock) {
+            while (inFlight >= maxInFlight) flightLock.wait();
+            boolean idle = inFlight == 0;
+            inFlight++;
+            if (inFlight > maxObservedInFlight) maxObservedInFlight = inFlight;
+            return idle;
+        }
+    }
+
+    private void release() {
+        synchronized (flightLock) {
+            inFlight--;
+            flightLock.notifyAll();
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
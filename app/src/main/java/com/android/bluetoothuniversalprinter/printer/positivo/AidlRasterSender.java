@@ -0,0 +1,246 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.graphics.Bitmap;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BitmapRasterizer;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.DitherMode;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterSource;
+import com.xcheng.printerservice.IPrinterCallback;
+import com.xcheng.printerservice.IPrinterService;
+
+/**
+ * Caminho de imagem econômico em Binder pro serviço AIDL (POSITIVO / L500).
+ *
+ * O problema: IPrinterService.printBitmap recebe o Bitmap ARGB_8888 inteiro,
+ * 4 bytes por pixel. Um cupom de 384x3000 dá ~4.6 MB num Parcel, e o buffer
+ * de transação do Binder é ~1 MB por processo (compartilhado com todas as
+ * chamadas em voo): estoura com TransactionTooLargeException ou a imagem
+ * simplesmente não sai.
+ *
+ * Aqui a imagem é binarizada no app (BitmapRasterizer, mesmo motor do
+ * Bluetooth) e vai de um dos jeitos:
+ *
+ *  - RAW_RASTER    (padrão): GS v 0 já empacotado (1 bit por pixel, 32x menor)
+ *                  via sendRAWData, em blocos de linhas que cabem em maxParcelBytes.
+ *  - BITMAP_CHUNKS : pro firmware que ignora sendRAWData. Fatias ARGB já em
+ *                  preto/branco, cada uma abaixo de maxParcelBytes, via printBitmap.
+ *  - LEGACY_BITMAP : o comportamento antigo (um printBitmap com tudo); só pra comparar.
+ *
+ * Cada transação passa por AidlTransferStats (Parcel estimado + latência).
+ *
+ * O buffer do bloco é reaproveitado (encodeRaw sincronizado): o batch pode gravar
+ * na thread de quem chama enquanto a thread aidl-ipc envia outra imagem.
+ */
+public final class AidlRasterSender {
+
+    private static final String TAG = "AidlRasterSender";
+
+    /** Buffer de transação do Binder por processo. */
+    public static final int BINDER_LIMIT_BYTES = 1024 * 1024;
+
+    /**
+     * Orçamento por chamada. Bem abaixo do limite porque o buffer é dividido
+     * com as outras transações do processo (callbacks oneway, outros serviços).
+     */
+    public static final int DEFAULT_MAX_PARCEL_BYTES = 128 * 1024;
+
+    /** Token da interface + binder do callback + cabeçalhos do Parcel (estimativa folgada). */
+    static final int PARCEL_OVERHEAD = 160;
+
+    /** Campos do Bitmap no Parcel antes dos pixels (config, dimensões, densidade, blob). */
+    static final int BITMAP_PARCEL_HEADER = 64;
+
+    /** ESC a n + GS v 0 m xL xH yL yH na frente de cada bloco. */
+    static final int RAW_HEADER = 3 + 8;
+
+    /** yL yH do GS v 0. */
+    private static final int MAX_ROWS_PER_COMMAND = 0xFFFF;
+
+    public enum Mode { RAW_RASTER, BITMAP_CHUNKS, LEGACY_BITMAP }
+
+    /** Recebe cada bloco ESC a + GS v 0 pronto; o array pode ser reaproveitado depois da chamada. */
+    interface ChunkSink {
+        void chunk(byte[] block) throws RemoteException;
+    }
+
+    private final IPrinterService svc;
+    private final AidlTransferStats stats;
+
+    private Mode mode = Mode.RAW_RASTER;
+    private int maxParcelBytes = DEFAULT_MAX_PARCEL_BYTES;
+    private int maxWidthDots = 384;
+    private DitherMode ditherMode = DitherMode.THRESHOLD;
+
+    // bloco cheio reaproveitado (o Binder copia durante a chamada; depois dela pode reusar)
+    private byte[] chunk;
+
+    public AidlRasterSender(IPrinterService svc, AidlTransferStats stats) {
+        this.svc = svc;
+        this.stats = (stats != null) ? stats : new AidlTransferStats();
+    }
+
+    public AidlRasterSender(IPrinterService svc) {
+        this(svc, null);
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Teto de bytes por transação (limitado a metade do buffer do Binder). */
+    public void setMaxParcelBytes(int bytes) {
+        this.maxParcelBytes = Math.max(4 * 1024, Math.min(BINDER_LIMIT_BYTES / 2, bytes));
+    }
+
+    public int getMaxParcelBytes() {
+        return maxParcelBytes;
+    }
+
+    public void setMaxWidthDots(int dots) {
+        this.maxWidthDots = dots;
+    }
+
+    public int getMaxWidthDots() {
+        return maxWidthDots;
+    }
+
+    public void setDitherMode(DitherMode mode) {
+        this.ditherMode = mode;
+    }
+
+    public AidlTransferStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Imprime um bitmap (reduzido pra maxWidthDots se precisar).
+     *
+     * @param align 0=esquerda, 1=centro, 2=direita
+     */
+    public void printBitmap(Bitmap bmp, int align, IPrinterCallback cb) throws RemoteException {
+        if (bmp == null) return;
+        if (mode == Mode.LEGACY_BITMAP) {
+            long parcel = estimateBitmapParcelBytes(bmp.getWidth(), bmp.getHeight());
+            if (parcel > BINDER_LIMIT_BYTES) {
+                Log.w(TAG, "printBitmap legado com ~" + parcel / 1024 + " KB: deve estourar o Binder");
+            }
+            long t0 = System.nanoTime();
+            svc.printBitmap(bmp, cb);
+            stats.record(parcel, System.nanoTime() - t0);
+            return;
+        }
+        printRaster(rasterize(bmp), align, cb);
+    }
+
+    /** Binarização local com a largura e o pontilhado configurados. */
+    RasterSource rasterize(Bitmap bmp) {
+        return BitmapRasterizer.forPrinter(bmp, maxWidthDots, ditherMode);
+    }
+
+    /** Raster 1bpp já pronto (qualquer RasterSource), em blocos abaixo de maxParcelBytes. */
+    public void printRaster(RasterSource src, int align, IPrinterCallback cb) throws RemoteException {
+        if (src.getHeight() <= 0 || src.getWidth() <= 0) return;
+        if (mode == Mode.BITMAP_CHUNKS) {
+            sendBitmapChunks(src, cb);
+        } else {
+            sendRawChunks(src, align, cb);
+        }
+    }
+
+    /** Linhas por bloco do sendRAWData pra esse bytesPerRow. */
+    public int rawRowsPerChunk(int bytesPerRow) {
+        int rows = (maxParcelBytes - PARCEL_OVERHEAD - RAW_HEADER) / Math.max(1, bytesPerRow);
+        return Math.max(1, Math.min(MAX_ROWS_PER_COMMAND, rows));
+    }
+
+    /** Linhas por fatia ARGB (4 bytes/pixel) pra essa largura. */
+    public int bitmapRowsPerChunk(int widthPx) {
+        int rows = (maxParcelBytes - PARCEL_OVERHEAD - BITMAP_PARCEL_HEADER) / (4 * Math.max(1, widthPx));
+        return Math.max(1, rows);
+    }
+
+    /** Parcel do sendRAWData(byte[], cb): comprimento + dados alinhados em 4. */
+    static long estimateRawParcelBytes(int payloadBytes) {
+        return PARCEL_OVERHEAD + 4 + ((payloadBytes + 3L) & ~3L);
+    }
+
+    /** Parcel do printBitmap(Bitmap, cb) com ARGB_8888 copiado no buffer. */
+    static long estimateBitmapParcelBytes(int widthPx, int heightPx) {
+        return PARCEL_OVERHEAD + BITMAP_PARCEL_HEADER + 4L * widthPx * heightPx;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private void sendRawChunks(RasterSource src, int align, IPrinterCallback cb) throws RemoteException {
+        encodeRaw(src, align, block -> {
+            long t0 = System.nanoTime();
+            svc.sendRAWData(block, cb);
+            stats.record(estimateRawParcelBytes(block.length), System.nanoTime() - t0);
+        });
+    }
+
+    /** Fatia o raster em blocos ESC a + GS v 0 que cabem em maxParcelBytes (também usado pelo AidlCommandBatch). */
+    synchronized void encodeRaw(RasterSource src, int align, ChunkSink sink) throws RemoteException {
+        final int bpr = src.getBytesPerRow();
+        final int height = src.getHeight();
+        final int step = rawRowsPerChunk(bpr);
+
+        int full = RAW_HEADER + step * bpr;
+        if (chunk == null || chunk.length != full) chunk = new byte[full];
+
+        for (int y = 0; y < height; y += step) {
+            int rows = Math.min(step, height - y);
+            // último bloco menor: array do tamanho exato (sendRAWData manda o array inteiro)
+            byte[] buf = (rows == step) ? chunk : new byte[RAW_HEADER + rows * bpr];
+            buf[0] = 0x1B;
+            buf[1] = 0x61;
+            buf[2] = (byte) Math.max(0, Math.min(2, align));
+            buf[3] = 0x1D;
+            buf[4] = 0x76;
+            buf[5] = 0x30;
+            buf[6] = 0x00;
+            buf[7] = (byte) (bpr & 0xFF);
+            buf[8] = (byte) ((bpr >> 8) & 0xFF);
+            buf[9] = (byte) (rows & 0xFF);
+            buf[10] = (byte) ((rows >> 8) & 0xFF);
+            src.packRows(y, rows, buf, RAW_HEADER);
+            sink.chunk(buf);
+        }
+    }
+
+    private void sendBitmapChunks(RasterSource src, IPrinterCallback cb) throws RemoteException {
+        final int w = src.getWidth();
+        final int bpr = src.getBytesPerRow();
+        final int height = src.getHeight();
+        final int step = bitmapRowsPerChunk(w);
+
+        byte[] packed = new byte[step * bpr];
+        int[] argb = new int[w * step];
+
+        for (int y = 0; y < height; y += step) {
+            int rows = Math.min(step, height - y);
+            src.packRows(y, rows, packed, 0);
+            for (int r = 0; r < rows; r++) {
+                int rowOff = r * bpr;
+                int px = r * w;
+                for (int x = 0; x < w; x++) {
+                    boolean black = (packed[rowOff + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+                    argb[px + x] = black ? 0xFF000000 : 0xFFFFFFFF;
+                }
+            }
+            Bitmap slice = Bitmap.createBitmap(w, rows, Bitmap.Config.ARGB_8888);
+            slice.setPixels(argb, 0, w, 0, 0, w, rows);
+
+            long t0 = System.nanoTime();
+            svc.printBitmap(slice, cb);
+            stats.record(estimateBitmapParcelBytes(w, rows), System.nanoTime() - t0);
+            slice.recycle();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.xcheng.printerservice.IPrinterCallback;
+import com.xcheng.printerservice.IPrinterService;
+
+import java.util.Locale;
+
+/**
+ * Ajusta a velocidade da cabeça pela temperatura e confere o papel antes de
+ * mandar o job (printerTemperature / printerPaper / setPrinterSpeed do AIDL).
+ *
+ * Em cupom longo a cabeça esquenta e o firmware reduz sozinho ou dá erro no
+ * meio. Aqui, entre um job e outro (Gate do AidlJobPipeline, thread aidl-ipc):
+ *
+ *  - papel: consulta no início de cada sequência (nada em voo) e depois a cada
+ *    paperCheckMs; sem papel o job falha com PaperOutException SEM ser enviado;
+ *  - temperatura: no máximo uma leitura a cada sampleIntervalMs. A decisão usa
+ *    a leitura projetada lookaheadMs à frente (pela tendência entre as duas
+ *    últimas), pra baixar ANTES de chegar no limite:
+ *      >= criticalC       -> nível mínimo na hora
+ *      projetada >= hotC  -> desce um nível
+ *      <= coolC por raiseAfterSamples leituras seguidas, e changeCooldownMs
+ *      desde a última troca -> sobe um nível
+ *      entre os dois      -> mantém
+ *
+ * O nível atual é o da AidlTelemetry (o mesmo que o setPrinterSpeed manual
+ * atualiza); cada troca vai pro log com o throughput medido no nível anterior.
+ *
+ * Níveis e temperaturas dependem do firmware (°C e 1..5 são o comum):
+ * ajuste pelos setters. Leitura fora de 0..150 é ignorada.
+ */
+public final class AidlSpeedController implements AidlJobPipeline.Gate {
+
+    private static final String TAG = "AidlSpeedController";
+
+    /** Serviço disse que não tem papel: o job nem foi enviado. */
+    public static final class PaperOutException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public PaperOutException(String label) {
+            super(label + ": impressora sem papel (job não enviado)");
+        }
+    }
+
+    /** Trocas de velocidade, na thread aidl-ipc. */
+    public interface Listener {
+        void onSpeedChanged(int from, int to, int temperature, String reason);
+    }
+
+    private final AidlTelemetry telemetry;
+    private final IPrinterCallback quiet = new QuietCallback();
+
+    private volatile IPrinterService service;
+    private volatile Listener listener;
+    private volatile boolean adaptive = true;
+    private volatile boolean paperCheck = true;
+
+    private int minLevel = 1;
+    private int maxLevel = 5;
+    private int startLevel = 3;
+    private int coolC = 45;
+    private int hotC = 60;
+    private int criticalC = 70;
+    private int raiseAfterSamples = 3;
+    private long sampleIntervalNanos = 1000 * 1_000_000L;
+    private long changeCooldownNanos = 5000 * 1_000_000L;
+    private long lookaheadNanos = 10_000 * 1_000_000L;
+    private long paperCheckNanos = 5000 * 1_000_000L;
+
+    // estado (thread aidl-ipc; getters sincronizados)
+    private boolean sampled;
+    private long lastSampleNanos;
+    private int lastTemperature = -1;
+    private long lastReadingNanos;
+    private boolean changed;
+    private long lastChangeNanos;
+    private int coolStreak;
+    private boolean paperChecked;
+    private long lastPaperNanos;
+
+    private long samples;
+    private long raises;
+    private long lowers;
+    private long paperChecks;
+    private long paperOuts;
+
+    public AidlSpeedController(AidlTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /** null enquanto desconectado (aí não consulta nada). */
+    public synchronized void setService(IPrinterService service) {
+        this.service = service;
+        // serviço novo: recomeça as leituras e a checagem de papel
+        sampled = false;
+        lastTemperature = -1;
+        changed = false;
+        coolStreak = 0;
+        paperChecked = false;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Liga/desliga o ajuste de velocidade (a checagem de papel é à parte). */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public void setPaperCheck(boolean paperCheck) {
+        this.paperCheck = paperCheck;
+    }
+
+    /** @param start nível aplicado na primeira leitura se ninguém chamou setPrinterSpeed */
+    public synchronized void setLevels(int min, int max, int start) {
+        minLevel = Math.min(min, max);
+        maxLevel = Math.max(min, max);
+        startLevel = Math.max(minLevel, Math.min(maxLevel, start));
+    }
+
+    /** Limites em °C: abaixo de cool sobe, projetada acima de hot desce, acima de critical vai pro mínimo. */
+    public synchronized void setThresholds(int coolC, int hotC, int criticalC) {
+        this.coolC = coolC;
+        this.hotC = Math.max(coolC, hotC);
+        this.criticalC = Math.max(this.hotC, criticalC);
+    }
+
+    public synchronized void setSampleIntervalMs(long ms) {
+        sampleIntervalNanos = Math.max(0, ms) * 1_000_000L;
+    }
+
+    public synchronized void setChangeCooldownMs(long ms) {
+        changeCooldownNanos = Math.max(0, ms) * 1_000_000L;
+    }
+
+    public synchronized void setRaiseAfterSamples(int n) {
+        raiseAfterSamples = Math.max(1, n);
+    }
+
+    /** Quanto à frente projetar a tendência (0 = só a leitura atual). */
+    public synchronized void setLookaheadMs(long ms) {
+        lookaheadNanos = Math.max(0, ms) * 1_000_000L;
+    }
+
+    public synchronized void setPaperCheckMs(long ms) {
+        paperCheckNanos = Math.max(0, ms) * 1_000_000L;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Gate
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void beforeIssue(String label, boolean idle) throws PaperOutException {
+        IPrinterService svc = service;
+        if (svc == null) return;
+        long now = System.nanoTime();
+        if (paperCheck && paperDue(idle, now)) checkPaper(svc, label, now);
+        if (adaptive && sampleDue(now)) sample(svc, now);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public synchronized int getLastTemperature() {
+        return lastTemperature;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized long getRaises() {
+        return raises;
+    }
+
+    public synchronized long getLowers() {
+        return lowers;
+    }
+
+    public synchronized long getPaperOuts() {
+        return paperOuts;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "AidlSpeedController{v%d (%d..%d), %d°C, leituras=%d, subidas=%d, descidas=%d, papel=%d checagens/%d sem papel}",
+                telemetry.getSpeedLevel(), minLevel, maxLevel, lastTemperature, samples, raises, lowers,
+                paperChecks, paperOuts);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private synchronized boolean paperDue(boolean idle, long now) {
+        return idle || !paperChecked || now - lastPaperNanos >= paperCheckNanos;
+    }
+
+    private void checkPaper(IPrinterService svc, String label, long now) throws PaperOutException {
+        boolean ok;
+        try {
+            ok = svc.printerPaper(quiet);
+        } catch (RemoteException | RuntimeException e) {
+            Log.w(TAG, "printerPaper falhou; seguindo sem checar", e);
+            return;
+        }
+        synchronized (this) {
+            paperChecks++;
+            // sem papel: checa de novo no próximo job (alguém pode ter trocado a bobina)
+            paperChecked = ok;
+            lastPaperNanos = now;
+            if (ok) return;
+            paperOuts++;
+        }
+        Log.w(TAG, label + ": sem papel, job não enviado");
+        throw new PaperOutException(label);
+    }
+
+    private synchronized boolean sampleDue(long now) {
+        return !sampled || now - lastSampleNanos >= sampleIntervalNanos;
+    }
+
+    private void sample(IPrinterService svc, long now) {
+        int temp;
+        try {
+            temp = svc.printerTemperature(quiet);
+        } catch (RemoteException | RuntimeException e) {
+            Log.w(TAG, "printerTemperature falhou", e);
+            return;
+        }
+        int current = telemetry.getSpeedLevel();
+        int next;
+        synchronized (this) {
+            sampled = true;
+            lastSampleNanos = now;
+            if (temp < 0 || temp > 150) return; // leitura inválida (sensor/firmware)
+            samples++;
+            if (current < 0) {
+                next = decide(startLevel, temp, now);
+            } else {
+                next = decide(current, temp, now);
+                if (next == current) return;
+            }
+        }
+        apply(svc, current, next, temp);
+    }
+
+    /** Política (sem IPC). Atualiza a tendência e a sequência de leituras frias. */
+    synchronized int decide(int current, int temp, long now) {
+        int prev = lastTemperature;
+        long prevNanos = lastReadingNanos;
+        lastTemperature = temp;
+        lastReadingNanos = now;
+        current = Math.max(minLevel, Math.min(maxLevel, current));
+
+        if (temp >= criticalC) {
+            coolStreak = 0;
+            return mark(current, minLevel, now);
+        }
+        double projected = temp;
+        if (prev >= 0 && now > prevNanos && lookaheadNanos > 0) {
+            double slope = (double) (temp - prev) / (now - prevNanos); // °C por ns
+            if (slope > 0) projected = temp + slope * lookaheadNanos;
+        }
+        if (projected >= hotC) {
+            coolStreak = 0;
+            return mark(current, Math.max(minLevel, current - 1), now);
+        }
+        if (temp <= coolC) {
+            coolStreak++;
+            boolean rested = !changed || now - lastChangeNanos >= changeCooldownNanos;
+            if (coolStreak >= raiseAfterSamples && rested && current < maxLevel) {
+                coolStreak = 0;
+                return mark(current, current + 1, now);
+            }
+            return current;
+        }
+        coolStreak = 0;
+        return current;
+    }
+
+    private int mark(int current, int next, long now) {
+        if (next != current) {
+            changed = true;
+            lastChangeNanos = now;
+            if (next > current) raises++;
+            else lowers++;
+        }
+        return next;
+    }
+
+    private void apply(IPrinterService svc, int from, int to, int temp) {
+        try {
+            svc.setPrinterSpeed(to, quiet);
+        } catch (RemoteException | RuntimeException e) {
+            Log.w(TAG, "setPrinterSpeed(" + to + ") falhou", e);
+            return;
+        }
+        telemetry.setSpeedLevel(to);
+
+        String reason = from < 0 ? "inicial" : (to < from ? "esquentando" : "cabeça fria");
+        AidlTelemetry.Summary before = from < 0 ? null : telemetry.getSummary(from);
+        Log.i(TAG, String.format(Locale.ROOT, "velocidade %s -> v%d (%d°C, %s); medido antes: %s",
+                from < 0 ? "de fábrica" : "v" + from, to, temp, reason, before != null ? before : "sem dados"));
+        Listener l = listener;
+        if (l != null) l.onSpeedChanged(from, to, temp, reason);
+    }
+
+    /** O serviço pede callback até nas consultas; o resultado vem no retorno. */
+    private static final class QuietCallback extends IPrinterCallback.Stub {
+        @Override
+        public void onException(int code, String msg) {
+            Log.w(TAG, "consulta: erro " + code + " " + msg);
+        }
+
+        @Override
+        public void onLength(long current, long total) {
+        }
+
+        @Override
+        public void onRealLength(double realCurrent, double realTotal) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
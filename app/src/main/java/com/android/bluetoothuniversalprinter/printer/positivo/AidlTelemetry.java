@@ -0,0 +1,262 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Transforma o onLength/onRealLength do serviço AIDL num fluxo de métricas.
+ *
+ * Cada operação vira um AidlJobMetrics (begin -> progresso -> finish) e o
+ * Listener recebe progresso, travadas e o job fechado. Os jobs fechados são
+ * somados por nível de velocidade (setPrinterSpeed), pra dar pra escolher a
+ * velocidade de cada modelo pelo que a impressora entrega de verdade:
+ * mm/s médio, tempo até o primeiro progresso e travadas por job.
+ *
+ * Só job com progresso entra na média de taxa (serviço que não reporta
+ * onRealLength não deve puxar o mm/s pra zero). Thread-safe.
+ */
+public final class AidlTelemetry {
+
+    private static final String TAG = "AidlTelemetry";
+
+    public static final long DEFAULT_STALL_MS = 2000;
+
+    /** Callbacks na thread do Binder (progresso) ou do watchdog (travada). */
+    public interface Listener {
+        default void onProgress(AidlJobMetrics job) {
+        }
+
+        default void onStall(AidlJobMetrics job) {
+        }
+
+        default void onJobFinished(AidlJobMetrics job) {
+        }
+    }
+
+    /** Soma dos jobs fechados num nível de velocidade. */
+    public static final class Summary {
+        private final int speedLevel;
+        private int jobs;
+        private int ok;
+        private int withMm;
+        private int withBytes;
+        private int withFirstProgress;
+        private double sumMmPerSecond;
+        private double sumBytesPerSecond;
+        private double sumFirstProgressMs;
+        private int stalls;
+
+        Summary(int speedLevel) {
+            this.speedLevel = speedLevel;
+        }
+
+        void add(AidlJobMetrics m) {
+            jobs++;
+            if (m.isOk()) ok++;
+            stalls += m.getStalls();
+            double mm = m.getMmPerSecond();
+            if (mm > 0) {
+                withMm++;
+                sumMmPerSecond += mm;
+            }
+            double bps = m.getBytesPerSecond();
+            if (bps > 0) {
+                withBytes++;
+                sumBytesPerSecond += bps;
+            }
+            double first = m.getTimeToFirstProgressMs();
+            if (first >= 0) {
+                withFirstProgress++;
+                sumFirstProgressMs += first;
+            }
+        }
+
+        Summary copy() {
+            Summary s = new Summary(speedLevel);
+            s.jobs = jobs;
+            s.ok = ok;
+            s.withMm = withMm;
+            s.withBytes = withBytes;
+            s.withFirstProgress = withFirstProgress;
+            s.sumMmPerSecond = sumMmPerSecond;
+            s.sumBytesPerSecond = sumBytesPerSecond;
+            s.sumFirstProgressMs = sumFirstProgressMs;
+            s.stalls = stalls;
+            return s;
+        }
+
+        public int getSpeedLevel() {
+            return speedLevel;
+        }
+
+        public int getJobs() {
+            return jobs;
+        }
+
+        public int getOk() {
+            return ok;
+        }
+
+        public int getStalls() {
+            return stalls;
+        }
+
+        public double getAvgMmPerSecond() {
+            return withMm == 0 ? 0 : sumMmPerSecond / withMm;
+        }
+
+        public double getAvgBytesPerSecond() {
+            return withBytes == 0 ? 0 : sumBytesPerSecond / withBytes;
+        }
+
+        /** -1 se nenhum job reportou progresso. */
+        public double getAvgTimeToFirstProgressMs() {
+            return withFirstProgress == 0 ? -1 : sumFirstProgressMs / withFirstProgress;
+        }
+
+        public double getStallsPerJob() {
+            return jobs == 0 ? 0 : (double) stalls / jobs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "v%d: %d jobs (%d ok), %.1f mm/s, %.0f B/s, 1º progresso %.0fms, %.2f travadas/job",
+                    speedLevel, jobs, ok, getAvgMmPerSecond(), getAvgBytesPerSecond(),
+                    getAvgTimeToFirstProgressMs(), getStallsPerJob());
+        }
+    }
+
+    private final String deviceModel;
+    private final Map<Integer, Summary> summaries = new TreeMap<>();
+
+    private volatile Listener listener;
+    private volatile long stallMs = DEFAULT_STALL_MS;
+    private volatile int speedLevel = -1;
+
+    /** @param deviceModel Build.MODEL, pra separar os dados por aparelho */
+    public AidlTelemetry(String deviceModel) {
+        this.deviceModel = deviceModel;
+    }
+
+    public String getDeviceModel() {
+        return deviceModel;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Sem progresso por mais que isso (depois do primeiro) = travada. */
+    public void setStallMs(long ms) {
+        this.stallMs = Math.max(1, ms);
+    }
+
+    public long getStallMs() {
+        return stallMs;
+    }
+
+    /** Nível passado pro setPrinterSpeed; vale pros jobs que começarem daqui pra frente. */
+    public void setSpeedLevel(int level) {
+        this.speedLevel = level;
+    }
+
+    /** -1 enquanto ninguém chamou setPrinterSpeed (velocidade de fábrica). */
+    public int getSpeedLevel() {
+        return speedLevel;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Ciclo de um job (chamado pelo pipeline / PrintFuture)
+    // ------------------------------------------------------------------------
+
+    public AidlJobMetrics begin(String label) {
+        return begin(label, System.nanoTime());
+    }
+
+    AidlJobMetrics begin(String label, long now) {
+        return new AidlJobMetrics(label, deviceModel, speedLevel, stallMs * 1_000_000L, now);
+    }
+
+    public void onLength(AidlJobMetrics m, long current, long total) {
+        m.onLength(current, total, System.nanoTime());
+        progress(m);
+    }
+
+    public void onRealLength(AidlJobMetrics m, double current, double total) {
+        m.onRealLength(current, total, System.nanoTime());
+        progress(m);
+    }
+
+    /** Watchdog: chamar de tempos em tempos enquanto o job roda. */
+    public void check(AidlJobMetrics m) {
+        check(m, System.nanoTime());
+    }
+
+    void check(AidlJobMetrics m, long now) {
+        if (!m.checkStall(now)) return;
+        Log.w(TAG, "sem progresso há mais de " + stallMs + "ms: " + m);
+        Listener l = listener;
+        if (l != null) l.onStall(m);
+    }
+
+    public void finish(AidlJobMetrics m, boolean ok) {
+        finish(m, ok, System.nanoTime());
+    }
+
+    void finish(AidlJobMetrics m, boolean ok, long now) {
+        if (!m.finish(now, ok)) return;
+        synchronized (summaries) {
+            Summary s = summaries.get(m.getSpeedLevel());
+            if (s == null) {
+                s = new Summary(m.getSpeedLevel());
+                summaries.put(m.getSpeedLevel(), s);
+            }
+            s.add(m);
+        }
+        Listener l = listener;
+        if (l != null) l.onJobFinished(m);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /** Cópia das somas, em ordem de nível. */
+    public List<Summary> getSummaries() {
+        synchronized (summaries) {
+            List<Summary> out = new ArrayList<>(summaries.size());
+            for (Summary s : summaries.values()) out.add(s.copy());
+            return out;
+        }
+    }
+
+    /** null se nenhum job fechou nesse nível. */
+    public Summary getSummary(int speedLevel) {
+        synchronized (summaries) {
+            Summary s = summaries.get(speedLevel);
+            return s == null ? null : s.copy();
+        }
+    }
+
+    public void reset() {
+        synchronized (summaries) {
+            summaries.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AidlTelemetry{").append(deviceModel);
+        for (Summary s : getSummaries()) sb.append("; ").append(s);
+        return sb.append('}').toString();
+    }
+
+    private void progress(AidlJobMetrics m) {
+        Listener l = listener;
+        if (l != null) l.onProgress(m);
+    }
+}
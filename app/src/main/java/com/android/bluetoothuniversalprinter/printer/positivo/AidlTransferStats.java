@@ -0,0 +1,72 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import java.util.Locale;
+
+/**
+ * Contadores das chamadas Binder pro serviço da impressora interna.
+ *
+ * Cada transação registra o tamanho estimado do Parcel e quanto tempo a
+ * chamada ficou bloqueada (ida + o serviço aceitar os dados). É o que mostra
+ * se uma imagem está perto do limite de ~1 MB do Binder, e quanto custa
+ * fatiar em mais chamadas.
+ *
+ * Thread-safe; uma instância pode ser compartilhada entre reconexões.
+ */
+public final class AidlTransferStats {
+
+    private long calls;
+    private long parcelBytes;
+    private long maxParcelBytes;
+    private long totalNanos;
+    private long maxNanos;
+
+    /** Uma transação: bytes estimados do Parcel e duração da chamada bloqueante. */
+    public synchronized void record(long parcelBytes, long nanos) {
+        calls++;
+        this.parcelBytes += parcelBytes;
+        if (parcelBytes > maxParcelBytes) maxParcelBytes = parcelBytes;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public synchronized void reset() {
+        calls = 0;
+        parcelBytes = 0;
+        maxParcelBytes = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    public synchronized long getParcelBytes() {
+        return parcelBytes;
+    }
+
+    /** Maior Parcel até agora (tem que ficar bem abaixo de AidlRasterSender.BINDER_LIMIT_BYTES). */
+    public synchronized long getMaxParcelBytes() {
+        return maxParcelBytes;
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /** Latência média por chamada em ms (0 sem chamadas). */
+    public synchronized double getAvgMillis() {
+        return calls == 0 ? 0 : totalNanos / 1e6 / calls;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "AidlTransferStats{chamadas=%d, parcel=%d KB (máx %d KB), latência média=%.1fms máx=%.1fms}",
+                calls, parcelBytes / 1024, maxParcelBytes / 1024, getAvgMillis(), maxNanos / 1e6);
+    }
+}
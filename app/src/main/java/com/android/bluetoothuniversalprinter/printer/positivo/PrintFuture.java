@@ -0,0 +1,271 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.xcheng.printerservice.IPrinterCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle de uma operação no serviço AIDL, concluído pelo próprio IPrinterCallback.
+ *
+ * É ao mesmo tempo o callback que vai pro serviço e o Future de quem chamou:
+ *  - onComplete  -> conclui (quando todas as chamadas Binder da operação terminaram;
+ *                   uma imagem em blocos são várias, ver seal());
+ *  - onException -> falha com ServiceException(code, msg);
+ *  - timeout / cancel() -> falha com TimeoutException / CancellationException.
+ *
+ * (CompletableFuture seria o natural, mas é API 24 e o minSdk é 23.)
+ *
+ * Progresso e eventos são repassados pro delegate (log/UI) na thread do Binder,
+ * e o progresso também pra AidlTelemetry quando o pipeline tem uma (track()).
+ * Os listeners de whenDone também rodam lá (ou na hora, se já terminou): quem
+ * mexe em View precisa postar na main thread.
+ */
+public final class PrintFuture extends IPrinterCallback.Stub implements Future<Void> {
+
+    private static final String TAG = "PrintFuture";
+
+    public interface Listener {
+        /** @param error null se concluiu com onComplete */
+        void onDone(PrintFuture future, Exception error);
+    }
+
+    /** onException do serviço (papel acabou, tampa aberta, superaquecimento...). */
+    public static final class ServiceException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        public ServiceException(int code, String msg) {
+            super("serviço de impressão: erro " + code + (msg != null ? " (" + msg + ")" : ""));
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final String label;
+    private final IPrinterCallback delegate;
+    private volatile AidlTelemetry telemetry;
+    private volatile AidlJobMetrics metrics;
+
+    private int expectedCalls = -1; // -1 até seal()
+    private int completedCalls;
+    private boolean done;
+    private Exception error;
+    private List<Listener> listeners = new ArrayList<>(2);
+
+    public PrintFuture(String label, IPrinterCallback delegate) {
+        this.label = label;
+        this.delegate = delegate;
+    }
+
+    /** Já falhado (ex.: impressora não conectada). */
+    public static PrintFuture failed(String label, Exception error) {
+        PrintFuture f = new PrintFuture(label, null);
+        f.fail(error);
+        return f;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Todas as chamadas da operação já foram feitas: conclui depois de n
+     * onComplete (0 = conclui já, pra operação que não gera callback).
+     */
+    void seal(int calls) {
+        List<Listener> run;
+        synchronized (this) {
+            if (done) return;
+            expectedCalls = Math.max(0, calls);
+            if (completedCalls < expectedCalls) return;
+            run = finish(null);
+        }
+        notifyListeners(run, null);
+    }
+
+    /** Manda o progresso desta operação pra telemetria (antes do envio). */
+    void track(AidlTelemetry telemetry, AidlJobMetrics metrics) {
+        this.metrics = metrics;
+        this.telemetry = telemetry;
+    }
+
+    /** Métricas do job (null se não passou pelo pipeline com telemetria). */
+    public AidlJobMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Falha (se ainda não terminou). @return true se foi esta chamada que concluiu. */
+    boolean fail(Exception e) {
+        List<Listener> run;
+        synchronized (this) {
+            if (done) return false;
+            run = finish(e);
+        }
+        notifyListeners(run, e);
+        return true;
+    }
+
+    /** Roda quando terminar (ou já, se terminou). */
+    public PrintFuture whenDone(Listener l) {
+        Exception e;
+        synchronized (this) {
+            if (!done) {
+                listeners.add(l);
+                return this;
+            }
+            e = error;
+        }
+        l.onDone(this, e);
+        return this;
+    }
+
+    /** Chamadas Binder da operação (-1 enquanto não foi enviada). */
+    public synchronized int getIpcCalls() {
+        return expectedCalls;
+    }
+
+    /** Erro final (null se ok ou ainda rodando). */
+    public synchronized Exception getError() {
+        return error;
+    }
+
+    // ------------------------------------------------------------------------
+    //  IPrinterCallback
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void onException(int code, String msg) {
+        if (delegate != null) {
+            try {
+                delegate.onException(code, msg);
+            } catch (RemoteException ignored) {
+            }
+        }
+        fail(new ServiceException(code, msg));
+    }
+
+    @Override
+    public void onLength(long current, long total) {
+        AidlTelemetry t = telemetry;
+        if (t != null) t.onLength(metrics, current, total);
+        if (delegate == null) return;
+        try {
+            delegate.onLength(current, total);
+        } catch (RemoteException ignored) {
+        }
+    }
+
+    @Override
+    public void onRealLength(double realCurrent, double realTotal) {
+        AidlTelemetry t = telemetry;
+        if (t != null) t.onRealLength(metrics, realCurrent, realTotal);
+        if (delegate == null) return;
+        try {
+            delegate.onRealLength(realCurrent, realTotal);
+        } catch (RemoteException ignored) {
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        List<Listener> run = null;
+        synchronized (this) {
+            if (done) return;
+            completedCalls++;
+            if (expectedCalls >= 0 && completedCalls >= expectedCalls) run = finish(null);
+        }
+        if (run == null) return;
+        if (delegate != null) {
+            try {
+                delegate.onComplete();
+            } catch (RemoteException ignored) {
+            }
+        }
+        notifyListeners(run, null);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Future
+    // ------------------------------------------------------------------------
+
+    /** Não tira nada do serviço (não tem API pra isso): só solta quem espera e o slot em voo. */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException(label + " cancelado"));
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return error instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized Void get() throws InterruptedException, ExecutionException {
+        while (!done) wait();
+        return result();
+    }
+
+    @Override
+    public synchronized Void get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) throw new TimeoutException(label + " ainda em andamento");
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized String toString() {
+        String state = !done ? "em andamento" : (error == null ? "ok" : error.toString());
+        return "PrintFuture{" + label + ", " + state + "}";
+    }
+
+    // ------------------------------------------------------------------------
+
+    /** Chamar com o lock: marca como terminado e devolve os listeners pra rodar fora do lock. */
+    private List<Listener> finish(Exception e) {
+        done = true;
+        error = e;
+        notifyAll();
+        List<Listener> run = listeners;
+        listeners = null;
+        return run;
+    }
+
+    private void notifyListeners(List<Listener> run, Exception e) {
+        for (Listener l : run) {
+            try {
+                l.onDone(this, e);
+            } catch (RuntimeException ex) {
+                Log.e(TAG, label + ": listener falhou", ex);
+            }
+        }
+    }
+
+    private Void result() throws ExecutionException {
+        if (error == null) return null;
+        if (error instanceof CancellationException) throw (CancellationException) error;
+        throw new ExecutionException(error);
+    }
+}
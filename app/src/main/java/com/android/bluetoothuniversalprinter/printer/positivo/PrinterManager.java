@@ -11,6 +11,7 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
+import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
@@ -71,9 +72,32 @@ public class PrinterManager {
     private IPrinterService service;      // Binder remoto
     private boolean bound = false;
 
+    // imagens vão binarizadas e em blocos (ver AidlRasterSender); stats sobrevivem ao rebind
+    private final AidlTransferStats transferStats = new AidlTransferStats();
+    private AidlRasterSender.Mode imageMode = AidlRasterSender.Mode.RAW_RASTER;
+    private AidlRasterSender sender;
+
+    // != null entre beginBatch() e submitBatch(): as chamadas viram bytes ESC/POS locais
+    private AidlCommandBatch batch;
+    private PrintFuture batchFuture;
+    private volatile AidlCommandBatch.Result lastBatchResult;
+
+    // todas as operações passam aqui: ordem, no máximo N em voo, timeout
+    private final AidlJobPipeline pipeline = new AidlJobPipeline(transferStats);
+
+    // progresso de cada operação (onLength/onRealLength) -> bytes/s, mm/s, travadas, por velocidade
+    private final AidlTelemetry telemetry = new AidlTelemetry(Build.MODEL);
+
+    // entre um job e outro: papel antes de enviar, velocidade pela temperatura da cabeça
+    private final AidlSpeedController speedController = new AidlSpeedController(telemetry);
+
     public PrinterManager(Context ctx, StatusListener listener) {
         this.context = ctx.getApplicationContext();
         this.uiListener = listener;
+        pipeline.setTelemetry(telemetry);
+        pipeline.setGate(speedController);
+        speedController.setListener((from, to, temperature, reason) ->
+                logToUi("Velocidade " + (from < 0 ? "" : from + " -> ") + to + " (" + temperature + "°C, " + reason + ")"));
     }
 
     /* ----------------------------------------------------------------------------------------
@@ -83,6 +107,10 @@ public class PrinterManager {
         @Override
         public void onServiceConnected(ComponentName name, IBinder binder) {
             service = IPrinterService.Stub.asInterface(binder);
+            sender = new AidlRasterSender(service, transferStats);
+            sender.setMaxWidthDots(MAX_WIDTH_DOTS);
+            sender.setMode(imageMode);
+            speedController.setService(service);
             bound = true;
             logToUi("Impressora pronta (serviço ligado)");
 
@@ -98,6 +126,10 @@ public class PrinterManager {
         public void onServiceDisconnected(ComponentName name) {
             bound = false;
             service = null;
+            sender = null;
+            speedController.setService(null);
+            batch = null;
+            batchFuture = null;
             logToUi("Serviço de impressora desconectado");
         }
     };
@@ -139,12 +171,146 @@ public class PrinterManager {
         return bound && service != null;
     }
 
+    /**
+     * Como as imagens vão pro serviço. RAW_RASTER (padrão) manda GS v 0 já
+     * binarizado pelo sendRAWData; BITMAP_CHUNKS é pra firmware que ignora RAW.
+     */
+    public void setImageMode(AidlRasterSender.Mode mode) {
+        imageMode = mode;
+        if (sender != null) sender.setMode(mode);
+    }
+
+    /** Parcel estimado e latência das chamadas de imagem. */
+    public AidlTransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    /**
+     * Modo batch: daqui até submitBatch(), texto, avanço, QR, CODE128 e imagens
+     * são gravados como um programa ESC/POS local (AidlCommandBatch) em vez de
+     * uma chamada Binder cada. O que o RAW não cobre (ex.: acento fora do CP437)
+     * vira chamada normal ao serviço, na mesma posição.
+     *
+     * As operações gravadas devolvem o PrintFuture do batch (conclui quando o
+     * cupom inteiro terminar, depois do submitBatch()).
+     */
+    public void beginBatch() {
+        if (!isReady()) {
+            logToUi("Impressora não conectada");
+            return;
+        }
+        batch = new AidlCommandBatch(service, sender);
+        batchFuture = new PrintFuture("batch", null);
+    }
+
+    public boolean isBatching() {
+        return batch != null;
+    }
+
+    /**
+     * Envia o cupom gravado em poucos sendRAWData e sai do modo batch.
+     * A contagem de IPC fica em getLastBatchResult() quando o envio termina.
+     */
+    public PrintFuture submitBatch() {
+        AidlCommandBatch b = batch;
+        PrintFuture done = batchFuture;
+        batch = null;
+        batchFuture = null;
+        if (b == null) return PrintFuture.failed("batch", new IllegalStateException("sem beginBatch()"));
+
+        PrintFuture sent = submit("batch", cb -> {
+            AidlCommandBatch.Result r = b.submit(cb);
+            lastBatchResult = r;
+            logToUi(r.toString());
+        });
+        sent.whenDone((f, error) -> {
+            if (error == null) done.seal(0);
+            else done.fail(error);
+        });
+        return done;
+    }
+
+    /** IPCs do último cupom enviado em batch (null se nenhum). */
+    public AidlCommandBatch.Result getLastBatchResult() {
+        return lastBatchResult;
+    }
+
+    /** Quantas operações podem estar no serviço sem onComplete ao mesmo tempo (padrão 2). */
+    public void setMaxInFlight(int n) {
+        pipeline.setMaxInFlight(n);
+    }
+
+    /** Tempo máximo entre enviar uma operação e o onComplete (padrão 30s). */
+    public void setOperationTimeoutMs(long ms) {
+        pipeline.setTimeoutMs(ms);
+    }
+
+    public AidlJobPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Métricas de cada operação a partir do progresso que o serviço reporta
+     * (setListener() pra receber o fluxo; getSummaries() compara as velocidades).
+     */
+    public AidlTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Velocidade da cabeça (nível do fabricante). Entra na fila como as outras
+     * operações: só vale pros jobs enviados depois dela, e é com esse nível que
+     * a telemetria agrupa esses jobs. Com o ajuste automático ligado, o
+     * controlador continua a partir desse nível.
+     */
+    public PrintFuture setPrinterSpeed(int level) {
+        return submit("setPrinterSpeed", cb -> {
+            service.setPrinterSpeed(level, cb);
+            telemetry.setSpeedLevel(level);
+        });
+    }
+
+    /**
+     * Controlador de velocidade/papel (ligado por padrão): setAdaptive(false)
+     * fixa a velocidade, setPaperCheck(false) tira a consulta de papel,
+     * setLevels()/setThresholds() ajustam pro firmware.
+     */
+    public AidlSpeedController getSpeedController() {
+        return speedController;
+    }
+
+    /** Manda a operação pela fila com limite de jobs em voo; erro vai pro log da UI também. */
+    private PrintFuture submit(String label, AidlJobPipeline.Op op) {
+        if (!isReady()) {
+            logToUi("Impressora não conectada");
+            return PrintFuture.failed(label, new IllegalStateException("Impressora não conectada"));
+        }
+        PrintFuture f = pipeline.submit(label, new SimpleCallback(label), op);
+        f.whenDone((future, error) -> {
+            // onException já foi pro log pelo SimpleCallback
+            if (error != null && !(error instanceof PrintFuture.ServiceException)) {
+                logError(label, error);
+            }
+        });
+        return f;
+    }
+
+    /** Resultado de uma operação gravada no batch (ou já falhada, se a gravação deu erro). */
+    private PrintFuture recorded(String label, Exception error) {
+        if (error != null) {
+            logError(label, error);
+            return PrintFuture.failed(label, error);
+        }
+        return batchFuture;
+    }
+
     /* ----------------------------------------------------------------------------------------
      * 2) CALLBACK BÁSICO
      * ---------------------------------------------------------------------------------------- */
     /**
      * Callback simples pra logar resultado de cada chamada no serviço.
-     * Você pode customizar pra dar Toast, etc.
+     * Você pode customizar pra dar Toast, etc. (quem quer esperar usa o PrintFuture
+     * que cada operação devolve; ele repassa os eventos pra cá).
      */
     private class SimpleCallback extends IPrinterCallback.Stub {
         private final String label;
@@ -177,21 +343,20 @@ public class PrinterManager {
 
     /* ----------------------------------------------------------------------------------------
      * 3) FUNÇÕES UTILITÁRIAS BÁSICAS (feed, texto, códigos, imagens)
+     *
+     * Todas devolvem um PrintFuture: get(timeout) espera o onComplete, whenDone()
+     * avisa sem bloquear. As chamadas Binder saem da thread "aidl-ipc", em ordem.
      * ---------------------------------------------------------------------------------------- */
 
     /**
      * Alimenta papel (vários "line feeds").
      */
-    public void feedLines(int n) {
-        if (!isReady()) {
-            logToUi("Impressora não conectada");
-            return;
-        }
-        try {
-            service.printWrapPaper(n, new SimpleCallback("feedLines"));
-        } catch (Exception e) {
-            logError("feedLines", e);
+    public PrintFuture feedLines(int n) {
+        if (batch != null) {
+            batch.addFeedLines(n);
+            return recorded("feedLines", null);
         }
+        return submit("feedLines", cb -> service.printWrapPaper(n, cb));
     }
 
     /**
@@ -221,21 +386,17 @@ public class PrinterManager {
      * @param align 0=esquerda,1=centro,2=direita
      * @param scale 0=normal,1=2x,3=3x (vai pro Map de atributos)
      */
-    public void printTextLine(String text, int align, int scale) {
-        if (!isReady()) {
-            logToUi("Impressora não conectada");
-            return;
-        }
-        try {
-            Map attrs = makeTextAttr(align, (scale > 0), scale);
-            service.printTextWithAttributes(
-                    text + "\n",
-                    attrs,
-                    new SimpleCallback("printTextLine")
-            );
-        } catch (Exception e) {
-            logError("printTextLine", e);
+    public PrintFuture printTextLine(String text, int align, int scale) {
+        Map attrs = makeTextAttr(align, (scale > 0), scale);
+        String line = text + "\n";
+        if (batch != null) {
+            if (!batch.addTextLine(text, align, scale > 0, scale)) {
+                // charset do firmware não cobre o texto: essa linha vai pelo serviço
+                batch.addServiceCall((svc, cb) -> svc.printTextWithAttributes(line, attrs, cb));
+            }
+            return recorded("printTextLine", null);
         }
+        return submit("printTextLine", cb -> service.printTextWithAttributes(line, attrs, cb));
     }
 
     /**
@@ -244,21 +405,12 @@ public class PrinterManager {
      * @param align 0=left 1=center 2=right
      * @param size "tamanho do módulo" (típico range 4..10). Ajustar se necessário.
      */
-    public void printQrCode(String data, int align, int size) {
-        if (!isReady()) {
-            logToUi("Impressora não conectada");
-            return;
-        }
-        try {
-            service.printQRCode(
-                    data,
-                    align,
-                    size,
-                    new SimpleCallback("printQRCode")
-            );
-        } catch (Exception e) {
-            logError("printQrCode", e);
+    public PrintFuture printQrCode(String data, int align, int size) {
+        if (batch != null) {
+            batch.addQrCode(data, align, size);
+            return recorded("printQRCode", null);
         }
+        return submit("printQRCode", cb -> service.printQRCode(data, align, size, cb));
     }
 
     /**
@@ -270,53 +422,51 @@ public class PrinterManager {
      * @param height altura em px
      * @param showText se true imprime os dígitos embaixo
      */
-    public void printCode128(String data, int align, int width, int height, boolean showText) {
-        if (!isReady()) {
-            logToUi("Impressora não conectada");
-            return;
-        }
-        try {
-            service.printBarCode(
-                    data,
-                    align,
-                    width,
-                    height,
-                    showText,
-                    new SimpleCallback("printBarCode")
-            );
-        } catch (Exception e) {
-            logError("printCode128", e);
+    public PrintFuture printCode128(String data, int align, int width, int height, boolean showText) {
+        if (batch != null) {
+            if (!batch.addCode128(data, align, width, height, showText)) {
+                batch.addServiceCall((svc, cb) -> svc.printBarCode(data, align, width, height, showText, cb));
+            }
+            return recorded("printBarCode", null);
         }
+        return submit("printBarCode", cb -> service.printBarCode(data, align, width, height, showText, cb));
     }
 
     /**
      * Imprime um bitmap arbitrário, já centralizando (align=1).
-     * O serviço geralmente faz dithering e corte interno.
+     * Binarizado aqui (limiar) e enviado em blocos abaixo do limite do Binder;
+     * no modo LEGACY_BITMAP o serviço recebe o ARGB inteiro como antes.
      */
-    public void printBitmap(Bitmap bmp, int align) {
-        if (!isReady()) {
-            logToUi("Impressora não conectada");
-            return;
-        }
+    public PrintFuture printBitmap(Bitmap bmp, int align) {
         if (bmp == null) {
             logToUi("Bitmap nulo");
-            return;
+            return PrintFuture.failed("printBitmap", new IllegalArgumentException("Bitmap nulo"));
+        }
+        if (batch != null) {
+            try {
+                batch.addBitmap(bmp, align);
+                return recorded("printBitmap", null);
+            } catch (Exception e) {
+                return recorded("printBitmap", e);
+            }
+        }
+        if (imageMode != AidlRasterSender.Mode.LEGACY_BITMAP) {
+            // largura é reduzida pelo rasterizador, sem Bitmap escalado intermediário
+            AidlRasterSender s = sender;
+            return submit("printBitmap", cb -> s.printBitmap(bmp, align, cb));
         }
 
         // Ajusta largura pra não estourar a boca (384px 58mm).
         Bitmap scaled = ensureMaxWidth(bmp, MAX_WIDTH_DOTS);
 
-        try {
-            Map<String, Object> attrs = new HashMap<>();
-            attrs.put("align", align); // 0/1/2 (ajuste se a lib usar outra chave)
-            service.printBitmapWithAttributes(
-                    scaled,
-                    attrs,
-                    new SimpleCallback("printBitmap")
-            );
-        } catch (Exception e) {
-            logError("printBitmap", e);
-        }
+        Map<String, Object> attrs = new HashMap<>();
+        attrs.put("align", align); // 0/1/2 (ajuste se a lib usar outra chave)
+        return submit("printBitmap", cb -> {
+            long t0 = System.nanoTime();
+            service.printBitmapWithAttributes(scaled, attrs, cb);
+            transferStats.record(AidlRasterSender.estimateBitmapParcelBytes(scaled.getWidth(), scaled.getHeight()),
+                    System.nanoTime() - t0);
+        });
     }
 
     /* ----------------------------------------------------------------------------------------
@@ -334,7 +484,7 @@ public class PrinterManager {
      * @param radiusPx raio do círculo, em px
      * @param textSizePx tamanho de texto desejado, em px (ajustamos se não couber)
      */
-    public void printGridCircles(
+    public PrintFuture printGridCircles(
             List<String> numbers,
             int columns,
             int radiusPx,
@@ -342,25 +492,25 @@ public class PrinterManager {
     ) {
         if (!isReady()) {
             logToUi("Impressora não conectada");
-            return;
+            return PrintFuture.failed("imagem", new IllegalStateException("Impressora não conectada"));
         }
 
         Bitmap gridBmp = buildCircleGridBitmap(numbers, columns, radiusPx, textSizePx);
         gridBmp = ensureMaxWidth(gridBmp, MAX_WIDTH_DOTS);
 
-        printBitmap(gridBmp, /*align=*/1);
+        return printBitmap(gridBmp, /*align=*/1);
     }
 
-    public void printGridCircles(
+    public PrintFuture printGridCircles(
             String[] numbers,
             int columns,
             int radiusPx,
             float textSizePx
     ) {
-        printGridCircles(Arrays.asList(numbers), columns, radiusPx, textSizePx);
+        return printGridCircles(Arrays.asList(numbers), columns, radiusPx, textSizePx);
     }
 
-    public void printGridCircles(
+    public PrintFuture printGridCircles(
             int[] numbers,
             int columns,
             int radiusPx,
@@ -370,7 +520,7 @@ public class PrinterManager {
         for (int n : numbers) {
             tmp.add(String.format("%02d", n));
         }
-        printGridCircles(tmp, columns, radiusPx, textSizePx);
+        return printGridCircles(tmp, columns, radiusPx, textSizePx);
     }
 
     /**
@@ -475,7 +625,7 @@ public class PrinterManager {
 
     // === 4.2 GRID DE NÚMEROS EM RETÂNGULOS ARREDONDADOS =========
 
-    public void printRoundedGrid(
+    public PrintFuture printRoundedGrid(
             List<String> numbers,
             int columns,
             int boxWidthPx,
@@ -485,7 +635,7 @@ public class PrinterManager {
     ) {
         if (!isReady()) {
             logToUi("Impressora não conectada");
-            return;
+            return PrintFuture.failed("imagem", new IllegalStateException("Impressora não conectada"));
         }
 
         Bitmap gridBmp = buildRoundedGridBitmap(
@@ -499,10 +649,10 @@ public class PrinterManager {
 
         gridBmp = ensureMaxWidth(gridBmp, MAX_WIDTH_DOTS);
 
-        printBitmap(gridBmp, /*align=*/1);
+        return printBitmap(gridBmp, /*align=*/1);
     }
 
-    public void printRoundedGrid(
+    public PrintFuture printRoundedGrid(
             String[] numbers,
             int columns,
             int boxWidthPx,
@@ -511,10 +661,10 @@ public class PrinterManager {
             float textSizePxWanted
     ) {
         List<String> list = Arrays.asList(numbers);
-        printRoundedGrid(list, columns, boxWidthPx, boxHeightPx, cornerRadiusPx, textSizePxWanted);
+        return printRoundedGrid(list, columns, boxWidthPx, boxHeightPx, cornerRadiusPx, textSizePxWanted);
     }
 
-    public void printRoundedGrid(
+    public PrintFuture printRoundedGrid(
             int[] numbers,
             int columns,
             int boxWidthPx,
@@ -524,7 +674,7 @@ public class PrinterManager {
     ) {
         List<String> list = new ArrayList<>();
         for (int n : numbers) list.add(String.format("%02d", n));
-        printRoundedGrid(list, columns, boxWidthPx, boxHeightPx, cornerRadiusPx, textSizePxWanted);
+        return printRoundedGrid(list, columns, boxWidthPx, boxHeightPx, cornerRadiusPx, textSizePxWanted);
     }
 
     /**
@@ -645,10 +795,10 @@ public class PrinterManager {
      * @param paddingPx padding interno
      * @param radiusPx raio da borda arredondada
      */
-    public void printParagraphInRoundedBox(String text, int fontPx, int paddingPx, int radiusPx) {
+    public PrintFuture printParagraphInRoundedBox(String text, int fontPx, int paddingPx, int radiusPx) {
         if (!isReady()) {
             logToUi("Impressora não conectada");
-            return;
+            return PrintFuture.failed("imagem", new IllegalStateException("Impressora não conectada"));
         }
 
         Bitmap boxBmp = buildRoundedBoxBitmap(
@@ -662,7 +812,7 @@ public class PrinterManager {
         // (já está <= MAX_WIDTH_DOTS, mas vamos garantir)
         boxBmp = ensureMaxWidth(boxBmp, MAX_WIDTH_DOTS);
 
-        printBitmap(boxBmp, /*align=*/0); // alinhado à esquerda normalmente
+        return printBitmap(boxBmp, /*align=*/0); // alinhado à esquerda normalmente
     }
 
     /**
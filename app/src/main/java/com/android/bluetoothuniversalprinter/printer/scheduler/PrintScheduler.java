@@ -0,0 +1,397 @@
+package com.android.bluetoothuniversalprinter.printer.scheduler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agendador de impressão com filas separadas (no lugar de um único
+ * newSingleThreadExecutor pra tudo).
+ *
+ * Filas ("lanes"):
+ *  - CONTROL : conectar, reconectar, bind de serviço (1 thread). Uma reconexão
+ *              lenta não segura mais a impressão nem a renderização.
+ *  - RENDER  : CPU (Bitmap, raster, compilar job pro spool), várias threads
+ *  - IO      : uma thread POR impressora (ordem dos bytes garantida por impressora)
+ *
+ * Dentro de cada fila, prioridade (PAYMENT > NORMAL > REPRINT) e depois ordem
+ * de chegada.
+ *
+ * Cada tarefa devolve um Ticket: cancel() tira da fila (ou interrompe, se já
+ * estiver rodando), e chain() liga as etapas de um mesmo job (render -> io)
+ * pra um cancel só valer pro job inteiro.
+ *
+ * Métricas por fila: profundidade atual/máxima, rodando, concluídas, falhas,
+ * canceladas e espera média na fila.
+ *
+ * Java puro; erros das tarefas vão pro ErrorListener (a Activity mostra na UI).
+ */
+public final class PrintScheduler {
+
+    public enum Priority {
+        /** Comprovante de pagamento: fura a fila. */
+        PAYMENT,
+        NORMAL,
+        /** Reimpressão / segunda via: só quando não há outra coisa. */
+        REPRINT
+    }
+
+    public interface Task {
+        /** @param self ticket da própria tarefa (pra checar isCancelled() em laços longos) */
+        void run(Ticket self) throws Exception;
+    }
+
+    public interface ErrorListener {
+        void onTaskFailed(Ticket ticket, Exception e);
+    }
+
+    public static final String CONTROL = "control";
+    public static final String RENDER = "render";
+    private static final String IO_PREFIX = "io:";
+
+    private final Lane control;
+    private final Lane render;
+    private final Map<String, Lane> ioLanes = new LinkedHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+
+    private volatile ErrorListener errorListener;
+
+    public PrintScheduler(int renderThreads) {
+        control = new Lane(CONTROL, 1);
+        render = new Lane(RENDER, Math.max(1, renderThreads));
+    }
+
+    /** RENDER com (núcleos - 1) threads: sobra um núcleo pra UI. */
+    public PrintScheduler() {
+        this(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+        this.errorListener = listener;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Envio de tarefas
+    // ------------------------------------------------------------------------
+
+    /** Conexão / reconexão / bind. */
+    public Ticket control(String name, Task task) {
+        return control.submit(name, Priority.NORMAL, task);
+    }
+
+    /** Trabalho de CPU (pode rodar em paralelo com outros renders). */
+    public Ticket render(String name, Priority priority, Task task) {
+        return render.submit(name, priority, task);
+    }
+
+    /** Bytes pra impressora printerKey (uma thread por impressora). */
+    public Ticket io(String printerKey, String name, Priority priority, Task task) {
+        return ioLane(printerKey).submit(name, priority, task);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Métricas
+    // ------------------------------------------------------------------------
+
+    /** Tarefas esperando na fila (CONTROL, RENDER ou "io:<impressora>"). */
+    public int getQueueDepth(String lane) {
+        Lane l = findLane(lane);
+        return l == null ? 0 : l.exec.getQueue().size();
+    }
+
+    public LaneStats getStats(String lane) {
+        Lane l = findLane(lane);
+        return l == null ? null : l.stats();
+    }
+
+    /** Todas as filas, na ordem CONTROL, RENDER, io:*. */
+    public List<LaneStats> getAllStats() {
+        List<LaneStats> out = new ArrayList<>();
+        out.add(control.stats());
+        out.add(render.stats());
+        synchronized (ioLanes) {
+            for (Lane l : ioLanes.values()) out.add(l.stats());
+        }
+        return out;
+    }
+
+    /** Para tudo (onDestroy): tarefas na fila são descartadas, as em execução interrompidas. */
+    public void shutdownNow() {
+        control.exec.shutdownNow();
+        render.exec.shutdownNow();
+        synchronized (ioLanes) {
+            for (Lane l : ioLanes.values()) l.exec.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrintScheduler" + getAllStats();
+    }
+
+    private Lane ioLane(String printerKey) {
+        String name = IO_PREFIX + printerKey;
+        synchronized (ioLanes) {
+            Lane l = ioLanes.get(name);
+            if (l == null) {
+                l = new Lane(name, 1);
+                ioLanes.put(name, l);
+            }
+            return l;
+        }
+    }
+
+    private Lane findLane(String lane) {
+        if (CONTROL.equals(lane)) return control;
+        if (RENDER.equals(lane)) return render;
+        synchronized (ioLanes) {
+            Lane l = ioLanes.get(lane);
+            return l != null ? l : ioLanes.get(IO_PREFIX + lane);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Ticket
+    // ------------------------------------------------------------------------
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    /** Handle de uma tarefa agendada. */
+    public final class Ticket {
+        private final String name;
+        private final Priority priority;
+        private Lane lane;
+        private QueuedTask queued;
+        private Thread runner;
+        private State state = State.QUEUED;
+        private Ticket next;
+        private final List<Runnable> cancelListeners = new ArrayList<>(1);
+
+        private Ticket(String name, Priority priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public synchronized boolean isCancelled() {
+            return state == State.CANCELLED;
+        }
+
+        /**
+         * Próxima etapa do mesmo job: cancelar este ticket cancela next também
+         * (mesmo que este já tenha terminado).
+         */
+        public void chain(Ticket next) {
+            boolean cancelNow;
+            synchronized (this) {
+                this.next = next;
+                cancelNow = state == State.CANCELLED;
+            }
+            if (cancelNow) next.cancel();
+        }
+
+        /** Roda quando o ticket é cancelado (ex.: tirar o job do spool). */
+        public void onCancel(Runnable listener) {
+            boolean runNow;
+            synchronized (this) {
+                runNow = state == State.CANCELLED;
+                if (!runNow) cancelListeners.add(listener);
+            }
+            if (runNow) listener.run();
+        }
+
+        /**
+         * Cancela: na fila -> sai sem rodar; rodando -> interrompe a thread
+         * (Thread.sleep do pacing, I/O interrompível); já terminado -> só
+         * propaga pra próxima etapa.
+         */
+        public void cancel() {
+            Ticket chained;
+            List<Runnable> listeners = null;
+            synchronized (this) {
+                chained = next;
+                if (state == State.QUEUED || state == State.RUNNING) {
+                    if (state == State.QUEUED && lane != null) {
+                        lane.exec.remove(queued);
+                    } else if (runner != null) {
+                        runner.interrupt();
+                    }
+                    state = State.CANCELLED;
+                    lane.cancelled.incrementAndGet();
+                    listeners = new ArrayList<>(cancelListeners);
+                }
+            }
+            if (listeners != null) {
+                for (Runnable r : listeners) r.run();
+            }
+            if (chained != null) chained.cancel();
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + priority + ", " + getState() + ")";
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Fila
+    // ------------------------------------------------------------------------
+
+    /** Foto das métricas de uma fila. */
+    public static final class LaneStats {
+        public final String lane;
+        public final int queued;
+        public final int maxQueued;
+        public final int running;
+        public final long completed;
+        public final long failed;
+        public final long cancelled;
+        public final long avgWaitMs;
+
+        LaneStats(String lane, int queued, int maxQueued, int running,
+                  long completed, long failed, long cancelled, long avgWaitMs) {
+            this.lane = lane;
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.running = running;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.avgWaitMs = avgWaitMs;
+        }
+
+        @Override
+        public String toString() {
+            return lane + "{fila=" + queued + " (máx " + maxQueued + "), rodando=" + running
+                    + ", ok=" + completed + ", falhas=" + failed + ", canceladas=" + cancelled
+                    + ", espera média=" + avgWaitMs + "ms}";
+        }
+    }
+
+    private final class Lane {
+        final String name;
+        final ThreadPoolExecutor exec;
+
+        final AtomicInteger maxQueued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+
+        Lane(String name, int threads) {
+            this.name = name;
+            final AtomicInteger n = new AtomicInteger();
+            // fila com prioridade: só execute() (submit() embrulharia num FutureTask sem ordem)
+            this.exec = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "print-" + name + "-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.exec.allowCoreThreadTimeOut(true);
+        }
+
+        Ticket submit(String taskName, Priority priority, Task task) {
+            Ticket ticket = new Ticket(taskName, priority);
+            QueuedTask q = new QueuedTask(this, ticket, task, seq.incrementAndGet());
+            synchronized (ticket) {
+                ticket.lane = this;
+                ticket.queued = q;
+            }
+            exec.execute(q);
+            int depth = exec.getQueue().size();
+            int max;
+            while (depth > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, depth)) {
+                // tenta de novo
+            }
+            return ticket;
+        }
+
+        LaneStats stats() {
+            long n = started.get();
+            return new LaneStats(name, exec.getQueue().size(), maxQueued.get(), running.get(),
+                    completed.get(), failed.get(), cancelled.get(),
+                    n == 0 ? 0 : totalWaitNanos.get() / n / 1_000_000L);
+        }
+    }
+
+    private final class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        final Lane lane;
+        final Ticket ticket;
+        final Task task;
+        final long order;
+        final long enqueuedAt = System.nanoTime();
+
+        QueuedTask(Lane lane, Ticket ticket, Task task, long order) {
+            this.lane = lane;
+            this.ticket = ticket;
+            this.task = task;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(QueuedTask o) {
+            int c = ticket.priority.compareTo(o.ticket.priority);
+            return c != 0 ? c : Long.compare(order, o.order);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ticket) {
+                if (ticket.state != State.QUEUED) return; // cancelado antes de sair da fila
+                ticket.state = State.RUNNING;
+                ticket.runner = Thread.currentThread();
+            }
+            lane.started.incrementAndGet();
+            lane.totalWaitNanos.addAndGet(System.nanoTime() - enqueuedAt);
+            lane.running.incrementAndGet();
+
+            Exception error = null;
+            try {
+                task.run(ticket);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                lane.running.decrementAndGet();
+            }
+
+            boolean report;
+            synchronized (ticket) {
+                ticket.runner = null;
+                report = ticket.state == State.RUNNING;
+                if (report) ticket.state = (error == null) ? State.DONE : State.FAILED;
+            }
+            // limpa o interrupt de um cancel que chegou no fim, pra não vazar pra próxima tarefa
+            if (!report) Thread.interrupted();
+
+            if (report && error != null) {
+                lane.failed.incrementAndGet();
+                ErrorListener l = errorListener;
+                if (l != null) l.onTaskFailed(ticket, error);
+            } else if (report) {
+                lane.completed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.android.bluetoothuniversalprinter.printer.spool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * OutputStream que grava o programa ESC/POS de um job em memória.
+ *
+ * O driver só dá flush em fronteira de comando (fim de faixa GS v 0, fim de
+ * writeRaw fora de job, endJob), então cada flush vira um checkpoint: um
+ * offset seguro pra retomar o envio.
+ */
+final class JobProgramRecorder extends OutputStream {
+
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+    private int[] checkpoints = new int[16];
+    private int count;
+
+    @Override
+    public void write(int b) {
+        data.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        data.write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+        int offset = data.size();
+        if (offset == 0 || (count > 0 && checkpoints[count - 1] == offset)) return;
+        if (count == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, count * 2);
+        checkpoints[count++] = offset;
+    }
+
+    byte[] toByteArray() {
+        return data.toByteArray();
+    }
+
+    /** Checkpoints em ordem; o último é sempre o fim do programa. */
+    int[] checkpoints() {
+        flush();
+        return Arrays.copyOf(checkpoints, count);
+    }
+}
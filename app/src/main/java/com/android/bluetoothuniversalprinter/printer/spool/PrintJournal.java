@@ -0,0 +1,445 @@
+package com.android.bluetoothuniversalprinter.printer.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only dos jobs de impressão (FileChannel, um arquivo só).
+ *
+ * Formato:
+ *   cabeçalho "BUPJRNL1"
+ *   registros: MAGIC(4) tipo(1) jobId(8) tamanho(4) crc32(4) payload
+ *     JOB  : criadoEm(8) label(2+utf8) nCheckpoints(4) checkpoints(4*n) programa(4+n)
+ *     ACK  : bytes confirmados(4)
+ *     DONE : (vazio)
+ *
+ * Nada é reescrito no lugar: o estado de um job é o último ACK/DONE dele.
+ * Na abertura o arquivo é varrido; um registro cortado ou com CRC errado
+ * (processo morreu no meio do write) marca o fim válido e o resto é truncado.
+ *
+ * Durabilidade:
+ *  - JOB e DONE vão pro disco (force) antes de retornar
+ *  - ACK só força a cada FORCE_EVERY_BYTES (flash agradece); depois de um crash
+ *    o job volta um pouco antes, nunca depois do que foi de fato entregue
+ *
+ * Disco limitado a maxBytes. Compactar (reescrever só os pendentes num .tmp e
+ * trocar por rename) custa dois fsync, então não é a cada cupom: só quando o
+ * lixo (jobs concluídos) passa de COMPACT_GARBAGE_BYTES (ou de um quarto do
+ * limite), quando COMPACT_EVERY_JOBS jobs concluíram desde a última, ou quando
+ * metade de um arquivo grande é lixo. Se mesmo compactado um job novo não
+ * cabe, append() lança IOException.
+ */
+public final class PrintJournal implements Closeable {
+
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final byte[] FILE_HEADER = "BUPJRNL1".getBytes(StandardCharsets.US_ASCII);
+    private static final int RECORD_MAGIC = 0x4A524543; // "JREC"
+    private static final int RECORD_HEADER = 4 + 1 + 8 + 4 + 4;
+
+    private static final byte TYPE_JOB = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final byte TYPE_DONE = 3;
+
+    /** ACK com force só depois de avançar isso (ou no fim do job). */
+    private static final int FORCE_EVERY_BYTES = 8 * 1024;
+
+    /** Lixo que justifica compactar no markDone (limitado a maxBytes / 4). */
+    private static final long COMPACT_GARBAGE_BYTES = 256 * 1024;
+
+    /** Jobs concluídos desde a última compactação que justificam compactar. */
+    private static final int COMPACT_EVERY_JOBS = 64;
+
+    private final File file;
+    private final long maxBytes;
+
+    private RandomAccessFile raf;
+    private FileChannel ch;
+    private long end;
+
+    /** Jobs ainda não concluídos, na ordem de chegada. */
+    private final Map<Long, SpoolJob> jobs = new LinkedHashMap<>();
+    /** Bytes de registro que pertencem a jobs pendentes (o resto é lixo compactável). */
+    private final Map<Long, Long> liveBytes = new LinkedHashMap<>();
+    private final Map<Long, Integer> forcedAck = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int doneSinceCompact;
+
+    // métricas
+    private int truncatedTails;
+    private int compactions;
+
+    private PrintJournal(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = Math.max(64 * 1024, maxBytes);
+    }
+
+    /** Abre (ou cria) o journal e recupera os jobs pendentes. */
+    public static PrintJournal open(File file, long maxBytes) throws IOException {
+        PrintJournal j = new PrintJournal(file, maxBytes);
+        j.openChannel();
+        j.recover();
+        return j;
+    }
+
+    public static PrintJournal open(File file) throws IOException {
+        return open(file, DEFAULT_MAX_BYTES);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Escrita
+    // ------------------------------------------------------------------------
+
+    /** Grava um job novo (durável ao retornar). */
+    public synchronized SpoolJob append(String label, byte[] program, int[] checkpoints) throws IOException {
+        byte[] labelBytes = (label == null ? "" : label).getBytes(StandardCharsets.UTF_8);
+        int labelLen = Math.min(labelBytes.length, 0xFFFF);
+        int payloadLen = 8 + 2 + labelLen + 4 + 4 * checkpoints.length + 4 + program.length;
+        long recordLen = RECORD_HEADER + payloadLen;
+
+        if (end + recordLen > maxBytes) {
+            compact();
+            if (end + recordLen > maxBytes) {
+                throw new IOException("Spool cheio (" + end + " + " + recordLen + " > " + maxBytes + " bytes)");
+            }
+        }
+
+        long createdAt = System.currentTimeMillis();
+        ByteBuffer p = ByteBuffer.allocate(payloadLen);
+        p.putLong(createdAt);
+        p.putShort((short) labelLen);
+        p.put(labelBytes, 0, labelLen);
+        p.putInt(checkpoints.length);
+        for (int cp : checkpoints) p.putInt(cp);
+        p.putInt(program.length);
+        int programOffset = p.position();
+        p.put(program);
+
+        long id = nextId++;
+        long start = writeRecord(TYPE_JOB, id, p.array());
+        ch.force(true);
+
+        SpoolJob job = new SpoolJob(id, new String(labelBytes, 0, labelLen, StandardCharsets.UTF_8),
+                createdAt, program.length, checkpoints.clone(), start + RECORD_HEADER + programOffset);
+        jobs.put(id, job);
+        liveBytes.put(id, recordLen);
+        forcedAck.put(id, 0);
+        return job;
+    }
+
+    /** Registra que os primeiros bytes do programa já foram entregues à impressora. */
+    public synchronized void ack(SpoolJob job, int bytes) throws IOException {
+        if (job.isDone() || bytes <= job.getAckedBytes()) return;
+        job.setAcked(bytes);
+        writeRecord(TYPE_ACK, job.getId(), ByteBuffer.allocate(4).putInt(job.getAckedBytes()).array());
+        liveBytes.put(job.getId(), liveBytes.get(job.getId()) + RECORD_HEADER + 4);
+
+        int forced = forcedAck.get(job.getId());
+        if (job.getAckedBytes() - forced >= FORCE_EVERY_BYTES) {
+            ch.force(false);
+            forcedAck.put(job.getId(), job.getAckedBytes());
+        }
+    }
+
+    /** Job impresso por inteiro (ou cancelado): sai da fila, vira lixo compactável. */
+    public synchronized void markDone(SpoolJob job) throws IOException {
+        if (job.isDone()) return;
+        job.setDone();
+        writeRecord(TYPE_DONE, job.getId(), new byte[0]);
+        ch.force(false);
+        jobs.remove(job.getId());
+        liveBytes.remove(job.getId());
+        forcedAck.remove(job.getId());
+        doneSinceCompact++;
+
+        long garbage = garbageBytes();
+        if (garbage >= Math.min(COMPACT_GARBAGE_BYTES, maxBytes / 4)
+                || doneSinceCompact >= COMPACT_EVERY_JOBS
+                || (end > maxBytes / 2 && garbage > getLiveBytes())) {
+            compact();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Leitura
+    // ------------------------------------------------------------------------
+
+    /** Jobs pendentes, na ordem em que foram gravados. */
+    public synchronized List<SpoolJob> pending() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public synchronized byte[] readProgram(SpoolJob job) throws IOException {
+        byte[] data = new byte[job.getLength()];
+        readFully(ByteBuffer.wrap(data), job.programPosition);
+        return data;
+    }
+
+    /** Tamanho atual do arquivo. */
+    public synchronized long getFileBytes() {
+        return end;
+    }
+
+    /** Bytes do arquivo que ainda servem (jobs pendentes). */
+    public synchronized long getLiveBytes() {
+        long sum = 0;
+        for (long b : liveBytes.values()) sum += b;
+        return sum;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Quantas vezes a abertura achou (e cortou) um registro incompleto no fim. */
+    public synchronized int getTruncatedTails() {
+        return truncatedTails;
+    }
+
+    public synchronized int getCompactions() {
+        return compactions;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Compactação
+    // ------------------------------------------------------------------------
+
+    /**
+     * Reescreve o arquivo só com os jobs pendentes (programa + último ACK).
+     * Escreve num .tmp, force, e troca com rename: se morrer no meio, o
+     * arquivo antigo continua inteiro. Se a troca falhar, o journal continua
+     * no arquivo antigo (canal reaberto, índice intacto) e a exceção sobe.
+     */
+    public synchronized void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        List<SpoolJob> live = new ArrayList<>(jobs.values());
+        if (tmp.exists() && !tmp.delete()) throw new IOException("Não foi possível apagar " + tmp);
+
+        // posições/tamanhos no arquivo novo: só valem depois do rename
+        Map<Long, Long> positions = new LinkedHashMap<>();
+        Map<Long, Long> bytesById = new LinkedHashMap<>();
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.write(FILE_HEADER);
+            for (SpoolJob job : live) {
+                byte[] program = readProgram(job);
+                byte[] labelBytes = job.getLabel().getBytes(StandardCharsets.UTF_8);
+                int[] cps = job.getCheckpoints();
+                ByteBuffer p = ByteBuffer.allocate(8 + 2 + labelBytes.length + 4 + 4 * cps.length + 4 + program.length);
+                p.putLong(job.getCreatedAtMillis());
+                p.putShort((short) labelBytes.length);
+                p.put(labelBytes);
+                p.putInt(cps.length);
+                for (int cp : cps) p.putInt(cp);
+                p.putInt(program.length);
+                int programOffset = p.position();
+                p.put(program);
+
+                long start = out.getFilePointer();
+                out.write(record(TYPE_JOB, job.getId(), p.array()));
+                positions.put(job.getId(), start + RECORD_HEADER + programOffset);
+                long bytes = RECORD_HEADER + p.capacity();
+
+                if (job.getAckedBytes() > 0) {
+                    out.write(record(TYPE_ACK, job.getId(), ByteBuffer.allocate(4).putInt(job.getAckedBytes()).array()));
+                    bytes += RECORD_HEADER + 4;
+                }
+                bytesById.put(job.getId(), bytes);
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        closeChannel();
+        try {
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Falha ao trocar " + tmp + " por " + file);
+            }
+        } finally {
+            // com ou sem troca, o journal tem que continuar aceitando append/ack
+            openChannel();
+        }
+
+        end = ch.size();
+        for (SpoolJob job : live) {
+            job.programPosition = positions.get(job.getId());
+            liveBytes.put(job.getId(), bytesById.get(job.getId()));
+            forcedAck.put(job.getId(), job.getAckedBytes());
+        }
+        doneSinceCompact = 0;
+        compactions++;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeChannel();
+    }
+
+    // ------------------------------------------------------------------------
+    //  Internos
+    // ------------------------------------------------------------------------
+
+    private void openChannel() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        ch = raf.getChannel();
+    }
+
+    private void closeChannel() {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {}
+            raf = null;
+            ch = null;
+        }
+    }
+
+    /** Varre o arquivo, monta o índice e corta um fim incompleto. */
+    private void recover() throws IOException {
+        long size = ch.size();
+        if (size < FILE_HEADER.length) {
+            ch.truncate(0);
+            writeFully(ByteBuffer.wrap(FILE_HEADER), 0);
+            ch.force(true);
+            end = FILE_HEADER.length;
+            return;
+        }
+
+        byte[] magic = new byte[FILE_HEADER.length];
+        readFully(ByteBuffer.wrap(magic), 0);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != FILE_HEADER[i]) throw new IOException("Arquivo não é um journal de impressão: " + file);
+        }
+
+        long pos = FILE_HEADER.length;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (pos + RECORD_HEADER <= size) {
+            header.clear();
+            readFully(header, pos);
+            header.flip();
+            int recMagic = header.getInt();
+            byte type = header.get();
+            long id = header.getLong();
+            int len = header.getInt();
+            int crc = header.getInt();
+            if (recMagic != RECORD_MAGIC || len < 0 || pos + RECORD_HEADER + len > size) break;
+
+            byte[] payload = new byte[len];
+            readFully(ByteBuffer.wrap(payload), pos + RECORD_HEADER);
+            if (crc(type, id, payload) != crc) break;
+            if (!apply(type, id, payload, pos)) break;
+
+            nextId = Math.max(nextId, id + 1);
+            pos += RECORD_HEADER + len;
+        }
+
+        if (pos < size) {
+            // processo morreu no meio de um write: o que vem depois não vale
+            ch.truncate(pos);
+            ch.force(true);
+            truncatedTails++;
+        }
+        end = pos;
+        for (SpoolJob job : jobs.values()) forcedAck.put(job.getId(), job.getAckedBytes());
+    }
+
+    /** Aplica um registro lido no índice. false = payload inconsistente. */
+    private boolean apply(byte type, long id, byte[] payload, long recordStart) {
+        ByteBuffer p = ByteBuffer.wrap(payload);
+        try {
+            switch (type) {
+                case TYPE_JOB: {
+                    long createdAt = p.getLong();
+                    int labelLen = p.getShort() & 0xFFFF;
+                    String label = new String(payload, p.position(), labelLen, StandardCharsets.UTF_8);
+                    p.position(p.position() + labelLen);
+                    int n = p.getInt();
+                    if (n < 0 || n > p.remaining() / 4) return false;
+                    int[] cps = new int[n];
+                    for (int i = 0; i < n; i++) cps[i] = p.getInt();
+                    int length = p.getInt();
+                    if (length != p.remaining()) return false;
+                    SpoolJob job = new SpoolJob(id, label, createdAt, length, cps,
+                            recordStart + RECORD_HEADER + p.position());
+                    jobs.put(id, job);
+                    liveBytes.put(id, (long) RECORD_HEADER + payload.length);
+                    return true;
+                }
+                case TYPE_ACK: {
+                    SpoolJob job = jobs.get(id);
+                    if (job != null) {
+                        job.setAcked(p.getInt());
+                        liveBytes.put(id, liveBytes.get(id) + RECORD_HEADER + payload.length);
+                    }
+                    return true;
+                }
+                case TYPE_DONE: {
+                    SpoolJob job = jobs.remove(id);
+                    if (job != null) job.setDone();
+                    liveBytes.remove(id);
+                    return true;
+                }
+                default:
+                    return false;
+            }
+        } catch (RuntimeException e) {
+            // BufferUnderflow / índices fora: registro não bate com o formato
+            return false;
+        }
+    }
+
+    private long writeRecord(byte type, long id, byte[] payload) throws IOException {
+        long start = end;
+        writeFully(ByteBuffer.wrap(record(type, id, payload)), start);
+        end = start + RECORD_HEADER + payload.length;
+        return start;
+    }
+
+    private static byte[] record(byte type, long id, byte[] payload) {
+        ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+        b.putInt(RECORD_MAGIC);
+        b.put(type);
+        b.putLong(id);
+        b.putInt(payload.length);
+        b.putInt(crc(type, id, payload));
+        b.put(payload);
+        return b.array();
+    }
+
+    private static int crc(byte type, long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(13).put(type).putLong(id).putInt(payload.length).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private long garbageBytes() {
+        return end - FILE_HEADER.length - getLiveBytes();
+    }
+
+    private void writeFully(ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            pos += ch.write(b, pos);
+        }
+    }
+
+    private void readFully(ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos);
+            if (n < 0) throw new IOException("Fim inesperado do journal em " + pos);
+            pos += n;
+        }
+    }
+}
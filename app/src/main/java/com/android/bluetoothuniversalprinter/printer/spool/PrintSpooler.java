@@ -0,0 +1,370 @@
+package com.android.bluetoothuniversalprinter.printer.spool;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothEscPosPrinter;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PacingController;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.transport.PrinterTransport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spooler persistente: nenhum job se perde se o app morrer ou o link cair.
+ *
+ * Fluxo:
+ *  1. submit() roda o job num BluetoothEscPosPrinter que escreve em memória
+ *     (sem pausas) e obtém o programa ESC/POS final + checkpoints
+ *  2. o programa vai pro PrintJournal (em disco, antes de qualquer byte sair)
+ *  3. drain() envia os jobs pendentes pelo PrinterTransport, faixa por faixa,
+ *     registrando no journal até onde a impressora já recebeu (ACK)
+ *  4. terminou: DONE no journal
+ *
+ * Se o envio falha, o job fica pendente. Depois de reconectar (ou de reabrir o
+ * app) é só chamar drain() de novo:
+ *  - RESUME (padrão): volta ao último checkpoint antes de (ACK - buffer da
+ *    impressora). O que estava no buffer da impressora quando o link caiu pode
+ *    não ter saído no papel, então reenviamos esse trecho.
+ *    Obs.: alinhamento/escala valem do ponto de retomada em diante só se a
+ *    impressora não foi desligada; se foi, prefira REPRINT.
+ *  - REPRINT: reimprime o job inteiro.
+ *
+ * O ritmo das faixas (PacingController) é aplicado aqui, na hora do envio:
+ * o programa gravado não tem pausas.
+ *
+ * Com várias impressoras (PrinterPool), cada job pode sair por um link
+ * diferente (print(job, transport, profile, pacing)) e os envios correm em
+ * paralelo; um job que já está saindo por um link não é pego pelo drain().
+ * Um job gravado com record() fica reservado pra quem vai roteá-lo (route())
+ * até o envio dele terminar, falhar ou ser cancelado: o drain() da impressora
+ * principal não rouba job que o pool mandou pra outra.
+ *
+ * Chamar fora da UI thread (disco + rede).
+ */
+public final class PrintSpooler implements Closeable {
+
+    /** O conteúdo de um job, escrito contra o driver de sempre. */
+    public interface JobBody {
+        void print(BluetoothEscPosPrinter printer) throws IOException;
+    }
+
+    public enum ResumePolicy {
+        RESUME, REPRINT
+    }
+
+    private final PrintJournal journal;
+
+    /** Ids dos jobs sendo enviados agora (por qualquer link). */
+    private final Set<Long> sending = new HashSet<>();
+
+    /** Jobs com dono (membro do pool); drain() pula. Guardado pelo lock de sending. */
+    private final Map<Long, String> owners = new HashMap<>();
+
+    /** Dono de um job gravado por record() que ainda não passou pelo route(). */
+    private static final String ROUTING = "(roteando)";
+
+    private PrinterTransport transport;
+    private PrinterProfile profile = PrinterProfile.generic();
+    private PacingController pacing = PacingController.forProfile(profile);
+    private volatile ResumePolicy resumePolicy = ResumePolicy.RESUME;
+
+    public PrintSpooler(PrintJournal journal) {
+        this.journal = journal;
+    }
+
+    /** Abre o journal em file (recupera o que ficou pendente da última execução). */
+    public static PrintSpooler open(File file) throws IOException {
+        return new PrintSpooler(PrintJournal.open(file));
+    }
+
+    /** Impressora atual (chamar a cada conexão/reconexão). */
+    public synchronized void attach(PrinterTransport transport, PrinterProfile profile) {
+        this.transport = transport;
+        this.profile = (profile == null) ? PrinterProfile.generic() : profile;
+        this.pacing = PacingController.forProfile(this.profile, transport);
+    }
+
+    public synchronized void detach() {
+        this.transport = null;
+    }
+
+    public synchronized void setResumePolicy(ResumePolicy policy) {
+        this.resumePolicy = (policy == null) ? ResumePolicy.RESUME : policy;
+    }
+
+    /**
+     * Compila o job, grava no journal e tenta imprimir tudo que está pendente.
+     *
+     * Se a impressora não estiver conectada (ou o link cair), lança IOException
+     * mas o job continua salvo e sai no próximo drain().
+     */
+    public SpoolJob submit(String label, JobBody body) throws IOException {
+        PrinterProfile p;
+        synchronized (this) {
+            p = profile;
+        }
+        SpoolJob job = store(label, body, p, null);
+        drain();
+        return job;
+    }
+
+    /**
+     * Só a parte de CPU + disco: compila o job e grava no journal, sem enviar.
+     * Pode rodar em paralelo com envios (ex.: fila RENDER do PrintScheduler).
+     *
+     * O job já sai reservado: drain() não pega ele até o print() por um link
+     * terminar ou falhar, cancel() ou release(). Quem chamou deve rotear
+     * (route()) e enviar, ou liberar.
+     */
+    public SpoolJob record(String label, JobBody body) throws IOException {
+        PrinterProfile p;
+        synchronized (this) {
+            p = profile;
+        }
+        return record(label, body, p);
+    }
+
+    /**
+     * Igual a record(label, body), compilando pro perfil da impressora que vai
+     * imprimir (membro do pool já escolhido): QR/CODE128 nativos, GS L, ESC J
+     * só saem se ela aceitar.
+     */
+    public SpoolJob record(String label, JobBody body, PrinterProfile profile) throws IOException {
+        return store(label, body, profile, ROUTING);
+    }
+
+    /** Registra o membro do pool que vai imprimir o job. */
+    public void route(SpoolJob job, String memberKey) {
+        synchronized (sending) {
+            if (!job.isDone()) owners.put(job.getId(), memberKey);
+        }
+    }
+
+    /** Tira o dono do job: volta a ser do drain() (ex.: roteamento falhou). */
+    public void release(SpoolJob job) {
+        synchronized (sending) {
+            owners.remove(job.getId());
+        }
+    }
+
+    /** Membro que ficou com o job (null se é do drain()). */
+    public String getOwner(SpoolJob job) {
+        synchronized (sending) {
+            return owners.get(job.getId());
+        }
+    }
+
+    private SpoolJob store(String label, JobBody body, PrinterProfile profile, String owner) throws IOException {
+        JobProgramRecorder recorder = new JobProgramRecorder();
+        BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(recorder);
+        printer.setProfile(profile == null ? PrinterProfile.generic() : profile);
+        printer.setPacingEnabled(false);
+        body.print(printer);
+        printer.flush();
+
+        if (owner == null) return journal.append(label, recorder.toByteArray(), recorder.checkpoints());
+        // reserva junto com o append: um drain() concorrente nunca vê o job sem dono
+        synchronized (sending) {
+            SpoolJob job = journal.append(label, recorder.toByteArray(), recorder.checkpoints());
+            owners.put(job.getId(), owner);
+            return job;
+        }
+    }
+
+    /** Envia um job específico pela impressora atual (se ainda estiver pendente). */
+    public void print(SpoolJob job) throws IOException {
+        PrinterTransport t;
+        PrinterProfile p;
+        PacingController pc;
+        synchronized (this) {
+            t = transport;
+            p = profile;
+            pc = pacing;
+        }
+        print(job, t, p, pc);
+    }
+
+    /**
+     * Envia um job por um link específico (impressora escolhida pelo pool).
+     * Não faz nada se o job já terminou ou já está saindo por outro link.
+     * Depois do envio (ou da falha) o job perde o dono: se ficou pendente,
+     * sai no próximo drain().
+     */
+    public void print(SpoolJob job, PrinterTransport transport, PrinterProfile profile,
+                      PacingController pacing) throws IOException {
+        if (!claim(job, true)) return;
+        try {
+            send(job, transport, profile, pacing);
+        } finally {
+            unclaim(job);
+            release(job);
+        }
+    }
+
+    /**
+     * Envia todos os jobs pendentes, em ordem, pela impressora atual.
+     * Pula os que têm dono (roteados pelo pool e ainda não enviados).
+     *
+     * @return quantos jobs foram concluídos nesta chamada
+     */
+    public synchronized int drain() throws IOException {
+        int printed = 0;
+        for (SpoolJob job : journal.pending()) {
+            if (!claim(job, false)) continue;
+            try {
+                if (send(job, transport, profile, pacing)) printed++;
+            } finally {
+                unclaim(job);
+            }
+        }
+        return printed;
+    }
+
+    /**
+     * Desiste de um job pendente (não será impresso). Vale na hora: um envio
+     * em andamento para na próxima fronteira de faixa.
+     */
+    public void cancel(SpoolJob job) throws IOException {
+        release(job);
+        journal.markDone(job);
+    }
+
+    public List<SpoolJob> getPending() {
+        return journal.pending();
+    }
+
+    public PrintJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    // ------------------------------------------------------------------------
+    //  Envio
+    // ------------------------------------------------------------------------
+
+    private boolean claim(SpoolJob job, boolean owned) {
+        synchronized (sending) {
+            if (job.isDone() || (!owned && owners.containsKey(job.getId()))) return false;
+            return sending.add(job.getId());
+        }
+    }
+
+    private void unclaim(SpoolJob job) {
+        synchronized (sending) {
+            sending.remove(job.getId());
+        }
+    }
+
+    /** @return false se o job foi cancelado no meio (não chegou no último checkpoint) */
+    private boolean send(SpoolJob job, PrinterTransport transport, PrinterProfile profile,
+                         PacingController pacing) throws IOException {
+        if (transport == null || !transport.isConnected()) {
+            throw new IOException("Impressora desconectada; " + journal.pending().size() + " job(s) no spool");
+        }
+        byte[] program = journal.readProgram(job);
+        int from = startOffset(job, profile);
+
+        for (int cp : job.getCheckpoints()) {
+            if (cp <= from) continue;
+            if (job.isDone()) return false; // cancel() no meio do envio
+            if (Thread.currentThread().isInterrupted()) {
+                // cancelado (PrintScheduler.Ticket.cancel): para numa fronteira de comando
+                throw new InterruptedIOException("Envio do spool interrompido");
+            }
+            writeSegment(transport, pacing, program, from, cp - from);
+            journal.ack(job, cp);
+            from = cp;
+        }
+        if (job.isDone()) return false;
+        journal.markDone(job);
+        return true;
+    }
+
+    /** De onde (re)começar o job. */
+    private int startOffset(SpoolJob job, PrinterProfile profile) {
+        if (job.getAckedBytes() == 0 || resumePolicy == ResumePolicy.REPRINT) return 0;
+        // o buffer da impressora pode ter sido perdido junto com o link
+        int safe = Math.max(0, job.getAckedBytes() - profile.getBufferBytes());
+        return job.checkpointAtOrBefore(safe);
+    }
+
+    /** Um trecho entre checkpoints: pausa se for faixa raster, escreve em pacotes do MTU, flush. */
+    private static void writeSegment(PrinterTransport transport, PacingController pacing,
+                                     byte[] program, int off, int len) throws IOException {
+        int[] stripe = findStripe(program, off, len);
+        if (stripe != null) {
+            long wait = pacing.delayNanos(System.nanoTime(), stripe[0], stripe[1]);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Envio do spool interrompido");
+                }
+                pacing.onPaused(wait);
+            }
+        }
+
+        int mtu = Math.max(1, transport.getMtu());
+        long t0 = System.nanoTime();
+        for (int p = off, end = off + len; p < end; p += mtu) {
+            transport.write(program, p, Math.min(mtu, end - p));
+        }
+        transport.flush();
+        long t1 = System.nanoTime();
+        if (stripe != null) pacing.onWritten(t1, stripe[0], stripe[1], t1 - t0);
+    }
+
+    /**
+     * Procura o GS v 0 do trecho andando pelos comandos curtos que o driver
+     * manda antes da faixa (ESC a, GS L, ESC J, texto...).
+     *
+     * @return {linhas, bytesPorLinha} ou null se o trecho não tem faixa raster
+     */
+    private static int[] findStripe(byte[] p, int off, int len) {
+        int i = off;
+        final int end = off + len;
+        while (i < end) {
+            int b = p[i] & 0xFF;
+            if (b == 0x1D && i + 7 < end && p[i + 1] == 0x76 && p[i + 2] == 0x30) {
+                int bytesPerRow = (p[i + 4] & 0xFF) | ((p[i + 5] & 0xFF) << 8);
+                int rows = (p[i + 6] & 0xFF) | ((p[i + 7] & 0xFF) << 8);
+                return new int[]{rows, bytesPerRow};
+            }
+            if (b == 0x1B && i + 1 < end) {
+                int c = p[i + 1];
+                if (c == '@') {
+                    i += 2;
+                } else if (c == 'a' || c == 'E' || c == 'J' || c == '3') {
+                    i += 3;
+                } else {
+                    return null;
+                }
+            } else if (b == 0x1D && i + 1 < end) {
+                int c = p[i + 1];
+                if (c == 'L') {
+                    i += 4;
+                } else if (c == '!') {
+                    i += 3;
+                } else {
+                    return null;
+                }
+            } else if (b == 0x0A || b >= 0x20) {
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+}
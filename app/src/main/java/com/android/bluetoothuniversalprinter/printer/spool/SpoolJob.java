@@ -0,0 +1,91 @@
+package com.android.bluetoothuniversalprinter.printer.spool;
+
+/**
+ * Um job no journal: programa ESC/POS final + até onde a impressora já recebeu.
+ *
+ * Os bytes do programa ficam no arquivo (PrintJournal.readProgram);
+ * aqui só o índice em memória.
+ */
+public final class SpoolJob {
+
+    private final long id;
+    private final String label;
+    private final long createdAtMillis;
+    private final int length;
+    private final int[] checkpoints;
+
+    /** Posição do programa dentro do arquivo (muda na compactação). */
+    long programPosition;
+
+    private int ackedBytes;
+    /** cancel() marca de outra thread enquanto o envio confere entre as faixas. */
+    private volatile boolean done;
+
+    SpoolJob(long id, String label, long createdAtMillis, int length, int[] checkpoints, long programPosition) {
+        this.id = id;
+        this.label = label;
+        this.createdAtMillis = createdAtMillis;
+        this.length = length;
+        this.checkpoints = checkpoints;
+        this.programPosition = programPosition;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    /** Tamanho do programa ESC/POS em bytes. */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Fronteiras de comando (offsets crescentes, o último = getLength()).
+     * Só dá pra retomar o envio a partir de um desses pontos: no meio de um
+     * GS v 0 a impressora interpretaria dados de imagem como comando.
+     */
+    int[] getCheckpoints() {
+        return checkpoints;
+    }
+
+    /** Bytes já entregues ao transporte (write + flush sem erro). */
+    public int getAckedBytes() {
+        return ackedBytes;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    void setAcked(int bytes) {
+        ackedBytes = Math.max(ackedBytes, Math.min(bytes, length));
+    }
+
+    void setDone() {
+        done = true;
+    }
+
+    /** Maior checkpoint <= offset (0 se nenhum). */
+    int checkpointAtOrBefore(int offset) {
+        int best = 0;
+        for (int cp : checkpoints) {
+            if (cp > offset) break;
+            best = cp;
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolJob{#" + id + " " + label + ", " + ackedBytes + "/" + length + " bytes"
+                + (done ? ", concluído" : "") + "}";
+    }
+}
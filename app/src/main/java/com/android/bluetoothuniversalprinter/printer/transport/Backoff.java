@@ -0,0 +1,45 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import java.util.Random;
+
+/**
+ * Espera entre tentativas de reconexão: exponencial com teto e "full jitter"
+ * (sorteio entre 0 e base * 2^tentativa, limitado ao teto).
+ *
+ * O jitter evita que várias impressoras (ou vários terminais) que caíram
+ * juntas tentem reconectar no mesmo instante.
+ */
+public final class Backoff {
+
+    private final long baseMs;
+    private final long capMs;
+    private final Random random;
+
+    public Backoff(long baseMs, long capMs, Random random) {
+        this.baseMs = Math.max(1, baseMs);
+        this.capMs = Math.max(this.baseMs, capMs);
+        this.random = random;
+    }
+
+    public Backoff(long baseMs, long capMs) {
+        this(baseMs, capMs, new Random());
+    }
+
+    /**
+     * @param attempt 0 = primeira tentativa
+     * @return quanto esperar antes dela, em ms (nunca mais que o teto)
+     */
+    public long delayMs(int attempt) {
+        return (long) (random.nextDouble() * ceilingMs(attempt));
+    }
+
+    /** Limite do sorteio na tentativa attempt: min(teto, base * 2^attempt). */
+    public long ceilingMs(int attempt) {
+        int shift = Math.min(Math.max(0, attempt), 30);
+        return Math.min(capMs, baseMs << shift);
+    }
+
+    public long getCapMs() {
+        return capMs;
+    }
+}
@@ -0,0 +1,133 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * Transporte em memória: grava tudo que o driver mandaria pra impressora.
+ *
+ * Serve pra rodar a pilha ESC/POS inteira num PC (testes, benchmark, emulador)
+ * sem Bluetooth. Opcionalmente simula a vazão do link (bytes/s) dormindo nas
+ * escritas, pra medir pacing/agrupamento de forma realista.
+ *
+ * Respostas de status (DLE EOT etc.) podem ser enfileiradas com queueStatus().
+ */
+public class LoopbackTransport implements PrinterTransport {
+
+    private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+    private final ArrayDeque<byte[]> statusReplies = new ArrayDeque<>();
+
+    private final int mtu;
+    private int simulatedBytesPerSecond;
+
+    private boolean connected;
+    private long writes;
+    private long flushes;
+
+    public LoopbackTransport(int mtu) {
+        this.mtu = Math.max(1, mtu);
+    }
+
+    public LoopbackTransport() {
+        this(4096);
+    }
+
+    /** Faz cada write "demorar" como num link de bytesPerSecond (0 = instantâneo). */
+    public LoopbackTransport setSimulatedBytesPerSecond(int bytesPerSecond) {
+        this.simulatedBytesPerSecond = Math.max(0, bytesPerSecond);
+        return this;
+    }
+
+    @Override
+    public synchronized void connect() {
+        connected = true;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        synchronized (this) {
+            if (!connected) throw new IOException("Loopback fechado");
+            recorded.write(data, off, len);
+            writes++;
+        }
+        if (simulatedBytesPerSecond > 0) {
+            long nanos = len * 1_000_000_000L / simulatedBytesPerSecond;
+            try {
+                Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Loopback interrompido");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushes++;
+    }
+
+    @Override
+    public synchronized int readStatus(byte[] buf, int timeoutMs) {
+        byte[] reply = statusReplies.poll();
+        if (reply == null) return 0;
+        int n = Math.min(buf.length, reply.length);
+        System.arraycopy(reply, 0, buf, 0, n);
+        return n;
+    }
+
+    /** Próxima resposta que readStatus() vai devolver. */
+    public synchronized void queueStatus(byte... reply) {
+        statusReplies.add(reply.clone());
+    }
+
+    @Override
+    public int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public int getThroughputHint() {
+        return simulatedBytesPerSecond;
+    }
+
+    @Override
+    public String describe() {
+        return "loopback";
+    }
+
+    @Override
+    public synchronized void close() {
+        connected = false;
+    }
+
+    /** Tudo que foi escrito desde o último reset(). */
+    public synchronized byte[] toByteArray() {
+        return recorded.toByteArray();
+    }
+
+    public synchronized int size() {
+        return recorded.size();
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    public synchronized void reset() {
+        recorded.reset();
+        statusReplies.clear();
+        writes = 0;
+        flushes = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Canal de bytes até a impressora ESC/POS.
+ *
+ * O driver (BluetoothEscPosPrinter) só precisa escrever bytes e, às vezes,
+ * ler uma resposta de status (DLE EOT). De onde os bytes vão não importa:
+ *
+ *  - BluetoothSppTransport : RFCOMM / SPP (impressoras Bluetooth)
+ *  - TcpPrinterTransport   : socket TCP cru, porta 9100 (impressoras de rede)
+ *  - LoopbackTransport     : memória, grava o fluxo (testes e benchmark no PC)
+ *  - ReconnectingTransport : embrulha qualquer um dos acima e reconecta sozinho
+ *
+ * Chamadas de conexão e escrita bloqueiam: usar fora da UI thread.
+ */
+public interface PrinterTransport extends Closeable {
+
+    /** Abre a conexão (fecha a anterior, se houver). */
+    void connect() throws IOException;
+
+    boolean isConnected();
+
+    void write(byte[] data, int off, int len) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * Lê bytes de status que a impressora mandou (resposta de DLE EOT, ASB...).
+     *
+     * @param timeoutMs quanto esperar pelo primeiro byte
+     * @return quantos bytes foram lidos em buf (0 = nada chegou no prazo)
+     */
+    int readStatus(byte[] buf, int timeoutMs) throws IOException;
+
+    /** Tamanho de pacote que o link gosta (MTU). Usado pra agrupar comandos. */
+    int getMtu();
+
+    /** Vazão aproximada do link em bytes/s (0 = desconhecida / sem limite). */
+    int getThroughputHint();
+
+    /** Descrição curta pra log ("spp 00:11:22:33:44:55", "tcp 192.168.0.50:9100"...). */
+    String describe();
+
+    /** Fecha sem lançar exceção. */
+    @Override
+    void close();
+
+    /** Visão OutputStream do transporte (o driver escreve através dela). */
+    default OutputStream asOutputStream() {
+        final PrinterTransport t = this;
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                t.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                t.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                t.flush();
+            }
+
+            @Override
+            public void close() {
+                t.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,414 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Transporte que se recupera sozinho de um link quebrado (broken pipe,
+ * "socket closed", impressora desligada e religada...).
+ *
+ * Em cima de qualquer PrinterTransport (SPP, TCP) criado por uma Factory:
+ *  - guarda os bytes escritos desde o último flush (o driver só dá flush em
+ *    fronteira de comando, então esse trecho é sempre comandos inteiros) e,
+ *    com setReplayWindow(), também os últimos trechos já entregues: pelo
+ *    menos o tamanho do buffer da impressora, que se perde com o link
+ *  - se write/flush lança IOException: fecha o link, reconecta com backoff
+ *    exponencial + jitter (poucas tentativas, é a thread de I/O que espera) e
+ *    reenvia a partir da fronteira de flush mais antiga guardada (nunca do
+ *    meio de um GS v 0)
+ *  - InterruptedIOException é cancelamento de quem chamou, não queda: sobe
+ *    direto, sem reconectar nem fechar o link
+ *  - com standby ligado, mantém um segundo link já conectado: o failover custa
+ *    milissegundos em vez do 1..3 s de um connect RFCOMM
+ *
+ * Se não voltar dentro das tentativas, a IOException sobe normalmente
+ * (isConnected() = false) e quem está acima decide: o spool retoma o job de
+ * um checkpoint, o pool tira a impressora e a Activity reconecta em background.
+ *
+ * Obs.: o reenvio da janela pode repetir no papel um trecho que já tinha
+ * saído (mesmo critério da retomada do spool: melhor repetir que perder).
+ * Trechos entregues há mais de HISTORY_MAX_AGE_MS já saíram e não são
+ * reenviados. Sem janela (padrão), só o trecho desde o último flush volta.
+ *
+ * Standby: muita impressora SPP barata aceita uma conexão só; nesse caso o
+ * connect do standby falha e o transporte segue só com reconexão. Impressoras
+ * TCP normalmente aceitam várias.
+ */
+public class ReconnectingTransport implements PrinterTransport {
+
+    /** Cria um link novo (ainda não conectado) pra mesma impressora. */
+    public interface Factory {
+        PrinterTransport create() throws IOException;
+    }
+
+    /** Eventos pra UI / log (chamados na thread que percebeu a queda). */
+    public interface Listener {
+        void onLinkLost(IOException cause);
+
+        void onReconnected(boolean viaStandby, int attempts, long outageMs);
+    }
+
+    /** Trecho maior que isso (sem flush) não dá pra reenviar: a queda sobe direto. */
+    private static final int MAX_REPLAY_BYTES = 64 * 1024;
+
+    /** Trecho entregue há mais que isso já passou pelo buffer e saiu no papel. */
+    private static final long HISTORY_MAX_AGE_MS = 5000;
+
+    public static final int DEFAULT_ATTEMPTS = 4;
+
+    private final Factory factory;
+    private final String description;
+    private final int mtu;
+    private final int throughputHint;
+
+    private Backoff backoff = new Backoff(250, 4000);
+    private int maxAttempts = DEFAULT_ATTEMPTS;
+    private Executor standbyExecutor;
+    private volatile Listener listener;
+
+    private PrinterTransport active;
+    private PrinterTransport standby;
+    private boolean standbyPending;
+    private boolean closed;
+
+    // janela de reenvio: trechos já entregues (histórico) + trecho desde o último flush
+    private byte[] replay = new byte[4096];
+    private int replayLen;
+    private boolean replayable = true;
+    private int replayWindow;
+    /** Onde começa o trecho sem flush; antes dele, o histórico. */
+    private int pendingStart;
+    /** Trechos do histórico, do mais antigo: {bytes, nanoTime do flush}. */
+    private final ArrayDeque<long[]> history = new ArrayDeque<>();
+
+    private long reconnects;
+    private long failovers;
+    private long replayedBytes;
+    private long lastOutageMs;
+
+    public ReconnectingTransport(Factory factory) throws IOException {
+        this.factory = factory;
+        this.active = factory.create();
+        this.description = active.describe();
+        this.mtu = active.getMtu();
+        this.throughputHint = active.getThroughputHint();
+    }
+
+    /** Tentativas de reconexão dentro de um write antes de desistir. */
+    public synchronized ReconnectingTransport setRetry(Backoff backoff, int maxAttempts) {
+        this.backoff = backoff;
+        this.maxAttempts = Math.max(0, maxAttempts);
+        return this;
+    }
+
+    /**
+     * Quantos bytes já entregues guardar pra reenviar depois de uma queda
+     * (use PrinterProfile.getBufferBytes(): o que estava no buffer da
+     * impressora some junto com o link). 0 = só o trecho desde o último flush.
+     */
+    public synchronized ReconnectingTransport setReplayWindow(int bytes) {
+        this.replayWindow = Math.max(0, bytes);
+        trimHistory(System.nanoTime());
+        return this;
+    }
+
+    /**
+     * Liga o link reserva. O connect dele roda no executor (fila CONTROL do
+     * PrintScheduler, por exemplo), nunca na thread de impressão.
+     */
+    public synchronized ReconnectingTransport enableStandby(Executor executor) {
+        this.standbyExecutor = executor;
+        if (active != null && active.isConnected()) prepareStandby();
+        return this;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ------------------------------------------------------------------------
+    //  PrinterTransport
+    // ------------------------------------------------------------------------
+
+    @Override
+    public synchronized void connect() throws IOException {
+        closed = false;
+        if (active == null) active = factory.create();
+        active.connect();
+        resetReplay();
+        prepareStandby();
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return !closed && active != null && active.isConnected();
+    }
+
+    @Override
+    public synchronized void write(byte[] data, int off, int len) throws IOException {
+        remember(data, off, len);
+        try {
+            link().write(data, off, len);
+        } catch (InterruptedIOException e) {
+            // cancelado no meio do trecho: não pode voltar num reenvio junto com o próximo job
+            resetReplay();
+            throw e;
+        } catch (IOException e) {
+            recover(e); // a janela inteira (incluindo data) já foi reenviada
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        try {
+            link().flush();
+        } catch (InterruptedIOException e) {
+            // cancelado no meio do trecho: não pode voltar num reenvio junto com o próximo job
+            resetReplay();
+            throw e;
+        } catch (IOException e) {
+            recover(e);
+            active.flush();
+        }
+        flushed();
+    }
+
+    @Override
+    public synchronized int readStatus(byte[] buf, int timeoutMs) throws IOException {
+        try {
+            return link().readStatus(buf, timeoutMs);
+        } catch (InterruptedIOException e) {
+            throw e; // timeout/cancelamento da leitura: o link está de pé
+        } catch (IOException e) {
+            recover(e);
+            return 0; // a resposta (se veio) se perdeu com o link antigo
+        }
+    }
+
+    @Override
+    public int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public int getThroughputHint() {
+        return throughputHint;
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (active != null) active.close();
+        if (standby != null) standby.close();
+        standby = null;
+        notifyAll(); // acorda uma espera de backoff
+    }
+
+    // ------------------------------------------------------------------------
+    //  Métricas
+    // ------------------------------------------------------------------------
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    public synchronized long getFailovers() {
+        return failovers;
+    }
+
+    public synchronized long getReplayedBytes() {
+        return replayedBytes;
+    }
+
+    /** Quanto durou a última queda (da IOException até o link voltar). */
+    public synchronized long getLastOutageMs() {
+        return lastOutageMs;
+    }
+
+    public synchronized boolean hasStandby() {
+        return standby != null && standby.isConnected();
+    }
+
+    // ------------------------------------------------------------------------
+    //  Recuperação
+    // ------------------------------------------------------------------------
+
+    private PrinterTransport link() throws IOException {
+        if (closed || active == null) throw new IOException("Transporte fechado: " + description);
+        return active;
+    }
+
+    /**
+     * Link caiu no meio do trecho: standby (se tiver) ou reconexão com backoff,
+     * depois reenvia a janela. Lança a causa original se não conseguir.
+     */
+    private void recover(IOException cause) throws IOException {
+        if (closed || !replayable) {
+            if (active != null) active.close();
+            throw cause;
+        }
+        long t0 = System.nanoTime();
+        trimHistory(t0);
+        Listener l = listener;
+        if (l != null) l.onLinkLost(cause);
+        if (active != null) active.close();
+
+        // 1. failover pro link reserva
+        if (standby != null) {
+            PrinterTransport spare = standby;
+            standby = null;
+            if (spare.isConnected() && replayOn(spare)) {
+                active = spare;
+                failovers++;
+                recovered(true, 0, t0);
+                return;
+            }
+            spare.close();
+        }
+
+        // 2. reconexão com backoff
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            sleep(backoff.delayMs(attempt));
+            if (closed) break;
+            PrinterTransport fresh;
+            try {
+                fresh = factory.create();
+                fresh.connect();
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+                continue;
+            }
+            if (replayOn(fresh)) {
+                active = fresh;
+                reconnects++;
+                recovered(false, attempt + 1, t0);
+                return;
+            }
+            fresh.close();
+        }
+        throw cause;
+    }
+
+    private boolean replayOn(PrinterTransport t) {
+        try {
+            if (replayLen > 0) t.write(replay, 0, replayLen);
+            replayedBytes += replayLen;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void recovered(boolean viaStandby, int attempts, long t0) {
+        lastOutageMs = (System.nanoTime() - t0) / 1_000_000L;
+        prepareStandby();
+        Listener l = listener;
+        if (l != null) l.onReconnected(viaStandby, attempts, lastOutageMs);
+    }
+
+    /** Espera do backoff; close() acorda e interrupt vira InterruptedIOException. */
+    private void sleep(long ms) throws InterruptedIOException {
+        long deadline = System.currentTimeMillis() + ms;
+        long left = ms;
+        try {
+            while (left > 0 && !closed) {
+                wait(left);
+                left = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reconexão interrompida");
+        }
+    }
+
+    /** Conecta um link reserva em background (se ligado e ainda não houver). */
+    private void prepareStandby() {
+        final Executor ex = standbyExecutor;
+        if (ex == null || closed || standbyPending || (standby != null && standby.isConnected())) return;
+        standbyPending = true;
+        ex.execute(() -> {
+            PrinterTransport spare = null;
+            try {
+                spare = factory.create();
+                spare.connect();
+            } catch (IOException e) {
+                // impressora aceita uma conexão só (ou está fora): segue sem reserva
+                if (spare != null) spare.close();
+                spare = null;
+            }
+            synchronized (ReconnectingTransport.this) {
+                standbyPending = false;
+                if (spare != null && !closed && standby == null) {
+                    standby = spare;
+                    spare = null;
+                }
+            }
+            if (spare != null) spare.close();
+        });
+    }
+
+    private void remember(byte[] data, int off, int len) {
+        if (!replayable) return;
+        if (replayLen - pendingStart + len > MAX_REPLAY_BYTES) {
+            replayable = false; // trecho grande demais: sem reenvio até o próximo flush
+            clearReplay();
+            return;
+        }
+        if (replayLen + len > replay.length) {
+            replay = Arrays.copyOf(replay, Math.max(replay.length * 2, replayLen + len));
+        }
+        System.arraycopy(data, off, replay, replayLen, len);
+        replayLen += len;
+    }
+
+    /** Flush ok: o trecho vira histórico (uma fronteira de comando) e a janela anda. */
+    private void flushed() {
+        if (!replayable) {
+            resetReplay();
+            return;
+        }
+        long now = System.nanoTime();
+        if (replayLen > pendingStart) history.addLast(new long[]{replayLen - pendingStart, now});
+        pendingStart = replayLen;
+        trimHistory(now);
+    }
+
+    /**
+     * Descarta os trechos mais antigos: os que já saíram no papel e os que
+     * sobram além da janela (mantém a fronteira mais recente que ainda cobre
+     * replayWindow bytes).
+     */
+    private void trimHistory(long now) {
+        long maxAge = HISTORY_MAX_AGE_MS * 1_000_000L;
+        while (!history.isEmpty()) {
+            long[] oldest = history.peekFirst();
+            boolean stale = now - oldest[1] > maxAge;
+            boolean beyond = pendingStart - oldest[0] >= replayWindow;
+            if (!stale && !beyond) break;
+            history.removeFirst();
+            int n = (int) oldest[0];
+            System.arraycopy(replay, n, replay, 0, replayLen - n);
+            replayLen -= n;
+            pendingStart -= n;
+        }
+    }
+
+    private void resetReplay() {
+        clearReplay();
+        replayable = true;
+    }
+
+    private void clearReplay() {
+        replayLen = 0;
+        pendingStart = 0;
+        history.clear();
+    }
+}
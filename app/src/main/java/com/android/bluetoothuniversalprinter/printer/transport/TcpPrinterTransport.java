@@ -0,0 +1,117 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Impressora de rede via socket TCP cru ("RAW" / JetDirect), normalmente porta 9100.
+ *
+ * Mesmo ESC/POS do Bluetooth; o socket já entrega tudo em ordem.
+ * Nagle desligado: o driver já agrupa os comandos antes de escrever.
+ */
+public class TcpPrinterTransport implements PrinterTransport {
+
+    public static final int DEFAULT_PORT = 9100;
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    /** MSS típico de Ethernet. */
+    private static final int TCP_MTU = 1460;
+
+    /** Rede local folgada; quem limita é a impressora. */
+    private static final int TCP_THROUGHPUT_HINT = 1_000_000;
+
+    private final String host;
+    private final int port;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+
+    public TcpPrinterTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public TcpPrinterTransport(String host) {
+        this(host, DEFAULT_PORT);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        close();
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            s.setKeepAlive(true);
+            out = s.getOutputStream();
+            in = s.getInputStream();
+            socket = s;
+        } catch (IOException e) {
+            try {
+                s.close();
+            } catch (IOException ignored) {}
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return socket != null && socket.isConnected() && !socket.isClosed();
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        if (!isConnected()) throw new IOException("TCP não conectado");
+        out.write(data, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    @Override
+    public int readStatus(byte[] buf, int timeoutMs) throws IOException {
+        if (!isConnected()) throw new IOException("TCP não conectado");
+        socket.setSoTimeout(Math.max(1, timeoutMs));
+        try {
+            int n = in.read(buf, 0, buf.length);
+            return Math.max(0, n);
+        } catch (SocketTimeoutException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int getMtu() {
+        return TCP_MTU;
+    }
+
+    @Override
+    public int getThroughputHint() {
+        return TCP_THROUGHPUT_HINT;
+    }
+
+    @Override
+    public String describe() {
+        return "tcp " + host + ":" + port;
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            socket = null;
+        }
+        out = null;
+        in = null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import com.android.bluetoothuniversalprinter.printer.transport.LoopbackTransport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BluetoothEscPosPrinterTest {
+
+    /** Imagem que falhou no meio não deixa a próxima sem ESC a 0 + GS L (sairia deslocada). */
+    @Test
+    public void imageAfterFailedImageResetsMargin() throws IOException {
+        final boolean[] drop = {true};
+        LoopbackTransport link = new LoopbackTransport() {
+            @Override
+            public synchronized void write(byte[] data, int off, int len) throws IOException {
+                if (drop[0] && size() > 600) {
+                    drop[0] = false; // link cai uma vez, no meio da imagem
+                    throw new IOException("link caiu");
+                }
+                super.write(data, off, len);
+            }
+        };
+        link.connect();
+        BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(link);
+
+        printer.beginJob();
+        try {
+            printer.setAlign(1);
+            printer.printRaster(new Bar(400));
+            printer.endJob();
+            fail("link deveria ter caído");
+        } catch (IOException expected) {
+            assertFalse(drop[0]);
+        }
+
+        int before = link.size();
+        printer.beginJob();
+        printer.setAlign(1);
+        printer.printRaster(new Bar(100));
+        printer.endJob();
+        byte[] sent = Arrays.copyOfRange(link.toByteArray(), before, link.size());
+
+        // centralizado (ESC a 1) e depois, antes da primeira faixa, ESC a 0 + GS L
+        int center = indexOf(sent, new byte[]{0x1B, 0x61, 0x01}, 0);
+        int stripe = indexOf(sent, new byte[]{0x1D, 0x76, 0x30}, 0);
+        assertTrue(center >= 0 && stripe > center);
+        int left = indexOf(sent, new byte[]{0x1B, 0x61, 0x00}, center);
+        int margin = indexOf(sent, new byte[]{0x1D, 0x4C}, center);
+        assertTrue("ESC a 0 depois do ESC a 1", left > center && left < stripe);
+        assertTrue("GS L antes da faixa", margin > left && margin < stripe);
+    }
+
+    private static int indexOf(byte[] data, byte[] cmd, int from) {
+        outer:
+        for (int i = from; i + cmd.length <= data.length; i++) {
+            for (int k = 0; k < cmd.length; k++) {
+                if (data[i + k] != cmd[k]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /** Largura toda da cabeça, tinta só nos bytes 10..19: margem lateral pra cortar. */
+    private static final class Bar implements RasterSource {
+        private final int height;
+
+        Bar(int height) {
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return 384;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getBytesPerRow() {
+            return 48;
+        }
+
+        @Override
+        public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+            for (int r = 0; r < rows; r++) {
+                int row = dstOff + r * 48;
+                Arrays.fill(dst, row, row + 48, (byte) 0);
+                Arrays.fill(dst, row + 10, row + 20, (byte) 0xFF);
+            }
+        }
+    }
+}
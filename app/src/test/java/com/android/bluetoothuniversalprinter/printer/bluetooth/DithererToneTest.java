@@ -0,0 +1,55 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Roda os ditherers numa imagem 384 dots de largura (58mm) e confere
+ * que cada um preserva o tom médio de um degradê.
+ *
+ * Só qualidade: tempo (ns/linha) é medido no módulo :benchmarks
+ * (DitherBenchmark), pra não depender da máquina que roda o teste.
+ */
+public class DithererToneTest {
+
+    private static final int WIDTH = 384;
+    private static final int HEIGHT = 2000;
+
+    @Test
+    public void everyDithererKeepsTheMeanTone() {
+        int[] gradient = buildGradient();
+        byte[] out = new byte[RasterPacker.bytesPerRow(WIDTH)];
+        int[] row = new int[WIDTH];
+
+        for (DitherMode mode : DitherMode.values()) {
+            long black = runImage(mode.create(), gradient, row, out);
+            double blackRatio = black / (double) (WIDTH * HEIGHT);
+
+            // degradê de 0..255 na horizontal: metade dos pontos deveria sair preta
+            assertEquals(mode.name(), 0.5, blackRatio, 0.05);
+        }
+    }
+
+    /** Roda a imagem inteira e devolve quantos pontos saíram pretos. */
+    private static long runImage(Ditherer d, int[] gradient, int[] row, byte[] out) {
+        d.begin(WIDTH);
+        long black = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(gradient, 0, row, 0, WIDTH);
+            d.ditherRow(row, 0, WIDTH, y, out, 0);
+            for (byte b : out) {
+                black += Integer.bitCount(b & 0xFF);
+            }
+        }
+        return black;
+    }
+
+    private static int[] buildGradient() {
+        int[] g = new int[WIDTH];
+        for (int x = 0; x < WIDTH; x++) {
+            g[x] = (x * 256) / WIDTH;
+        }
+        return g;
+    }
+}
@@ -0,0 +1,78 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class NvGraphicsRegistryTest {
+
+    private static final String MAC_A = "00:11:22:33:44:55";
+    private static final String MAC_B = "66:77:88:99:AA:BB";
+
+    @Test
+    public void tracksEachPrinterSeparately() throws IOException {
+        NvGraphicsRegistry r = new NvGraphicsRegistry(null);
+        assertEquals("L0", r.keyFor(MAC_A, "logo"));
+        r.stored(MAC_A, "logo", "L0", 0xCAFEL, 9600, 200);
+
+        assertNotNull(r.find(MAC_A, "logo", 0xCAFEL));
+        // outra impressora não tem o logo ainda
+        assertNull(r.find(MAC_B, "logo", 0xCAFEL));
+        // segundo gráfico na mesma impressora pega a próxima chave
+        assertEquals("L1", r.keyFor(MAC_A, "rodape"));
+        assertEquals(1, r.getHits());
+    }
+
+    @Test
+    public void changedContentIsReuploadedOnSameKey() throws IOException {
+        NvGraphicsRegistry r = new NvGraphicsRegistry(null);
+        r.stored(MAC_A, "logo", "L0", 1L, 9600, 200);
+        r.stored(MAC_A, "rodape", "L1", 2L, 4800, 100);
+
+        assertNull(r.find(MAC_A, "logo", 99L));
+        assertEquals(1, r.getMismatches());
+        assertEquals("L0", r.keyFor(MAC_A, "logo"));
+        assertEquals(4800, r.usedBytes(MAC_A, "logo"));
+    }
+
+    @Test
+    public void reconcileDropsKeysThePrinterNoLongerHas() throws IOException {
+        NvGraphicsRegistry r = new NvGraphicsRegistry(null);
+        r.stored(MAC_A, "logo", "L0", 1L, 9600, 200);
+        r.stored(MAC_A, "rodape", "L1", 2L, 4800, 100);
+
+        // impressora resetada e só o logo regravado por outro caminho
+        assertEquals(1, r.reconcile(MAC_A, new HashSet<>(Arrays.asList("L0", "XX"))));
+        assertNotNull(r.find(MAC_A, "logo", 1L));
+        assertNull(r.find(MAC_A, "rodape", 2L));
+        assertEquals(0, r.reconcile(MAC_B, new HashSet<>()));
+    }
+
+    @Test
+    public void survivesRestart() throws IOException {
+        File f = File.createTempFile("nv_graphics", ".txt");
+        f.delete();
+        try {
+            NvGraphicsRegistry r = NvGraphicsRegistry.open(f);
+            r.stored(MAC_A, "res:1|w384|THRESHOLD", "L0", 0xDEADBEEFL, 9600, 200);
+            r.stored(MAC_B, "res:1|w384|THRESHOLD", "L0", 0xDEADBEEFL, 9600, 200);
+            r.forget(MAC_B);
+
+            NvGraphicsRegistry again = NvGraphicsRegistry.open(f);
+            NvGraphicsRegistry.Slot s = again.find(MAC_A, "res:1|w384|THRESHOLD", 0xDEADBEEFL);
+            assertNotNull(s);
+            assertEquals("L0", s.getKeyCode());
+            assertEquals(200, s.getRows());
+            assertEquals(0, again.size(MAC_B));
+        } finally {
+            f.delete();
+        }
+    }
+}
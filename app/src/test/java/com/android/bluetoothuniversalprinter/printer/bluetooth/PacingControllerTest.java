@@ -0,0 +1,74 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PacingControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    /** 58mm: 384 dots = 48 bytes por linha. */
+    private static final int ROW_BYTES = 48;
+
+    @Test
+    public void fullStripesOverSppDoNotCountAsBlocked() {
+        PacingController pc = new PacingController(80, 4096, 0.75);
+        pc.setLinkBytesPerSecond(12_000);
+        int rows = pc.stripeRowsFor(ROW_BYTES);
+
+        // cada faixa leva o tempo do link (~128ms a 12 KB/s): normal, não bloqueio
+        long now = 0;
+        long linkNanos = (long) rows * ROW_BYTES * 1_000_000_000L / 12_000;
+        for (int i = 0; i < 50; i++) {
+            now += linkNanos;
+            pc.onWritten(now, rows, ROW_BYTES, linkNanos);
+        }
+        assertEquals(0, pc.getBlockedWrites());
+        assertEquals(80, pc.getSpeedMmPerSec(), 0.01);
+    }
+
+    @Test
+    public void speedDropsOnBlockAndRecoversAfterCleanWrites() {
+        PacingController pc = new PacingController(80, 4096, 0.75);
+        pc.setLinkBytesPerSecond(12_000);
+        int rows = 32;
+        long clean = (long) rows * ROW_BYTES * 1_000_000_000L / 12_000;
+
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            now += 2000 * MS;
+            pc.onWritten(now, rows, ROW_BYTES, 2000 * MS); // socket segurou 2s
+        }
+        assertEquals(5, pc.getBlockedWrites());
+        double slowed = pc.getSpeedMmPerSec();
+        assertTrue("caiu: " + slowed, slowed < 50);
+
+        for (int i = 0; i < 40; i++) {
+            now += clean;
+            pc.onWritten(now, rows, ROW_BYTES, clean);
+        }
+        assertEquals(5, pc.getBlockedWrites());
+        assertEquals(80, pc.getSpeedMmPerSec(), 0.01);
+    }
+
+    @Test
+    public void blockedThresholdScalesWithWriteSize() {
+        PacingController pc = new PacingController(80, 4096, 0.75);
+        // link desconhecido: só a folga fixa
+        assertEquals(40 * MS, pc.blockedThresholdNanos(6144));
+
+        pc.setLinkBytesPerSecond(12_000);
+        long small = pc.blockedThresholdNanos(48);
+        long stripe = pc.blockedThresholdNanos(6144);
+        assertTrue(small < 50 * MS);
+        assertTrue("faixa de 6 KB a 12 KB/s: " + stripe / MS + "ms", stripe > 1000 * MS);
+
+        // write de 3 KB em 300ms num link de 12 KB/s não é bloqueio; em 1,5s é
+        pc.onWritten(300 * MS, 64, ROW_BYTES, 300 * MS);
+        assertEquals(0, pc.getBlockedWrites());
+        pc.onWritten(1800 * MS, 64, ROW_BYTES, 1500 * MS);
+        assertEquals(1, pc.getBlockedWrites());
+    }
+}
@@ -0,0 +1,76 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RasterCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverBudget() {
+        RasterCache cache = new RasterCache(3 * 1024);
+        RasterCache.Entry logo = entry(1000);
+        cache.put("logo", logo);
+        cache.put("cabecalho", entry(1000));
+        assertSame(logo, cache.get("logo")); // logo vira o mais recente
+
+        cache.put("rodape", entry(1000));
+        assertNull(cache.get("cabecalho"));
+        assertNotNull(cache.get("logo"));
+        assertNotNull(cache.get("rodape"));
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.size());
+        assertEquals(true, cache.getBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void rejectsEntryLargerThanCache() {
+        RasterCache cache = new RasterCache(1024);
+        cache.put("foto", entry(4096));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getRejected());
+    }
+
+    @Test
+    public void invalidateByPrefix() {
+        RasterCache cache = new RasterCache(64 * 1024);
+        cache.put("res:10|a1", entry(100));
+        cache.put("res:10|a0", entry(100));
+        cache.put("res:11|a1", entry(100));
+        assertEquals(2, cache.invalidate("res:10|"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void recorderMarksStripesAndFeeds() {
+        RasterCache.Recorder r = new RasterCache.Recorder();
+        byte[] stripe = {0x1D, 0x76, 0x30, 0x00, 2, 0, 1, 0, (byte) 0xFF, 0x0F};
+        r.write(stripe, 0, stripe.length);
+        r.stripe(1, 2);
+        r.write(new byte[]{0x1B, 0x4A, 24}, 0, 3);
+        r.feed(24);
+        r.write(new byte[]{0x1D, 0x4C, 0, 0}, 0, 4);
+
+        RasterCache.Entry e = r.finish(96);
+        assertEquals(17, e.getProgramBytes());
+        assertEquals(1, e.getStripes());
+        assertArrayEquals(new int[]{10, 13}, e.ends);
+        assertArrayEquals(new int[]{1, 0}, e.rows);
+        assertArrayEquals(new int[]{2, 24}, e.widths);
+        assertEquals(96, e.rawBytes);
+    }
+
+    private static RasterCache.Entry entry(int programBytes) {
+        RasterCache.Recorder r = new RasterCache.Recorder();
+        r.write(new byte[programBytes], 0, programBytes);
+        r.stripe(programBytes / 48, 48);
+        return r.finish(programBytes);
+    }
+}
@@ -0,0 +1,124 @@
+package com.android.bluetoothuniversalprinter.printer.bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RasterStripePipelineTest {
+
+    private static final int WIDTH = 384;
+
+    @Test
+    public void parallelStripesArriveInOrderAndMatchSerial() throws Exception {
+        RasterStripePipeline pipeline = new RasterStripePipeline(32, RasterStripePipeline.DEFAULT_BUFFERS);
+        pipeline.setParallelMinNanos(0); // força o paralelo (se tiver mais de um núcleo)
+
+        byte[] serial = collect((src, sink) -> RasterStripePipeline.runInline(src, 32, sink), new Gradient(1000, true));
+        byte[] piped = collect(pipeline::run, new Gradient(1000, true));
+
+        assertArrayEquals(serial, piped);
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            assertEquals(1, pipeline.getParallelRuns());
+        }
+        assertTrue(pipeline.getLastNanosPerRow() > 0);
+    }
+
+    @Test
+    public void statefulSourceStaysSerial() throws Exception {
+        RasterStripePipeline pipeline = new RasterStripePipeline(32, RasterStripePipeline.DEFAULT_BUFFERS);
+        pipeline.setParallelMinNanos(0);
+
+        byte[] serial = collect((src, sink) -> RasterStripePipeline.runInline(src, 32, sink), new Gradient(300, false));
+        byte[] piped = collect(pipeline::run, new Gradient(300, false));
+
+        assertArrayEquals(serial, piped);
+        assertEquals(0, pipeline.getParallelRuns());
+        assertEquals(1, pipeline.getSerialRuns());
+    }
+
+    @Test
+    public void steadyStateReusesPooledBuffers() throws Exception {
+        StripeBufferPool pool = new StripeBufferPool();
+        RasterStripePipeline pipeline = new RasterStripePipeline(32, RasterStripePipeline.DEFAULT_BUFFERS, pool);
+        pipeline.setParallelMinNanos(0);
+
+        // aquecimento: primeira imagem de cada caminho aloca
+        collect(pipeline::run, new Gradient(600, true));
+        collect(pipeline::run, new Gradient(600, false));
+        collect((src, sink) -> RasterStripePipeline.runInline(src, 32, sink, pool), new Gradient(600, true));
+        long warm = pool.getAllocations();
+
+        for (int i = 0; i < 3; i++) {
+            collect(pipeline::run, new Gradient(600, true));
+            collect(pipeline::run, new Gradient(600, false));
+            collect((src, sink) -> RasterStripePipeline.runInline(src, 32, sink, pool), new Gradient(600, true));
+        }
+        assertEquals(warm, pool.getAllocations());
+        assertTrue(pool.getReuses() > 0);
+    }
+
+    private interface Runner {
+        void run(RasterSource src, RasterStripePipeline.StripeSink sink) throws Exception;
+    }
+
+    /** Concatena as faixas e confere que vêm de cima pra baixo, sem buraco. */
+    private static byte[] collect(Runner runner, RasterSource src) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] nextY = {0};
+        runner.run(src, (yStart, rows, bytesPerRow, data) -> {
+            assertEquals(nextY[0], yStart);
+            nextY[0] += rows;
+            out.write(data, 0, rows * bytesPerRow);
+        });
+        assertEquals(src.getHeight(), nextY[0]);
+        return out.toByteArray();
+    }
+
+    /** Bayer 4x4 sobre um degradê; forkable = se aceita fork(). */
+    private static final class Gradient implements RasterSource {
+        private final int height;
+        private final boolean forkable;
+        private final Ditherer ditherer = new OrderedDitherer(4);
+        private final int[] luma = new int[WIDTH];
+
+        Gradient(int height, boolean forkable) {
+            this.height = height;
+            this.forkable = forkable;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getBytesPerRow() {
+            return WIDTH / 8;
+        }
+
+        @Override
+        public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+            for (int r = 0; r < rows; r++) {
+                int y = yStart + r;
+                for (int x = 0; x < WIDTH; x++) {
+                    luma[x] = (x * 255 / WIDTH + y) & 0xFF;
+                }
+                ditherer.ditherRow(luma, 0, WIDTH, y, dst, dstOff + r * getBytesPerRow());
+            }
+        }
+
+        @Override
+        public RasterSource fork() {
+            return forkable ? new Gradient(height, true) : null;
+        }
+    }
+}
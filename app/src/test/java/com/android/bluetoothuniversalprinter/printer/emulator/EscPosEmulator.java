@@ -0,0 +1,516 @@
+package com.android.bluetoothuniversalprinter.printer.emulator;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Impressora ESC/POS virtual (só JVM, para testes sem impressora física).
+ *
+ * Recebe o fluxo de bytes que o driver mandaria (ex.: de um LoopbackTransport),
+ * interpreta os comandos sobre uma cabeça de 384 pontos e um rolo de papel
+ * virtual, e desenha o resultado num PNG.
+ *
+ * Comandos interpretados:
+ *  - ESC @, ESC a, ESC E, GS !, LF, ESC J, ESC 2 / ESC 3
+ *  - GS v 0 (raster), GS L (margem esquerda)
+ *  - GS ( k (QR: modelo, módulo, ECC, grava, imprime)
+ *  - GS k m=73 (CODE128) com GS h / GS w / GS H
+ * Reconhecidos e ignorados: DLE EOT, GS V.
+ *
+ * Texto não usa fonte de verdade: cada caractere vira uma "caixa" do tamanho
+ * da célula (12x24 na Fonte A, multiplicado pelo GS !); negrito = caixa cheia.
+ * Assim a imagem é determinística em qualquer máquina (bom pra golden image).
+ */
+public final class EscPosEmulator {
+
+    public static final int HEAD_DOTS = 384;
+    public static final int BYTES_PER_ROW = HEAD_DOTS / 8;
+
+    private static final int FONT_W = 12;
+    private static final int FONT_H = 24;
+    private static final int DEFAULT_LINE_SPACING = 30;
+
+    // ---- papel ----
+    private final List<byte[]> paper = new ArrayList<>();
+    private int y;
+
+    // ---- estado da impressora ----
+    private int align;
+    private int scaleW = 1;
+    private int scaleH = 1;
+    private boolean bold;
+    private int leftMargin;
+    private int lineSpacing = DEFAULT_LINE_SPACING;
+
+    private int qrModule = 3;
+    private int qrEcc = 48;
+    private byte[] qrData;
+
+    private int barHeight = 162;
+    private int barModule = 3;
+
+    /** Célula de texto esperando LF / ESC J. */
+    private static final class Glyph {
+        final int w;
+        final int h;
+        final boolean filled;
+
+        Glyph(int w, int h, boolean filled) {
+            this.w = w;
+            this.h = h;
+            this.filled = filled;
+        }
+    }
+
+    private final List<Glyph> line = new ArrayList<>();
+    private int lineWidth;
+
+    // ---- estatísticas ----
+    private long bytes;
+    private int unknown;
+    private long inkRows;
+    private final Map<String, Integer> commands = new LinkedHashMap<>();
+
+    // ------------------------------------------------------------------------
+    //  Entrada
+    // ------------------------------------------------------------------------
+
+    /** Interpreta um pedaço do fluxo. Pode ser chamado várias vezes (comandos não podem ser partidos). */
+    public void feed(byte[] data) {
+        feed(data, 0, data.length);
+    }
+
+    public void feed(byte[] d, int off, int len) {
+        bytes += len;
+        int i = off;
+        final int end = off + len;
+        while (i < end) {
+            int b = d[i] & 0xFF;
+            if (b == 0x1B && i + 1 < end) {
+                i = esc(d, i, end);
+            } else if (b == 0x1D && i + 1 < end) {
+                i = gs(d, i, end);
+            } else if (b == 0x10 && i + 2 < end && d[i + 1] == 0x04) {
+                count("DLE EOT");
+                i += 3;
+            } else if (b == 0x0A) {
+                count("LF");
+                printLine(true);
+                i++;
+            } else if (b >= 0x20) {
+                addChar(b);
+                i++;
+            } else {
+                // CR, HT e outros controles: ignorados
+                i++;
+            }
+        }
+    }
+
+    private int esc(byte[] d, int i, int end) {
+        int cmd = d[i + 1] & 0xFF;
+        switch (cmd) {
+            case '@':
+                count("ESC @");
+                resetState();
+                return i + 2;
+            case 'a':
+                count("ESC a");
+                align = arg(d, i + 2, end) % 3;
+                return i + 3;
+            case 'E':
+                count("ESC E");
+                bold = (arg(d, i + 2, end) & 1) != 0;
+                return i + 3;
+            case 'J':
+                count("ESC J");
+                printLine(false);
+                advance(arg(d, i + 2, end));
+                return i + 3;
+            case '2':
+                count("ESC 2");
+                lineSpacing = DEFAULT_LINE_SPACING;
+                return i + 2;
+            case '3':
+                count("ESC 3");
+                lineSpacing = arg(d, i + 2, end);
+                return i + 3;
+            default:
+                unknown++;
+                count("ESC ?");
+                return i + 2;
+        }
+    }
+
+    private int gs(byte[] d, int i, int end) {
+        int cmd = d[i + 1] & 0xFF;
+        switch (cmd) {
+            case '!': {
+                count("GS !");
+                int n = arg(d, i + 2, end);
+                scaleW = ((n >> 4) & 0x07) + 1;
+                scaleH = (n & 0x07) + 1;
+                return i + 3;
+            }
+            case 'v':
+                return rasterImage(d, i, end);
+            case 'L':
+                count("GS L");
+                leftMargin = arg(d, i + 2, end) | (arg(d, i + 3, end) << 8);
+                return i + 4;
+            case '(':
+                return gsParen(d, i, end);
+            case 'k':
+                return barcode(d, i, end);
+            case 'h':
+                count("GS h");
+                barHeight = arg(d, i + 2, end);
+                return i + 3;
+            case 'w':
+                count("GS w");
+                barModule = arg(d, i + 2, end);
+                return i + 3;
+            case 'H':
+                count("GS H");
+                return i + 3;
+            case 'V': {
+                count("GS V");
+                int m = arg(d, i + 2, end);
+                return i + ((m == 65 || m == 66) ? 4 : 3);
+            }
+            default:
+                unknown++;
+                count("GS ?");
+                return i + 2;
+        }
+    }
+
+    // GS v 0 m xL xH yL yH d1..dk
+    private int rasterImage(byte[] d, int i, int end) {
+        count("GS v 0");
+        printLine(false);
+        int wBytes = arg(d, i + 4, end) | (arg(d, i + 5, end) << 8);
+        int h = arg(d, i + 6, end) | (arg(d, i + 7, end) << 8);
+        int p = i + 8;
+        int x0 = alignedX(wBytes * 8);
+        for (int r = 0; r < h; r++) {
+            byte[] row = rowAt(y + r);
+            for (int bx = 0; bx < wBytes; bx++) {
+                int idx = p + r * wBytes + bx;
+                int v = idx < end ? d[idx] & 0xFF : 0;
+                if (v == 0) continue;
+                for (int k = 0; k < 8; k++) {
+                    if ((v & (0x80 >>> k)) != 0) setDot(row, x0 + bx * 8 + k);
+                }
+            }
+        }
+        advance(h);
+        return p + wBytes * h;
+    }
+
+    // GS ( k pL pH cn fn [params]
+    private int gsParen(byte[] d, int i, int end) {
+        if ((d[i + 2] & 0xFF) != 'k') {
+            unknown++;
+            count("GS ( ?");
+            int len = arg(d, i + 3, end) | (arg(d, i + 4, end) << 8);
+            return i + 5 + len;
+        }
+        int len = arg(d, i + 3, end) | (arg(d, i + 4, end) << 8);
+        int fn = arg(d, i + 6, end);
+        int p = i + 7;
+        switch (fn) {
+            case 65:
+                count("GS ( k model");
+                break;
+            case 67:
+                count("GS ( k size");
+                qrModule = arg(d, p, end);
+                break;
+            case 69:
+                count("GS ( k ecc");
+                qrEcc = arg(d, p, end);
+                break;
+            case 80: {
+                count("GS ( k store");
+                int n = Math.max(0, len - 3);
+                qrData = new byte[n];
+                System.arraycopy(d, p + 1, qrData, 0, Math.min(n, end - p - 1));
+                break;
+            }
+            case 81:
+                count("GS ( k print");
+                printQr();
+                break;
+            default:
+                unknown++;
+                count("GS ( k ?");
+        }
+        return i + 5 + len;
+    }
+
+    // GS k 73 n d1..dn  (só CODE128, formato B do comando)
+    private int barcode(byte[] d, int i, int end) {
+        int m = arg(d, i + 2, end);
+        if (m != 73) {
+            unknown++;
+            count("GS k ?");
+            // formato A termina em NUL
+            int p = i + 3;
+            while (p < end && d[p] != 0) p++;
+            return p + 1;
+        }
+        count("GS k");
+        int n = arg(d, i + 3, end);
+        String raw = new String(d, i + 4, Math.min(n, end - i - 4), StandardCharsets.ISO_8859_1);
+        printCode128(raw);
+        return i + 4 + n;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Simbologias (desenhadas com o ZXing, como o firmware faria)
+    // ------------------------------------------------------------------------
+
+    private void printQr() {
+        printLine(false);
+        if (qrData == null || qrData.length == 0) return;
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.MARGIN, 0);
+        hints.put(EncodeHintType.ERROR_CORRECTION, eccLevel(qrEcc));
+        try {
+            BitMatrix m = new MultiFormatWriter().encode(
+                    new String(qrData, StandardCharsets.UTF_8), BarcodeFormat.QR_CODE, 0, 0, hints);
+            drawMatrix(m, qrModule, qrModule);
+        } catch (WriterException e) {
+            unknown++;
+        }
+    }
+
+    private void printCode128(String raw) {
+        printLine(false);
+        // "{B" seleciona o subconjunto; "{{" é um '{' literal
+        String content = raw.startsWith("{B") ? raw.substring(2) : raw;
+        content = content.replace("{{", "{");
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 0);
+        hints.put(EncodeHintType.FORCE_CODE_SET, "B");
+        try {
+            BitMatrix m = new MultiFormatWriter().encode(content, BarcodeFormat.CODE_128, 0, 1, hints);
+            drawMatrix(m, barModule, barHeight);
+        } catch (WriterException | IllegalArgumentException e) {
+            unknown++;
+        }
+    }
+
+    private void drawMatrix(BitMatrix m, int sx, int sy) {
+        int w = m.getWidth() * sx;
+        int x0 = alignedX(w);
+        for (int my = 0; my < m.getHeight(); my++) {
+            for (int r = 0; r < sy; r++) {
+                byte[] row = rowAt(y + my * sy + r);
+                for (int mx = 0; mx < m.getWidth(); mx++) {
+                    if (!m.get(mx, my)) continue;
+                    for (int k = 0; k < sx; k++) setDot(row, x0 + mx * sx + k);
+                }
+            }
+        }
+        advance(m.getHeight() * sy);
+    }
+
+    private static ErrorCorrectionLevel eccLevel(int n) {
+        switch (n) {
+            case 49: return ErrorCorrectionLevel.M;
+            case 50: return ErrorCorrectionLevel.Q;
+            case 51: return ErrorCorrectionLevel.H;
+            default: return ErrorCorrectionLevel.L;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Texto
+    // ------------------------------------------------------------------------
+
+    private void addChar(int c) {
+        int w = FONT_W * scaleW;
+        int h = FONT_H * scaleH;
+        if (lineWidth + w > HEAD_DOTS - leftMargin) {
+            printLine(true); // quebra automática, como a impressora faz
+        }
+        // espaço ocupa a célula mas não pinta (altura 0)
+        line.add(c == ' ' ? new Glyph(w, 0, false) : new Glyph(w, h, bold));
+        lineWidth += w;
+    }
+
+    /** Imprime a linha de texto pendente. withSpacing = LF (avança a entrelinha). */
+    private void printLine(boolean withSpacing) {
+        if (line.isEmpty()) {
+            if (withSpacing) advance(lineSpacing);
+            return;
+        }
+        int lineH = FONT_H * scaleH;
+        for (Glyph g : line) lineH = Math.max(lineH, g.h);
+
+        int x = alignedX(lineWidth);
+        for (Glyph g : line) {
+            if (g.h > 0) drawGlyph(x, y + (lineH - g.h), g);
+            x += g.w;
+        }
+        line.clear();
+        lineWidth = 0;
+        advance(withSpacing ? Math.max(lineSpacing, lineH + (lineSpacing - FONT_H)) : lineH);
+    }
+
+    private void drawGlyph(int x, int top, Glyph g) {
+        // caixa com 1 ponto de folga de cada lado; contorno de 2 pontos (ou cheia se negrito)
+        int x0 = x + 1, x1 = x + g.w - 2;
+        int y0 = top + 1, y1 = top + g.h - 2;
+        for (int yy = y0; yy <= y1; yy++) {
+            byte[] row = rowAt(yy);
+            boolean edgeRow = yy - y0 < 2 || y1 - yy < 2;
+            for (int xx = x0; xx <= x1; xx++) {
+                boolean edgeCol = xx - x0 < 2 || x1 - xx < 2;
+                if (g.filled || edgeRow || edgeCol) setDot(row, xx);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Papel
+    // ------------------------------------------------------------------------
+
+    private int alignedX(int width) {
+        int area = Math.max(0, HEAD_DOTS - leftMargin);
+        int free = Math.max(0, area - width);
+        if (align == 1) return leftMargin + free / 2;
+        if (align == 2) return leftMargin + free;
+        return leftMargin;
+    }
+
+    private byte[] rowAt(int row) {
+        while (paper.size() <= row) paper.add(new byte[BYTES_PER_ROW]);
+        return paper.get(row);
+    }
+
+    private void advance(int dots) {
+        y += Math.max(0, dots);
+        rowAt(y - 1 < 0 ? 0 : y - 1);
+    }
+
+    private static void setDot(byte[] row, int x) {
+        if (x < 0 || x >= HEAD_DOTS) return; // fora da cabeça: a impressora corta
+        row[x >> 3] |= (byte) (0x80 >>> (x & 7));
+    }
+
+    private void resetState() {
+        align = 0;
+        scaleW = 1;
+        scaleH = 1;
+        bold = false;
+        leftMargin = 0;
+        lineSpacing = DEFAULT_LINE_SPACING;
+        line.clear();
+        lineWidth = 0;
+    }
+
+    private static int arg(byte[] d, int idx, int end) {
+        return idx < end ? d[idx] & 0xFF : 0;
+    }
+
+    private void count(String name) {
+        Integer c = commands.get(name);
+        commands.put(name, c == null ? 1 : c + 1);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Saída / relatório
+    // ------------------------------------------------------------------------
+
+    /** Papel impresso até agora (branco = 0xFFFFFF, ponto = preto). */
+    public BufferedImage render() {
+        printLine(false);
+        int h = Math.max(1, paper.size());
+        BufferedImage img = new BufferedImage(HEAD_DOTS, h, BufferedImage.TYPE_BYTE_BINARY);
+        inkRows = 0;
+        for (int r = 0; r < h; r++) {
+            byte[] row = r < paper.size() ? paper.get(r) : new byte[BYTES_PER_ROW];
+            boolean ink = false;
+            for (int x = 0; x < HEAD_DOTS; x++) {
+                boolean dot = (row[x >> 3] & (0x80 >>> (x & 7))) != 0;
+                ink |= dot;
+                img.setRGB(x, r, dot ? 0xFF000000 : 0xFFFFFFFF);
+            }
+            if (ink) inkRows++;
+        }
+        return img;
+    }
+
+    public void writePng(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Não foi possível criar " + dir);
+        }
+        ImageIO.write(render(), "png", file);
+    }
+
+    /** Bytes recebidos. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /** Quantas vezes cada comando apareceu (ordem da primeira ocorrência). */
+    public Map<String, Integer> getCommandCounts() {
+        return commands;
+    }
+
+    public int getCommandCount(String name) {
+        Integer c = commands.get(name);
+        return c == null ? 0 : c;
+    }
+
+    /** Comandos que o emulador não conhece. */
+    public int getUnknownCommands() {
+        return unknown;
+    }
+
+    /** Comprimento de papel usado, em linhas de ponto. */
+    public int getPaperDots() {
+        return Math.max(y, paper.size());
+    }
+
+    /** Tempo de impressão simulado: papel / velocidade (8 pontos por mm). */
+    public long simulatedPrintMillis(int speedMmPerSec) {
+        return getPaperDots() * 1000L / (Math.max(1, speedMmPerSec) * 8L);
+    }
+
+    /** Tempo só de link para os bytes recebidos a bytesPerSecond. */
+    public long simulatedLinkMillis(int bytesPerSecond) {
+        return bytes * 1000L / Math.max(1, bytesPerSecond);
+    }
+
+    public String report(int speedMmPerSec) {
+        render();
+        return "bytes=" + bytes
+                + " papel=" + getPaperDots() + " pontos (" + (getPaperDots() / 8) + " mm)"
+                + " linhas com tinta=" + inkRows
+                + " impressão~" + simulatedPrintMillis(speedMmPerSec) + "ms @" + speedMmPerSec + "mm/s"
+                + " desconhecidos=" + unknown
+                + " comandos=" + commands;
+    }
+}
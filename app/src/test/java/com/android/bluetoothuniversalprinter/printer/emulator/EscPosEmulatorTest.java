@@ -0,0 +1,127 @@
+package com.android.bluetoothuniversalprinter.printer.emulator;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BluetoothEscPosPrinter;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.transport.LoopbackTransport;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Roda o driver de verdade contra um LoopbackTransport e confere o papel
+ * que o EscPosEmulator desenha, sem impressora física.
+ */
+public class EscPosEmulatorTest {
+
+    @Test
+    public void textJobMatchesGolden() throws IOException {
+        LoopbackTransport link = new LoopbackTransport();
+        link.connect();
+        BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(link);
+
+        printer.beginJob();
+        printer.txtPrint("LOJA EXEMPLO", 1, 1);
+        printer.txtPrint("Item 1        10,00", 0, 0);
+        printer.txtPrint("Item 2         5,50", 0, 0);
+        printer.feedDots(40);
+        printer.txtPrint("TOTAL 15,50", 2, 0);
+        printer.endJob();
+
+        EscPosEmulator emu = new EscPosEmulator();
+        emu.feed(link.toByteArray());
+        String report = emu.report(printer.getProfile().getPrintSpeedMmPerSec());
+
+        assertEquals(report, 0, emu.getUnknownCommands());
+        assertEquals(report, 1, emu.getCommandCount("ESC J"));
+        // 4 linhas de texto + 2 LF do endJob
+        assertEquals(report, 6, emu.getCommandCount("LF"));
+        assertTrue(report, emu.getPaperDots() > 40);
+
+        GoldenImages.assertMatches("text_job", emu);
+    }
+
+    /** QR pelo firmware (GS ( k) e QR em raster têm que sair iguais no papel. */
+    @Test
+    public void nativeQrMatchesRasterQr() throws IOException {
+        String data = "https://example.com/nfce?p=35240112345678000190650010000001231000001234";
+
+        EscPosEmulator nativeQr = printQr(PrinterProfile.generic(), data);
+        EscPosEmulator rasterQr = printQr(PrinterProfile.rasterOnly(), data);
+
+        assertEquals(1, nativeQr.getCommandCount("GS ( k print"));
+        assertEquals(0, nativeQr.getCommandCount("GS v 0"));
+        assertTrue(rasterQr.getCommandCount("GS v 0") > 0);
+        assertEquals(0, rasterQr.getCommandCount("GS ( k print"));
+        assertTrue("GS ( k deveria ser bem menor que o raster",
+                nativeQr.getBytes() * 4 < rasterQr.getBytes());
+
+        // a zona de silêncio e o ponto de partida mudam; o símbolo em si não
+        assertArrayEquals(inkBox(rasterQr.render()), inkBox(nativeQr.render()));
+    }
+
+    /** Bloco que morreu antes do endJob não pode sair na frente do próximo. */
+    @Test
+    public void failedJobLeavesNothingForTheNext() throws IOException {
+        LoopbackTransport link = new LoopbackTransport();
+        link.connect();
+        BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(link);
+
+        printer.beginJob();
+        printer.txtPrint("CUPOM VELHO", 0, 0);
+        // exceção aqui: o chamador nunca chega no endJob()
+
+        printer.beginJob();
+        printer.txtPrint("CUPOM NOVO", 0, 0);
+        printer.endJob();
+
+        String sent = new String(link.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertFalse(sent, sent.contains("VELHO"));
+        assertTrue(sent, sent.contains("NOVO"));
+    }
+
+    private static EscPosEmulator printQr(PrinterProfile profile, String data) throws IOException {
+        LoopbackTransport link = new LoopbackTransport();
+        link.connect();
+        BluetoothEscPosPrinter printer = new BluetoothEscPosPrinter(link);
+        printer.setProfile(profile);
+
+        printer.beginJob();
+        printer.printQrCode(data, 240);
+        printer.endJob();
+
+        EscPosEmulator emu = new EscPosEmulator();
+        emu.feed(link.toByteArray());
+        assertEquals(0, emu.getUnknownCommands());
+        return emu;
+    }
+
+    /** Recorte da área com tinta, como linhas de pixels (true = preto). */
+    private static boolean[][] inkBox(BufferedImage img) {
+        int minX = img.getWidth(), minY = img.getHeight(), maxX = -1, maxY = -1;
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                if (!GoldenImages.isInk(img, x, y)) continue;
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        if (maxX < 0) return new boolean[0][0];
+        boolean[][] box = new boolean[maxY - minY + 1][maxX - minX + 1];
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                box[y - minY][x - minX] = GoldenImages.isInk(img, x, y);
+            }
+        }
+        return box;
+    }
+}
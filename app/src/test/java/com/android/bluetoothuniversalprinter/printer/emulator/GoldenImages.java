@@ -0,0 +1,70 @@
+package com.android.bluetoothuniversalprinter.printer.emulator;
+
+import org.junit.Assume;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compara o papel renderizado pelo EscPosEmulator com um PNG de referência
+ * em src/test/resources/golden/.
+ *
+ *  - Golden ausente: grava o candidato em build/golden/ e pula o teste
+ *    (é só revisar o PNG e copiar pra resources).
+ *  - -Dgolden.update=true: regrava os goldens com a saída atual.
+ *  - Diferença: grava o atual em build/golden/ e falha apontando a 1ª linha diferente.
+ */
+final class GoldenImages {
+
+    private static final File GOLDEN_DIR = new File("src/test/resources/golden");
+    private static final File OUT_DIR = new File("build/golden");
+
+    private GoldenImages() {}
+
+    static void assertMatches(String name, EscPosEmulator emu) throws IOException {
+        File golden = new File(GOLDEN_DIR, name + ".png");
+        File actual = new File(OUT_DIR, name + ".png");
+
+        if (Boolean.getBoolean("golden.update")) {
+            emu.writePng(golden);
+            return;
+        }
+        if (!golden.exists()) {
+            emu.writePng(actual);
+            Assume.assumeTrue("golden ausente, candidato em " + actual, false);
+        }
+
+        BufferedImage expected = ImageIO.read(golden);
+        BufferedImage got = emu.render();
+        int diffRow = firstDifferentRow(expected, got);
+        if (diffRow >= 0) {
+            emu.writePng(actual);
+            fail(name + ": papel difere do golden a partir da linha " + diffRow
+                    + " (esperado " + expected.getHeight() + " linhas, veio " + got.getHeight()
+                    + "); saída atual em " + actual);
+        }
+        assertEquals(expected.getWidth(), got.getWidth());
+    }
+
+    /** Primeira linha de ponto diferente (-1 = iguais). Altura diferente conta como diferença. */
+    static int firstDifferentRow(BufferedImage a, BufferedImage b) {
+        int w = Math.min(a.getWidth(), b.getWidth());
+        int h = Math.min(a.getHeight(), b.getHeight());
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (isInk(a, x, y) != isInk(b, x, y)) return y;
+            }
+        }
+        return a.getHeight() == b.getHeight() && a.getWidth() == b.getWidth() ? -1 : h;
+    }
+
+    static boolean isInk(BufferedImage img, int x, int y) {
+        return (img.getRGB(x, y) & 0xFFFFFF) == 0;
+    }
+}
@@ -0,0 +1,125 @@
+package com.android.bluetoothuniversalprinter.printer.pool;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.transport.LoopbackTransport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** "Impressoras" em memória (LoopbackTransport) com vazões diferentes. */
+public class PrinterPoolTest {
+
+    @Test
+    public void leastLoadedPrefersPrinterThatDrainsFirst() throws IOException {
+        PrinterPool pool = new PrinterPool(PrinterPool.Routing.LEAST_LOADED);
+        PrinterPool.Member slow = pool.add("lenta", link(2_000), PrinterProfile.generic());
+        PrinterPool.Member fast = pool.add("rápida", link(20_000), PrinterProfile.generic());
+
+        // mesma carga em bytes: a lenta demora 10x mais pra esvaziar
+        assertSame(slow, pool.acquire(null, 4000));
+        assertSame(fast, pool.acquire(null, 4000));
+        assertTrue(slow.getEstimatedDrainMs() > fast.getEstimatedDrainMs());
+        assertSame(fast, pool.acquire(null, 4000));
+        assertEquals(2, fast.getQueuedJobs());
+
+        pool.release(slow, 4000, true);
+        assertEquals(0, slow.getQueuedBytes());
+        assertEquals(1, slow.getCompletedJobs());
+        assertSame(slow, pool.acquire(null, 1000));
+    }
+
+    @Test
+    public void paperRateFollowsHeadWidth() throws IOException {
+        PrinterPool pool = new PrinterPool(PrinterPool.Routing.LEAST_LOADED);
+        PrinterPool.Member narrow = pool.add("58mm", link(0), PrinterProfile.generic());
+        PrinterPool.Member wide = pool.add("80mm", link(0), PrinterProfile.generic().setHeadWidthDots(576));
+
+        // mesma velocidade em mm/s: a 80mm engole 72 bytes por linha em vez de 48
+        assertEquals(60 * 8 * 48, narrow.bytesPerSecond());
+        assertEquals(60 * 8 * 72, wide.bytesPerSecond());
+    }
+
+    @Test
+    public void roundRobinAndAffinity() throws IOException {
+        PrinterPool pool = new PrinterPool(PrinterPool.Routing.ROUND_ROBIN);
+        PrinterPool.Member a = pool.add("a", link(0), null);
+        PrinterPool.Member b = pool.add("b", link(0), null);
+        PrinterPool.Member c = pool.add("c", link(0), null);
+
+        List<PrinterPool.Member> order = new ArrayList<>();
+        for (int i = 0; i < 6; i++) order.add(pool.acquire(null, 100));
+        assertEquals(List.of(a, b, c, a, b, c), order);
+
+        pool.setRouting(PrinterPool.Routing.AFFINITY);
+        PrinterPool.Member kitchen = pool.acquire("cozinha", 100);
+        for (int i = 0; i < 5; i++) {
+            assertSame(kitchen, pool.acquire("cozinha", 100));
+        }
+        pool.bind("caixa", "b");
+        assertSame(b, pool.acquire("caixa", 100));
+    }
+
+    @Test
+    public void deadLinksAreEvicted() throws IOException {
+        PrinterPool pool = new PrinterPool(PrinterPool.Routing.AFFINITY);
+        List<String> evicted = new ArrayList<>();
+        pool.setListener((m, reason) -> evicted.add(m.getKey()));
+
+        LoopbackTransport aLink = link(0);
+        LoopbackTransport bLink = link(0);
+        PrinterPool.Member a = pool.add("a", aLink, null);
+        PrinterPool.Member b = pool.add("b", bLink, null);
+        pool.bind("cozinha", "a");
+
+        // impressora que nunca respondeu status: probe só confere o link
+        assertTrue(pool.probe(a));
+
+        // link caiu: job com erro tira na hora, e a afinidade vai pra outra
+        aLink.close();
+        assertSame(a, pool.acquire("cozinha", 100));
+        pool.release(a, 100, false);
+        assertTrue(a.isEvicted());
+        assertEquals(List.of("a"), evicted);
+        assertSame(b, pool.acquire("cozinha", 100));
+
+        // responde status "offline" três vezes seguidas: sai do pool
+        bLink.queueStatus((byte) 0x12);
+        assertTrue(pool.probe(b));
+        for (int i = 0; i < PrinterPool.DEFAULT_MAX_FAILURES; i++) bLink.queueStatus((byte) 0x1A);
+        assertTrue(pool.probe(b));
+        assertTrue(pool.probe(b));
+        assertFalse(pool.probe(b));
+        assertFalse(bLink.isConnected());
+        assertEquals(List.of("a", "b"), evicted);
+        assertEquals(0, pool.size());
+        assertNull(pool.get("b"));
+
+        try {
+            pool.acquire(null, 100);
+            fail("pool vazio");
+        } catch (IOException expected) {
+            assertEquals(2, pool.getEvictions());
+        }
+    }
+
+    private static LoopbackTransport link(int bytesPerSecondHint) {
+        LoopbackTransport t = new LoopbackTransport() {
+            @Override
+            public int getThroughputHint() {
+                return bytesPerSecondHint;
+            }
+        };
+        t.connect();
+        return t;
+    }
+}
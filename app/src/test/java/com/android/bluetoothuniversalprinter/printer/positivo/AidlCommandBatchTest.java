@@ -0,0 +1,109 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterSource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AidlCommandBatchTest {
+
+    @Test
+    public void wholeReceiptGoesInOneRawCall() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlCommandBatch batch = new AidlCommandBatch(svc, new AidlRasterSender(svc));
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(batch.addTextLine("ITEM " + i + "  R$ 1,00", 0, false, 0));
+        }
+        batch.addTextLine("TOTAL", 2, true, 1);
+        batch.addFeedLines(2);
+        batch.addQrCode("https://exemplo.com.br/nfce?p=123", 1, 6);
+        assertTrue(batch.addCode128("123456789012", 1, 300, 80, true));
+        batch.addRaster(new Solid(384, 200), 1);
+        batch.addFeedLines(3);
+
+        AidlCommandBatch.Result r = batch.submit(null);
+
+        assertEquals(1, r.getIpcCalls());
+        assertEquals(1, svc.calls);
+        assertTrue(r.getOperations() >= 36);
+        assertEquals(0, r.getFallbackCalls());
+        // começa selecionando a tabela (ESC t 0)
+        assertEquals(0x1B, svc.raw.get(0)[0]);
+        assertEquals(0x74, svc.raw.get(0)[1]);
+    }
+
+    @Test
+    public void unsupportedTextFallsBackInPlace() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlCommandBatch batch = new AidlCommandBatch(svc, new AidlRasterSender(svc));
+
+        batch.addTextLine("CUPOM", 1, true, 0);
+        assertFalse(batch.addTextLine("Promoção de verão", 0, false, 0)); // "ã" fora do CP437
+        batch.addServiceCall((s, cb) -> s.printTextWithAttributes("Promoção de verão\n", null, cb));
+        batch.addTextLine("OBRIGADO", 1, false, 0);
+
+        AidlCommandBatch.Result r = batch.submit(null);
+
+        assertEquals(Arrays.asList("sendRAWData", "printTextWithAttributes", "sendRAWData"), svc.log);
+        assertEquals(2, r.getRawCalls());
+        assertEquals(1, r.getFallbackCalls());
+        assertEquals(3, svc.calls);
+    }
+
+    @Test
+    public void largeJobIsSplitOnBlockBoundaries() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlRasterSender sender = new AidlRasterSender(svc);
+        sender.setMaxParcelBytes(16 * 1024);
+        AidlCommandBatch batch = new AidlCommandBatch(svc, sender);
+
+        batch.addTextLine("LOGO", 1, false, 0);
+        batch.addRaster(new Solid(384, 2000), 1); // ~94 KB de raster
+        batch.addTextLine("FIM", 1, false, 0);
+        AidlCommandBatch.Result r = batch.submit(null);
+
+        assertTrue(r.getRawCalls() > 1);
+        for (byte[] payload : svc.raw) {
+            assertTrue(payload.length <= 16 * 1024);
+        }
+        assertEquals(r.getRawCalls(), sender.getStats().getCalls());
+        assertTrue(sender.getStats().getMaxParcelBytes() <= 16 * 1024);
+    }
+
+    /** Retângulo preto cheio. */
+    private static final class Solid implements RasterSource {
+        private final int width;
+        private final int height;
+
+        Solid(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getBytesPerRow() {
+            return (width + 7) / 8;
+        }
+
+        @Override
+        public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+            Arrays.fill(dst, dstOff, dstOff + rows * getBytesPerRow(), (byte) 0xFF);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import com.xcheng.printerservice.IPrinterCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AidlJobPipelineTest {
+
+    @Test
+    public void onlyMaxInFlightReachTheService() throws Exception {
+        AidlTransferStats stats = new AidlTransferStats();
+        AidlJobPipeline pipeline = new AidlJobPipeline(stats);
+        pipeline.setMaxInFlight(2);
+        List<IPrinterCallback> issued = new ArrayList<>();
+
+        List<PrintFuture> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(pipeline.submit("job" + i, null, cb -> {
+                synchronized (issued) {
+                    issued.add(cb); // o "serviço" só responde quando o teste mandar
+                }
+            }));
+        }
+
+        awaitIssued(issued, 2);
+        Thread.sleep(50);
+        assertEquals(2, count(issued));
+        assertEquals(2, pipeline.getInFlight());
+
+        // cada onComplete libera um slot pro próximo
+        for (int i = 0; i < 6; i++) {
+            awaitIssued(issued, Math.min(6, i + 2));
+            callback(issued, i).onComplete();
+            futures.get(i).get(1, TimeUnit.SECONDS);
+        }
+        assertEquals(2, pipeline.getMaxObservedInFlight());
+        assertEquals(0, pipeline.getInFlight());
+        assertEquals(6, stats.getCalls());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void timeoutFailsAndFreesTheSlot() throws Exception {
+        AidlJobPipeline pipeline = new AidlJobPipeline(new AidlTransferStats());
+        pipeline.setMaxInFlight(1);
+        pipeline.setTimeoutMs(50);
+
+        PrintFuture lost = pipeline.submit("sem resposta", null, cb -> { });
+        PrintFuture next = pipeline.submit("próximo", null, IPrinterCallback::onComplete);
+
+        try {
+            lost.get(2, TimeUnit.SECONDS);
+            fail("devia ter vencido");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        next.get(2, TimeUnit.SECONDS);
+        assertFalse(next.isCancelled());
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void serviceErrorAndChunkedCallsAreTracked() throws Exception {
+        AidlTransferStats stats = new AidlTransferStats();
+        AidlJobPipeline pipeline = new AidlJobPipeline(stats);
+
+        PrintFuture err = pipeline.submit("sem papel", null, cb -> cb.onException(-3, "sem papel"));
+        try {
+            err.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(-3, ((PrintFuture.ServiceException) e.getCause()).getCode());
+        }
+
+        // imagem em 3 blocos: só conclui no terceiro onComplete
+        List<IPrinterCallback> issued = new ArrayList<>();
+        PrintFuture image = pipeline.submit("imagem", null, cb -> {
+            for (int i = 0; i < 3; i++) stats.record(1000, 1);
+            synchronized (issued) {
+                issued.add(cb);
+            }
+        });
+        awaitIssued(issued, 1);
+        IPrinterCallback cb = callback(issued, 0);
+        cb.onComplete();
+        cb.onComplete();
+        Thread.sleep(20);
+        assertFalse(image.isDone());
+        cb.onComplete();
+        image.get(1, TimeUnit.SECONDS);
+        assertEquals(3, image.getIpcCalls());
+        pipeline.shutdown();
+    }
+
+    private static void awaitIssued(List<IPrinterCallback> issued, int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (count(issued) < n) {
+            if (System.currentTimeMillis() > deadline) fail("esperava " + n + " chamadas, veio " + count(issued));
+            Thread.sleep(2);
+        }
+    }
+
+    private static int count(List<IPrinterCallback> issued) {
+        synchronized (issued) {
+            return issued.size();
+        }
+    }
+
+    private static IPrinterCallback callback(List<IPrinterCallback> issued, int i) {
+        synchronized (issued) {
+            return issued.get(i);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterSource;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AidlRasterSenderTest {
+
+    private static final int WIDTH = 384;
+
+    @Test
+    public void tallImageIsSplitUnderTheParcelBudget() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlRasterSender sender = new AidlRasterSender(svc);
+        Stripes src = new Stripes(3000);
+
+        sender.printRaster(src, 1, null);
+
+        // 3000 linhas * 48 bytes = 144 KB de raster (o ARGB seria ~4.6 MB)
+        int step = sender.rawRowsPerChunk(WIDTH / 8);
+        assertEquals((3000 + step - 1) / step, svc.raw.size());
+        assertTrue(sender.getStats().getMaxParcelBytes() <= AidlRasterSender.DEFAULT_MAX_PARCEL_BYTES);
+        assertEquals(svc.raw.size(), sender.getStats().getCalls());
+
+        // remonta: cada bloco é ESC a 1 + GS v 0 com a altura do bloco, sem perder linha
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        int total = 0;
+        for (byte[] b : svc.raw) {
+            assertEquals(0x1B, b[0]);
+            assertEquals(1, b[2]);
+            assertEquals(0x1D, b[3]);
+            assertEquals(0x76, b[4]);
+            assertEquals(WIDTH / 8, (b[7] & 0xFF) | (b[8] & 0xFF) << 8);
+            int h = (b[9] & 0xFF) | (b[10] & 0xFF) << 8;
+            assertEquals(AidlRasterSender.RAW_HEADER + h * (WIDTH / 8), b.length);
+            rows.write(b, AidlRasterSender.RAW_HEADER, b.length - AidlRasterSender.RAW_HEADER);
+            total += h;
+        }
+        assertEquals(3000, total);
+        assertArrayEquals(src.packAll(), rows.toByteArray());
+    }
+
+    @Test
+    public void smallerBudgetMeansMoreCalls() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlRasterSender sender = new AidlRasterSender(svc);
+        sender.setMaxParcelBytes(16 * 1024);
+
+        sender.printRaster(new Stripes(3000), 0, null);
+
+        assertTrue(svc.raw.size() >= 3000 * (WIDTH / 8) / (16 * 1024));
+        assertTrue(sender.getStats().getMaxParcelBytes() <= 16 * 1024);
+        // e o ARGB inteiro passaria muito do limite
+        assertTrue(AidlRasterSender.estimateBitmapParcelBytes(WIDTH, 3000) > AidlRasterSender.BINDER_LIMIT_BYTES);
+    }
+
+    /** Listras horizontais de 7 linhas, fácil de conferir depois de remontar. */
+    private static final class Stripes implements RasterSource {
+        private final int height;
+
+        Stripes(int height) {
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getBytesPerRow() {
+            return WIDTH / 8;
+        }
+
+        @Override
+        public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+            for (int r = 0; r < rows; r++) {
+                byte v = (byte) (((yStart + r) / 7) % 2 == 0 ? 0xFF : 0x00);
+                for (int i = 0; i < WIDTH / 8; i++) dst[dstOff + r * (WIDTH / 8) + i] = v;
+            }
+        }
+
+        byte[] packAll() {
+            byte[] all = new byte[height * (WIDTH / 8)];
+            packRows(0, height, all, 0);
+            return all;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AidlSpeedControllerTest {
+
+    private static final long S = 1_000_000_000L;
+
+    @Test
+    public void lowersWhenHotAndRaisesOnlyAfterCooling() {
+        AidlSpeedController c = new AidlSpeedController(new AidlTelemetry("teste"));
+        c.setLookaheadMs(0);
+
+        assertEquals(3, c.decide(3, 50, 0));        // morna: mantém
+        assertEquals(2, c.decide(3, 62, 1 * S));    // quente: desce um
+        assertEquals(1, c.decide(2, 75, 2 * S));    // crítica: mínimo direto
+        assertEquals(1, c.decide(1, 40, 3 * S));    // fria, mas só 1 leitura
+        assertEquals(1, c.decide(1, 40, 4 * S));
+        assertEquals(1, c.decide(1, 40, 5 * S));    // 3 leituras, mas troca recente (cooldown 5s)
+        assertEquals(1, c.decide(1, 40, 6 * S));
+        assertEquals(2, c.decide(1, 40, 7 * S));    // sobe um
+        assertEquals(2, c.decide(2, 40, 8 * S));    // recomeça a contagem
+        assertEquals(1, c.getRaises());
+        assertEquals(2, c.getLowers());
+    }
+
+    @Test
+    public void risingTrendLowersBeforeTheLimit() {
+        AidlSpeedController c = new AidlSpeedController(new AidlTelemetry("teste"));
+        // lookahead padrão 10s: +1°C/s a 52°C projeta 62°C
+        assertEquals(4, c.decide(4, 50, 0));
+        assertEquals(3, c.decide(4, 52, 2 * S));
+        // estável no mesmo valor: não desce mais
+        assertEquals(3, c.decide(3, 52, 4 * S));
+    }
+
+    @Test
+    public void paperIsCheckedBeforeSendingAndSpeedFollowsTemperature() throws Exception {
+        FakePrinterService svc = new FakePrinterService();
+        AidlTelemetry telemetry = new AidlTelemetry("teste");
+        AidlSpeedController c = new AidlSpeedController(telemetry);
+        c.setService(svc);
+        c.setSampleIntervalMs(0);
+        AidlJobPipeline pipeline = new AidlJobPipeline(new AidlTransferStats());
+        pipeline.setGate(c);
+
+        // primeira leitura aplica o nível inicial
+        print(pipeline, svc, "linha 1").get(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(3), svc.speeds);
+        assertEquals(3, telemetry.getSpeedLevel());
+
+        // sem papel: falha sem chamar o serviço pra imprimir
+        svc.paper = false;
+        try {
+            print(pipeline, svc, "linha 2").get(1, TimeUnit.SECONDS);
+            fail("devia faltar papel");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AidlSpeedController.PaperOutException);
+        }
+        assertEquals(1, svc.log.stream().filter("printWrapPaper"::equals).count());
+        assertEquals(1, c.getPaperOuts());
+
+        // papel de volta, cabeça quente: desce antes de enviar
+        svc.paper = true;
+        svc.temperature = 66;
+        print(pipeline, svc, "linha 3").get(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(3, 2), svc.speeds);
+        assertEquals(2, telemetry.getSpeedLevel());
+        assertEquals(Arrays.asList("printerPaper", "printerTemperature", "setPrinterSpeed", "printWrapPaper"),
+                svc.log.subList(svc.log.size() - 4, svc.log.size()));
+        pipeline.shutdown();
+    }
+
+    private static PrintFuture print(AidlJobPipeline pipeline, FakePrinterService svc, String label) {
+        return pipeline.submit(label, null, cb -> {
+            svc.printWrapPaper(1, cb);
+            cb.onComplete();
+        });
+    }
+}
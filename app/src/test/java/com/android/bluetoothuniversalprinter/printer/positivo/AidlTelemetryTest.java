@@ -0,0 +1,136 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AidlTelemetryTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void ratesAreMeasuredFromFirstProgress() {
+        AidlTelemetry t = new AidlTelemetry("teste");
+        AidlJobMetrics m = t.begin("cupom", 0);
+
+        // 300ms até o serviço começar; depois 50 mm em 1s e 10 KB em 1s
+        m.onRealLength(0, 50, 300 * MS);
+        m.onLength(0, 10_000, 300 * MS);
+        m.onRealLength(25, 50, 800 * MS);
+        m.onLength(10_000, 10_000, 1300 * MS);
+        m.onRealLength(50, 50, 1300 * MS);
+        t.finish(m, true, 1350 * MS);
+
+        assertEquals(300, m.getTimeToFirstProgressMs(), 0.01);
+        assertEquals(50, m.getMmPerSecond(), 0.01);
+        assertEquals(10_000, m.getBytesPerSecond(), 0.01);
+        assertEquals(1350, m.getDurationMs(), 0.01);
+        assertEquals(0, m.getStalls());
+        assertTrue(m.isOk());
+    }
+
+    @Test
+    public void stallsAreCountedOncePerGap() {
+        AidlTelemetry t = new AidlTelemetry("teste");
+        t.setStallMs(500);
+
+        // sem watchdog: a travada aparece quando o progresso volta
+        AidlJobMetrics quiet = t.begin("a", 0);
+        quiet.onRealLength(0, 30, 100 * MS);
+        quiet.onRealLength(10, 30, 1100 * MS);
+        assertEquals(1, quiet.getStalls());
+        assertEquals(1000, quiet.getLongestGapMs(), 0.01);
+
+        // com watchdog: conta uma vez só, mesmo checando várias vezes no buraco
+        AidlJobMetrics live = t.begin("b", 0);
+        live.onRealLength(0, 30, 100 * MS);
+        t.check(live, 400 * MS);
+        assertEquals(0, live.getStalls());
+        t.check(live, 700 * MS);
+        t.check(live, 900 * MS);
+        live.onRealLength(10, 30, 1100 * MS);
+        assertEquals(1, live.getStalls());
+
+        // a espera antes do primeiro progresso não é travada
+        AidlJobMetrics slowStart = t.begin("c", 0);
+        slowStart.onRealLength(0, 30, 2000 * MS);
+        assertEquals(0, slowStart.getStalls());
+        assertEquals(2000, slowStart.getTimeToFirstProgressMs(), 0.01);
+    }
+
+    @Test
+    public void summariesAreGroupedBySpeedLevel() {
+        AidlTelemetry t = new AidlTelemetry("teste");
+        t.setSpeedLevel(1);
+        job(t, 40, true);
+        job(t, 60, true);
+        t.setSpeedLevel(3);
+        job(t, 90, false);
+
+        List<AidlTelemetry.Summary> all = t.getSummaries();
+        assertEquals(2, all.size());
+        AidlTelemetry.Summary slow = t.getSummary(1);
+        assertEquals(2, slow.getJobs());
+        assertEquals(2, slow.getOk());
+        assertEquals(50, slow.getAvgMmPerSecond(), 0.01);
+        AidlTelemetry.Summary fast = t.getSummary(3);
+        assertEquals(1, fast.getJobs());
+        assertEquals(0, fast.getOk());
+        assertNull(t.getSummary(2));
+    }
+
+    @Test
+    public void pipelineFeedsProgressAndClosesJobs() throws Exception {
+        AidlTelemetry t = new AidlTelemetry("teste");
+        AidlJobPipeline pipeline = new AidlJobPipeline(new AidlTransferStats());
+        pipeline.setTelemetry(t);
+
+        PrintFuture f = pipeline.submit("linha", null, cb -> {
+            cb.onRealLength(0, 4);
+            cb.onRealLength(4, 4);
+            cb.onComplete();
+        });
+        f.get(1, TimeUnit.SECONDS);
+
+        AidlJobMetrics m = f.getMetrics();
+        assertNotNull(m);
+        assertEquals(4, m.getMm(), 0.01);
+        awaitFinished(m);
+        assertTrue(m.isOk());
+        assertEquals(1, t.getSummary(-1).getJobs());
+
+        PrintFuture err = pipeline.submit("sem papel", null, cb -> cb.onException(-3, "sem papel"));
+        try {
+            err.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+        }
+        awaitFinished(err.getMetrics());
+        assertFalse(err.getMetrics().isOk());
+        assertEquals(2, t.getSummary(-1).getJobs());
+        pipeline.shutdown();
+    }
+
+    private static void job(AidlTelemetry t, double mmPerSecond, boolean ok) {
+        AidlJobMetrics m = t.begin("job", 0);
+        m.onRealLength(0, mmPerSecond, 100 * MS);
+        m.onRealLength(mmPerSecond, mmPerSecond, 1100 * MS);
+        t.finish(m, ok, 1200 * MS);
+    }
+
+    /** O fechamento roda no listener do PrintFuture, logo depois do get() soltar. */
+    private static void awaitFinished(AidlJobMetrics m) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!m.isFinished() && System.currentTimeMillis() < deadline) Thread.sleep(2);
+        assertTrue(m.isFinished());
+    }
+}
@@ -0,0 +1,128 @@
+package com.android.bluetoothuniversalprinter.printer.positivo;
+
+import android.graphics.Bitmap;
+import android.os.IBinder;
+
+import com.xcheng.printerservice.IPrinterCallback;
+import com.xcheng.printerservice.IPrinterService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** IPrinterService em memória: guarda o que chegou em sendRAWData e a ordem das chamadas. */
+class FakePrinterService implements IPrinterService {
+
+    final List<byte[]> raw = new ArrayList<>();
+    final List<Bitmap> bitmaps = new ArrayList<>();
+    final List<String> log = new ArrayList<>();
+    final List<Integer> speeds = new ArrayList<>();
+    int calls;
+    volatile int temperature = 40;
+    volatile boolean paper = true;
+
+    private void called(String name) {
+        calls++;
+        log.add(name);
+    }
+
+    @Override
+    public void sendRAWData(byte[] data, IPrinterCallback c) {
+        called("sendRAWData");
+        raw.add(data.clone()); // o chamador pode reaproveitar o array (o Binder copiaria)
+    }
+
+    @Override
+    public void printBitmap(Bitmap b, IPrinterCallback c) {
+        called("printBitmap");
+        bitmaps.add(b);
+    }
+
+    @Override
+    public void printBitmapWithAttributes(Bitmap b, Map a, IPrinterCallback c) {
+        called("printBitmapWithAttributes");
+        bitmaps.add(b);
+    }
+
+    @Override
+    public void upgradePrinter() {
+    }
+
+    @Override
+    public String getFirmwareVersion() {
+        return "fake";
+    }
+
+    @Override
+    public String getBootloaderVersion() {
+        return "fake";
+    }
+
+    @Override
+    public void printerInit(IPrinterCallback c) {
+        called("printerInit");
+    }
+
+    @Override
+    public void printerReset(IPrinterCallback c) {
+        called("printerReset");
+    }
+
+    @Override
+    public void printWrapPaper(int n, IPrinterCallback c) {
+        called("printWrapPaper");
+    }
+
+    @Override
+    public void printText(String t, IPrinterCallback c) {
+        called("printText");
+    }
+
+    @Override
+    public void printTextWithAttributes(String t, Map a, IPrinterCallback c) {
+        called("printTextWithAttributes");
+    }
+
+    @Override
+    public void printColumnsTextWithAttributes(String[] t, List a, IPrinterCallback c) {
+        called("printColumnsTextWithAttributes");
+    }
+
+    @Override
+    public void printBarCode(String s, int a, int w, int h, boolean sc, IPrinterCallback c) {
+        called("printBarCode");
+    }
+
+    @Override
+    public void printQRCode(String t, int a, int s, IPrinterCallback c) {
+        called("printQRCode");
+    }
+
+    @Override
+    public void setPrinterSpeed(int l, IPrinterCallback c) {
+        called("setPrinterSpeed");
+        speeds.add(l);
+    }
+
+    @Override
+    public int printerTemperature(IPrinterCallback c) {
+        called("printerTemperature");
+        return temperature;
+    }
+
+    @Override
+    public boolean printerPaper(IPrinterCallback c) {
+        called("printerPaper");
+        return paper;
+    }
+
+    @Override
+    public void printStepWrapPaper(int n, IPrinterCallback c) {
+        called("printStepWrapPaper");
+    }
+
+    @Override
+    public IBinder asBinder() {
+        return null;
+    }
+}
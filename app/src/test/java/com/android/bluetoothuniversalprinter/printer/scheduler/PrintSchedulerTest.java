@@ -0,0 +1,118 @@
+package com.android.bluetoothuniversalprinter.printer.scheduler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A fila de uma impressora fica presa num latch enquanto as tarefas se
+ * acumulam; depois de soltar, a ordem de execução mostra a prioridade.
+ */
+public class PrintSchedulerTest {
+
+    private final PrintScheduler scheduler = new PrintScheduler(2);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void paymentJumpsTheQueue() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+
+        scheduler.io("p1", "bloqueio", PrintScheduler.Priority.NORMAL, self -> gate.await());
+        waitUntilEmpty("p1");
+
+        scheduler.io("p1", "segunda via", PrintScheduler.Priority.REPRINT, record(order, "segunda via", done));
+        scheduler.io("p1", "cupom 1", PrintScheduler.Priority.NORMAL, record(order, "cupom 1", done));
+        scheduler.io("p1", "pix", PrintScheduler.Priority.PAYMENT, record(order, "pix", done));
+        scheduler.io("p1", "cupom 2", PrintScheduler.Priority.NORMAL, record(order, "cupom 2", done));
+
+        assertEquals(4, scheduler.getQueueDepth("p1"));
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("pix", "cupom 1", "cupom 2", "segunda via"), order);
+        // o contador é atualizado logo depois da tarefa retornar
+        for (int i = 0; i < 500 && scheduler.getStats("io:p1").completed < 5; i++) {
+            Thread.sleep(10);
+        }
+        PrintScheduler.LaneStats stats = scheduler.getStats("io:p1");
+        assertEquals(5, stats.completed);
+        assertEquals(4, stats.maxQueued);
+    }
+
+    @Test
+    public void cancelRemovesQueuedTaskAndChainedStep() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.io("p1", "bloqueio", PrintScheduler.Priority.NORMAL, self -> gate.await());
+        waitUntilEmpty("p1");
+
+        PrintScheduler.Ticket render = scheduler.render("render", PrintScheduler.Priority.NORMAL, self -> { });
+        PrintScheduler.Ticket send = scheduler.io("p1", "envio", PrintScheduler.Priority.NORMAL,
+                record(order, "envio", done));
+        render.chain(send);
+        List<String> hooks = new ArrayList<>();
+        send.onCancel(() -> hooks.add("spool"));
+
+        scheduler.io("p1", "outro", PrintScheduler.Priority.NORMAL, record(order, "outro", done));
+
+        // render já pode ter terminado: o cancel ainda assim chega no envio
+        render.cancel();
+        assertEquals(PrintScheduler.State.CANCELLED, send.getState());
+        assertEquals(List.of("spool"), hooks);
+        assertEquals(1, scheduler.getQueueDepth("p1"));
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("outro"), order);
+        assertEquals(1, scheduler.getStats("p1").cancelled);
+    }
+
+    @Test
+    public void cancelInterruptsRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        PrintScheduler.Ticket t = scheduler.io("p1", "longo", PrintScheduler.Priority.NORMAL, self -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } finally {
+                finished.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        t.cancel();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(PrintScheduler.State.CANCELLED, t.getState());
+    }
+
+    private static PrintScheduler.Task record(List<String> order, String name, CountDownLatch done) {
+        return self -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    /** Espera a primeira tarefa sair da fila (ficar rodando). */
+    private void waitUntilEmpty(String printer) throws InterruptedException {
+        for (int i = 0; i < 500 && scheduler.getQueueDepth(printer) > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getQueueDepth(printer));
+    }
+}
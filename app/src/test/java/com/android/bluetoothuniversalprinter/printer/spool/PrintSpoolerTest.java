@@ -0,0 +1,330 @@
+package com.android.bluetoothuniversalprinter.printer.spool;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PacingController;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.PrinterProfile;
+import com.android.bluetoothuniversalprinter.printer.emulator.EscPosEmulator;
+import com.android.bluetoothuniversalprinter.printer.pool.PrinterPool;
+import com.android.bluetoothuniversalprinter.printer.transport.LoopbackTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Journal em disco de verdade (arquivo temporário) + LoopbackTransport que
+ * "cai" depois de N bytes, pra simular link perdido e app reaberto.
+ */
+public class PrintSpoolerTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("spool", ".jrnl");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void pendingJobSurvivesReopen() throws IOException {
+        byte[] program = program(5000);
+        int[] cps = {1000, 2000, 5000};
+
+        PrintJournal j = PrintJournal.open(file);
+        SpoolJob job = j.append("cupom", program, cps);
+        j.ack(job, 2000);
+        j.close();
+
+        PrintJournal reopened = PrintJournal.open(file);
+        List<SpoolJob> pending = reopened.pending();
+        assertEquals(1, pending.size());
+        assertEquals("cupom", pending.get(0).getLabel());
+        assertEquals(2000, pending.get(0).getAckedBytes());
+        assertArrayEquals(program, reopened.readProgram(pending.get(0)));
+
+        reopened.markDone(pending.get(0));
+        reopened.close();
+        assertEquals(0, PrintJournal.open(file).pending().size());
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        PrintJournal j = PrintJournal.open(file);
+        j.append("a", program(300), new int[]{300});
+        long goodEnd = j.getFileBytes();
+        j.append("b", program(300), new int[]{300});
+        j.close();
+
+        // processo morreu no meio do segundo registro
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(goodEnd + 40);
+        }
+
+        PrintJournal reopened = PrintJournal.open(file);
+        assertEquals(1, reopened.pending().size());
+        assertEquals("a", reopened.pending().get(0).getLabel());
+        assertEquals(1, reopened.getTruncatedTails());
+        assertEquals(goodEnd, reopened.getFileBytes());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsOnlyPendingJobs() throws IOException {
+        PrintJournal j = PrintJournal.open(file, 256 * 1024);
+        SpoolJob keep = j.append("fica", program(10_000), new int[]{4000, 10_000});
+        j.ack(keep, 4000);
+        for (int i = 0; i < 40; i++) {
+            SpoolJob done = j.append("feito " + i, program(10_000), new int[]{10_000});
+            j.markDone(done);
+        }
+        assertTrue("arquivo deveria ficar limitado", j.getFileBytes() <= j.getMaxBytes());
+        assertTrue(j.getCompactions() > 0);
+
+        j.close();
+        PrintJournal reopened = PrintJournal.open(file);
+        assertEquals(1, reopened.pending().size());
+        assertEquals(4000, reopened.pending().get(0).getAckedBytes());
+        assertArrayEquals(program(10_000), reopened.readProgram(reopened.pending().get(0)));
+        reopened.close();
+    }
+
+    @Test
+    public void smallReceiptsAreNotCompactedOneByOne() throws IOException {
+        PrintJournal j = PrintJournal.open(file);
+        for (int i = 0; i < 20; i++) {
+            j.markDone(j.append("cupom " + i, program(800), new int[]{800}));
+        }
+        assertEquals(0, j.getCompactions());
+        for (int i = 20; i < 64; i++) {
+            j.markDone(j.append("cupom " + i, program(800), new int[]{800}));
+        }
+        assertEquals(1, j.getCompactions());
+        j.close();
+    }
+
+    @Test
+    public void failedCompactionKeepsJournalWritable() throws IOException {
+        PrintJournal j = PrintJournal.open(file);
+        SpoolJob job = j.append("fica", program(1000), new int[]{1000});
+
+        // .tmp ocupado por um diretório não vazio: a compactação não consegue começar
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(new File(tmp, "x").mkdirs());
+        try {
+            j.compact();
+            fail("deveria falhar");
+        } catch (IOException expected) {
+            // ok
+        }
+
+        j.ack(job, 500);
+        SpoolJob next = j.append("depois", program(300), new int[]{300});
+        assertArrayEquals(program(1000), j.readProgram(job));
+        j.close();
+
+        new File(tmp, "x").delete();
+        tmp.delete();
+        PrintJournal reopened = PrintJournal.open(file);
+        assertEquals(2, reopened.pending().size());
+        assertEquals(500, reopened.pending().get(0).getAckedBytes());
+        assertEquals(next.getId(), reopened.pending().get(1).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void rejectsJobLargerThanDisk() throws IOException {
+        PrintJournal j = PrintJournal.open(file, 64 * 1024);
+        try {
+            j.append("grande", program(100_000), new int[]{100_000});
+            fail("deveria recusar");
+        } catch (IOException expected) {
+            // ok
+        }
+        j.close();
+    }
+
+    /** Link cai no meio do job; depois de "reabrir o app" o job termina a partir de um checkpoint. */
+    @Test
+    public void resumesAfterLinkDrop() throws IOException {
+        PrinterProfile profile = PrinterProfile.generic().setBufferBytes(512);
+
+        FlakyTransport link = new FlakyTransport(1500);
+        link.connect();
+        PrintSpooler spooler = PrintSpooler.open(file);
+        spooler.attach(link, profile);
+        try {
+            // fora de beginJob cada comando tem flush próprio: vários checkpoints
+            spooler.submit("linhas", p -> {
+                for (int i = 0; i < 120; i++) {
+                    p.txtPrint("LINHA " + i, i % 3, 0);
+                }
+            });
+            fail("link deveria ter caído");
+        } catch (IOException expected) {
+            // job fica no spool
+        }
+        spooler.close();
+
+        PrintSpooler reopened = PrintSpooler.open(file);
+        SpoolJob job = reopened.getPending().get(0);
+        byte[] program = reopened.getJournal().readProgram(job);
+        int acked = job.getAckedBytes();
+        assertTrue(acked > 0 && acked < program.length);
+
+        LoopbackTransport fresh = new LoopbackTransport();
+        fresh.connect();
+        reopened.attach(fresh, profile);
+        assertEquals(1, reopened.drain());
+        assertEquals(0, reopened.getPending().size());
+
+        // o que saiu agora é exatamente o fim do programa, a partir de um checkpoint antes do ACK
+        byte[] tail = fresh.toByteArray();
+        int resumedAt = program.length - tail.length;
+        assertTrue(resumedAt > 0 && resumedAt <= acked - 512);
+        assertArrayEquals(Arrays.copyOfRange(program, resumedAt, program.length), tail);
+        reopened.close();
+    }
+
+    /** drain() da principal não imprime job roteado pra outra impressora nem job cancelado. */
+    @Test
+    public void drainSkipsRoutedAndCancelledJobs() throws IOException {
+        LoopbackTransport primary = new LoopbackTransport();
+        primary.connect();
+        LoopbackTransport other = new LoopbackTransport();
+        other.connect();
+        PrintSpooler spooler = PrintSpooler.open(file);
+        spooler.attach(primary, PrinterProfile.generic());
+
+        SpoolJob routed = spooler.record("outra", p -> p.txtPrint("OUTRA", 0, 0));
+        SpoolJob cancelled = spooler.record("cancelado", p -> p.txtPrint("CANCELADO", 0, 0));
+        spooler.route(routed, "outra");
+        spooler.route(cancelled, "principal");
+        spooler.cancel(cancelled);
+
+        assertEquals(0, spooler.drain());
+        assertEquals(0, primary.size());
+
+        spooler.print(routed, other, PrinterProfile.generic(), PacingController.forProfile(PrinterProfile.generic()));
+        assertTrue(other.size() > 0);
+        assertEquals(0, primary.size());
+        assertEquals(0, spooler.getPending().size());
+        spooler.close();
+    }
+
+    /** Job cancelado no meio do envio não conta como impresso no drain(). */
+    @Test
+    public void drainCountsOnlyFinishedJobs() throws IOException {
+        PrintSpooler spooler = PrintSpooler.open(file);
+        final SpoolJob[] first = new SpoolJob[1];
+        LoopbackTransport link = new LoopbackTransport() {
+            @Override
+            public synchronized void flush() {
+                super.flush();
+                try {
+                    // cancelado por outra thread logo depois do primeiro trecho
+                    if (first[0] != null && !first[0].isDone()) spooler.cancel(first[0]);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        link.connect();
+        spooler.attach(link, PrinterProfile.generic());
+        first[0] = spooler.getJournal().append("cancelado", program(300), new int[]{100, 200, 300});
+        spooler.getJournal().append("inteiro", program(50), new int[]{50});
+
+        assertEquals(1, spooler.drain());
+        assertEquals(0, spooler.getPending().size());
+        spooler.close();
+    }
+
+    /** Job roteado pra uma impressora raster-only é compilado pro perfil dela, não pro da principal. */
+    @Test
+    public void routedJobIsCompiledForTheMembersProfile() throws IOException {
+        LoopbackTransport primary = new LoopbackTransport();
+        primary.connect();
+        LoopbackTransport paxLink = new LoopbackTransport();
+        paxLink.connect();
+        PrinterPool pool = new PrinterPool(PrinterPool.Routing.ROUND_ROBIN);
+        PrinterPool.Member pax = pool.add("pax", paxLink, PrinterProfile.forDeviceName("PAX A910"));
+
+        PrintSpooler spooler = PrintSpooler.open(file);
+        spooler.attach(primary, PrinterProfile.generic());
+        PrintSpooler.JobBody body = p -> {
+            p.printQrCode("https://exemplo.com.br/nfce", 200);
+            p.printCode128("123456789012", 300, 80);
+        };
+
+        // a mesma nota compilada pra principal usa os comandos nativos
+        SpoolJob generic = spooler.record("nativo", body);
+        EscPosEmulator nativeRun = new EscPosEmulator();
+        nativeRun.feed(spooler.getJournal().readProgram(generic));
+        assertTrue(nativeCommands(nativeRun) > 0);
+        spooler.cancel(generic);
+
+        PrinterPool.Member chosen = pool.acquire(null, 0);
+        assertSame(pax, chosen);
+        SpoolJob job = spooler.record("nota", body, chosen.getProfile());
+        spooler.route(job, chosen.getKey());
+        spooler.print(job, chosen.getTransport(), chosen.getProfile(), chosen.getPacing());
+
+        EscPosEmulator paxRun = new EscPosEmulator();
+        paxRun.feed(paxLink.toByteArray());
+        assertEquals(paxRun.getCommandCounts().toString(), 0, nativeCommands(paxRun));
+        assertTrue(paxRun.getCommandCount("GS v 0") > 0);
+        assertEquals(0, primary.size());
+        spooler.close();
+    }
+
+    /** GS ( k (QR nativo) e GS k (código de barras nativo) que o emulador reconheceu. */
+    private static int nativeCommands(EscPosEmulator emu) {
+        int n = 0;
+        for (Map.Entry<String, Integer> e : emu.getCommandCounts().entrySet()) {
+            if (e.getKey().startsWith("GS ( k") || e.getKey().startsWith("GS k")) n += e.getValue();
+        }
+        return n;
+    }
+
+    private static byte[] program(int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) b[i] = (byte) (i * 31 + 7);
+        return b;
+    }
+
+    /** Loopback que lança IOException depois de maxBytes (Bluetooth caindo). */
+    private static final class FlakyTransport extends LoopbackTransport {
+        private final int maxBytes;
+
+        FlakyTransport(int maxBytes) {
+            super(256);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(byte[] data, int off, int len) throws IOException {
+            if (size() + len > maxBytes) {
+                close();
+                throw new IOException("link caiu");
+            }
+            super.write(data, off, len);
+        }
+    }
+}
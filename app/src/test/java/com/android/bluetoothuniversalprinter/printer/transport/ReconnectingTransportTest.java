@@ -0,0 +1,191 @@
+package com.android.bluetoothuniversalprinter.printer.transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Cada link criado pela factory é um LoopbackTransport; o primeiro "cai"
+ * depois de alguns bytes, como um RFCOMM com broken pipe.
+ */
+public class ReconnectingTransportTest {
+
+    private final List<LoopbackTransport> links = new ArrayList<>();
+
+    @Test
+    public void reconnectsAndReplaysFromLastFlush() throws IOException {
+        ReconnectingTransport t = new ReconnectingTransport(factory(150, 0))
+                .setRetry(new Backoff(1, 4, new Random(1)), 3);
+        t.connect();
+
+        byte[] a = bytes(100, 1);
+        byte[] b = bytes(120, 2);
+        t.write(a, 0, a.length);
+        t.flush();
+        // b quebra o link no meio (100 + 120 > 150); o trecho b sai inteiro no link novo
+        t.write(b, 0, 60);
+        t.write(b, 60, 60);
+        t.flush();
+
+        assertEquals(2, links.size());
+        assertArrayEquals(a, links.get(0).toByteArray());
+        assertArrayEquals(b, links.get(1).toByteArray());
+        assertEquals(1, t.getReconnects());
+        assertTrue(t.getReplayedBytes() >= 60);
+        assertTrue(t.isConnected());
+    }
+
+    @Test
+    public void replayWindowResendsPrinterBufferFromAFlushBoundary() throws IOException {
+        ReconnectingTransport t = new ReconnectingTransport(factory(250, 0))
+                .setRetry(new Backoff(1, 4, new Random(1)), 3)
+                .setReplayWindow(100);
+        t.connect();
+
+        byte[] a = bytes(60, 1);
+        byte[] b = bytes(70, 2);
+        byte[] c = bytes(90, 3);
+        byte[] d = bytes(50, 4);
+        for (byte[] chunk : new byte[][]{a, b, c}) {
+            t.write(chunk, 0, chunk.length);
+            t.flush();
+        }
+        // d derruba o link (220 + 50 > 250). Janela de 100 bytes: c sozinho (90)
+        // não cobre, então volta desde o flush antes de b; a fica de fora
+        t.write(d, 0, d.length);
+        t.flush();
+
+        byte[] expected = new byte[b.length + c.length + d.length];
+        System.arraycopy(b, 0, expected, 0, b.length);
+        System.arraycopy(c, 0, expected, b.length, c.length);
+        System.arraycopy(d, 0, expected, b.length + c.length, d.length);
+        assertArrayEquals(expected, links.get(1).toByteArray());
+        assertEquals(expected.length, t.getReplayedBytes());
+    }
+
+    @Test
+    public void interruptIsRethrownWithoutReconnecting() throws IOException {
+        final boolean[] interrupt = {true};
+        ReconnectingTransport t = new ReconnectingTransport(() -> {
+            LoopbackTransport link = new LoopbackTransport() {
+                @Override
+                public void write(byte[] data, int off, int len) throws IOException {
+                    if (interrupt[0]) throw new InterruptedIOException("cancelado");
+                    super.write(data, off, len);
+                }
+            };
+            links.add(link);
+            return link;
+        }).setRetry(new Backoff(1, 2), 3);
+        t.connect();
+
+        try {
+            t.write(bytes(10, 5), 0, 10);
+            fail("cancelamento deveria subir");
+        } catch (InterruptedIOException expected) {
+            // ok
+        }
+        assertEquals(1, links.size());
+        assertEquals(0, t.getReconnects());
+        assertTrue(t.isConnected());
+
+        // o trecho cancelado não volta no próximo job
+        interrupt[0] = false;
+        byte[] next = bytes(20, 6);
+        t.write(next, 0, next.length);
+        t.flush();
+        assertArrayEquals(next, links.get(0).toByteArray());
+    }
+
+    @Test
+    public void failsOverToStandbyWithoutConnectDelay() throws IOException {
+        ReconnectingTransport t = new ReconnectingTransport(factory(50, 0))
+                .setRetry(new Backoff(10_000, 10_000), 1);
+        t.connect();
+        t.enableStandby(Runnable::run);
+        assertTrue(t.hasStandby());
+
+        byte[] job = bytes(80, 3);
+        t.write(job, 0, job.length);
+        t.flush();
+
+        assertEquals(1, t.getFailovers());
+        assertEquals(0, t.getReconnects());
+        assertTrue("failover não espera o backoff", t.getLastOutageMs() < 1000);
+        assertArrayEquals(job, links.get(1).toByteArray());
+        // um reserva novo já foi preparado
+        assertTrue(t.hasStandby());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws IOException {
+        ReconnectingTransport t = new ReconnectingTransport(factory(10, 5))
+                .setRetry(new Backoff(1, 2), 2);
+        t.connect();
+        try {
+            t.write(bytes(20, 4), 0, 20);
+            fail("deveria desistir");
+        } catch (IOException expected) {
+            assertEquals(2, expected.getSuppressed().length);
+        }
+        assertFalse(t.isConnected());
+    }
+
+    @Test
+    public void backoffIsCappedAndJittered() {
+        Backoff b = new Backoff(250, 4000, new Random(7));
+        assertEquals(250, b.ceilingMs(0));
+        assertEquals(2000, b.ceilingMs(3));
+        assertEquals(4000, b.ceilingMs(10));
+        assertEquals(4000, b.ceilingMs(1000));
+        for (int i = 0; i < 100; i++) {
+            long d = b.delayMs(i % 8);
+            assertTrue(d >= 0 && d <= b.ceilingMs(i % 8));
+        }
+    }
+
+    /**
+     * @param firstLinkBytes o primeiro link cai depois disso
+     * @param failingConnects quantos connects seguintes falham
+     */
+    private ReconnectingTransport.Factory factory(int firstLinkBytes, int failingConnects) {
+        final int[] connectsLeftToFail = {failingConnects};
+        return () -> {
+            final boolean first = links.isEmpty();
+            if (!first && connectsLeftToFail[0] > 0) {
+                connectsLeftToFail[0]--;
+                throw new IOException("connect falhou");
+            }
+            LoopbackTransport link = new LoopbackTransport() {
+                @Override
+                public void write(byte[] data, int off, int len) throws IOException {
+                    if (first && size() + len > firstLinkBytes) {
+                        close();
+                        throw new IOException("Broken pipe");
+                    }
+                    super.write(data, off, len);
+                }
+            };
+            links.add(link);
+            return link;
+        };
+    }
+
+    private static byte[] bytes(int n, int seed) {
+        byte[] b = new byte[n];
+        Arrays.fill(b, (byte) seed);
+        for (int i = 0; i < n; i += 7) b[i] = (byte) (i + seed);
+        return b;
+    }
+}
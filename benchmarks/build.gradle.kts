@@ -0,0 +1,53 @@
+// Benchmarks JMH do caminho quente do raster (roda na JVM do PC, não no aparelho).
+//
+//   ./gradlew :benchmarks:jmh
+//   ./gradlew :benchmarks:jmh -PjmhIncludes=RasterPack
+//
+// Saída: ns/linha (avgt), taxa de alocação e contagem de GC (profiler "gc"),
+// em benchmarks/build/results/jmh/results.json.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// O módulo :app é Android e não pode virar dependência de um módulo Java.
+// Compilamos aqui só as classes Java puras do raster (nenhuma importa android.*).
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include(
+                "**/printer/bluetooth/RasterPacker.java",
+                "**/printer/bluetooth/RasterSource.java",
+                "**/printer/bluetooth/RasterCrop.java",
+                "**/printer/bluetooth/RasterStripePipeline.java",
+                "**/printer/bluetooth/BlankRowElider.java",
+                "**/printer/bluetooth/StripeBufferPool.java",
+                "**/printer/bluetooth/BitMatrixRaster.java",
+                "**/printer/bluetooth/DitherMode.java",
+                "**/printer/bluetooth/*Ditherer.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.zxing.core)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    benchmarkMode.set(listOf("avgt"))
+    timeUnit.set("ns")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
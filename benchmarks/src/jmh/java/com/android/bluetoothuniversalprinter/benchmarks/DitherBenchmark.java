@@ -0,0 +1,61 @@
+package com.android.bluetoothuniversalprinter.benchmarks;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.DitherMode;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.Ditherer;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterPacker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ARGB -> luminância -> ditherer -> 1bpp, linha a linha (como o BitmapRasterizer faz).
+ * Resultado em ns/linha; o THRESHOLD aqui paga o toLuma a mais em relação ao packRows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DitherBenchmark {
+
+    private static final int W = RasterFixtures.WIDTH;
+    private static final int H = RasterFixtures.ROWS;
+
+    @Param({"receipt", "qr", "grid"})
+    public String shape;
+
+    @Param({"THRESHOLD", "BAYER_4X4", "BAYER_8X8", "FLOYD_STEINBERG", "ATKINSON"})
+    public DitherMode mode;
+
+    private int[] argb;
+    private int[] luma;
+    private byte[] row;
+    private Ditherer ditherer;
+
+    @Setup
+    public void setup() {
+        argb = RasterFixtures.create(shape);
+        luma = new int[W];
+        row = new byte[RasterPacker.bytesPerRow(W)];
+        ditherer = mode.create();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public void ditherImage(Blackhole bh) {
+        ditherer.begin(W);
+        for (int y = 0; y < H; y++) {
+            RasterPacker.toLuma(argb, y * W, W, luma, 0);
+            ditherer.ditherRow(luma, 0, W, y, row, 0);
+            bh.consume(row);
+        }
+    }
+}
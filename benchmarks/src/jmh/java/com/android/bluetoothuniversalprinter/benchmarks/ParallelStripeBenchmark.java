@@ -0,0 +1,102 @@
+package com.android.bluetoothuniversalprinter.benchmarks;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterPacker;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterSource;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterStripePipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RasterStripePipeline com destino rápido (como o spool gravando em memória):
+ *  - serial   : produtor único (parallelMinNanos = infinito)
+ *  - parallel : faixas no ForkJoinPool (parallelMinNanos = 0)
+ *
+ * A altura em que parallel passa a ganhar, vezes o ns/linha do serial, é o
+ * DEFAULT_PARALLEL_MIN_NANOS. Resultado em us por imagem.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelStripeBenchmark {
+
+    private static final int W = RasterFixtures.WIDTH;
+
+    /** Alturas: logo, cupom, printGrid grande, cupom promocional longo. */
+    @Param({"128", "512", "2048", "8192"})
+    public int rows;
+
+    private int[] argb;
+    private RasterStripePipeline serial;
+    private RasterStripePipeline parallel;
+
+    @Setup
+    public void setup() {
+        // o fixture "grid" repetido até a altura pedida
+        int[] tile = RasterFixtures.create("grid");
+        argb = new int[W * rows];
+        for (int off = 0; off < argb.length; off += tile.length) {
+            System.arraycopy(tile, 0, argb, off, Math.min(tile.length, argb.length - off));
+        }
+        serial = new RasterStripePipeline(RasterFixtures.STRIPE, RasterStripePipeline.DEFAULT_BUFFERS);
+        serial.setParallelMinNanos(Long.MAX_VALUE);
+        parallel = new RasterStripePipeline(RasterFixtures.STRIPE, RasterStripePipeline.DEFAULT_BUFFERS);
+        parallel.setParallelMinNanos(0);
+    }
+
+    @Benchmark
+    public void serial(Blackhole bh) throws IOException {
+        serial.run(new ArgbSource(argb, rows), (y, n, bpr, data) -> bh.consume(data[0]));
+    }
+
+    @Benchmark
+    public void parallel(Blackhole bh) throws IOException {
+        parallel.run(new ArgbSource(argb, rows), (y, n, bpr, data) -> bh.consume(data[0]));
+    }
+
+    /** Limiar sobre ARGB já em memória (o que o BitmapRasterizer faz sem o getPixels). */
+    private static final class ArgbSource implements RasterSource {
+        private final int[] argb;
+        private final int height;
+
+        ArgbSource(int[] argb, int height) {
+            this.argb = argb;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return W;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getBytesPerRow() {
+            return RasterPacker.bytesPerRow(W);
+        }
+
+        @Override
+        public void packRows(int yStart, int rows, byte[] dst, int dstOff) {
+            RasterPacker.packRows(argb, yStart * W, W, rows, RasterPacker.DEFAULT_THRESHOLD, dst, dstOff);
+        }
+
+        @Override
+        public RasterSource fork() {
+            return this; // sem estado: pode ser compartilhada
+        }
+    }
+}
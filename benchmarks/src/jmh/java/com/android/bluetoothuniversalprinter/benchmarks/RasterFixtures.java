@@ -0,0 +1,134 @@
+package com.android.bluetoothuniversalprinter.benchmarks;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BitMatrixRaster;
+import com.google.zxing.WriterException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Imagens ARGB de teste, do jeito que Bitmap.getPixels entregaria (stride = largura).
+ *
+ * Todas têm 384 x ROWS (58mm), pra ns/linha ser comparável entre formatos:
+ *  - receipt : logo em degradê no topo + linhas de "texto" + espaços em branco
+ *  - qr      : QR Code real (ZXing) centralizado, resto branco
+ *  - grid    : grade de bolinhas com borda antialiasing (cinzas), como printGrid
+ */
+final class RasterFixtures {
+
+    static final int WIDTH = 384;
+    static final int ROWS = 512;
+    static final int STRIPE = 64;
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private RasterFixtures() {}
+
+    static int[] create(String shape) {
+        switch (shape) {
+            case "receipt":
+                return receipt();
+            case "qr":
+                return qr();
+            case "grid":
+                return grid();
+            default:
+                throw new IllegalArgumentException("formato desconhecido: " + shape);
+        }
+    }
+
+    private static int[] receipt() {
+        int[] px = blank();
+        // logo: 96 linhas de degradê horizontal
+        for (int y = 0; y < 96; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                px[y * WIDTH + x] = gray(x * 255 / (WIDTH - 1));
+            }
+        }
+        // texto: "glifos" 12x24 com espaços, linha de 30 pontos, alguns parágrafos
+        Random rnd = new Random(42);
+        for (int top = 120; top + 24 <= ROWS; top += 30) {
+            if (rnd.nextInt(5) == 0) continue; // linha em branco entre blocos
+            int chars = 8 + rnd.nextInt(24);
+            for (int c = 0; c < chars; c++) {
+                if (rnd.nextInt(6) == 0) continue; // espaço
+                fillRect(px, c * 12 + 2, top + 3, 8, 18, BLACK);
+            }
+        }
+        return px;
+    }
+
+    private static int[] qr() {
+        int[] px = blank();
+        BitMatrixRaster qr;
+        try {
+            qr = BitMatrixRaster.qrCode(
+                    "00020126580014BR.GOV.BCB.PIX0136123e4567-e12b-12d1-a456-4266554400005204000053039865802BR5913FULANO DE TAL6008BRASILIA62070503***63041D3D",
+                    WIDTH, WIDTH);
+        } catch (WriterException e) {
+            throw new IllegalStateException(e);
+        }
+        int bpr = qr.getBytesPerRow();
+        byte[] packed = new byte[bpr * qr.getHeight()];
+        qr.packRows(0, qr.getHeight(), packed, 0);
+
+        int x0 = (WIDTH - qr.getWidth()) / 2;
+        int y0 = (ROWS - qr.getHeight()) / 2;
+        for (int y = 0; y < qr.getHeight(); y++) {
+            for (int x = 0; x < qr.getWidth(); x++) {
+                boolean ink = (packed[y * bpr + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+                if (ink) px[(y0 + y) * WIDTH + x0 + x] = BLACK;
+            }
+        }
+        return px;
+    }
+
+    private static int[] grid() {
+        int[] px = blank();
+        final int cell = 64;
+        final double r = 26;
+        for (int cy = cell / 2; cy + r + 2 < ROWS; cy += cell) {
+            for (int cx = cell / 2; cx + r + 2 < WIDTH; cx += cell) {
+                for (int y = (int) (cy - r - 1); y <= cy + r + 1; y++) {
+                    for (int x = (int) (cx - r - 1); x <= cx + r + 1; x++) {
+                        double d = Math.abs(Math.hypot(x - cx, y - cy) - r);
+                        if (d < 2.0) {
+                            // borda de 3px com antialiasing: cinza proporcional à distância
+                            px[y * WIDTH + x] = gray((int) (d * 127));
+                        }
+                    }
+                }
+                fillRect(px, cx - 8, cy - 12, 6, 24, BLACK);
+                fillRect(px, cx + 2, cy - 12, 6, 24, BLACK);
+            }
+        }
+        return px;
+    }
+
+    /** Linhas ARGB -> luminância, pra quem testa os ditherers isolados. */
+    static int[] luma(int[] argb) {
+        int[] out = new int[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int c = argb[i];
+            out[i] = (((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF)) / 3;
+        }
+        return out;
+    }
+
+    private static int[] blank() {
+        int[] px = new int[WIDTH * ROWS];
+        Arrays.fill(px, WHITE);
+        return px;
+    }
+
+    private static void fillRect(int[] px, int x, int y, int w, int h, int argb) {
+        for (int yy = y; yy < y + h; yy++) {
+            Arrays.fill(px, yy * WIDTH + x, yy * WIDTH + x + w, argb);
+        }
+    }
+
+    private static int gray(int v) {
+        return 0xFF000000 | (v << 16) | (v << 8) | v;
+    }
+}
@@ -0,0 +1,148 @@
+package com.android.bluetoothuniversalprinter.benchmarks;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterPacker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ARGB -> 1bpp (limiar), imagem inteira em faixas de 64 linhas. Resultado em ns/linha.
+ *
+ * Os "legacy*" são os laços antigos (getPixel por pixel) transcritos pra int[],
+ * pra ter a referência do que o projeto fazia:
+ *  - legacyToMono1BppData  : PrinterBitmapUtils.toMono1BppData (array da imagem toda)
+ *  - legacyStripeTo1Bpp    : BluetoothPrinterHelper.bitmapStripeTo1Bpp (array novo por faixa)
+ *  - legacyPackStripe      : EscPosImageEncoder.packStripe (só preto exato, array novo por faixa)
+ * Hoje os três passam por RasterPacker (packRows), com buffer reaproveitado.
+ *
+ * Olhar também gc.alloc.rate.norm (bytes/op) e gc.count do profiler "gc".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RasterPackBenchmark {
+
+    private static final int W = RasterFixtures.WIDTH;
+    private static final int H = RasterFixtures.ROWS;
+    private static final int STRIPE = RasterFixtures.STRIPE;
+
+    @Param({"receipt", "qr", "grid"})
+    public String shape;
+
+    private int[] argb;
+    private byte[] stripeBuf;
+
+    @Setup
+    public void setup() {
+        argb = RasterFixtures.create(shape);
+        stripeBuf = new byte[RasterPacker.bytesPerRow(W) * STRIPE];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public void packRows(Blackhole bh) {
+        for (int y = 0; y < H; y += STRIPE) {
+            int rows = Math.min(STRIPE, H - y);
+            RasterPacker.packRows(argb, y * W, W, rows, RasterPacker.DEFAULT_THRESHOLD, stripeBuf, 0);
+            bh.consume(stripeBuf);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public byte[] legacyToMono1BppData() {
+        int bytesPerRow = (W + 7) / 8;
+        byte[] imageBytes = new byte[bytesPerRow * H];
+        int idx = 0;
+        for (int y = 0; y < H; y++) {
+            idx = legacyRow(argb, y, imageBytes, idx);
+        }
+        return imageBytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public void legacyStripeTo1Bpp(Blackhole bh) {
+        int bytesPerRow = (W + 7) / 8;
+        for (int y = 0; y < H; y += STRIPE) {
+            int rows = Math.min(STRIPE, H - y);
+            byte[] outBytes = new byte[bytesPerRow * rows];
+            int idx = 0;
+            for (int r = 0; r < rows; r++) {
+                idx = legacyRow(argb, y + r, outBytes, idx);
+            }
+            bh.consume(outBytes);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public void legacyPackStripe(Blackhole bh) {
+        int bytesPerRow = (W + 7) / 8;
+        for (int y = 0; y < H; y += STRIPE) {
+            int rows = Math.min(STRIPE, H - y);
+            byte[] data = new byte[bytesPerRow * rows];
+            int idx = 0;
+            for (int r = 0; r < rows; r++) {
+                int bitPos = 0;
+                byte current = 0;
+                int p = (y + r) * W;
+                for (int x = 0; x < W; x++) {
+                    boolean isBlack = (argb[p + x] & 0x00FFFFFF) == 0x000000;
+                    current <<= 1;
+                    if (isBlack) current |= 0x01;
+                    bitPos++;
+                    if (bitPos == 8) {
+                        data[idx++] = current;
+                        bitPos = 0;
+                        current = 0;
+                    }
+                }
+                if (bitPos != 0) {
+                    current <<= (8 - bitPos);
+                    data[idx++] = current;
+                }
+            }
+            bh.consume(data);
+        }
+    }
+
+    /** Laço antigo: (r+g+b)/3 por pixel, bit a bit. Devolve o próximo índice livre. */
+    private static int legacyRow(int[] argb, int y, byte[] out, int idx) {
+        int bitPos = 0;
+        byte currentByte = 0;
+        int p = y * W;
+        for (int x = 0; x < W; x++) {
+            int pixel = argb[p + x];
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            int lumin = (r + g + b) / 3;
+            currentByte <<= 1;
+            if (lumin < 128) {
+                currentByte |= 0x01;
+            }
+            bitPos++;
+            if (bitPos == 8) {
+                out[idx++] = currentByte;
+                bitPos = 0;
+                currentByte = 0;
+            }
+        }
+        if (bitPos != 0) {
+            currentByte <<= (8 - bitPos);
+            out[idx++] = currentByte;
+        }
+        return idx;
+    }
+}
@@ -0,0 +1,88 @@
+package com.android.bluetoothuniversalprinter.benchmarks;
+
+import com.android.bluetoothuniversalprinter.printer.bluetooth.BlankRowElider;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterCrop;
+import com.android.bluetoothuniversalprinter.printer.bluetooth.RasterPacker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pós-processamento das faixas já empacotadas (antes de ir pro link):
+ *  - elideBlankRows : BlankRowElider (linhas brancas -> ESC J)
+ *  - cropMargins    : RasterCrop (corte das colunas brancas + compactação in-place)
+ * Resultado em ns/linha.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StripeBenchmark {
+
+    private static final int W = RasterFixtures.WIDTH;
+    private static final int H = RasterFixtures.ROWS;
+    private static final int STRIPE = RasterFixtures.STRIPE;
+
+    @Param({"receipt", "qr", "grid"})
+    public String shape;
+
+    private int bpr;
+    private byte[] packed;
+    private byte[] work;
+
+    @Setup
+    public void setup() {
+        bpr = RasterPacker.bytesPerRow(W);
+        packed = new byte[bpr * H];
+        RasterPacker.packRows(RasterFixtures.create(shape), 0, W, H, RasterPacker.DEFAULT_THRESHOLD, packed, 0);
+        work = new byte[bpr * STRIPE];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public long elideBlankRows(Blackhole bh) throws IOException {
+        BlankRowElider elider = new BlankRowElider(new BlankRowElider.Output() {
+            @Override
+            public void writeRows(byte[] data, int off, int rows, int bytesPerRow) {
+                bh.consume(rows);
+            }
+
+            @Override
+            public void feedDots(int dots) {
+                bh.consume(dots);
+            }
+        });
+        for (int y = 0; y < H; y += STRIPE) {
+            int rows = Math.min(STRIPE, H - y);
+            System.arraycopy(packed, y * bpr, work, 0, rows * bpr);
+            elider.onStripe(y, rows, bpr, work);
+        }
+        elider.finish();
+        return elider.getBytesSaved();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(H)
+    public void cropMargins(Blackhole bh) {
+        for (int y = 0; y < H; y += STRIPE) {
+            int rows = Math.min(STRIPE, H - y);
+            // o compact é destrutivo: cada faixa parte de uma cópia (mesmo custo do buffer da pipeline)
+            System.arraycopy(packed, y * bpr, work, 0, rows * bpr);
+            int first = RasterCrop.firstInkByte(work, 0, rows, bpr);
+            if (first < 0) continue;
+            int last = RasterCrop.lastInkByte(work, 0, rows, bpr);
+            RasterCrop.compact(work, 0, rows, bpr, first, last - first + 1);
+            bh.consume(work);
+        }
+    }
+}
@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "BluetoothUniversalPrinter"
 include(":app")
+include(":benchmarks")
  
\ No newline at end of file